@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.terminal.impl.LineDisciplineTerminal;
+import org.jline.utils.AttributedString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversions between {@link AttributedString} and ANSI strings, and line splitting.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributedStringBenchmark {
+
+    @Param({"80", "4096"})
+    int length;
+
+    LineDisciplineTerminal terminal;
+    AttributedString styled;
+    String ansi;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        terminal = HeadlessTerminals.create(160, 50);
+        styled = Samples.styled(new Random(0), length);
+        ansi = styled.toAnsi(terminal);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        terminal.close();
+    }
+
+    @Benchmark
+    public AttributedString fromAnsi() {
+        return AttributedString.fromAnsi(ansi);
+    }
+
+    @Benchmark
+    public String toAnsi() {
+        return styled.toAnsi(terminal);
+    }
+
+    @Benchmark
+    public String toAnsi16() {
+        return styled.toAnsi(16, false);
+    }
+
+    @Benchmark
+    public List<AttributedString> columnSplitLength() {
+        return styled.columnSplitLength(80);
+    }
+
+    @Benchmark
+    public int columnLength() {
+        return styled.columnLength();
+    }
+}
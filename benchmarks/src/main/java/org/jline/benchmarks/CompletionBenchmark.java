@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.reader.LineReader;
+import org.jline.reader.LineReaderBuilder;
+import org.jline.reader.impl.completer.StringsCompleter;
+import org.jline.terminal.impl.LineDisciplineTerminal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Completion through the line reader: each invocation types a word,
+ * hits TAB and accepts the line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompletionBenchmark {
+
+    @Param({"10000", "100000"})
+    int candidates;
+
+    LineDisciplineTerminal terminal;
+    LineReader reader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        terminal = HeadlessTerminals.create(160, 50);
+        List<String> strings = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            strings.add(String.format("cand%06d", i));
+        }
+        reader = LineReaderBuilder.builder()
+                .terminal(terminal)
+                .completer(new StringsCompleter(strings))
+                .variable(LineReader.DISABLE_HISTORY, true)
+                .build();
+        // Do not enter the list / menu loops, only measure candidate matching
+        reader.unsetOpt(LineReader.Option.AUTO_LIST);
+        reader.unsetOpt(LineReader.Option.AUTO_MENU);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        terminal.close();
+    }
+
+    /**
+     * Prefix matching, ten candidates match.
+     */
+    @Benchmark
+    public String prefix() throws IOException {
+        HeadlessTerminals.type(terminal, "cand00123\t\n");
+        return reader.readLine("> ");
+    }
+
+    /**
+     * No prefix nor infix match, so that the typo matcher kicks in.
+     */
+    @Benchmark
+    public String typo() throws IOException {
+        HeadlessTerminals.type(terminal, "cnad001234\t\n");
+        return reader.readLine("> ");
+    }
+}
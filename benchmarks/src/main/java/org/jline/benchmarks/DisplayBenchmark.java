@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.terminal.impl.LineDisciplineTerminal;
+import org.jline.utils.AttributedString;
+import org.jline.utils.AttributedStringBuilder;
+import org.jline.utils.AttributedStyle;
+import org.jline.utils.Display;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full screen {@link Display#update(List, int)} as used by less, nano and tmux.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DisplayBenchmark {
+
+    @Param({"50", "200"})
+    int rows;
+
+    @Param({"160"})
+    int columns;
+
+    LineDisciplineTerminal terminal;
+    Display display;
+    List<AttributedString> text;
+    int top;
+    int frame;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        terminal = HeadlessTerminals.create(columns, rows);
+        display = new Display(terminal, true);
+        display.resize(rows, columns);
+        text = Samples.styledLines(new Random(0), rows * 10, columns);
+        display.update(window(0), 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        terminal.close();
+    }
+
+    /**
+     * Scroll the window by one line, which should be detected
+     * and rendered using line insertion / deletion.
+     */
+    @Benchmark
+    public void scroll() {
+        top = (top + 1) % (text.size() - rows);
+        display.update(window(top), 0);
+    }
+
+    /**
+     * Modify a single character in the middle of the screen.
+     */
+    @Benchmark
+    public void edit() {
+        List<AttributedString> lines = window(top);
+        int row = rows / 2;
+        AttributedStringBuilder sb = new AttributedStringBuilder();
+        sb.append(lines.get(row).columnSubSequence(0, columns / 2));
+        sb.styled(AttributedStyle.INVERSE, (frame++ & 1) == 0 ? "x" : "y");
+        sb.append(lines.get(row).columnSubSequence(columns / 2 + 1, columns));
+        lines.set(row, sb.toAttributedString());
+        display.update(lines, row * (columns + 1) + columns / 2);
+    }
+
+    private List<AttributedString> window(int top) {
+        // last line is used as a status bar and left untouched
+        List<AttributedString> lines = new ArrayList<>(text.subList(top, top + rows - 1));
+        lines.add(new AttributedString("status", AttributedStyle.INVERSE));
+        return lines;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.jline.terminal.Size;
+import org.jline.terminal.impl.LineDisciplineTerminal;
+
+/**
+ * Factory for the headless terminals used by the benchmarks.
+ * The master side output is discarded so that the benchmarks
+ * only measure the cost of jline itself.
+ */
+public final class HeadlessTerminals {
+
+    public static final String TYPE = "xterm-256color";
+
+    private HeadlessTerminals() {
+    }
+
+    public static LineDisciplineTerminal create(int columns, int rows) throws IOException {
+        LineDisciplineTerminal terminal = new LineDisciplineTerminal(
+                "benchmark", TYPE, new NullOutputStream(), StandardCharsets.UTF_8);
+        terminal.setSize(new Size(columns, rows));
+        return terminal;
+    }
+
+    /**
+     * Feed the given input to the terminal, as if typed by the user.
+     *
+     * @param terminal the terminal
+     * @param input the input to type
+     * @throws IOException if anything wrong happens
+     */
+    public static void type(LineDisciplineTerminal terminal, String input) throws IOException {
+        terminal.processInputBytes(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.reader.LineReader;
+import org.jline.reader.LineReaderBuilder;
+import org.jline.reader.impl.history.DefaultHistory;
+import org.jline.terminal.impl.LineDisciplineTerminal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link DefaultHistory} operations: adding entries, searching
+ * and navigating through the line reader, and trimming the history file.
+ *
+ * The heap retained by the entries and by the search index is not measured
+ * by the benchmarks, but printed by {@link #main(String[])}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+
+    static final String NEEDLE = "needle-in-the-haystack";
+
+    @State(Scope.Thread)
+    public static class Reader {
+
+        @Param({"1000", "100000", "1000000"})
+        int size;
+
+        LineDisciplineTerminal terminal;
+        LineReader reader;
+        DefaultHistory history;
+        int counter;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            open();
+            fill();
+            buildIndex();
+        }
+
+        void open() throws IOException {
+            terminal = HeadlessTerminals.create(160, 50);
+            history = new DefaultHistory();
+            reader = LineReaderBuilder.builder()
+                    .terminal(terminal)
+                    .history(history)
+                    .variable(LineReader.HISTORY_SIZE, size)
+                    .build();
+            history.attach(reader);
+        }
+
+        void fill() {
+            history.add(Instant.now(), NEEDLE);
+            for (int i = 1; i < size; i++) {
+                history.add(Instant.now(), "command " + i + " --option value" + (i % 97));
+            }
+        }
+
+        void buildIndex() {
+            history.find(NEEDLE, false, l -> false, history.last() + 1, true);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            terminal.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class HistoryFile {
+
+        @Param({"1000", "10000"})
+        int size;
+
+        LineDisciplineTerminal terminal;
+        Path dir;
+        Path file;
+        LineReader reader;
+        TrimmingHistory history;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dir = Files.createTempDirectory("jline-history");
+            file = dir.resolve("history");
+            terminal = HeadlessTerminals.create(160, 50);
+            history = new TrimmingHistory();
+            reader = LineReaderBuilder.builder()
+                    .terminal(terminal)
+                    .history(history)
+                    .variable(LineReader.HISTORY_FILE, file)
+                    .variable(LineReader.HISTORY_SIZE, size)
+                    .build();
+            history.attach(reader);
+        }
+
+        @Setup(Level.Invocation)
+        public void writeFile() throws IOException {
+            long now = System.currentTimeMillis();
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                // 25% more entries than the maximum, with some duplicates
+                for (int i = 0; i < size + size / 4; i++) {
+                    writer.append(Long.toString(now + i)).append(':')
+                            .append("command ").append(Integer.toString(i % (size - size / 8))).append('\n');
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            terminal.close();
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /**
+     * Prints the heap retained by the entries and by the search index of
+     * histories of the given sizes, for instance with
+     * <code>java -cp benchmarks.jar org.jline.benchmarks.HistoryBenchmark 100000 1000000</code>
+     *
+     * @param args the history sizes
+     * @throws IOException if the terminal can not be created
+     */
+    public static void main(String[] args) throws IOException {
+        for (String arg : args) {
+            Reader state = new Reader();
+            state.size = Integer.parseInt(arg);
+            state.open();
+            long used = usedMemory();
+            state.fill();
+            long entries = usedMemory() - used;
+            state.buildIndex();
+            long index = usedMemory() - used - entries;
+            System.out.printf("%d entries: %d KB, search index: %d KB%n",
+                    state.size, entries / 1024, index / 1024);
+            state.tearDown();
+        }
+    }
+
+    static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    static class TrimmingHistory extends DefaultHistory {
+        void trim(Path path, int max) throws IOException {
+            trimHistory(path, max);
+        }
+    }
+
+    @Benchmark
+    public void add(Reader state) {
+        state.history.add(Instant.now(), "added " + state.counter++);
+    }
+
+    /**
+     * Random access to entries, as done when moving through the history.
+     */
+    @Benchmark
+    public int get(Reader state) {
+        int index = state.history.first() + (int) (state.counter++ * 7919L % state.history.size());
+        return state.history.get(index).length() + (state.history.moveTo(index) ? 1 : 0);
+    }
+
+    /**
+     * Incremental backward search for the oldest entry.
+     */
+    @Benchmark
+    public String search(Reader state) throws IOException {
+        state.reader.setVariable(LineReader.DISABLE_HISTORY, true);
+        HeadlessTerminals.type(state.terminal, "\u0012" + NEEDLE + "\n");
+        return state.reader.readLine("> ");
+    }
+
+    /**
+     * Move up 100 entries in history then accept the line.
+     */
+    @Benchmark
+    public String navigate(Reader state) throws IOException {
+        state.reader.setVariable(LineReader.DISABLE_HISTORY, true);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append('\u0010');
+        }
+        HeadlessTerminals.type(state.terminal, sb.append('\n').toString());
+        return state.reader.readLine("> ");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void trim(HistoryFile state) throws IOException {
+        state.history.trim(state.file, state.size);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int load(HistoryFile state) throws IOException {
+        state.reader.unsetOpt(LineReader.Option.HISTORY_SEGMENTED);
+        state.history.load();
+        return state.history.size();
+    }
+
+    /**
+     * Loading the history file as the active segment, without decoding the entries.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int loadSegmented(HistoryFile state) throws IOException {
+        state.reader.setOpt(LineReader.Option.HISTORY_SEGMENTED);
+        state.history.load();
+        return state.history.size();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.utils.NonBlocking;
+import org.jline.utils.NonBlockingPumpInputStream;
+import org.jline.utils.NonBlockingReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding pasted input, as read by the line reader from a terminal
+ * whose input is pumped, like remote terminals.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputBenchmark {
+
+    @Param({"1000", "100000"})
+    int size;
+
+    NonBlockingPumpInputStream input;
+    NonBlockingReader reader;
+    byte[] bytes;
+    int chars;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        input = NonBlocking.nonBlockingPumpInputStream(size * 4);
+        reader = NonBlocking.nonBlocking("benchmark", input, StandardCharsets.UTF_8);
+        String text = Samples.text(new Random(0), size);
+        bytes = text.getBytes(StandardCharsets.UTF_8);
+        chars = text.length();
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        input.getOutputStream().write(bytes);
+        int sum = 0;
+        for (int i = 0; i < chars; i++) {
+            sum += reader.read(1L);
+        }
+        return sum;
+    }
+}
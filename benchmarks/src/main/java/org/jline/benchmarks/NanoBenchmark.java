@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.builtins.Nano.SyntaxHighlighter;
+import org.jline.utils.AttributedString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Highlighting a screen of java source with {@link SyntaxHighlighter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NanoBenchmark {
+
+    static final String[] SOURCE = {
+            "/*",
+            " * Multi-line comment spanning",
+            " * several lines.",
+            " */",
+            "package org.jline.example;",
+            "",
+            "import java.util.List;",
+            "",
+            "public class Example extends Object implements Runnable {",
+            "    private static final int MAX_SIZE = 0x1f;",
+            "    // TODO: remove this field",
+            "    private final List<String> names;",
+            "",
+            "    /** Javadoc comment */",
+            "    public void run() {",
+            "        for (int i = 0; i < MAX_SIZE; i++) {",
+            "            if (names.get(i) == null) {",
+            "                throw new IllegalStateException(\"missing name \" + i);",
+            "            }",
+            "            System.out.println(names.get(i) + \" \" + 3.14 + true);",
+            "        }   ",
+            "    }",
+            "}"
+    };
+
+    Path dir;
+    SyntaxHighlighter highlighter;
+    List<String> lines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("jline-nanorc");
+        Path syntax = dir.resolve("java.nanorc");
+        try (InputStream is = NanoBenchmark.class.getResourceAsStream("java.nanorc")) {
+            Files.copy(is, syntax, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Path nanorc = dir.resolve("jnanorc");
+        Files.write(nanorc, Collections.singletonList("include " + syntax.toAbsolutePath()), StandardCharsets.UTF_8);
+        highlighter = SyntaxHighlighter.build(nanorc, "Java");
+        lines = new ArrayList<>();
+        while (lines.size() < 50) {
+            Collections.addAll(lines, SOURCE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(dir.resolve("java.nanorc"));
+        Files.deleteIfExists(dir.resolve("jnanorc"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public List<AttributedString> highlight() {
+        List<AttributedString> result = new ArrayList<>(lines.size());
+        highlighter.reset();
+        for (String line : lines) {
+            result.add(highlighter.highlight(line));
+        }
+        return result;
+    }
+}
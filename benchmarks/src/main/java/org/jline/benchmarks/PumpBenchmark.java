@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.terminal.impl.LineDisciplineTerminal;
+import org.jline.utils.NonBlockingInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pumping data through a terminal in raw mode, as for remote terminals:
+ * input fed to the master side by a thread and read from the slave side,
+ * and output lines printed by the application.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PumpBenchmark {
+
+    static final int CHUNK = 8192;
+
+    @Param({"1073741824"})
+    long size;
+
+    LineDisciplineTerminal terminal;
+    byte[] chunk;
+    byte[] lines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // buffered like the output of network connections
+        terminal = new LineDisciplineTerminal("benchmark", HeadlessTerminals.TYPE,
+                new BufferedOutputStream(new HeadlessTerminals.NullOutputStream(), CHUNK),
+                StandardCharsets.UTF_8);
+        terminal.enterRawMode();
+        chunk = new byte[CHUNK];
+        // printable input, so that no signal is raised
+        Arrays.fill(chunk, (byte) 'x');
+        lines = chunk.clone();
+        for (int i = 79; i < CHUNK; i += 80) {
+            lines[i] = '\n';
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        terminal.close();
+    }
+
+    @Benchmark
+    public long pump() throws Exception {
+        Thread producer = new Thread(() -> {
+            try {
+                for (long n = 0; n < size; n += CHUNK) {
+                    terminal.processInputBytes(chunk, 0, (int) Math.min(CHUNK, size - n));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        producer.start();
+        NonBlockingInputStream input = (NonBlockingInputStream) terminal.input();
+        byte[] buf = new byte[CHUNK];
+        long read = 0;
+        while (read < size) {
+            int n = input.readBuffered(buf);
+            if (n < 0) {
+                throw new IOException("Unexpected end of input");
+            }
+            read += n;
+        }
+        producer.join();
+        return read;
+    }
+
+    @Benchmark
+    public long output() throws IOException {
+        OutputStream output = terminal.output();
+        for (long n = 0; n < size; n += CHUNK) {
+            output.write(lines, 0, (int) Math.min(CHUNK, size - n));
+        }
+        return size;
+    }
+}
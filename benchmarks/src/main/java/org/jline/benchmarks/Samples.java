@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jline.utils.AttributedString;
+import org.jline.utils.AttributedStringBuilder;
+import org.jline.utils.AttributedStyle;
+
+/**
+ * Deterministic sample data shared by the benchmarks.
+ */
+final class Samples {
+
+    static final String[] WORDS = {
+            "public", "static", "void", "main", "String", "args", "return", "final", "class",
+            "import", "org.jline.reader", "LineReader", "Terminal", "if", "else", "while",
+            "for", "int", "new", "null", "true", "false", "// comment", "\"quoted string\"",
+            "0x1f", "42", "3.14", "throw", "try", "catch", "日本語", "emoji😀"
+    };
+
+    static final AttributedStyle[] STYLES = {
+            AttributedStyle.DEFAULT,
+            AttributedStyle.BOLD,
+            AttributedStyle.DEFAULT.foreground(AttributedStyle.RED),
+            AttributedStyle.DEFAULT.foreground(AttributedStyle.GREEN).underline(),
+            AttributedStyle.DEFAULT.foreground(AttributedStyle.BLUE).background(AttributedStyle.WHITE),
+            AttributedStyle.DEFAULT.foreground(214),
+            AttributedStyle.DEFAULT.foreground(39).background(236),
+            AttributedStyle.INVERSE
+    };
+
+    private Samples() {
+    }
+
+    static String text(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    static AttributedString styled(Random random, int length) {
+        AttributedStringBuilder sb = new AttributedStringBuilder();
+        while (sb.length() < length) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.styled(STYLES[random.nextInt(STYLES.length)], WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toAttributedString();
+    }
+
+    static List<AttributedString> styledLines(Random random, int count, int columns) {
+        List<AttributedString> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(styled(random, columns).columnSubSequence(0, columns));
+        }
+        return lines;
+    }
+}
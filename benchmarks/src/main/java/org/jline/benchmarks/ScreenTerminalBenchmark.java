@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.builtins.ScreenTerminal;
+import org.jline.terminal.impl.LineDisciplineTerminal;
+import org.jline.utils.AttributedString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ScreenTerminal#write(CharSequence)} as used by tmux panes:
+ * ANSI output generated by a headless terminal is fed to the screen emulator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScreenTerminalBenchmark {
+
+    ScreenTerminal screen;
+    String output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        screen = new ScreenTerminal(160, 50);
+        StringBuilder sb = new StringBuilder();
+        try (LineDisciplineTerminal terminal = HeadlessTerminals.create(160, 50)) {
+            List<AttributedString> lines = Samples.styledLines(new Random(0), 100, 120);
+            for (AttributedString line : lines) {
+                sb.append(line.toAnsi(terminal)).append("\r\n");
+            }
+        }
+        output = sb.toString();
+    }
+
+    @Benchmark
+    public boolean write() {
+        return screen.write(output);
+    }
+}
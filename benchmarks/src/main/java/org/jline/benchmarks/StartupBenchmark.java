@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.reader.LineReader;
+import org.jline.reader.LineReaderBuilder;
+import org.jline.terminal.Terminal;
+import org.jline.terminal.impl.DumbTerminal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time from {@link LineReaderBuilder#build()} to the first line read
+ * on a dumb terminal.  {@link #coldStart()} runs once per fresh JVM, which
+ * is what short-lived command line tools pay, while {@link #warmStart()}
+ * measures the steady state cost of creating a reader.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+
+    private static final byte[] INPUT = "exit\n".getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public String coldStart() throws IOException {
+        return firstLine();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    public String warmStart() throws IOException {
+        return firstLine();
+    }
+
+    private static String firstLine() throws IOException {
+        try (Terminal terminal = new DumbTerminal("benchmark", Terminal.TYPE_DUMB,
+                new ByteArrayInputStream(INPUT), new HeadlessTerminals.NullOutputStream(), StandardCharsets.UTF_8)) {
+            LineReader reader = LineReaderBuilder.builder()
+                    .terminal(terminal)
+                    .build();
+            return reader.readLine("prompt> ");
+        }
+    }
+}
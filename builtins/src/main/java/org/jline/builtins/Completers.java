@@ -35,6 +35,7 @@ import org.jline.reader.LineReader;
 import org.jline.reader.LineReader.Option;
 import org.jline.reader.impl.completer.AggregateCompleter;
 import org.jline.reader.impl.completer.ArgumentCompleter;
+import org.jline.reader.impl.completer.CandidateIndex;
 import org.jline.reader.impl.completer.NullCompleter;
 import org.jline.reader.impl.completer.StringsCompleter;
 import org.jline.reader.ParsedLine;
@@ -42,7 +43,6 @@ import org.jline.terminal.Terminal;
 import org.jline.utils.AttributedString;
 import org.jline.utils.AttributedStringBuilder;
 import org.jline.utils.AttributedStyle;
-import org.jline.utils.OSUtils;
 import org.jline.utils.StyleResolver;
 
 public class Completers {
@@ -268,6 +268,11 @@ public class Completers {
         protected boolean accept(Path path) {
             return Files.isDirectory(path) && super.accept(path);
         }
+
+        @Override
+        protected boolean accept(DirectoryCache.Entry entry) {
+            return entry.isDirectory() && super.accept(entry);
+        }
     }
 
     public static class FilesCompleter extends FileNameCompleter {
@@ -335,6 +340,12 @@ public class Completers {
     {
         protected static StyleResolver resolver = Styles.lsStyle();
 
+        // Whether a subclass still customizes the path based methods, which
+        // are then called instead of using the attributes of the entries
+        private final boolean acceptsPaths = isOverridden("accept", Path.class);
+        private final boolean displaysPaths = isOverridden("getDisplay",
+                Terminal.class, Path.class, StyleResolver.class, String.class);
+
         public void complete(LineReader reader, ParsedLine commandLine, final List<Candidate> candidates) {
             assert commandLine != null;
             assert candidates != null;
@@ -361,27 +372,72 @@ public class Completers {
                     curBuf = "";
                     current = getUserDir();
                 }
-                try (DirectoryStream<Path> directory = Files.newDirectoryStream(current, this::accept)) {
-                    directory.forEach(p -> {
-                        String value = curBuf + p.getFileName().toString();
-                        if (Files.isDirectory(p)) {
-                            candidates.add(
-                                    new Candidate(value + (reader.isSet(LineReader.Option.AUTO_PARAM_SLASH) ? sep : ""),
-                                            getDisplay(reader.getTerminal(), p, resolver, sep), null, null,
-                                            reader.isSet(LineReader.Option.AUTO_REMOVE_SLASH) ? sep : null, null, false));
-                        } else {
-                            candidates.add(new Candidate(value, getDisplay(reader.getTerminal(), p, resolver, sep), null, null, null, null,
-                                    true));
-                        }
-                    });
-                } catch (IOException e) {
-                    // Ignore
+                for (DirectoryCache.Entry entry : list(current)) {
+                    if (!accept(entry)) {
+                        continue;
+                    }
+                    String value = curBuf + entry.getName();
+                    String display = displaysPaths
+                            ? getDisplay(reader.getTerminal(), entry.getPath(), resolver, sep)
+                            : getDisplay(reader.getTerminal(), entry, resolver, sep);
+                    if (entry.isDirectory()) {
+                        candidates.add(
+                                new Candidate(value + (reader.isSet(LineReader.Option.AUTO_PARAM_SLASH) ? sep : ""),
+                                        display, null, null,
+                                        reader.isSet(LineReader.Option.AUTO_REMOVE_SLASH) ? sep : null, null, false));
+                    } else {
+                        candidates.add(new Candidate(value, display, null, null, null, null, true));
+                    }
                 }
             } catch (Exception e) {
                 // Ignore
             }
         }
 
+        /**
+         * Lists the given directory, from the directory cache if there is one.
+         *
+         * @param dir the directory to list
+         * @return the entries of the directory
+         * @throws IOException if the directory can not be read
+         */
+        protected List<DirectoryCache.Entry> list(Path dir) throws IOException {
+            DirectoryCache cache = getDirectoryCache();
+            if (cache != null) {
+                return cache.list(dir);
+            }
+            List<DirectoryCache.Entry> entries = new ArrayList<>();
+            try (DirectoryStream<Path> directory = Files.newDirectoryStream(dir)) {
+                for (Path p : directory) {
+                    entries.add(DirectoryCache.Entry.read(p));
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * Returns the cache used to list directories, the shared
+         * {@link DirectoryCache#getDefault()} by default, or <code>null</code>
+         * to list them each time.
+         *
+         * @return the directory cache
+         */
+        protected DirectoryCache getDirectoryCache() {
+            return DirectoryCache.getDefault();
+        }
+
+        /**
+         * Whether the given directory entry should be completed.
+         * The default rejects hidden entries, or delegates to
+         * {@link #accept(Path)} if a subclass overrides it.
+         *
+         * @param entry the entry, with its cached attributes
+         * @return <code>true</code> if the entry should be completed
+         */
+        protected boolean accept(DirectoryCache.Entry entry) {
+            return acceptsPaths ? accept(entry.getPath()) : !entry.isHidden();
+        }
+
         protected boolean accept(Path path) {
             try {
                 return !Files.isHidden(path);
@@ -403,19 +459,25 @@ public class Completers {
         }
 
         protected String getDisplay(Terminal terminal, Path p, StyleResolver resolver, String separator) {
+            DirectoryCache cache = getDirectoryCache();
+            DirectoryCache.Entry entry = cache != null ? cache.getEntry(p) : null;
+            return getDisplay(terminal, entry != null ? entry : DirectoryCache.Entry.read(p), resolver, separator);
+        }
+
+        protected String getDisplay(Terminal terminal, DirectoryCache.Entry entry, StyleResolver resolver, String separator) {
             AttributedStringBuilder sb = new AttributedStringBuilder();
-            String name = p.getFileName().toString();
+            String name = entry.getName();
             int idx = name.lastIndexOf(".");
             String type = idx != -1 ? ".*" + name.substring(idx): null;
-            if (Files.isSymbolicLink(p)) {
+            if (entry.isSymbolicLink()) {
                 sb.styled(resolver.resolve(".ln"), name).append("@");
-            } else if (Files.isDirectory(p)) {
+            } else if (entry.isDirectory()) {
                 sb.styled(resolver.resolve(".di"), name).append(separator);
-            } else if (Files.isExecutable(p) && !OSUtils.IS_WINDOWS) {
+            } else if (entry.isExecutable()) {
                 sb.styled(resolver.resolve(".ex"), name).append("*");
             } else if (type != null && resolver.resolve(type).getStyle() != 0) {
                 sb.styled(resolver.resolve(type), name);
-            } else if (Files.isRegularFile(p)) {
+            } else if (entry.isRegularFile()) {
                 sb.styled(resolver.resolve(".fi"), name);
             } else {
                 sb.append(name);
@@ -423,6 +485,22 @@ public class Completers {
             return sb.toAnsi(terminal);
         }
 
+        private boolean isOverridden(String name, Class<?>... types) {
+            for (Class<?> c = getClass();
+                    c != FileNameCompleter.class && c != DirectoriesCompleter.class;
+                    c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod(name, types);
+                    return true;
+                } catch (NoSuchMethodException e) {
+                    // Look in the superclass
+                } catch (SecurityException e) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
     }
 
     public static class TreeCompleter implements org.jline.reader.Completer {
@@ -463,7 +541,8 @@ public class Completers {
                 }
                 return new Node(comp, nodes);
             } else if (!cands.isEmpty()) {
-                return new Node((r, l, c) -> c.addAll(cands), nodes);
+                CandidateIndex index = new CandidateIndex(cands);
+                return new Node((r, l, c) -> c.addAll(index), nodes);
             } else {
                 throw new IllegalArgumentException();
             }
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jline.utils.Log;
+import org.jline.utils.OSUtils;
+
+/**
+ * A cache of directory listings, along with the attributes of each entry.
+ *
+ * The file name completers list the same directories again and again while
+ * the user types, and look at the type of each entry to append a separator
+ * and style its display.  The listing and the attributes are read once, with
+ * a single <code>stat</code> per entry for most of them, and kept until the
+ * directory changes.
+ *
+ * Listed directories are registered with a {@link WatchService}, whose
+ * events are drained each time the cache is queried.  As some file systems
+ * do not support watching, and others only poll for changes, the last
+ * modification time of the directory is also checked before using a cached
+ * listing.  Watches are a limited resource (each one is an inotify watch on
+ * Linux), so at most the given number of directories are watched at a time;
+ * the listings of the other directories rely on the modification time only.
+ *
+ * The cache holds at most the given number of entries, evicting the
+ * directories that have been used least recently.  Closing the cache closes
+ * its watch services and discards all listings.
+ */
+public class DirectoryCache implements Closeable {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+    public static final int DEFAULT_MAX_WATCHED = 256;
+
+    private static DirectoryCache defaultCache;
+
+    private final int maxEntries;
+    private final int maxWatched;
+    private final Map<Path, Listing> listings = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<FileSystem, WatchService> watchers = new HashMap<>();
+    private int size;
+    private int watched;
+    private boolean closed;
+
+    public static synchronized DirectoryCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new DirectoryCache(DEFAULT_MAX_ENTRIES);
+        }
+        return defaultCache;
+    }
+
+    public DirectoryCache(int maxEntries) {
+        this(maxEntries, DEFAULT_MAX_WATCHED);
+    }
+
+    public DirectoryCache(int maxEntries, int maxWatched) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Maximum number of entries must not be negative");
+        }
+        if (maxWatched < 0) {
+            throw new IllegalArgumentException("Maximum number of watched directories must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWatched = maxWatched;
+    }
+
+    /**
+     * Returns the entries of the given directory.
+     *
+     * @param dir the directory to list
+     * @return the entries of the directory, in no particular order
+     * @throws IOException if the directory can not be read
+     */
+    public synchronized List<Entry> list(Path dir) throws IOException {
+        drainEvents();
+        FileTime modified = Files.getLastModifiedTime(dir);
+        Listing listing = listings.get(dir);
+        if (listing != null && listing.modified.equals(modified)) {
+            return listing.entries;
+        }
+        invalidate(dir);
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                entries.add(Entry.read(path));
+            }
+        }
+        entries = Collections.unmodifiableList(entries);
+        if (entries.size() <= maxEntries) {
+            WatchKey key = watch(dir);
+            if (key != null) {
+                watched++;
+            }
+            listings.put(dir, new Listing(entries, modified, key));
+            size += entries.size();
+            evict();
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the cached entry of the given path, without listing its
+     * parent directory if it is not cached.
+     *
+     * @param path the path of the entry
+     * @return the entry, or <code>null</code> if its directory is not cached
+     */
+    public synchronized Entry getEntry(Path path) {
+        drainEvents();
+        Path dir = path.getParent();
+        Listing listing = dir != null ? listings.get(dir) : null;
+        return listing != null ? listing.entry(path.getFileName().toString()) : null;
+    }
+
+    /**
+     * Discards the cached listing of the given directory, if any.
+     *
+     * @param dir the directory
+     */
+    public synchronized void invalidate(Path dir) {
+        Listing listing = listings.remove(dir);
+        if (listing != null) {
+            discard(listing);
+        }
+    }
+
+    /**
+     * Discards all cached listings.
+     */
+    public synchronized void clear() {
+        for (Path dir : new ArrayList<>(listings.keySet())) {
+            invalidate(dir);
+        }
+    }
+
+    /**
+     * Discards all cached listings and closes the watch services.
+     * Directories listed afterwards are not watched anymore.
+     *
+     * @throws IOException if a watch service can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        clear();
+        IOException error = null;
+        for (WatchService watcher : watchers.values()) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        watchers.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void evict() {
+        Iterator<Listing> it = listings.values().iterator();
+        while (size > maxEntries && it.hasNext()) {
+            Listing listing = it.next();
+            it.remove();
+            discard(listing);
+        }
+    }
+
+    private void discard(Listing listing) {
+        size -= listing.entries.size();
+        if (listing.key != null) {
+            listing.key.cancel();
+            watched--;
+        }
+    }
+
+    private WatchKey watch(Path dir) {
+        if (closed || watched >= maxWatched) {
+            // Rely on the modification time only
+            return null;
+        }
+        try {
+            WatchService watcher = watchers.get(dir.getFileSystem());
+            if (watcher == null) {
+                watcher = dir.getFileSystem().newWatchService();
+                watchers.put(dir.getFileSystem(), watcher);
+            }
+            return dir.register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Rely on the modification time only
+            Log.debug("Unable to watch directory ", dir, ": ", e);
+            return null;
+        }
+    }
+
+    private void drainEvents() {
+        for (WatchService watcher : watchers.values()) {
+            WatchKey key;
+            while ((key = watcher.poll()) != null) {
+                // The key is cancelled, so that it is registered
+                // again once the directory has been listed again
+                key.pollEvents();
+                Path dir = (Path) key.watchable();
+                Listing listing = listings.get(dir);
+                if (listing != null && listing.key == key) {
+                    invalidate(dir);
+                } else {
+                    key.cancel();
+                }
+            }
+        }
+    }
+
+    private static class Listing {
+        final List<Entry> entries;
+        final FileTime modified;
+        final WatchKey key;
+        Map<String, Entry> byName;
+
+        Listing(List<Entry> entries, FileTime modified, WatchKey key) {
+            this.entries = entries;
+            this.modified = modified;
+            this.key = key;
+        }
+
+        Entry entry(String name) {
+            if (byName == null) {
+                byName = new HashMap<>();
+                for (Entry entry : entries) {
+                    byName.put(entry.getName(), entry);
+                }
+            }
+            return byName.get(name);
+        }
+    }
+
+    /**
+     * A directory entry, with the attributes read when it was listed.
+     */
+    public static class Entry {
+        private final Path path;
+        private final boolean symbolicLink;
+        private final boolean directory;
+        private final boolean regularFile;
+        private final boolean executable;
+        private final boolean hidden;
+
+        public Entry(Path path, boolean symbolicLink, boolean directory, boolean regularFile,
+                     boolean executable, boolean hidden) {
+            this.path = path;
+            this.symbolicLink = symbolicLink;
+            this.directory = directory;
+            this.regularFile = regularFile;
+            this.executable = executable;
+            this.hidden = hidden;
+        }
+
+        static Entry read(Path path) {
+            boolean symbolicLink = false;
+            boolean directory = false;
+            boolean regularFile = false;
+            boolean executable = false;
+            boolean hidden = false;
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                symbolicLink = attrs.isSymbolicLink();
+                if (symbolicLink) {
+                    // Links to directories are completed as directories
+                    directory = Files.isDirectory(path);
+                    regularFile = !directory && Files.isRegularFile(path);
+                } else {
+                    directory = attrs.isDirectory();
+                    regularFile = attrs.isRegularFile();
+                    executable = regularFile && !OSUtils.IS_WINDOWS && Files.isExecutable(path);
+                }
+                hidden = Files.isHidden(path);
+            } catch (IOException e) {
+                // The entry has been removed in the meantime
+            }
+            return new Entry(path, symbolicLink, directory, regularFile, executable, hidden);
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getName() {
+            return path.getFileName().toString();
+        }
+
+        public boolean isSymbolicLink() {
+            return symbolicLink;
+        }
+
+        /**
+         * @return whether the entry is a directory or a link to a directory
+         */
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * @return whether the entry is a regular file or a link to a regular file
+         */
+        public boolean isRegularFile() {
+            return regularFile;
+        }
+
+        /**
+         * @return whether the entry is an executable regular file, always
+         *         <code>false</code> for links and on Windows
+         */
+        public boolean isExecutable() {
+            return executable;
+        }
+
+        public boolean isHidden() {
+            return hidden;
+        }
+    }
+}
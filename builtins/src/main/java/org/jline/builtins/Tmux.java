@@ -33,6 +33,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -186,6 +187,7 @@ public class Tmux {
     private final Size size = new Size();
     private boolean identify;
     private ScheduledExecutorService executor;
+    private ThreadFactory threadFactory;
 
     private ScheduledFuture<?> clockFuture;
 
@@ -388,6 +390,17 @@ public class Tmux {
         keyMap = createKeyMap(serverOptions.get(OPT_PREFIX));
     }
 
+    /**
+     * Sets the factory creating the input loop and timer threads,
+     * the default one being used when <code>null</code>.
+     *
+     * @param threadFactory the thread factory
+     * @see Threads
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
     protected KeyMap<Object> createKeyMap(String prefix) {
         KeyMap<Object> keyMap = createEmptyKeyMap(prefix);
         keyMap.bind(CMD_SEND_PREFIX, prefix + prefix);
@@ -433,7 +446,10 @@ public class Tmux {
         terminal.puts(Capability.keypad_xmit);
         terminal.trackMouse(Terminal.MouseTracking.Any);
         terminal.flush();
-        executor = Executors.newSingleThreadScheduledExecutor();
+        // panes may produce output much faster than what is worth displaying
+        display.setCoalescing(true);
+        executor = Executors.newSingleThreadScheduledExecutor(
+                threadFactory != null ? threadFactory : Threads.getDefaultFactory());
         try {
             // Create first pane
             size.copy(terminal.getSize());
@@ -441,13 +457,14 @@ public class Tmux {
             activeWindow = 0;
             runner.accept(active().getConsole());
             // Start input loop
-            new Thread(this::inputLoop, "Mux input loop").start();
+            Threads.newThread(threadFactory, this::inputLoop, "Mux input loop", false).start();
             // Redraw loop
             redrawLoop();
         } catch (RuntimeException e) {
             throw e;
         } finally {
             executor.shutdown();
+            display.setCoalescing(false);
             terminal.trackMouse(Terminal.MouseTracking.Off);
             terminal.puts(Capability.keypad_local);
             terminal.puts(Capability.exit_ca_mode);
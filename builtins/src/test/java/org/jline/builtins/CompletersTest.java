@@ -11,15 +11,29 @@ package org.jline.builtins;
 import org.jline.reader.Candidate;
 import org.jline.reader.Completer;
 import org.jline.reader.LineReader;
+import org.jline.reader.LineReaderBuilder;
 import org.jline.reader.ParsedLine;
 import org.jline.reader.impl.DefaultParser;
+import org.jline.terminal.Terminal;
+import org.jline.terminal.impl.DumbTerminal;
+import org.jline.utils.StyleResolver;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.jline.builtins.Completers.TreeCompleter.node;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class CompletersTest {
 
@@ -51,4 +65,59 @@ public class CompletersTest {
         assertEquals(1, words.size());
         assertEquals("", words.get(0));
     }
+
+    @Test
+    public void testFileNameCompleterOverrides() throws IOException {
+        Path dir = Files.createTempDirectory("jline");
+        try {
+            Files.createDirectory(dir.resolve("sub"));
+            Files.createDirectory(dir.resolve("skipped"));
+            Files.createDirectory(dir.resolve(".hidden"));
+            Files.createFile(dir.resolve("file"));
+            LineReader reader = LineReaderBuilder.builder()
+                    .terminal(new DumbTerminal(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream()))
+                    .build();
+
+            assertEquals(set("sub/", "skipped/"), complete(reader, new Completers.DirectoriesCompleter(dir)));
+            assertEquals(set("sub/", "skipped/", "file"), complete(reader, new Completers.FilesCompleter(dir)));
+
+            // subclasses overriding the path based methods are still honored
+            Completer directories = new Completers.DirectoriesCompleter(dir) {
+                @Override
+                protected boolean accept(Path path) {
+                    return !path.getFileName().toString().equals("skipped") && super.accept(path);
+                }
+            };
+            assertEquals(set("sub/"), complete(reader, directories));
+            Completer files = new Completers.FilesCompleter(dir) {
+                @Override
+                protected String getDisplay(Terminal terminal, Path p, StyleResolver resolver, String separator) {
+                    return "<" + p.getFileName() + ">";
+                }
+            };
+            List<Candidate> candidates = new ArrayList<>();
+            files.complete(reader, new DefaultParser().parse("", 0), candidates);
+            for (Candidate candidate : candidates) {
+                assertTrue(candidate.displ().startsWith("<"));
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted((p1, p2) -> p2.compareTo(p1)).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static Set<String> complete(LineReader reader, Completer completer) {
+        List<Candidate> candidates = new ArrayList<>();
+        completer.complete(reader, new DefaultParser().parse("", 0), candidates);
+        Set<String> values = new HashSet<>();
+        for (Candidate candidate : candidates) {
+            values.add(candidate.value());
+        }
+        return values;
+    }
+
+    private static Set<String> set(String... strings) {
+        return new HashSet<>(Arrays.asList(strings));
+    }
 }
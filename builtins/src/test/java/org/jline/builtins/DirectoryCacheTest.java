@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.builtins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryCacheTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("jline");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted((p1, p2) -> p2.compareTo(p1)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testListing() throws IOException {
+        Files.createDirectory(dir.resolve("sub"));
+        Files.createFile(dir.resolve("file.txt"));
+        DirectoryCache cache = new DirectoryCache(DirectoryCache.DEFAULT_MAX_ENTRIES);
+
+        List<DirectoryCache.Entry> entries = cache.list(dir);
+        assertEquals(2, entries.size());
+        for (DirectoryCache.Entry entry : entries) {
+            if (entry.getName().equals("sub")) {
+                assertTrue(entry.isDirectory());
+                assertFalse(entry.isRegularFile());
+            } else {
+                assertEquals("file.txt", entry.getName());
+                assertFalse(entry.isDirectory());
+                assertTrue(entry.isRegularFile());
+            }
+            assertFalse(entry.isSymbolicLink());
+        }
+        assertSame(entries, cache.list(dir));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        Files.createFile(dir.resolve("a"));
+        DirectoryCache cache = new DirectoryCache(DirectoryCache.DEFAULT_MAX_ENTRIES);
+        assertEquals(names("a"), names(cache.list(dir)));
+
+        Files.createFile(dir.resolve("b"));
+        // the watch service reports events asynchronously
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (names(cache.list(dir)).size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(names("a", "b"), names(cache.list(dir)));
+
+        List<DirectoryCache.Entry> entries = cache.list(dir);
+        cache.invalidate(dir);
+        assertNotSame(entries, cache.list(dir));
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        Path d1 = Files.createDirectory(dir.resolve("d1"));
+        Path d2 = Files.createDirectory(dir.resolve("d2"));
+        Files.createFile(d1.resolve("a"));
+        Files.createFile(d1.resolve("b"));
+        Files.createFile(d2.resolve("c"));
+        Files.createFile(d2.resolve("d"));
+        DirectoryCache cache = new DirectoryCache(3);
+
+        List<DirectoryCache.Entry> l1 = cache.list(d1);
+        assertSame(l1, cache.list(d1));
+        cache.list(d2);
+        assertNotSame(l1, cache.list(d1));
+    }
+
+    @Test
+    public void testWatchLimit() throws Exception {
+        Path d1 = Files.createDirectory(dir.resolve("d1"));
+        Path d2 = Files.createDirectory(dir.resolve("d2"));
+        try (DirectoryCache cache = new DirectoryCache(DirectoryCache.DEFAULT_MAX_ENTRIES, 1)) {
+            List<DirectoryCache.Entry> l1 = cache.list(d1);
+            List<DirectoryCache.Entry> l2 = cache.list(d2);
+            assertSame(l1, cache.list(d1));
+            assertSame(l2, cache.list(d2));
+
+            // d2 is not watched: only a change of its modification time is noticed
+            FileTime modified = Files.getLastModifiedTime(d2);
+            Files.createFile(d2.resolve("a"));
+            Files.setLastModifiedTime(d2, modified);
+            assertSame(l2, cache.list(d2));
+            Files.setLastModifiedTime(d2, FileTime.fromMillis(0));
+            assertEquals(names("a"), names(cache.list(d2)));
+        }
+    }
+
+    @Test
+    public void testGetEntry() throws IOException {
+        Files.createDirectory(dir.resolve("sub"));
+        try (DirectoryCache cache = new DirectoryCache(DirectoryCache.DEFAULT_MAX_ENTRIES)) {
+            assertNull(cache.getEntry(dir.resolve("sub")));
+            cache.list(dir);
+            DirectoryCache.Entry entry = cache.getEntry(dir.resolve("sub"));
+            assertNotNull(entry);
+            assertTrue(entry.isDirectory());
+            assertNull(cache.getEntry(dir.resolve("none")));
+        }
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        Files.createFile(dir.resolve("a"));
+        DirectoryCache cache = new DirectoryCache(DirectoryCache.DEFAULT_MAX_ENTRIES);
+        List<DirectoryCache.Entry> entries = cache.list(dir);
+        cache.close();
+        assertNotSame(entries, cache.list(dir));
+        assertEquals(names("a"), names(cache.list(dir)));
+    }
+
+    private static Set<String> names(String... names) {
+        Set<String> set = new TreeSet<>();
+        for (String name : names) {
+            set.add(name);
+        }
+        return set;
+    }
+
+    private static Set<String> names(List<DirectoryCache.Entry> entries) {
+        Set<String> set = new TreeSet<>();
+        for (DirectoryCache.Entry entry : entries) {
+            set.add(entry.getName());
+        }
+        return set;
+    }
+}
@@ -35,4 +35,24 @@ public interface Completer
      * @param candidates    The {@link List} of candidates to populate
      */
     void complete(LineReader reader, ParsedLine line, List<Candidate> candidates);
+
+    /**
+     * Returns how long the candidates found for the given command line can
+     * be reused.
+     *
+     * While the user keeps typing at the end of the word being completed,
+     * the line reader refines the candidates it already has instead of
+     * calling the completer again, as long as they have been found less than
+     * this time ago.  This is only correct if the completer would return the
+     * same candidates for any extension of the current word.
+     *
+     * @param reader        The line reader
+     * @param line          The parsed command line
+     * @return the time in milliseconds, <code>0</code> if the candidates
+     *         can not be reused, which is the default, or
+     *         {@link Long#MAX_VALUE} if they never expire
+     */
+    default long getCandidatesTtl(LineReader reader, ParsedLine line) {
+        return 0;
+    }
 }
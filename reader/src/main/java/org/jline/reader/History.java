@@ -13,6 +13,7 @@ import java.nio.file.Path;
 import java.time.Instant;
 import java.util.Iterator;
 import java.util.ListIterator;
+import java.util.function.Predicate;
 
 /**
  * Console history.
@@ -147,6 +148,36 @@ public interface History extends Iterable<History.Entry>
         };
     }
 
+    /**
+     * Find the closest entry whose line matches the given predicate.
+     *
+     * Implementations may use an index to only test the entries whose line
+     * contains the given term, ignoring case, or starts with it: the
+     * predicate must not accept any other line.
+     *
+     * @param term a string that all the accepted lines contain
+     * @param prefix whether all the accepted lines also start with the term
+     * @param matcher the predicate to test the lines with
+     * @param index the index to search from, which is excluded when
+     *              searching backward
+     * @param backward whether to search the entries before the index
+     *                 rather than from it
+     * @return the index of the closest matching entry, or <code>-1</code>
+     */
+    default int find(String term, boolean prefix, Predicate<String> matcher, int index, boolean backward) {
+        if (isEmpty()) {
+            return -1;
+        }
+        ListIterator<Entry> it = iterator(Math.max(first(), Math.min(index, last() + 1)));
+        while (backward ? it.hasPrevious() : it.hasNext()) {
+            Entry e = backward ? it.previous() : it.next();
+            if (matcher.test(e.line())) {
+                return e.index();
+            }
+        }
+        return -1;
+    }
+
     //
     // Navigation
     //
@@ -8,7 +8,9 @@
  */
 package org.jline.reader;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.Map;
@@ -357,6 +359,29 @@ public interface LineReader {
      */
     String HISTORY_FILE_SIZE = "history-file-size";
 
+    /**
+     * Number of the most recent history items indexed for searching,
+     * the older ones being scanned.  Defaults to {@link #HISTORY_SIZE},
+     * so that the whole history is indexed: the index takes about 50 bytes
+     * per entry of 35 characters, or 40% of the memory of the entries.
+     */
+    String HISTORY_INDEX_SIZE = "history-index-size";
+
+    /**
+     * When the history file is forced to the storage device if
+     * {@link Option#HISTORY_ASYNC_WRITE} is set: <code>never</code>,
+     * after each <code>batch</code> of entries, or when the reader is
+     * <code>close</code>d.
+     */
+    String HISTORY_FSYNC = "history-fsync";
+
+    /**
+     * Number of history writes which can be queued if
+     * {@link Option#HISTORY_ASYNC_WRITE} is set, before saving waits
+     * for the file to be written.
+     */
+    String HISTORY_QUEUE_SIZE = "history-queue-size";
+
     /**
      * New line automatic indentation after opening/closing bracket.
      */
@@ -370,6 +395,13 @@ public interface LineReader {
      */
     String FEATURES_MAX_BUFFER_SIZE = "features-max-buffer-size";
 
+    /**
+     * Time in milliseconds to wait for the completer when
+     * {@link Option#ASYNC_COMPLETION} is set.  Once elapsed, the completer
+     * is cancelled and completion proceeds with the candidates found so far.
+     */
+    String COMPLETION_TIMEOUT = "completion-timeout";
+
     Map<String, KeyMap<Binding>> defaultKeyMaps();
 
     enum Option {
@@ -382,6 +414,13 @@ public interface LineReader {
         HISTORY_BEEP(true),
         HISTORY_INCREMENTAL(true),
         HISTORY_TIMESTAMPED(true),
+        /**
+         * keep the history file as segments, trimmed by deleting the oldest
+         * ones instead of rewriting the file, and load them lazily
+         */
+        HISTORY_SEGMENTED,
+        /** write the history file from a background thread */
+        HISTORY_ASYNC_WRITE,
         /** when displaying candidates, group them by {@link Candidate#group()} */
         AUTO_GROUP(true),
         AUTO_MENU(true),
@@ -438,6 +477,12 @@ public interface LineReader {
 
         /** Show command options tab completion candidates for zero length word */
         EMPTY_WORD_OPTIONS(true),
+
+        /**
+         * Run the completer in the background: candidates are listed as they
+         * are found and typing a key cancels the completion.
+         */
+        ASYNC_COMPLETION,
         ;
 
         private final boolean def;
@@ -712,4 +757,19 @@ public interface LineReader {
     void setAutosuggestion(SuggestionType type);
 
     SuggestionType getAutosuggestion();
+
+    /**
+     * Closes this reader, waiting for the history to be written if it is
+     * written in the background.  The terminal is left open.
+     *
+     * The default implementation closes the history if it is {@link Closeable}.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    default void close() throws IOException {
+        History history = getHistory();
+        if (history instanceof Closeable) {
+            ((Closeable) history).close();
+        }
+    }
 }
@@ -21,6 +21,10 @@ import java.lang.reflect.Constructor;
 import java.time.Instant;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.*;
@@ -28,12 +32,13 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import org.jline.keymap.BindingReader;
 import org.jline.keymap.KeyMap;
 import org.jline.reader.*;
 import org.jline.reader.Parser.ParseContext;
+import org.jline.reader.impl.completer.AsyncCompleter;
+import org.jline.reader.impl.completer.CandidateIndex;
 import org.jline.reader.impl.history.DefaultHistory;
 import org.jline.terminal.*;
 import org.jline.terminal.Attributes.ControlChar;
@@ -48,6 +53,7 @@ import org.jline.utils.Display;
 import org.jline.utils.InfoCmp.Capability;
 import org.jline.utils.Levenshtein;
 import org.jline.utils.Log;
+import org.jline.utils.NonBlockingReader;
 import org.jline.utils.Status;
 import org.jline.utils.WCWidth;
 
@@ -92,8 +98,10 @@ public class LineReaderImpl implements LineReader, Flushable
     public static final String DEFAULT_COMPLETION_STYLE_SELECTION = "7";    // inverted
     public static final int    DEFAULT_INDENTATION = 0;
     public static final int    DEFAULT_FEATURES_MAX_BUFFER_SIZE = 1000;
+    public static final long   DEFAULT_COMPLETION_TIMEOUT = 10000L;
 
     private static final int MIN_ROWS = 3;
+    private static final long ASYNC_COMPLETION_REFRESH = 100L;
 
     public static final String BRACKETED_PASTE_ON = "\033[?2004h";
     public static final String BRACKETED_PASTE_OFF = "\033[?2004l";
@@ -169,6 +177,9 @@ public class LineReaderImpl implements LineReader, Flushable
 
     protected final Map<Option, Boolean> options = new HashMap<>();
 
+    /** Candidates of the last completion, see {@link Completer#getCandidatesTtl} */
+    private CompletionCache completionCache;
+
     protected final Buffer buf = new BufferImpl();
     protected String tailTip = "";
     protected SuggestionType autosuggestion = SuggestionType.NONE;
@@ -253,6 +264,7 @@ public class LineReaderImpl implements LineReader, Flushable
 
     protected boolean skipRedisplay;
     protected Display display;
+    private final LineWrapCache wrapCache = new LineWrapCache();
 
     protected boolean overTyping = false;
 
@@ -898,7 +910,16 @@ public class LineReaderImpl implements LineReader, Flushable
     }
 
     public int peekCharacter(long timeout) {
-        return bindingReader.peekCharacter(timeout);
+        if (lock.isHeldByCurrentThread()) {
+            try {
+                lock.unlock();
+                return bindingReader.peekCharacter(timeout);
+            } finally {
+                lock.lock();
+            }
+        } else {
+            return bindingReader.peekCharacter(timeout);
+        }
     }
 
     protected <T> T doReadBinding(KeyMap<T> keys, KeyMap<T> local) {
@@ -2658,11 +2679,7 @@ public class LineReaderImpl implements LineReader, Flushable
                                 .max(Comparator.comparing(Pair::getV))
                                 .orElse(null);
                         if (pair == null) {
-                            pair = StreamSupport.stream(
-                                    Spliterators.spliteratorUnknownSize(history.reverseIterator(searchIndex < 0 ? history.last() : searchIndex - 1), Spliterator.ORDERED), false)
-                                    .flatMap(e -> matches(pat, e.line(), e.index()).stream())
-                                    .findFirst()
-                                    .orElse(null);
+                            pair = findMatch(pat, searchIndex < 0 ? history.last() + 1 : searchIndex, true);
                         }
                     } else {
                         boolean nextOnly = next;
@@ -2671,11 +2688,7 @@ public class LineReaderImpl implements LineReader, Flushable
                                 .min(Comparator.comparing(Pair::getV))
                                 .orElse(null);
                         if (pair == null) {
-                            pair = StreamSupport.stream(
-                                    Spliterators.spliteratorUnknownSize(history.iterator((searchIndex < 0 ? history.last() : searchIndex) + 1), Spliterator.ORDERED), false)
-                                    .flatMap(e -> matches(pat, e.line(), e.index()).stream())
-                                    .findFirst()
-                                    .orElse(null);
+                            pair = findMatch(pat, (searchIndex < 0 ? history.last() : searchIndex) + 1, false);
                             if (pair == null && searchIndex >= 0) {
                                 pair = matches(pat, originalBuffer.toString(), -1).stream()
                                         .min(Comparator.comparing(Pair::getV))
@@ -2713,6 +2726,20 @@ public class LineReaderImpl implements LineReader, Flushable
         }
     }
 
+    /**
+     * Finds the closest history entry matching the search pattern, along with
+     * the position of the first match.  All matching lines contain the search
+     * term, ignoring case, which lets the history only test those lines.
+     */
+    private Pair<Integer, Integer> findMatch(Pattern pat, int from, boolean backward) {
+        int index = history.find(searchTerm.toString(), false, l -> pat.matcher(l).find(), from, backward);
+        if (index < 0) {
+            return null;
+        }
+        List<Pair<Integer, Integer>> m = matches(pat, history.get(index), index);
+        return m.isEmpty() ? null : m.get(0);
+    }
+
     private List<Pair<Integer, Integer>> matches(Pattern p, String line, int index) {
         List<Pair<Integer, Integer>> starts = new ArrayList<>();
         Matcher m = p.matcher(line);
@@ -2854,49 +2881,32 @@ public class LineReaderImpl implements LineReader, Flushable
     }
 
     public int searchBackwards(String searchTerm, int startIndex, boolean startsWith) {
-        boolean caseInsensitive = isSet(Option.CASE_INSENSITIVE_SEARCH);
-        if (caseInsensitive) {
-            searchTerm = searchTerm.toLowerCase();
-        }
-        ListIterator<History.Entry> it = history.iterator(startIndex);
-        while (it.hasPrevious()) {
-            History.Entry e = it.previous();
-            String line = e.line();
-            if (caseInsensitive) {
-                line = line.toLowerCase();
-            }
-            int idx = line.indexOf(searchTerm);
-            if ((startsWith && idx == 0) || (!startsWith && idx >= 0)) {
-                return e.index();
-            }
-        }
-        return -1;
+        return history.find(searchTerm, startsWith, historyMatcher(searchTerm, startsWith), startIndex, true);
     }
 
     public int searchForwards(String searchTerm, int startIndex, boolean startsWith) {
-        boolean caseInsensitive = isSet(Option.CASE_INSENSITIVE_SEARCH);
-        if (caseInsensitive) {
-            searchTerm = searchTerm.toLowerCase();
+        if (history.isEmpty()) {
+            return -1;
         }
         if (startIndex > history.last()) {
             startIndex = history.last();
         }
-        ListIterator<History.Entry> it = history.iterator(startIndex);
-        if (searchIndex != -1 && it.hasNext()) {
-            it.next();
+        if (searchIndex != -1) {
+            startIndex++;
         }
-        while (it.hasNext()) {
-            History.Entry e = it.next();
-            String line = e.line();
+        return history.find(searchTerm, startsWith, historyMatcher(searchTerm, startsWith), startIndex, false);
+    }
+
+    private Predicate<String> historyMatcher(String searchTerm, boolean startsWith) {
+        boolean caseInsensitive = isSet(Option.CASE_INSENSITIVE_SEARCH);
+        String term = caseInsensitive ? searchTerm.toLowerCase() : searchTerm;
+        return line -> {
             if (caseInsensitive) {
                 line = line.toLowerCase();
             }
-            int idx = line.indexOf(searchTerm);
-            if ((startsWith && idx == 0) || (!startsWith && idx >= 0)) {
-                return e.index();
-            }
-        }
-        return -1;
+            int idx = line.indexOf(term);
+            return startsWith ? idx == 0 : idx >= 0;
+        };
     }
 
     /**
@@ -3630,160 +3640,238 @@ public class LineReaderImpl implements LineReader, Flushable
         return out;
     }
 
+    /*
+     * The names of the builtin widgets, each of which must be dispatched
+     * by builtinWidget(String).
+     */
+    static final String[] BUILTIN_WIDGETS = {
+            ACCEPT_AND_INFER_NEXT_HISTORY, ACCEPT_AND_HOLD, ACCEPT_LINE,
+            ACCEPT_LINE_AND_DOWN_HISTORY, ARGUMENT_BASE, BACKWARD_CHAR, BACKWARD_DELETE_CHAR,
+            BACKWARD_DELETE_WORD, BACKWARD_KILL_LINE, BACKWARD_KILL_WORD, BACKWARD_WORD, BEEP,
+            BEGINNING_OF_BUFFER_OR_HISTORY, BEGINNING_OF_HISTORY, BEGINNING_OF_LINE,
+            BEGINNING_OF_LINE_HIST, CAPITALIZE_WORD, CLEAR, CLEAR_SCREEN, COMPLETE_PREFIX,
+            COMPLETE_WORD, COPY_PREV_WORD, COPY_REGION_AS_KILL, DELETE_CHAR, DELETE_CHAR_OR_LIST,
+            DELETE_WORD, DIGIT_ARGUMENT, DO_LOWERCASE_VERSION, DOWN_CASE_WORD, DOWN_LINE,
+            DOWN_LINE_OR_HISTORY, DOWN_LINE_OR_SEARCH, DOWN_HISTORY, EDIT_AND_EXECUTE_COMMAND,
+            EMACS_EDITING_MODE, EMACS_BACKWARD_WORD, EMACS_FORWARD_WORD, END_OF_BUFFER_OR_HISTORY,
+            END_OF_HISTORY, END_OF_LINE, END_OF_LINE_HIST, EXCHANGE_POINT_AND_MARK, EXPAND_HISTORY,
+            EXPAND_OR_COMPLETE, EXPAND_OR_COMPLETE_PREFIX, EXPAND_WORD, FRESH_LINE, FORWARD_CHAR,
+            FORWARD_WORD, HISTORY_INCREMENTAL_SEARCH_BACKWARD, HISTORY_INCREMENTAL_SEARCH_FORWARD,
+            HISTORY_SEARCH_BACKWARD, HISTORY_SEARCH_FORWARD, INSERT_CLOSE_CURLY, INSERT_CLOSE_PAREN,
+            INSERT_CLOSE_SQUARE, INSERT_COMMENT, KILL_BUFFER, KILL_LINE, KILL_REGION,
+            KILL_WHOLE_LINE, KILL_WORD, LIST_CHOICES, MENU_COMPLETE, MENU_EXPAND_OR_COMPLETE,
+            NEG_ARGUMENT, OVERWRITE_MODE, QUOTED_INSERT, REDISPLAY, REDRAW_LINE, REDO, SELF_INSERT,
+            SELF_INSERT_UNMETA, SEND_BREAK, SET_MARK_COMMAND, TRANSPOSE_CHARS, TRANSPOSE_WORDS,
+            UNDEFINED_KEY, UNIVERSAL_ARGUMENT, UNDO, UP_CASE_WORD, UP_HISTORY, UP_LINE,
+            UP_LINE_OR_HISTORY, UP_LINE_OR_SEARCH, VI_ADD_EOL, VI_ADD_NEXT, VI_BACKWARD_CHAR,
+            VI_BACKWARD_DELETE_CHAR, VI_BACKWARD_BLANK_WORD, VI_BACKWARD_BLANK_WORD_END,
+            VI_BACKWARD_KILL_WORD, VI_BACKWARD_WORD, VI_BACKWARD_WORD_END, VI_BEGINNING_OF_LINE,
+            VI_CMD_MODE, VI_DIGIT_OR_BEGINNING_OF_LINE, VI_DOWN_LINE_OR_HISTORY, VI_CHANGE,
+            VI_CHANGE_EOL, VI_CHANGE_WHOLE_LINE, VI_DELETE_CHAR, VI_DELETE, VI_END_OF_LINE,
+            VI_KILL_EOL, VI_FIRST_NON_BLANK, VI_FIND_NEXT_CHAR, VI_FIND_NEXT_CHAR_SKIP,
+            VI_FIND_PREV_CHAR, VI_FIND_PREV_CHAR_SKIP, VI_FORWARD_BLANK_WORD,
+            VI_FORWARD_BLANK_WORD_END, VI_FORWARD_CHAR, VI_FORWARD_WORD, VI_FORWARD_WORD_END,
+            VI_HISTORY_SEARCH_BACKWARD, VI_HISTORY_SEARCH_FORWARD, VI_INSERT, VI_INSERT_BOL,
+            VI_INSERT_COMMENT, VI_JOIN, VI_KILL_LINE, VI_MATCH_BRACKET, VI_OPEN_LINE_ABOVE,
+            VI_OPEN_LINE_BELOW, VI_PUT_AFTER, VI_PUT_BEFORE, VI_REPEAT_FIND, VI_REPEAT_SEARCH,
+            VI_REPLACE_CHARS, VI_REV_REPEAT_FIND, VI_REV_REPEAT_SEARCH, VI_SWAP_CASE,
+            VI_UP_LINE_OR_HISTORY, VI_YANK, VI_YANK_WHOLE_LINE, VISUAL_LINE_MODE, VISUAL_MODE,
+            WHAT_CURSOR_POSITION, YANK, YANK_POP, MOUSE, BEGIN_PASTE, FOCUS_IN, FOCUS_OUT
+    };
+
     protected Map<String, Widget> builtinWidgets() {
         Map<String, Widget> widgets = new HashMap<>();
-        addBuiltinWidget(widgets, ACCEPT_AND_INFER_NEXT_HISTORY, this::acceptAndInferNextHistory);
-        addBuiltinWidget(widgets, ACCEPT_AND_HOLD, this::acceptAndHold);
-        addBuiltinWidget(widgets, ACCEPT_LINE, this::acceptLine);
-        addBuiltinWidget(widgets, ACCEPT_LINE_AND_DOWN_HISTORY, this::acceptLineAndDownHistory);
-        addBuiltinWidget(widgets, ARGUMENT_BASE, this::argumentBase);
-        addBuiltinWidget(widgets, BACKWARD_CHAR, this::backwardChar);
-        addBuiltinWidget(widgets, BACKWARD_DELETE_CHAR, this::backwardDeleteChar);
-        addBuiltinWidget(widgets, BACKWARD_DELETE_WORD, this::backwardDeleteWord);
-        addBuiltinWidget(widgets, BACKWARD_KILL_LINE, this::backwardKillLine);
-        addBuiltinWidget(widgets, BACKWARD_KILL_WORD, this::backwardKillWord);
-        addBuiltinWidget(widgets, BACKWARD_WORD, this::backwardWord);
-        addBuiltinWidget(widgets, BEEP, this::beep);
-        addBuiltinWidget(widgets, BEGINNING_OF_BUFFER_OR_HISTORY, this::beginningOfBufferOrHistory);
-        addBuiltinWidget(widgets, BEGINNING_OF_HISTORY, this::beginningOfHistory);
-        addBuiltinWidget(widgets, BEGINNING_OF_LINE, this::beginningOfLine);
-        addBuiltinWidget(widgets, BEGINNING_OF_LINE_HIST, this::beginningOfLineHist);
-        addBuiltinWidget(widgets, CAPITALIZE_WORD, this::capitalizeWord);
-        addBuiltinWidget(widgets, CLEAR, this::clear);
-        addBuiltinWidget(widgets, CLEAR_SCREEN, this::clearScreen);
-        addBuiltinWidget(widgets, COMPLETE_PREFIX, this::completePrefix);
-        addBuiltinWidget(widgets, COMPLETE_WORD, this::completeWord);
-        addBuiltinWidget(widgets, COPY_PREV_WORD, this::copyPrevWord);
-        addBuiltinWidget(widgets, COPY_REGION_AS_KILL, this::copyRegionAsKill);
-        addBuiltinWidget(widgets, DELETE_CHAR, this::deleteChar);
-        addBuiltinWidget(widgets, DELETE_CHAR_OR_LIST, this::deleteCharOrList);
-        addBuiltinWidget(widgets, DELETE_WORD, this::deleteWord);
-        addBuiltinWidget(widgets, DIGIT_ARGUMENT, this::digitArgument);
-        addBuiltinWidget(widgets, DO_LOWERCASE_VERSION, this::doLowercaseVersion);
-        addBuiltinWidget(widgets, DOWN_CASE_WORD, this::downCaseWord);
-        addBuiltinWidget(widgets, DOWN_LINE, this::downLine);
-        addBuiltinWidget(widgets, DOWN_LINE_OR_HISTORY, this::downLineOrHistory);
-        addBuiltinWidget(widgets, DOWN_LINE_OR_SEARCH, this::downLineOrSearch);
-        addBuiltinWidget(widgets, DOWN_HISTORY, this::downHistory);
-        addBuiltinWidget(widgets, EDIT_AND_EXECUTE_COMMAND, this::editAndExecute);
-        addBuiltinWidget(widgets, EMACS_EDITING_MODE, this::emacsEditingMode);
-        addBuiltinWidget(widgets, EMACS_BACKWARD_WORD, this::emacsBackwardWord);
-        addBuiltinWidget(widgets, EMACS_FORWARD_WORD, this::emacsForwardWord);
-        addBuiltinWidget(widgets, END_OF_BUFFER_OR_HISTORY, this::endOfBufferOrHistory);
-        addBuiltinWidget(widgets, END_OF_HISTORY, this::endOfHistory);
-        addBuiltinWidget(widgets, END_OF_LINE, this::endOfLine);
-        addBuiltinWidget(widgets, END_OF_LINE_HIST, this::endOfLineHist);
-        addBuiltinWidget(widgets, EXCHANGE_POINT_AND_MARK, this::exchangePointAndMark);
-        addBuiltinWidget(widgets, EXPAND_HISTORY, this::expandHistory);
-        addBuiltinWidget(widgets, EXPAND_OR_COMPLETE, this::expandOrComplete);
-        addBuiltinWidget(widgets, EXPAND_OR_COMPLETE_PREFIX, this::expandOrCompletePrefix);
-        addBuiltinWidget(widgets, EXPAND_WORD, this::expandWord);
-        addBuiltinWidget(widgets, FRESH_LINE, this::freshLine);
-        addBuiltinWidget(widgets, FORWARD_CHAR, this::forwardChar);
-        addBuiltinWidget(widgets, FORWARD_WORD, this::forwardWord);
-        addBuiltinWidget(widgets, HISTORY_INCREMENTAL_SEARCH_BACKWARD, this::historyIncrementalSearchBackward);
-        addBuiltinWidget(widgets, HISTORY_INCREMENTAL_SEARCH_FORWARD, this::historyIncrementalSearchForward);
-        addBuiltinWidget(widgets, HISTORY_SEARCH_BACKWARD, this::historySearchBackward);
-        addBuiltinWidget(widgets, HISTORY_SEARCH_FORWARD, this::historySearchForward);
-        addBuiltinWidget(widgets, INSERT_CLOSE_CURLY, this::insertCloseCurly);
-        addBuiltinWidget(widgets, INSERT_CLOSE_PAREN, this::insertCloseParen);
-        addBuiltinWidget(widgets, INSERT_CLOSE_SQUARE, this::insertCloseSquare);
-        addBuiltinWidget(widgets, INSERT_COMMENT, this::insertComment);
-        addBuiltinWidget(widgets, KILL_BUFFER, this::killBuffer);
-        addBuiltinWidget(widgets, KILL_LINE, this::killLine);
-        addBuiltinWidget(widgets, KILL_REGION, this::killRegion);
-        addBuiltinWidget(widgets, KILL_WHOLE_LINE, this::killWholeLine);
-        addBuiltinWidget(widgets, KILL_WORD, this::killWord);
-        addBuiltinWidget(widgets, LIST_CHOICES, this::listChoices);
-        addBuiltinWidget(widgets, MENU_COMPLETE, this::menuComplete);
-        addBuiltinWidget(widgets, MENU_EXPAND_OR_COMPLETE, this::menuExpandOrComplete);
-        addBuiltinWidget(widgets, NEG_ARGUMENT, this::negArgument);
-        addBuiltinWidget(widgets, OVERWRITE_MODE, this::overwriteMode);
-//        addBuiltinWidget(widgets, QUIT, this::quit);
-        addBuiltinWidget(widgets, QUOTED_INSERT, this::quotedInsert);
-        addBuiltinWidget(widgets, REDISPLAY, this::redisplay);
-        addBuiltinWidget(widgets, REDRAW_LINE, this::redrawLine);
-        addBuiltinWidget(widgets, REDO, this::redo);
-        addBuiltinWidget(widgets, SELF_INSERT, this::selfInsert);
-        addBuiltinWidget(widgets, SELF_INSERT_UNMETA, this::selfInsertUnmeta);
-        addBuiltinWidget(widgets, SEND_BREAK, this::sendBreak);
-        addBuiltinWidget(widgets, SET_MARK_COMMAND, this::setMarkCommand);
-        addBuiltinWidget(widgets, TRANSPOSE_CHARS, this::transposeChars);
-        addBuiltinWidget(widgets, TRANSPOSE_WORDS, this::transposeWords);
-        addBuiltinWidget(widgets, UNDEFINED_KEY, this::undefinedKey);
-        addBuiltinWidget(widgets, UNIVERSAL_ARGUMENT, this::universalArgument);
-        addBuiltinWidget(widgets, UNDO, this::undo);
-        addBuiltinWidget(widgets, UP_CASE_WORD, this::upCaseWord);
-        addBuiltinWidget(widgets, UP_HISTORY, this::upHistory);
-        addBuiltinWidget(widgets, UP_LINE, this::upLine);
-        addBuiltinWidget(widgets, UP_LINE_OR_HISTORY, this::upLineOrHistory);
-        addBuiltinWidget(widgets, UP_LINE_OR_SEARCH, this::upLineOrSearch);
-        addBuiltinWidget(widgets, VI_ADD_EOL, this::viAddEol);
-        addBuiltinWidget(widgets, VI_ADD_NEXT, this::viAddNext);
-        addBuiltinWidget(widgets, VI_BACKWARD_CHAR, this::viBackwardChar);
-        addBuiltinWidget(widgets, VI_BACKWARD_DELETE_CHAR, this::viBackwardDeleteChar);
-        addBuiltinWidget(widgets, VI_BACKWARD_BLANK_WORD, this::viBackwardBlankWord);
-        addBuiltinWidget(widgets, VI_BACKWARD_BLANK_WORD_END, this::viBackwardBlankWordEnd);
-        addBuiltinWidget(widgets, VI_BACKWARD_KILL_WORD, this::viBackwardKillWord);
-        addBuiltinWidget(widgets, VI_BACKWARD_WORD, this::viBackwardWord);
-        addBuiltinWidget(widgets, VI_BACKWARD_WORD_END, this::viBackwardWordEnd);
-        addBuiltinWidget(widgets, VI_BEGINNING_OF_LINE, this::viBeginningOfLine);
-        addBuiltinWidget(widgets, VI_CMD_MODE, this::viCmdMode);
-        addBuiltinWidget(widgets, VI_DIGIT_OR_BEGINNING_OF_LINE, this::viDigitOrBeginningOfLine);
-        addBuiltinWidget(widgets, VI_DOWN_LINE_OR_HISTORY, this::viDownLineOrHistory);
-        addBuiltinWidget(widgets, VI_CHANGE, this::viChange);
-        addBuiltinWidget(widgets, VI_CHANGE_EOL, this::viChangeEol);
-        addBuiltinWidget(widgets, VI_CHANGE_WHOLE_LINE, this::viChangeWholeLine);
-        addBuiltinWidget(widgets, VI_DELETE_CHAR, this::viDeleteChar);
-        addBuiltinWidget(widgets, VI_DELETE, this::viDelete);
-        addBuiltinWidget(widgets, VI_END_OF_LINE, this::viEndOfLine);
-        addBuiltinWidget(widgets, VI_KILL_EOL, this::viKillEol);
-        addBuiltinWidget(widgets, VI_FIRST_NON_BLANK, this::viFirstNonBlank);
-        addBuiltinWidget(widgets, VI_FIND_NEXT_CHAR, this::viFindNextChar);
-        addBuiltinWidget(widgets, VI_FIND_NEXT_CHAR_SKIP, this::viFindNextCharSkip);
-        addBuiltinWidget(widgets, VI_FIND_PREV_CHAR, this::viFindPrevChar);
-        addBuiltinWidget(widgets, VI_FIND_PREV_CHAR_SKIP, this::viFindPrevCharSkip);
-        addBuiltinWidget(widgets, VI_FORWARD_BLANK_WORD, this::viForwardBlankWord);
-        addBuiltinWidget(widgets, VI_FORWARD_BLANK_WORD_END, this::viForwardBlankWordEnd);
-        addBuiltinWidget(widgets, VI_FORWARD_CHAR, this::viForwardChar);
-        addBuiltinWidget(widgets, VI_FORWARD_WORD, this::viForwardWord);
-        addBuiltinWidget(widgets, VI_FORWARD_WORD, this::viForwardWord);
-        addBuiltinWidget(widgets, VI_FORWARD_WORD_END, this::viForwardWordEnd);
-        addBuiltinWidget(widgets, VI_HISTORY_SEARCH_BACKWARD, this::viHistorySearchBackward);
-        addBuiltinWidget(widgets, VI_HISTORY_SEARCH_FORWARD, this::viHistorySearchForward);
-        addBuiltinWidget(widgets, VI_INSERT, this::viInsert);
-        addBuiltinWidget(widgets, VI_INSERT_BOL, this::viInsertBol);
-        addBuiltinWidget(widgets, VI_INSERT_COMMENT, this::viInsertComment);
-        addBuiltinWidget(widgets, VI_JOIN, this::viJoin);
-        addBuiltinWidget(widgets, VI_KILL_LINE, this::viKillWholeLine);
-        addBuiltinWidget(widgets, VI_MATCH_BRACKET, this::viMatchBracket);
-        addBuiltinWidget(widgets, VI_OPEN_LINE_ABOVE, this::viOpenLineAbove);
-        addBuiltinWidget(widgets, VI_OPEN_LINE_BELOW, this::viOpenLineBelow);
-        addBuiltinWidget(widgets, VI_PUT_AFTER, this::viPutAfter);
-        addBuiltinWidget(widgets, VI_PUT_BEFORE, this::viPutBefore);
-        addBuiltinWidget(widgets, VI_REPEAT_FIND, this::viRepeatFind);
-        addBuiltinWidget(widgets, VI_REPEAT_SEARCH, this::viRepeatSearch);
-        addBuiltinWidget(widgets, VI_REPLACE_CHARS, this::viReplaceChars);
-        addBuiltinWidget(widgets, VI_REV_REPEAT_FIND, this::viRevRepeatFind);
-        addBuiltinWidget(widgets, VI_REV_REPEAT_SEARCH, this::viRevRepeatSearch);
-        addBuiltinWidget(widgets, VI_SWAP_CASE, this::viSwapCase);
-        addBuiltinWidget(widgets, VI_UP_LINE_OR_HISTORY, this::viUpLineOrHistory);
-        addBuiltinWidget(widgets, VI_YANK, this::viYankTo);
-        addBuiltinWidget(widgets, VI_YANK_WHOLE_LINE, this::viYankWholeLine);
-        addBuiltinWidget(widgets, VISUAL_LINE_MODE, this::visualLineMode);
-        addBuiltinWidget(widgets, VISUAL_MODE, this::visualMode);
-        addBuiltinWidget(widgets, WHAT_CURSOR_POSITION, this::whatCursorPosition);
-        addBuiltinWidget(widgets, YANK, this::yank);
-        addBuiltinWidget(widgets, YANK_POP, this::yankPop);
-        addBuiltinWidget(widgets, MOUSE, this::mouse);
-        addBuiltinWidget(widgets, BEGIN_PASTE, this::beginPaste);
-        addBuiltinWidget(widgets, FOCUS_IN, this::focusIn);
-        addBuiltinWidget(widgets, FOCUS_OUT, this::focusOut);
+        for (String name : BUILTIN_WIDGETS) {
+            widgets.put(name, new BuiltinWidget(name));
+        }
         return widgets;
     }
 
-    private void addBuiltinWidget(Map<String, Widget> widgets, String name, Widget widget) {
-        widgets.put(name, namedWidget("." + name, widget));
+    /**
+     * Returns the widget implementing the given builtin widget.
+     *
+     * @param name the name of the builtin widget
+     * @return the widget, or <code>null</code> if there is no such builtin widget
+     */
+    Widget builtinWidget(String name) {
+        switch (name) {
+            case ACCEPT_AND_INFER_NEXT_HISTORY: return this::acceptAndInferNextHistory;
+            case ACCEPT_AND_HOLD: return this::acceptAndHold;
+            case ACCEPT_LINE: return this::acceptLine;
+            case ACCEPT_LINE_AND_DOWN_HISTORY: return this::acceptLineAndDownHistory;
+            case ARGUMENT_BASE: return this::argumentBase;
+            case BACKWARD_CHAR: return this::backwardChar;
+            case BACKWARD_DELETE_CHAR: return this::backwardDeleteChar;
+            case BACKWARD_DELETE_WORD: return this::backwardDeleteWord;
+            case BACKWARD_KILL_LINE: return this::backwardKillLine;
+            case BACKWARD_KILL_WORD: return this::backwardKillWord;
+            case BACKWARD_WORD: return this::backwardWord;
+            case BEEP: return this::beep;
+            case BEGINNING_OF_BUFFER_OR_HISTORY: return this::beginningOfBufferOrHistory;
+            case BEGINNING_OF_HISTORY: return this::beginningOfHistory;
+            case BEGINNING_OF_LINE: return this::beginningOfLine;
+            case BEGINNING_OF_LINE_HIST: return this::beginningOfLineHist;
+            case CAPITALIZE_WORD: return this::capitalizeWord;
+            case CLEAR: return this::clear;
+            case CLEAR_SCREEN: return this::clearScreen;
+            case COMPLETE_PREFIX: return this::completePrefix;
+            case COMPLETE_WORD: return this::completeWord;
+            case COPY_PREV_WORD: return this::copyPrevWord;
+            case COPY_REGION_AS_KILL: return this::copyRegionAsKill;
+            case DELETE_CHAR: return this::deleteChar;
+            case DELETE_CHAR_OR_LIST: return this::deleteCharOrList;
+            case DELETE_WORD: return this::deleteWord;
+            case DIGIT_ARGUMENT: return this::digitArgument;
+            case DO_LOWERCASE_VERSION: return this::doLowercaseVersion;
+            case DOWN_CASE_WORD: return this::downCaseWord;
+            case DOWN_LINE: return this::downLine;
+            case DOWN_LINE_OR_HISTORY: return this::downLineOrHistory;
+            case DOWN_LINE_OR_SEARCH: return this::downLineOrSearch;
+            case DOWN_HISTORY: return this::downHistory;
+            case EDIT_AND_EXECUTE_COMMAND: return this::editAndExecute;
+            case EMACS_EDITING_MODE: return this::emacsEditingMode;
+            case EMACS_BACKWARD_WORD: return this::emacsBackwardWord;
+            case EMACS_FORWARD_WORD: return this::emacsForwardWord;
+            case END_OF_BUFFER_OR_HISTORY: return this::endOfBufferOrHistory;
+            case END_OF_HISTORY: return this::endOfHistory;
+            case END_OF_LINE: return this::endOfLine;
+            case END_OF_LINE_HIST: return this::endOfLineHist;
+            case EXCHANGE_POINT_AND_MARK: return this::exchangePointAndMark;
+            case EXPAND_HISTORY: return this::expandHistory;
+            case EXPAND_OR_COMPLETE: return this::expandOrComplete;
+            case EXPAND_OR_COMPLETE_PREFIX: return this::expandOrCompletePrefix;
+            case EXPAND_WORD: return this::expandWord;
+            case FRESH_LINE: return this::freshLine;
+            case FORWARD_CHAR: return this::forwardChar;
+            case FORWARD_WORD: return this::forwardWord;
+            case HISTORY_INCREMENTAL_SEARCH_BACKWARD: return this::historyIncrementalSearchBackward;
+            case HISTORY_INCREMENTAL_SEARCH_FORWARD: return this::historyIncrementalSearchForward;
+            case HISTORY_SEARCH_BACKWARD: return this::historySearchBackward;
+            case HISTORY_SEARCH_FORWARD: return this::historySearchForward;
+            case INSERT_CLOSE_CURLY: return this::insertCloseCurly;
+            case INSERT_CLOSE_PAREN: return this::insertCloseParen;
+            case INSERT_CLOSE_SQUARE: return this::insertCloseSquare;
+            case INSERT_COMMENT: return this::insertComment;
+            case KILL_BUFFER: return this::killBuffer;
+            case KILL_LINE: return this::killLine;
+            case KILL_REGION: return this::killRegion;
+            case KILL_WHOLE_LINE: return this::killWholeLine;
+            case KILL_WORD: return this::killWord;
+            case LIST_CHOICES: return this::listChoices;
+            case MENU_COMPLETE: return this::menuComplete;
+            case MENU_EXPAND_OR_COMPLETE: return this::menuExpandOrComplete;
+            case NEG_ARGUMENT: return this::negArgument;
+            case OVERWRITE_MODE: return this::overwriteMode;
+            case QUOTED_INSERT: return this::quotedInsert;
+            case REDISPLAY: return this::redisplay;
+            case REDRAW_LINE: return this::redrawLine;
+            case REDO: return this::redo;
+            case SELF_INSERT: return this::selfInsert;
+            case SELF_INSERT_UNMETA: return this::selfInsertUnmeta;
+            case SEND_BREAK: return this::sendBreak;
+            case SET_MARK_COMMAND: return this::setMarkCommand;
+            case TRANSPOSE_CHARS: return this::transposeChars;
+            case TRANSPOSE_WORDS: return this::transposeWords;
+            case UNDEFINED_KEY: return this::undefinedKey;
+            case UNIVERSAL_ARGUMENT: return this::universalArgument;
+            case UNDO: return this::undo;
+            case UP_CASE_WORD: return this::upCaseWord;
+            case UP_HISTORY: return this::upHistory;
+            case UP_LINE: return this::upLine;
+            case UP_LINE_OR_HISTORY: return this::upLineOrHistory;
+            case UP_LINE_OR_SEARCH: return this::upLineOrSearch;
+            case VI_ADD_EOL: return this::viAddEol;
+            case VI_ADD_NEXT: return this::viAddNext;
+            case VI_BACKWARD_CHAR: return this::viBackwardChar;
+            case VI_BACKWARD_DELETE_CHAR: return this::viBackwardDeleteChar;
+            case VI_BACKWARD_BLANK_WORD: return this::viBackwardBlankWord;
+            case VI_BACKWARD_BLANK_WORD_END: return this::viBackwardBlankWordEnd;
+            case VI_BACKWARD_KILL_WORD: return this::viBackwardKillWord;
+            case VI_BACKWARD_WORD: return this::viBackwardWord;
+            case VI_BACKWARD_WORD_END: return this::viBackwardWordEnd;
+            case VI_BEGINNING_OF_LINE: return this::viBeginningOfLine;
+            case VI_CMD_MODE: return this::viCmdMode;
+            case VI_DIGIT_OR_BEGINNING_OF_LINE: return this::viDigitOrBeginningOfLine;
+            case VI_DOWN_LINE_OR_HISTORY: return this::viDownLineOrHistory;
+            case VI_CHANGE: return this::viChange;
+            case VI_CHANGE_EOL: return this::viChangeEol;
+            case VI_CHANGE_WHOLE_LINE: return this::viChangeWholeLine;
+            case VI_DELETE_CHAR: return this::viDeleteChar;
+            case VI_DELETE: return this::viDelete;
+            case VI_END_OF_LINE: return this::viEndOfLine;
+            case VI_KILL_EOL: return this::viKillEol;
+            case VI_FIRST_NON_BLANK: return this::viFirstNonBlank;
+            case VI_FIND_NEXT_CHAR: return this::viFindNextChar;
+            case VI_FIND_NEXT_CHAR_SKIP: return this::viFindNextCharSkip;
+            case VI_FIND_PREV_CHAR: return this::viFindPrevChar;
+            case VI_FIND_PREV_CHAR_SKIP: return this::viFindPrevCharSkip;
+            case VI_FORWARD_BLANK_WORD: return this::viForwardBlankWord;
+            case VI_FORWARD_BLANK_WORD_END: return this::viForwardBlankWordEnd;
+            case VI_FORWARD_CHAR: return this::viForwardChar;
+            case VI_FORWARD_WORD: return this::viForwardWord;
+            case VI_FORWARD_WORD_END: return this::viForwardWordEnd;
+            case VI_HISTORY_SEARCH_BACKWARD: return this::viHistorySearchBackward;
+            case VI_HISTORY_SEARCH_FORWARD: return this::viHistorySearchForward;
+            case VI_INSERT: return this::viInsert;
+            case VI_INSERT_BOL: return this::viInsertBol;
+            case VI_INSERT_COMMENT: return this::viInsertComment;
+            case VI_JOIN: return this::viJoin;
+            case VI_KILL_LINE: return this::viKillWholeLine;
+            case VI_MATCH_BRACKET: return this::viMatchBracket;
+            case VI_OPEN_LINE_ABOVE: return this::viOpenLineAbove;
+            case VI_OPEN_LINE_BELOW: return this::viOpenLineBelow;
+            case VI_PUT_AFTER: return this::viPutAfter;
+            case VI_PUT_BEFORE: return this::viPutBefore;
+            case VI_REPEAT_FIND: return this::viRepeatFind;
+            case VI_REPEAT_SEARCH: return this::viRepeatSearch;
+            case VI_REPLACE_CHARS: return this::viReplaceChars;
+            case VI_REV_REPEAT_FIND: return this::viRevRepeatFind;
+            case VI_REV_REPEAT_SEARCH: return this::viRevRepeatSearch;
+            case VI_SWAP_CASE: return this::viSwapCase;
+            case VI_UP_LINE_OR_HISTORY: return this::viUpLineOrHistory;
+            case VI_YANK: return this::viYankTo;
+            case VI_YANK_WHOLE_LINE: return this::viYankWholeLine;
+            case VISUAL_LINE_MODE: return this::visualLineMode;
+            case VISUAL_MODE: return this::visualMode;
+            case WHAT_CURSOR_POSITION: return this::whatCursorPosition;
+            case YANK: return this::yank;
+            case YANK_POP: return this::yankPop;
+            case MOUSE: return this::mouse;
+            case BEGIN_PASTE: return this::beginPaste;
+            case FOCUS_IN: return this::focusIn;
+            case FOCUS_OUT: return this::focusOut;
+            default: return null;
+        }
+    }
+
+    /**
+     * Builtin widgets only link the method reference they wrap when first
+     * applied: linking a hundred and fifty method references is a noticeable
+     * part of the time needed to create a reader in a fresh JVM.
+     */
+    private class BuiltinWidget implements Widget {
+        private final String name;
+        private Widget widget;
+
+        BuiltinWidget(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "." + name;
+        }
+
+        @Override
+        public boolean apply() {
+            if (widget == null) {
+                widget = builtinWidget(name);
+                if (widget == null) {
+                    throw new IllegalStateException("Unknown builtin widget: " + name);
+                }
+            }
+            return widget.apply();
+        }
     }
 
     private Widget namedWidget(String name, Widget widget) {
@@ -3822,7 +3910,7 @@ public class LineReaderImpl implements LineReader, Flushable
                 AttributedStringBuilder sb = new AttributedStringBuilder().tabs(TAB_WIDTH);
 
                 sb.append(prompt);
-                concat(getHighlightedBuffer(buf.toString()).columnSplitLength(Integer.MAX_VALUE), sb);
+                concat(splitLines(getHighlightedBuffer(buf.toString())), sb);
                 AttributedString full = sb.toAttributedString();
 
                 sb.setLength(0);
@@ -3832,7 +3920,7 @@ public class LineReaderImpl implements LineReader, Flushable
                     line = maskingCallback.display(line);
                 }
 
-                concat(new AttributedString(line).columnSplitLength(Integer.MAX_VALUE), sb);
+                concat(splitLines(new AttributedString(line)), sb);
                 AttributedString toCursor = sb.toAttributedString();
 
                 int w = WCWidth.wcwidth('…');
@@ -3871,7 +3959,7 @@ public class LineReaderImpl implements LineReader, Flushable
                 newLines = new ArrayList<>();
                 newLines.add(full);
             } else {
-                newLines = full.columnSplitLength(size.getColumns(), true, display.delayLineWrap());
+                newLines = wrapCache.split(full, size.getColumns(), display.delayLineWrap());
             }
 
             List<AttributedString> rightPromptLines;
@@ -3963,31 +4051,8 @@ public class LineReaderImpl implements LineReader, Flushable
             return "";
         }
         History history = getHistory();
-        StringBuilder sb = new StringBuilder();
-        char prev = '0';
-        for (char c: buffer.toCharArray()) {
-            if ((c == '(' || c == ')' || c == '[' || c == ']' || c == '{' || c == '}' || c == '^') && prev != '\\' ) {
-                sb.append('\\');
-            }
-            sb.append(c);
-            prev = c;
-        }
-        Pattern pattern = Pattern.compile(sb.toString() + ".*", Pattern.DOTALL);
-        Iterator<History.Entry> iter = history.reverseIterator(history.last());
-        String suggestion = "";
-        int tot = 0;
-        while (iter.hasNext()) {
-            History.Entry entry = iter.next();
-            Matcher matcher = pattern.matcher(entry.line());
-            if (matcher.matches()) {
-                suggestion = entry.line().substring(buffer.length());
-                break;
-            } else if (tot > 200) {
-                break;
-            }
-            tot++;
-        }
-        return suggestion;
+        int index = history.find(buffer, true, l -> l.startsWith(buffer), history.last() + 1, true);
+        return index >= 0 ? history.get(index).substring(buffer.length()) : "";
     }
 
     /**
@@ -4174,7 +4239,7 @@ public class LineReaderImpl implements LineReader, Flushable
 
     private AttributedString insertSecondaryPrompts(AttributedString strAtt, List<AttributedString> prompts, boolean computePrompts) {
         Objects.requireNonNull(prompts);
-        List<AttributedString> lines = strAtt.columnSplitLength(Integer.MAX_VALUE);
+        List<AttributedString> lines = splitLines(strAtt);
         AttributedStringBuilder sb = new AttributedStringBuilder();
         String secondaryPromptPattern = getString(SECONDARY_PROMPT_PATTERN, DEFAULT_SECONDARY_PROMPT_PATTERN);
         boolean needsMessage = secondaryPromptPattern.contains("%M")
@@ -4390,101 +4455,116 @@ public class LineReaderImpl implements LineReader, Flushable
             return false;
         }
 
-        // Find completion candidates
-        List<Candidate> candidates = new ArrayList<>();
-        try {
-            if (completer != null) {
-                completer.complete(this, line, candidates);
-            }
-        } catch (Exception e) {
-            Log.info("Error while finding completion candidates", e);
-            return false;
-        }
-
-        if (lst == CompletionType.ExpandComplete || lst == CompletionType.Expand) {
-            String w = expander.expandVar(line.word());
-            if (!line.word().equals(w)) {
-                if (prefix) {
-                    buf.backspace(line.wordCursor());
-                } else {
-                    buf.move(line.word().length() - line.wordCursor());
-                    buf.backspace(line.word().length());
-                }
-                buf.write(w);
-                return true;
-            }
-            if (lst == CompletionType.Expand) {
-                return false;
-            } else {
-                lst = CompletionType.Complete;
-            }
-        }
-
         boolean caseInsensitive = isSet(Option.CASE_INSENSITIVE);
         int errors = getInt(ERRORS, DEFAULT_ERRORS);
 
-        // Build a list of sorted candidates
-        Map<String, List<Candidate>> sortedCandidates = new HashMap<>();
-        for (Candidate cand : candidates) {
-            sortedCandidates
-                    .computeIfAbsent(AttributedString.fromAnsi(cand.value()).toString(), s -> new ArrayList<>())
-                    .add(cand);
-        }
-
         // Find matchers
         // TODO: glob completion
-        List<Function<Map<String, List<Candidate>>,
+        List<Function<CandidateIndex,
                       Map<String, List<Candidate>>>> matchers;
+        Function<CandidateIndex,
+                 Map<String, List<Candidate>>> typo = null;
+        String typoWord = null;
         Predicate<String> exact;
         if (prefix) {
             String wd = line.word();
-            String wdi = caseInsensitive ? wd.toLowerCase() : wd;
-            String wp = wdi.substring(0, line.wordCursor());
+            String wp = wd.substring(0, line.wordCursor());
+            typoWord = caseInsensitive ? CandidateIndex.fold(wp) : wp;
+            typo = typoMatcher(typoWord, errors, caseInsensitive);
             matchers = Arrays.asList(
-                    simpleMatcher(s -> (caseInsensitive ? s.toLowerCase() : s).startsWith(wp)),
-                    simpleMatcher(s -> (caseInsensitive ? s.toLowerCase() : s).contains(wp)),
-                    typoMatcher(wp, errors, caseInsensitive)
+                    idx -> idx.startingWith(wp, caseInsensitive),
+                    idx -> idx.containing(wp, caseInsensitive),
+                    typo
             );
             exact = s -> caseInsensitive ? s.equalsIgnoreCase(wp) : s.equals(wp);
         } else if (isSet(Option.COMPLETE_IN_WORD)) {
             String wd = line.word();
-            String wdi = caseInsensitive ? wd.toLowerCase() : wd;
+            String wdi = caseInsensitive ? CandidateIndex.fold(wd) : wd;
             String wp = wdi.substring(0, line.wordCursor());
             String ws = wdi.substring(line.wordCursor());
             Pattern p1 = Pattern.compile(Pattern.quote(wp) + ".*" + Pattern.quote(ws) + ".*");
             Pattern p2 = Pattern.compile(".*" + Pattern.quote(wp) + ".*" + Pattern.quote(ws) + ".*");
+            typoWord = wdi;
+            typo = typoMatcher(wdi, errors, caseInsensitive);
             matchers = Arrays.asList(
-                    simpleMatcher(s -> p1.matcher(caseInsensitive ? s.toLowerCase() : s).matches()),
-                    simpleMatcher(s -> p2.matcher(caseInsensitive ? s.toLowerCase() : s).matches()),
-                    typoMatcher(wdi, errors, caseInsensitive)
+                    idx -> patternMatcher(idx.startingWith(wp, caseInsensitive), p1, caseInsensitive),
+                    idx -> patternMatcher(idx.containing(wp, caseInsensitive), p2, caseInsensitive),
+                    typo
             );
             exact = s -> caseInsensitive ? s.equalsIgnoreCase(wd) : s.equals(wd);
         } else {
             String wd = line.word();
-            String wdi = caseInsensitive ? wd.toLowerCase() : wd;
+            String wdi = caseInsensitive ? CandidateIndex.fold(wd) : wd;
             if (isSet(Option.EMPTY_WORD_OPTIONS) || wd.length() > 0) {
+                typoWord = wdi;
+                typo = typoMatcher(wdi, errors, caseInsensitive);
                 matchers = Arrays.asList(
-                        simpleMatcher(s -> (caseInsensitive ? s.toLowerCase() : s).startsWith(wdi)),
-                        simpleMatcher(s -> (caseInsensitive ? s.toLowerCase() : s).contains(wdi)),
-                        typoMatcher(wdi, errors, caseInsensitive)
+                        idx -> idx.startingWith(wd, caseInsensitive),
+                        idx -> idx.containing(wd, caseInsensitive),
+                        typo
                 );
             } else {
                 matchers = Arrays.asList(
-                        simpleMatcher(s -> !s.startsWith("-"))
+                        idx -> idx.matching(s -> !s.startsWith("-"), false)
                 );
             }
             exact = s -> caseInsensitive ? s.equalsIgnoreCase(wd) : s.equals(wd);
         }
-        // Find matching candidates
-        Map<String, List<Candidate>> matching = Collections.emptyMap();
-        for (Function<Map<String, List<Candidate>>,
-                      Map<String, List<Candidate>>> matcher : matchers) {
-            matching = matcher.apply(sortedCandidates);
-            if (!matching.isEmpty()) {
-                break;
+        // Find completion candidates, or refine the previous ones
+        // if the word has only been extended since
+        List<CandidateIndex> sources = cachedCandidates(line);
+        if (sources == null) {
+            CandidateList candidates = new CandidateList();
+            try {
+                if (completer != null) {
+                    if (isSet(Option.ASYNC_COMPLETION)) {
+                        Function<List<CandidateIndex>, Map<String, List<Candidate>>> partial =
+                                s -> matchCandidates(s, matchers, null, null);
+                        Future<?> future = completeAsync(line, candidates, partial, caseInsensitive);
+                        if (future == null) {
+                            // cancelled by the user
+                            return true;
+                        }
+                        sources = candidates.indexes();
+                        if (!future.isCancelled()) {
+                            cacheCandidates(line, sources);
+                        }
+                    } else {
+                        completer.complete(this, line, candidates);
+                        sources = candidates.indexes();
+                        cacheCandidates(line, sources);
+                    }
+                } else {
+                    sources = candidates.indexes();
+                }
+            } catch (Exception e) {
+                Log.info("Error while finding completion candidates", e);
+                return false;
+            }
+        }
+
+        if (lst == CompletionType.ExpandComplete || lst == CompletionType.Expand) {
+            String w = expander.expandVar(line.word());
+            if (!line.word().equals(w)) {
+                if (prefix) {
+                    buf.backspace(line.wordCursor());
+                } else {
+                    buf.move(line.word().length() - line.wordCursor());
+                    buf.backspace(line.word().length());
+                }
+                buf.write(w);
+                return true;
+            }
+            if (lst == CompletionType.Expand) {
+                return false;
+            } else {
+                lst = CompletionType.Complete;
             }
         }
 
+        // Find matching candidates
+        Map<String, List<Candidate>> matching = matchCandidates(sources, matchers, typo, typoWord);
+
         // If we have no matches, bail out
         if (matching.isEmpty()) {
             return false;
@@ -4688,25 +4768,330 @@ public class LineReaderImpl implements LineReader, Flushable
         }
     }
 
-    private Function<Map<String, List<Candidate>>,
-                     Map<String, List<Candidate>>> simpleMatcher(Predicate<String> pred) {
-        return m -> m.entrySet().stream()
-                .filter(e -> pred.test(e.getKey()))
-                .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+    private Map<String, List<Candidate>> matchCandidates(
+            List<CandidateIndex> sources,
+            List<Function<CandidateIndex, Map<String, List<Candidate>>>> matchers,
+            Function<CandidateIndex, Map<String, List<Candidate>>> typo,
+            String typoWord) {
+        Map<String, List<Candidate>> matching = Collections.emptyMap();
+        for (Function<CandidateIndex,
+                      Map<String, List<Candidate>>> matcher : matchers) {
+            matching = new HashMap<>();
+            for (CandidateIndex source : sources) {
+                for (Entry<String, List<Candidate>> e : matcher.apply(source).entrySet()) {
+                    matching.computeIfAbsent(e.getKey(), s -> new ArrayList<>()).addAll(e.getValue());
+                }
+            }
+            if (!matching.isEmpty()) {
+                if (matcher == typo && matching.size() > 1) {
+                    matching.computeIfAbsent(typoWord, w -> new ArrayList<>())
+                            .add(new Candidate(typoWord, typoWord, getOriginalGroupName(), null, null, null, false));
+                }
+                break;
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Run the completer in the background, listing the matching candidates
+     * found so far until it is done, the completion timeout elapses, or
+     * a key is typed.
+     *
+     * @return the completion, cancelled if the timeout elapsed,
+     *         or <code>null</code> if a key has been typed
+     */
+    private Future<?> completeAsync(CompletingParsedLine line, CandidateList candidates,
+                                    Function<List<CandidateIndex>, Map<String, List<Candidate>>> matcher,
+                                    boolean caseInsensitive) throws ExecutionException, InterruptedException {
+        AsyncCompleter async = completer instanceof AsyncCompleter
+                ? (AsyncCompleter) completer : new AsyncCompleter(completer);
+        Future<?> future = async.completeAsync(this, line, candidates);
+        long deadline = System.currentTimeMillis() + getLong(COMPLETION_TIMEOUT, DEFAULT_COMPLETION_TIMEOUT);
+        int listed = 0;
+        try {
+            while (true) {
+                long timeout = Math.min(deadline - System.currentTimeMillis(), ASYNC_COMPLETION_REFRESH);
+                if (timeout <= 0) {
+                    break;
+                }
+                try {
+                    future.get(timeout, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    // still running
+                } catch (InterruptedException e) {
+                    throw new IOError(new InterruptedIOException());
+                } catch (ExecutionException e) {
+                    break;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+                if (peekCharacter(1L) != NonBlockingReader.READ_EXPIRED) {
+                    return null;
+                }
+                List<CandidateIndex> sources;
+                synchronized (candidates) {
+                    if (candidates.size() == listed) {
+                        continue;
+                    }
+                    listed = candidates.size();
+                    sources = candidates.indexes();
+                }
+                List<Candidate> possible = matcher.apply(sources).values().stream()
+                        .flatMap(Collection::stream)
+                        .sorted(getCandidateComparator(caseInsensitive, line.word()))
+                        .collect(Collectors.toList());
+                PostResult pr = computePost(possible, null, null, line.word());
+                if (!possible.isEmpty() && pr.lines < size.getRows() - 1) {
+                    post = () -> pr.post;
+                    redisplay();
+                }
+            }
+        } finally {
+            synchronized (candidates) {
+                future.cancel(true);
+            }
+            post = null;
+        }
+        if (!future.isCancelled()) {
+            future.get();
+        }
+        return future;
+    }
+
+    /**
+     * Returns the candidates found by the last completion if they can be
+     * reused for the given line, i.e. if they have not expired, and the
+     * line only differs by an extension of the word being completed.
+     */
+    private List<CandidateIndex> cachedCandidates(CompletingParsedLine line) {
+        CompletionCache cache = completionCache;
+        if (cache != null
+                && cache.completer == completer
+                && System.currentTimeMillis() < cache.expires
+                && line.wordIndex() == cache.words.size()
+                && line.word().startsWith(cache.word)
+                && line.words().subList(0, line.wordIndex()).equals(cache.words)) {
+            return cache.sources;
+        }
+        return null;
+    }
+
+    private void cacheCandidates(CompletingParsedLine line, List<CandidateIndex> sources) {
+        long ttl = line.wordIndex() >= 0 ? completer.getCandidatesTtl(this, line) : 0;
+        if (ttl > 0) {
+            long now = System.currentTimeMillis();
+            long expires = now + ttl < now ? Long.MAX_VALUE : now + ttl;
+            completionCache = new CompletionCache(completer,
+                    new ArrayList<>(line.words().subList(0, line.wordIndex())), line.word(), expires, sources);
+        } else {
+            completionCache = null;
+        }
     }
 
-    private Function<Map<String, List<Candidate>>,
+    private static class CompletionCache {
+        final Completer completer;
+        final List<String> words;
+        final String word;
+        final long expires;
+        final List<CandidateIndex> sources;
+
+        CompletionCache(Completer completer, List<String> words, String word, long expires, List<CandidateIndex> sources) {
+            this.completer = completer;
+            this.words = words;
+            this.word = word;
+            this.expires = expires;
+            this.sources = sources;
+        }
+    }
+
+    private Function<CandidateIndex,
                      Map<String, List<Candidate>>> typoMatcher(String word, int errors, boolean caseInsensitive) {
-        return m -> {
-            Map<String, List<Candidate>> map = m.entrySet().stream()
-                    .filter(e -> distance(word, caseInsensitive ? e.getKey() : e.getKey().toLowerCase()) < errors)
-                    .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
-            if (map.size() > 1) {
-                map.computeIfAbsent(word, w -> new ArrayList<>())
-                        .add(new Candidate(word, word, getOriginalGroupName(), null, null, null, false));
-            }
-            return map;
-        };
+        if (errors <= 0) {
+            return idx -> new HashMap<>();
+        }
+        return idx -> idx.similarTo(word, errors - 1, caseInsensitive);
+    }
+
+    private static Map<String, List<Candidate>> patternMatcher(Map<String, List<Candidate>> matching,
+                                                               Pattern pattern, boolean caseInsensitive) {
+        matching.keySet().removeIf(s -> !pattern.matcher(caseInsensitive ? CandidateIndex.fold(s) : s).matches());
+        return matching;
+    }
+
+    /**
+     * The list given to the completer.  Indexes added as a whole are kept
+     * as they are so that matching candidates can be looked up instead of
+     * scanning every candidate.  The list is synchronized, as the completer
+     * may run in the background.
+     */
+    private static class CandidateList extends AbstractList<Candidate> {
+        private final List<Collection<Candidate>> segments = new ArrayList<>();
+        private int size;
+
+        @Override
+        public synchronized Candidate get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            for (Collection<Candidate> segment : segments) {
+                if (index < segment.size()) {
+                    return segment instanceof CandidateIndex
+                            ? ((CandidateIndex) segment).get(index)
+                            : ((List<Candidate>) segment).get(index);
+                }
+                index -= segment.size();
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public synchronized int size() {
+            return size;
+        }
+
+        @Override
+        public synchronized Iterator<Candidate> iterator() {
+            return new Iterator<Candidate>() {
+                int cursor;
+                int last = -1;
+                int expectedModCount = modCount;
+
+                @Override
+                public boolean hasNext() {
+                    synchronized (CandidateList.this) {
+                        return cursor < size;
+                    }
+                }
+
+                @Override
+                public Candidate next() {
+                    synchronized (CandidateList.this) {
+                        checkForComodification();
+                        if (cursor >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        Candidate candidate = get(cursor);
+                        last = cursor++;
+                        return candidate;
+                    }
+                }
+
+                @Override
+                public void remove() {
+                    synchronized (CandidateList.this) {
+                        if (last < 0) {
+                            throw new IllegalStateException();
+                        }
+                        checkForComodification();
+                        CandidateList.this.remove(last);
+                        cursor = last;
+                        last = -1;
+                        expectedModCount = modCount;
+                    }
+                }
+
+                private void checkForComodification() {
+                    if (modCount != expectedModCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public synchronized boolean removeIf(Predicate<? super Candidate> filter) {
+            // indexes may be shared by the completer, so they are copied
+            List<Candidate> all = flatten();
+            if (all.removeIf(filter)) {
+                size = all.size();
+                modCount++;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized boolean add(Candidate candidate) {
+            Collection<Candidate> last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (!(last instanceof ArrayList)) {
+                last = new ArrayList<>();
+                segments.add(last);
+            }
+            last.add(candidate);
+            size++;
+            modCount++;
+            return true;
+        }
+
+        @Override
+        public synchronized boolean addAll(Collection<? extends Candidate> c) {
+            if (c instanceof CandidateIndex) {
+                CandidateIndex index = (CandidateIndex) c;
+                segments.add(index);
+                size += index.size();
+                modCount++;
+                return !index.isEmpty();
+            }
+            return super.addAll(c);
+        }
+
+        @Override
+        public synchronized Candidate set(int index, Candidate element) {
+            return flatten().set(index, element);
+        }
+
+        @Override
+        public synchronized void add(int index, Candidate element) {
+            flatten().add(index, element);
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public synchronized Candidate remove(int index) {
+            Candidate removed = flatten().remove(index);
+            size--;
+            modCount++;
+            return removed;
+        }
+
+        @Override
+        public synchronized void clear() {
+            segments.clear();
+            size = 0;
+            modCount++;
+        }
+
+        synchronized List<CandidateIndex> indexes() {
+            List<CandidateIndex> indexes = new ArrayList<>();
+            List<Candidate> loose = new ArrayList<>();
+            for (Collection<Candidate> segment : segments) {
+                if (segment instanceof CandidateIndex) {
+                    indexes.add((CandidateIndex) segment);
+                } else {
+                    loose.addAll(segment);
+                }
+            }
+            if (!loose.isEmpty()) {
+                indexes.add(new CandidateIndex(loose));
+            }
+            return indexes;
+        }
+
+        private List<Candidate> flatten() {
+            if (segments.size() != 1 || !(segments.get(0) instanceof ArrayList)) {
+                List<Candidate> all = new ArrayList<>(size);
+                for (Collection<Candidate> segment : segments) {
+                    all.addAll(segment);
+                }
+                segments.clear();
+                segments.add(all);
+            }
+            return (List<Candidate>) segments.get(0);
+        }
     }
 
     private int distance(String word, String cand) {
@@ -4733,7 +5118,9 @@ public class LineReaderImpl implements LineReader, Flushable
 
     private class MenuSupport implements Supplier<AttributedString> {
         final List<Candidate> possible;
+        final List<Object> items;
         final BiFunction<CharSequence, Boolean, CharSequence> escaper;
+        MenuLayout layout;
         int selection;
         int topLine;
         String word;
@@ -4749,7 +5136,7 @@ public class LineReaderImpl implements LineReader, Flushable
             this.topLine = 0;
             this.word = "";
             this.completed = completed;
-            computePost(original, null, possible, completed);
+            this.items = groupCandidates(original, possible, isSet(Option.AUTO_GROUP), isSet(Option.GROUP));
             next();
         }
 
@@ -4848,28 +5235,29 @@ public class LineReaderImpl implements LineReader, Flushable
             word = escaper.apply(completion().value(), true).toString();
             buf.write(word);
 
+            // Lay the menu out again only if the terminal has been resized
+            if (layout == null || layout.width != size.getColumns()) {
+                layout = new MenuLayout(items, size.getColumns(), isSet(Option.LIST_ROWS_FIRST));
+            }
+            int selectedLine = layout.rowOf(selection);
+
             // Compute displayed prompt
-            PostResult pr = computePost(possible, completion(), null, completed);
             AttributedString text = insertSecondaryPrompts(AttributedStringBuilder.append(prompt, buf.toString()), new ArrayList<>());
             int promptLines = text.columnSplitLength(size.getColumns(), false, display.delayLineWrap()).size();
             Status status = Status.getStatus(terminal, false);
             int displaySize = size.getRows() - (status != null ? status.size() : 0) - promptLines;
-            if (pr.lines > displaySize) {
+            AttributedStringBuilder sb = new AttributedStringBuilder();
+            if (layout.rows > displaySize) {
                 int displayed = displaySize - 1;
-                if (pr.selectedLine >= 0) {
-                    if (pr.selectedLine < topLine) {
-                        topLine = pr.selectedLine;
-                    } else if (pr.selectedLine >= topLine + displayed) {
-                        topLine = pr.selectedLine - displayed + 1;
-                    }
-                }
-                AttributedString post = pr.post;
-                if (post.length() > 0 && post.charAt(post.length() - 1) != '\n') {
-                    post = new AttributedStringBuilder(post.length() + 1)
-                            .append(post).append("\n").toAttributedString();
+                if (selectedLine < topLine) {
+                    topLine = selectedLine;
+                } else if (selectedLine >= topLine + displayed) {
+                    topLine = selectedLine - displayed + 1;
                 }
-                List<AttributedString> lines = post.columnSplitLength(size.getColumns(), true, display.delayLineWrap());
-                List<AttributedString> sub = new ArrayList<>(lines.subList(topLine, topLine + displayed));
+                // Only render the visible rows
+                layout.render(sb, topLine, topLine + displayed, completion(), completed);
+                List<AttributedString> lines = sb.toAttributedString().columnSplitLength(size.getColumns(), true, display.delayLineWrap());
+                List<AttributedString> sub = new ArrayList<>(lines.subList(0, Math.min(displayed, lines.size())));
                 sub.add(new AttributedStringBuilder()
                         .style(AttributedStyle.DEFAULT.foreground(AttributedStyle.CYAN))
                         .append("rows ")
@@ -4877,14 +5265,18 @@ public class LineReaderImpl implements LineReader, Flushable
                         .append(" to ")
                         .append(Integer.toString(topLine + displayed))
                         .append(" of ")
-                        .append(Integer.toString(lines.size()))
+                        .append(Integer.toString(layout.rows))
                         .append("\n")
                         .style(AttributedStyle.DEFAULT).toAttributedString());
                 computed = AttributedString.join(AttributedString.EMPTY, sub);
             } else {
-                computed = pr.post;
+                layout.render(sb, 0, layout.rows, completion(), completed);
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) == '\n') {
+                    sb.setLength(sb.length() - 1);
+                }
+                computed = sb.toAttributedString();
             }
-            lines = pr.lines;
+            lines = layout.rows;
             columns = (possible.size() + lines - 1) / lines;
         }
 
@@ -4895,13 +5287,114 @@ public class LineReaderImpl implements LineReader, Flushable
 
     }
 
+    /**
+     * The layout of the completion menu.
+     *
+     * The candidates are grouped and measured once, when the menu is shown,
+     * after which any range of rows can be rendered without looking at the
+     * candidates of the other rows.  Moving the selection in a long menu then
+     * only renders the rows that fit on the screen.
+     */
+    private class MenuLayout {
+        final List<Object> items;
+        final int width;
+        final int maxWidth;
+        final boolean rowsFirst;
+        // first row, index of the first candidate and number of columns of each item
+        final int[] firstRow;
+        final int[] firstIndex;
+        final int[] columns;
+        final int rows;
+
+        @SuppressWarnings("unchecked")
+        MenuLayout(List<Object> items, int width, boolean rowsFirst) {
+            this.items = items;
+            this.width = width;
+            this.maxWidth = Math.min(width, columnWidth(items, display::wcwidth));
+            this.rowsFirst = rowsFirst;
+            this.firstRow = new int[items.size()];
+            this.firstIndex = new int[items.size()];
+            this.columns = new int[items.size()];
+            int row = 0;
+            int index = 0;
+            for (int k = 0; k < items.size(); k++) {
+                firstRow[k] = row;
+                firstIndex[k] = index;
+                Object item = items.get(k);
+                if (item instanceof List) {
+                    int size = ((List<Candidate>) item).size();
+                    index += size;
+                    if (maxWidth > 0) {
+                        columns[k] = columnCount(size, width, maxWidth);
+                        row += lines(k);
+                    }
+                } else if (maxWidth > 0) {
+                    row++;
+                }
+            }
+            this.rows = row;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int lines(int item) {
+            int size = ((List<Candidate>) items.get(item)).size();
+            return columns[item] > 0 ? (size + columns[item] - 1) / columns[item] : 0;
+        }
+
+        /**
+         * Returns the row displaying the candidate at the given index
+         * in the display order.
+         */
+        int rowOf(int selection) {
+            // the last item starting at or before the selection is its list,
+            // as group names start where the following list does
+            int lo = 0;
+            int hi = items.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (firstIndex[mid] <= selection) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (columns[lo] == 0) {
+                return firstRow[lo];
+            }
+            int local = selection - firstIndex[lo];
+            return firstRow[lo] + (rowsFirst ? local / columns[lo] : local % lines(lo));
+        }
+
+        /**
+         * Renders the rows from <code>from</code> inclusive
+         * to <code>to</code> exclusive, each ending with a new line.
+         */
+        @SuppressWarnings("unchecked")
+        void render(AttributedStringBuilder sb, int from, int to, Candidate selection, String completed) {
+            for (int k = 0; k < items.size() && firstRow[k] < to; k++) {
+                Object item = items.get(k);
+                if (item instanceof String) {
+                    if (maxWidth > 0 && firstRow[k] >= from) {
+                        sb.style(getCompletionStyleGroup())
+                                .append((String) item)
+                                .style(AttributedStyle.DEFAULT)
+                                .append("\n");
+                    }
+                } else if (item instanceof List) {
+                    int end = Math.min(lines(k), to - firstRow[k]);
+                    for (int i = Math.max(0, from - firstRow[k]); i < end; i++) {
+                        appendRow(sb, (List<Candidate>) item, i, columns[k], maxWidth, rowsFirst, selection, completed);
+                    }
+                }
+            }
+        }
+    }
+
     protected boolean doMenu(List<Candidate> original, String completed, BiFunction<CharSequence, Boolean, CharSequence> escaper) {
         // Reorder candidates according to display order
-        final List<Candidate> possible = new ArrayList<>();
         boolean caseInsensitive = isSet(Option.CASE_INSENSITIVE);
         original.sort(getCandidateComparator(caseInsensitive, completed));
         mergeCandidates(original);
-        computePost(original, null, possible, completed);
 
         // Build menu support
         MenuSupport menuSupport = new MenuSupport(original, completed, escaper);
@@ -5089,6 +5582,88 @@ public class LineReaderImpl implements LineReader, Flushable
         }
     }
 
+    /**
+     * Split the given string on newlines, without computing any column width.
+     * This is equivalent to <code>str.columnSplitLength(Integer.MAX_VALUE)</code>.
+     */
+    private static List<AttributedString> splitLines(AttributedString str) {
+        List<AttributedString> lines = new ArrayList<>();
+        int beg = 0;
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) == '\n') {
+                lines.add(str.subSequence(beg, i));
+                beg = i + 1;
+            }
+        }
+        lines.add(str.subSequence(beg, str.length()));
+        return lines;
+    }
+
+    /**
+     * Cache of the wrapped display lines of each logical line of the buffer,
+     * secondary prompts included.  A logical line is only wrapped again when
+     * its content or style changes, or when the width changes, so editing
+     * a large buffer does not re-wrap all of it on each keystroke.
+     * Only the lines used by the last redisplay are retained.
+     */
+    static class LineWrapCache {
+        private Map<AttributedString, WrappedLine> previous = new HashMap<>();
+        private Map<AttributedString, WrappedLine> current = new HashMap<>();
+        private int columns;
+        private boolean delayLineWrap;
+
+        /**
+         * Same as <code>full.columnSplitLength(columns, true, delayLineWrap)</code>.
+         */
+        List<AttributedString> split(AttributedString full, int columns, boolean delayLineWrap) {
+            if (this.columns != columns || this.delayLineWrap != delayLineWrap) {
+                this.columns = columns;
+                this.delayLineWrap = delayLineWrap;
+                previous.clear();
+            }
+            List<AttributedString> lines = new ArrayList<>();
+            int beg = 0;
+            int len = full.length();
+            for (int i = 0; i < len; i++) {
+                if (full.charAt(i) == '\n') {
+                    List<AttributedString> wrapped = wrap(full.subSequence(beg, i + 1));
+                    // the last item is the empty string following the newline
+                    lines.addAll(wrapped.subList(0, wrapped.size() - 1));
+                    beg = i + 1;
+                }
+            }
+            lines.addAll(wrap(full.subSequence(beg, len)));
+            Map<AttributedString, WrappedLine> map = previous;
+            previous = current;
+            current = map;
+            current.clear();
+            return lines;
+        }
+
+        private List<AttributedString> wrap(AttributedString line) {
+            WrappedLine wrapped = current.get(line);
+            if (wrapped == null) {
+                wrapped = previous.get(line);
+                if (wrapped == null) {
+                    wrapped = new WrappedLine(line, columns, delayLineWrap);
+                }
+                current.put(wrapped.line, wrapped);
+            }
+            return wrapped.lines;
+        }
+    }
+
+    private static class WrappedLine {
+        final AttributedString line;
+        final List<AttributedString> lines;
+
+        WrappedLine(AttributedString line, int columns, boolean delayLineWrap) {
+            // copy the line so that the cache does not retain the whole buffer
+            this.line = new AttributedStringBuilder(line.length()).append(line).toAttributedString();
+            this.lines = this.line.columnSplitLength(columns, true, delayLineWrap);
+        }
+    }
+
     protected static class PostResult {
         final AttributedString post;
         final int lines;
@@ -5106,6 +5681,15 @@ public class LineReaderImpl implements LineReader, Flushable
     }
 
     protected PostResult computePost(List<Candidate> possible, Candidate selection, List<Candidate> ordered, String completed, Function<String, Integer> wcwidth, int width, boolean autoGroup, boolean groupName, boolean rowsFirst) {
+        List<Object> strings = groupCandidates(possible, ordered, autoGroup, groupName);
+        return toColumns(strings, selection, completed, wcwidth, width, rowsFirst);
+    }
+
+    /**
+     * Sorts the candidates into the items to display: group names, and
+     * the list of candidates of each group.
+     */
+    private List<Object> groupCandidates(List<Candidate> possible, List<Candidate> ordered, boolean autoGroup, boolean groupName) {
         List<Object> strings = new ArrayList<>();
         if (groupName) {
             Comparator<String> groupComparator = getGroupComparator();
@@ -5149,7 +5733,7 @@ public class LineReaderImpl implements LineReader, Flushable
                 ordered.addAll(sorted.values());
             }
         }
-        return toColumns(strings, selection, completed, wcwidth, width, rowsFirst);
+        return strings;
     }
 
     private static final String DESC_PREFIX = "(";
@@ -5162,6 +5746,20 @@ public class LineReaderImpl implements LineReader, Flushable
         int[] out = new int[2];
         // TODO: support Option.LIST_PACKED
         // Compute column width
+        int maxWidth = columnWidth(items, wcwidth);
+        // Build columns
+        AttributedStringBuilder sb = new AttributedStringBuilder();
+        for (Object list : items) {
+            toColumns(list, width, maxWidth, sb, selection, completed, rowsFirst, out);
+        }
+        if (sb.length() > 0 && sb.charAt(sb.length() - 1) == '\n') {
+            sb.setLength(sb.length() - 1);
+        }
+        return new PostResult(sb.toAttributedString(), out[0], out[1]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int columnWidth(List<Object> items, Function<String, Integer> wcwidth) {
         int maxWidth = 0;
         for (Object item : items) {
             if (item instanceof String) {
@@ -5181,15 +5779,22 @@ public class LineReaderImpl implements LineReader, Flushable
                 }
             }
         }
-        // Build columns
-        AttributedStringBuilder sb = new AttributedStringBuilder();
-        for (Object list : items) {
-            toColumns(list, width, maxWidth, sb, selection, completed, rowsFirst, out);
-        }
-        if (sb.length() > 0 && sb.charAt(sb.length() - 1) == '\n') {
-            sb.setLength(sb.length() - 1);
+        return maxWidth;
+    }
+
+    /**
+     * Returns the number of columns to lay the given number of candidates
+     * out in, given the terminal width and the (already capped) column width.
+     */
+    private static int columnCount(int size, int width, int maxWidth) {
+        int c = width / maxWidth;
+        while (c > 1 && c * maxWidth + (c - 1) * MARGIN_BETWEEN_COLUMNS >= width) {
+            c--;
         }
-        return new PostResult(sb.toAttributedString(), out[0], out[1]);
+        int lines = (size + c - 1) / c;
+        // Try to minimize the number of columns for the given number of rows
+        // Prevents eg 9 candiates being split 6/3 instead of 5/4.
+        return lines > 0 ? (size + lines - 1) / lines : 0;
     }
 
     @SuppressWarnings("unchecked")
@@ -5209,94 +5814,107 @@ public class LineReaderImpl implements LineReader, Flushable
         else if (items instanceof List) {
             List<Candidate> candidates = (List<Candidate>) items;
             maxWidth = Math.min(width, maxWidth);
-            int c = width / maxWidth;
-            while (c > 1 && c * maxWidth + (c - 1) * MARGIN_BETWEEN_COLUMNS >= width) {
-                c--;
-            }
-            int lines = (candidates.size() + c - 1) / c;
-            // Try to minimize the number of columns for the given number of rows
-            // Prevents eg 9 candiates being split 6/3 instead of 5/4.
-            final int columns = (candidates.size() + lines - 1) / lines;
-            IntBinaryOperator index;
-            if (rowsFirst) {
-                index = (i, j) -> i * columns + j;
-            } else {
-                index = (i, j) -> j * lines + i;
-            }
+            final int columns = columnCount(candidates.size(), width, maxWidth);
+            final int lines = columns > 0 ? (candidates.size() + columns - 1) / columns : 0;
             for (int i = 0; i < lines; i++) {
-                for (int j = 0; j < columns; j++) {
-                    int idx = index.applyAsInt(i, j);
-                    if (idx < candidates.size()) {
-                        Candidate cand = candidates.get(idx);
-                        boolean hasRightItem = j < columns - 1 && index.applyAsInt(i, j + 1) < candidates.size();
-                        AttributedString left = AttributedString.fromAnsi(cand.displ());
-                        AttributedString right = AttributedString.fromAnsi(cand.descr());
-                        int lw = left.columnLength();
-                        int rw = 0;
-                        if (right != null) {
-                            int rem = maxWidth - (lw + MARGIN_BETWEEN_DISPLAY_AND_DESC
-                                    + DESC_PREFIX.length() + DESC_SUFFIX.length());
-                            rw = right.columnLength();
-                            if (rw > rem) {
-                                right = AttributedStringBuilder.append(
-                                            right.columnSubSequence(0, rem - WCWidth.wcwidth('…')),
-                                            "…");
-                                rw = right.columnLength();
-                            }
-                            right = AttributedStringBuilder.append(DESC_PREFIX, right, DESC_SUFFIX);
-                            rw += DESC_PREFIX.length() + DESC_SUFFIX.length();
-                        }
-                        if (cand == selection) {
-                            out[1] = i;
-                            sb.style(getCompletionStyleSelection());
-                            if (left.toString().regionMatches(
-                                    isSet(Option.CASE_INSENSITIVE), 0, completed, 0, completed.length())) {
-                                sb.append(left.toString(), 0, completed.length());
-                                sb.append(left.toString(), completed.length(), left.length());
-                            } else {
-                                sb.append(left.toString());
-                            }
-                            for (int k = 0; k < maxWidth - lw - rw; k++) {
-                                sb.append(' ');
-                            }
-                            if (right != null) {
-                                sb.append(right);
-                            }
-                            sb.style(AttributedStyle.DEFAULT);
-                        } else {
-                            if (left.toString().regionMatches(
-                                    isSet(Option.CASE_INSENSITIVE), 0, completed, 0, completed.length())) {
-                                sb.style(getCompletionStyleStarting());
-                                sb.append(left, 0, completed.length());
-                                sb.style(AttributedStyle.DEFAULT);
-                                sb.append(left, completed.length(), left.length());
-                            } else {
-                                sb.append(left);
-                            }
-                            if (right != null || hasRightItem) {
-                                for (int k = 0; k < maxWidth - lw - rw; k++) {
-                                    sb.append(' ');
-                                }
-                            }
-                            if (right != null) {
-                                sb.style(getCompletionStyleDescription());
-                                sb.append(right);
-                                sb.style(AttributedStyle.DEFAULT);
-                            }
-                        }
-                        if (hasRightItem) {
-                            for (int k = 0; k < MARGIN_BETWEEN_COLUMNS; k++) {
-                                sb.append(' ');
-                            }
-                        }
-                    }
+                if (appendRow(sb, candidates, i, columns, maxWidth, rowsFirst, selection, completed)) {
+                    out[1] = i;
                 }
-                sb.append('\n');
             }
             out[0] += lines;
         }
     }
 
+    /**
+     * Appends the given row of a list of candidates laid out in the given
+     * number of columns.
+     *
+     * @return whether the row contains the selected candidate
+     */
+    private boolean appendRow(AttributedStringBuilder sb, List<Candidate> candidates, int row, int columns, int maxWidth, boolean rowsFirst, Candidate selection, String completed) {
+        int lines = (candidates.size() + columns - 1) / columns;
+        IntBinaryOperator index;
+        if (rowsFirst) {
+            index = (i, j) -> i * columns + j;
+        } else {
+            index = (i, j) -> j * lines + i;
+        }
+        boolean selected = false;
+        for (int j = 0; j < columns; j++) {
+            int idx = index.applyAsInt(row, j);
+            if (idx < candidates.size()) {
+                Candidate cand = candidates.get(idx);
+                boolean hasRightItem = j < columns - 1 && index.applyAsInt(row, j + 1) < candidates.size();
+                selected |= cand == selection;
+                appendCandidate(sb, cand, maxWidth, cand == selection, hasRightItem, completed);
+            }
+        }
+        sb.append('\n');
+        return selected;
+    }
+
+    private void appendCandidate(AttributedStringBuilder sb, Candidate cand, int maxWidth, boolean selected, boolean hasRightItem, String completed) {
+        AttributedString left = AttributedString.fromAnsi(cand.displ());
+        AttributedString right = AttributedString.fromAnsi(cand.descr());
+        int lw = left.columnLength();
+        int rw = 0;
+        if (right != null) {
+            int rem = maxWidth - (lw + MARGIN_BETWEEN_DISPLAY_AND_DESC
+                    + DESC_PREFIX.length() + DESC_SUFFIX.length());
+            rw = right.columnLength();
+            if (rw > rem) {
+                right = AttributedStringBuilder.append(
+                            right.columnSubSequence(0, rem - WCWidth.wcwidth('…')),
+                            "…");
+                rw = right.columnLength();
+            }
+            right = AttributedStringBuilder.append(DESC_PREFIX, right, DESC_SUFFIX);
+            rw += DESC_PREFIX.length() + DESC_SUFFIX.length();
+        }
+        if (selected) {
+            sb.style(getCompletionStyleSelection());
+            if (left.toString().regionMatches(
+                    isSet(Option.CASE_INSENSITIVE), 0, completed, 0, completed.length())) {
+                sb.append(left.toString(), 0, completed.length());
+                sb.append(left.toString(), completed.length(), left.length());
+            } else {
+                sb.append(left.toString());
+            }
+            for (int k = 0; k < maxWidth - lw - rw; k++) {
+                sb.append(' ');
+            }
+            if (right != null) {
+                sb.append(right);
+            }
+            sb.style(AttributedStyle.DEFAULT);
+        } else {
+            if (left.toString().regionMatches(
+                    isSet(Option.CASE_INSENSITIVE), 0, completed, 0, completed.length())) {
+                sb.style(getCompletionStyleStarting());
+                sb.append(left, 0, completed.length());
+                sb.style(AttributedStyle.DEFAULT);
+                sb.append(left, completed.length(), left.length());
+            } else {
+                sb.append(left);
+            }
+            if (right != null || hasRightItem) {
+                for (int k = 0; k < maxWidth - lw - rw; k++) {
+                    sb.append(' ');
+                }
+            }
+            if (right != null) {
+                sb.style(getCompletionStyleDescription());
+                sb.append(right);
+                sb.style(AttributedStyle.DEFAULT);
+            }
+        }
+        if (hasRightItem) {
+            for (int k = 0; k < MARGIN_BETWEEN_COLUMNS; k++) {
+                sb.append(' ');
+            }
+        }
+    }
+
     private AttributedStyle getCompletionStyleStarting() {
         return getCompletionStyle(COMPLETION_STYLE_STARTING, DEFAULT_COMPLETION_STYLE_STARTING);
     }
@@ -5783,29 +6401,109 @@ public class LineReaderImpl implements LineReader, Flushable
         return ReaderUtils.getLong(this, name, def);
     }
 
+    /**
+     * Returns the default key maps.  Each key map is only built the
+     * first time it is looked up, and main is linked to emacs.
+     */
     @Override
     public Map<String, KeyMap<Binding>> defaultKeyMaps() {
-        Map<String, KeyMap<Binding>> keyMaps = new HashMap<>();
-        keyMaps.put(EMACS, emacs());
-        keyMaps.put(VICMD, viCmd());
-        keyMaps.put(VIINS, viInsertion());
-        keyMaps.put(MENU, menu());
-        keyMaps.put(VIOPP, viOpp());
-        keyMaps.put(VISUAL, visual());
-        keyMaps.put(SAFE, safe());
-        if (getBoolean(BIND_TTY_SPECIAL_CHARS, true)) {
-            Attributes attr = terminal.getAttributes();
-            bindConsoleChars(keyMaps.get(EMACS), attr);
-            bindConsoleChars(keyMaps.get(VIINS), attr);
-        }
-        // Put default
-        for (KeyMap<Binding> keyMap : keyMaps.values()) {
-            keyMap.setUnicode(new Reference(SELF_INSERT));
-            keyMap.setAmbiguousTimeout(getLong(AMBIGUOUS_BINDING, DEFAULT_AMBIGUOUS_BINDING));
-        }
-        // By default, link main to emacs
-        keyMaps.put(MAIN, keyMaps.get(EMACS));
-        return keyMaps;
+        return new DefaultKeyMaps();
+    }
+
+    private KeyMap<Binding> defaultKeyMap(Supplier<KeyMap<Binding>> factory, boolean consoleChars) {
+        KeyMap<Binding> keyMap = factory.get();
+        if (consoleChars && getBoolean(BIND_TTY_SPECIAL_CHARS, true)) {
+            bindConsoleChars(keyMap, terminal.getAttributes());
+        }
+        keyMap.setUnicode(new Reference(SELF_INSERT));
+        keyMap.setAmbiguousTimeout(getLong(AMBIGUOUS_BINDING, DEFAULT_AMBIGUOUS_BINDING));
+        return keyMap;
+    }
+
+    /**
+     * Key maps materialized on first access.  Building all of them eagerly
+     * accounts for a large part of the time needed to create a reader,
+     * while most sessions only ever use one or two of them.
+     */
+    private class DefaultKeyMaps extends AbstractMap<String, KeyMap<Binding>> {
+        private final Map<String, KeyMap<Binding>> keyMaps = new HashMap<>();
+        private final Map<String, Supplier<KeyMap<Binding>>> factories = new HashMap<>();
+        private KeyMap<Binding> emacs;
+
+        DefaultKeyMaps() {
+            factories.put(EMACS, this::defaultEmacs);
+            factories.put(VICMD, () -> defaultKeyMap(LineReaderImpl.this::viCmd, false));
+            factories.put(VIINS, () -> defaultKeyMap(LineReaderImpl.this::viInsertion, true));
+            factories.put(MENU, () -> defaultKeyMap(LineReaderImpl.this::menu, false));
+            factories.put(VIOPP, () -> defaultKeyMap(LineReaderImpl.this::viOpp, false));
+            factories.put(VISUAL, () -> defaultKeyMap(LineReaderImpl.this::visual, false));
+            factories.put(SAFE, () -> defaultKeyMap(LineReaderImpl.this::safe, false));
+            // By default, link main to emacs
+            factories.put(MAIN, this::defaultEmacs);
+        }
+
+        /**
+         * The default emacs key map, shared by main even if emacs is replaced
+         * before main is first accessed.
+         */
+        private KeyMap<Binding> defaultEmacs() {
+            if (emacs == null) {
+                emacs = defaultKeyMap(LineReaderImpl.this::emacs, true);
+            }
+            return emacs;
+        }
+
+        @Override
+        public KeyMap<Binding> get(Object key) {
+            KeyMap<Binding> keyMap = keyMaps.get(key);
+            if (keyMap == null) {
+                Supplier<KeyMap<Binding>> factory = factories.remove(key);
+                if (factory != null) {
+                    keyMap = factory.get();
+                    keyMaps.put((String) key, keyMap);
+                }
+            }
+            return keyMap;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return keyMaps.containsKey(key) || factories.containsKey(key);
+        }
+
+        @Override
+        public KeyMap<Binding> put(String key, KeyMap<Binding> value) {
+            KeyMap<Binding> previous = get(key);
+            keyMaps.put(key, value);
+            return previous;
+        }
+
+        @Override
+        public KeyMap<Binding> remove(Object key) {
+            KeyMap<Binding> previous = get(key);
+            keyMaps.remove(key);
+            return previous;
+        }
+
+        @Override
+        public int size() {
+            return keyMaps.size() + factories.size();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            Set<String> keys = new HashSet<>(factories.keySet());
+            keys.addAll(keyMaps.keySet());
+            return keys;
+        }
+
+        @Override
+        public Set<Entry<String, KeyMap<Binding>>> entrySet() {
+            for (String key : new ArrayList<>(factories.keySet())) {
+                get(key);
+            }
+            return keyMaps.entrySet();
+        }
     }
 
     public KeyMap<Binding> emacs() {
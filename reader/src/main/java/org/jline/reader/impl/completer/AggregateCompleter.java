@@ -73,6 +73,15 @@ public class AggregateCompleter
         completers.forEach(c -> c.complete(reader, line, candidates));
     }
 
+    @Override
+    public long getCandidatesTtl(LineReader reader, ParsedLine line) {
+        long ttl = Long.MAX_VALUE;
+        for (Completer completer : completers) {
+            ttl = Math.min(ttl, completer.getCandidatesTtl(reader, line));
+        }
+        return ttl;
+    }
+
     /**
      * @return a string representing the aggregated completers
      */
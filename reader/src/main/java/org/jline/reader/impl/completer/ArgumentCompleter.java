@@ -141,6 +141,29 @@ public class ArgumentCompleter implements Completer
         completer.complete(reader, line, candidates);
     }
 
+    /**
+     * The candidates depend on the completer for the current word, and
+     * when strict, on the completers used to validate the previous words.
+     */
+    @Override
+    public long getCandidatesTtl(LineReader reader, ParsedLine line) {
+        if (line.wordIndex() < 0) {
+            return Long.MAX_VALUE;
+        }
+        List<Completer> completers = getCompleters();
+        long ttl = completers.get(Math.min(line.wordIndex(), completers.size() - 1)).getCandidatesTtl(reader, line);
+        for (int i = strictCommand ? 0 : 1; isStrict() && (i < line.wordIndex()); i++) {
+            int idx = i >= completers.size() ? (completers.size() - 1) : i;
+            if (idx == 0 && !strictCommand) {
+                continue;
+            }
+            List<? extends CharSequence> args = line.words();
+            String arg = (args == null || i >= args.size()) ? "" : args.get(i).toString();
+            ttl = Math.min(ttl, completers.get(idx).getCandidatesTtl(reader, new ArgumentLine(arg, arg.length())));
+        }
+        return ttl;
+    }
+
     public static class ArgumentLine implements ParsedLine {
         private final String word;
         private final int cursor;
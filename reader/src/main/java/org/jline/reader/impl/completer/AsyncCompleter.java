@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl.completer;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jline.reader.Candidate;
+import org.jline.reader.Completer;
+import org.jline.reader.LineReader;
+import org.jline.reader.ParsedLine;
+import org.jline.utils.Threads;
+
+/**
+ * Runs a completer in the background.
+ *
+ * The wrapped completer does not need to be aware of it: candidates are
+ * added to the caller's list as they are found, while holding the list's
+ * monitor so that the caller can look at them in the meantime.  Once the
+ * completion is cancelled, the completer thread is interrupted and any
+ * further attempt to add a candidate throws a {@link CancellationException},
+ * so that the completer stops even if it does not check for interruption.
+ *
+ * When {@link LineReader.Option#ASYNC_COMPLETION} is set, the line reader
+ * wraps its completer in an {@code AsyncCompleter} unless it already is one.
+ */
+public class AsyncCompleter implements Completer {
+
+    private static ExecutorService defaultExecutor;
+
+    private final Completer completer;
+    private final Executor executor;
+
+    public AsyncCompleter(Completer completer) {
+        this(completer, null);
+    }
+
+    /**
+     * @param completer the completer to run in the background
+     * @param executor the executor to run it with, or <code>null</code>
+     *                 to use a shared pool of daemon threads
+     */
+    public AsyncCompleter(Completer completer, Executor executor) {
+        this.completer = Objects.requireNonNull(completer);
+        this.executor = executor;
+    }
+
+    public Completer getCompleter() {
+        return completer;
+    }
+
+    /**
+     * Runs the completer in the calling thread.
+     */
+    @Override
+    public void complete(LineReader reader, ParsedLine line, List<Candidate> candidates) {
+        completer.complete(reader, line, candidates);
+    }
+
+    @Override
+    public long getCandidatesTtl(LineReader reader, ParsedLine line) {
+        return completer.getCandidatesTtl(reader, line);
+    }
+
+    /**
+     * Starts the completer in the background.
+     *
+     * @param reader the line reader
+     * @param line the parsed command line
+     * @param candidates the list to add candidates to, which must only be
+     *                   accessed while holding its monitor until the
+     *                   returned future is done
+     * @return the future to wait for or cancel the completion with
+     */
+    public Future<?> completeAsync(LineReader reader, ParsedLine line, List<Candidate> candidates) {
+        Sink sink = new Sink(candidates);
+        FutureTask<Void> task = new FutureTask<Void>(() -> completer.complete(reader, line, sink), null) {
+            @Override
+            protected void done() {
+                synchronized (candidates) {
+                    sink.closed = true;
+                }
+            }
+        };
+        (executor != null ? executor : defaultExecutor()).execute(task);
+        return task;
+    }
+
+    private static synchronized Executor defaultExecutor() {
+        if (defaultExecutor == null) {
+            AtomicInteger count = new AtomicInteger();
+            defaultExecutor = Executors.newCachedThreadPool(
+                    r -> Threads.newThread(r, "jline-completer-" + count.incrementAndGet()));
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * The list given to the completer, forwarding to the caller's list.
+     */
+    private static class Sink extends AbstractList<Candidate> {
+        private final List<Candidate> target;
+        boolean closed;
+
+        Sink(List<Candidate> target) {
+            this.target = target;
+        }
+
+        @Override
+        public Candidate get(int index) {
+            synchronized (target) {
+                return target.get(index);
+            }
+        }
+
+        @Override
+        public int size() {
+            synchronized (target) {
+                return target.size();
+            }
+        }
+
+        @Override
+        public boolean add(Candidate candidate) {
+            synchronized (target) {
+                checkOpen();
+                return target.add(candidate);
+            }
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends Candidate> c) {
+            synchronized (target) {
+                checkOpen();
+                return target.addAll(c);
+            }
+        }
+
+        @Override
+        public void add(int index, Candidate candidate) {
+            synchronized (target) {
+                checkOpen();
+                target.add(index, candidate);
+            }
+        }
+
+        @Override
+        public Candidate set(int index, Candidate candidate) {
+            synchronized (target) {
+                checkOpen();
+                return target.set(index, candidate);
+            }
+        }
+
+        @Override
+        public Candidate remove(int index) {
+            synchronized (target) {
+                checkOpen();
+                return target.remove(index);
+            }
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new CancellationException();
+            }
+        }
+    }
+}
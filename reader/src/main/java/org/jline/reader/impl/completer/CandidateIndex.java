@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl.completer;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.jline.reader.Candidate;
+import org.jline.utils.AttributedString;
+import org.jline.utils.Levenshtein;
+
+/**
+ * A collection of candidates indexed by their value.
+ *
+ * Completers returning a large and mostly static set of candidates can add
+ * an index to the candidates list instead of the candidates themselves:
+ * the line reader recognizes it and answers prefix and infix queries from
+ * the index instead of testing each candidate.
+ *
+ * Candidates are grouped by their value, with any ANSI sequence removed.
+ * Case insensitive queries compare values folded with
+ * {@link Character#toLowerCase(char)}.  The sorted views and the bigram
+ * index used for infix queries are built the first time they are needed,
+ * and rebuilt after the collection is modified.
+ */
+public class CandidateIndex extends AbstractCollection<Candidate> {
+
+    private final List<Candidate> candidates;
+    private Index index;
+
+    public CandidateIndex() {
+        this.candidates = new ArrayList<>();
+    }
+
+    public CandidateIndex(Collection<? extends Candidate> candidates) {
+        this.candidates = new ArrayList<>(candidates);
+    }
+
+    public static String fold(String s) {
+        char[] chars = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            char l = Character.toLowerCase(c);
+            if (c != l) {
+                if (chars == null) {
+                    chars = s.toCharArray();
+                }
+                chars[i] = l;
+            }
+        }
+        return chars != null ? new String(chars) : s;
+    }
+
+    @Override
+    public synchronized int size() {
+        return candidates.size();
+    }
+
+    /**
+     * Returns the candidate at the given position, in insertion order.
+     *
+     * @param index the position of the candidate
+     * @return the candidate
+     * @throws IndexOutOfBoundsException if the position is out of range
+     */
+    public synchronized Candidate get(int index) {
+        return candidates.get(index);
+    }
+
+    @Override
+    public synchronized boolean add(Candidate candidate) {
+        index = null;
+        return candidates.add(candidate);
+    }
+
+    @Override
+    public synchronized void clear() {
+        index = null;
+        candidates.clear();
+    }
+
+    @Override
+    public synchronized Iterator<Candidate> iterator() {
+        Iterator<Candidate> it = candidates.iterator();
+        return new Iterator<Candidate>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Candidate next() {
+                return it.next();
+            }
+
+            @Override
+            public void remove() {
+                synchronized (CandidateIndex.this) {
+                    index = null;
+                    it.remove();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the candidates whose value starts with the given prefix,
+     * grouped by value.
+     *
+     * @param prefix the prefix to look for
+     * @param caseInsensitive whether case should be ignored
+     * @return the matching candidates, grouped by value
+     */
+    public synchronized Map<String, List<Candidate>> startingWith(String prefix, boolean caseInsensitive) {
+        Index idx = index();
+        String[] keys = caseInsensitive ? idx.folded : idx.keys;
+        int[] sorted = idx.sorted(caseInsensitive);
+        String p = caseInsensitive ? fold(prefix) : prefix;
+        Map<String, List<Candidate>> result = new HashMap<>();
+        for (int i = lowerBound(keys, sorted, p); i < sorted.length && keys[sorted[i]].startsWith(p); i++) {
+            idx.collect(sorted[i], result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the candidates whose value contains the given string,
+     * grouped by value.
+     *
+     * @param infix the string to look for
+     * @param caseInsensitive whether case should be ignored
+     * @return the matching candidates, grouped by value
+     */
+    public synchronized Map<String, List<Candidate>> containing(String infix, boolean caseInsensitive) {
+        Index idx = index();
+        if (infix.length() < 2) {
+            String s = caseInsensitive ? fold(infix) : infix;
+            return matching(k -> k.contains(s), caseInsensitive);
+        }
+        String f = fold(infix);
+        // Every bigram of the query appears in a matching value,
+        // so the shortest posting list holds all the matches
+        int[] postings = null;
+        for (int i = 0; i < f.length() - 1; i++) {
+            int[] p = idx.grams().get(bigram(f, i));
+            if (p == null) {
+                return new HashMap<>();
+            }
+            if (postings == null || p.length < postings.length) {
+                postings = p;
+            }
+        }
+        String[] keys = caseInsensitive ? idx.folded : idx.keys;
+        String s = caseInsensitive ? f : infix;
+        Map<String, List<Candidate>> result = new HashMap<>();
+        for (int key : postings) {
+            if (keys[key].contains(s)) {
+                idx.collect(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the candidates whose value, or the start of their value as
+     * long as the given word, is within the given edit distance of the word,
+     * grouped by value.
+     *
+     * The sorted values are walked as a trie, so that the distance is
+     * computed once for a shared prefix, and values starting with a prefix
+     * that is already too far from the word are skipped altogether.
+     *
+     * @param word the word to look for
+     * @param max the maximum edit distance
+     * @param caseInsensitive whether case should be ignored
+     * @return the matching candidates, grouped by value
+     * @see Levenshtein#distance(CharSequence, CharSequence, int)
+     */
+    public synchronized Map<String, List<Candidate>> similarTo(String word, int max, boolean caseInsensitive) {
+        Index idx = index();
+        String[] keys = caseInsensitive ? idx.folded : idx.keys;
+        int[] sorted = idx.sorted(caseInsensitive);
+        String w = caseInsensitive ? fold(word) : word;
+        Levenshtein.Incremental distance = new Levenshtein.Incremental(w, max);
+        Map<String, List<Candidate>> result = new HashMap<>();
+        String prev = "";
+        int i = 0;
+        while (i < sorted.length) {
+            String key = keys[sorted[i]];
+            int depth = Math.min(distance.length(), commonPrefix(prev, key));
+            distance.truncate(depth);
+            prev = key;
+            int next = i + 1;
+            boolean matches = true;
+            while (true) {
+                if (depth == w.length() && distance.distance() <= max) {
+                    // all values starting with this prefix match
+                    next = prefixEnd(keys, sorted, i, key.substring(0, depth));
+                    break;
+                }
+                if (depth == key.length()) {
+                    matches = distance.distance() <= max;
+                    break;
+                }
+                distance.push(key.charAt(depth++));
+                if (distance.isExceeded()) {
+                    next = prefixEnd(keys, sorted, i, key.substring(0, depth));
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                for (int j = i; j < next; j++) {
+                    idx.collect(sorted[j], result);
+                }
+            }
+            i = next;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the candidates whose value matches the given predicate,
+     * grouped by value.  Each value is tested once.
+     *
+     * @param predicate the predicate to test the values with
+     * @param caseInsensitive whether the predicate receives folded values
+     * @return the matching candidates, grouped by value
+     */
+    public synchronized Map<String, List<Candidate>> matching(Predicate<String> predicate, boolean caseInsensitive) {
+        Index idx = index();
+        String[] keys = caseInsensitive ? idx.folded : idx.keys;
+        Map<String, List<Candidate>> result = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (predicate.test(keys[i])) {
+                idx.collect(i, result);
+            }
+        }
+        return result;
+    }
+
+    private Index index() {
+        if (index == null) {
+            index = new Index(candidates);
+        }
+        return index;
+    }
+
+    private static int lowerBound(String[] keys, int[] sorted, String key) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[sorted[mid]].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int commonPrefix(String s1, String s2) {
+        int n = Math.min(s1.length(), s2.length());
+        int i = 0;
+        while (i < n && s1.charAt(i) == s2.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the index of the first sorted value, from the given one which
+     * starts with the prefix, that does not start with it.
+     */
+    private static int prefixEnd(String[] keys, int[] sorted, int from, String prefix) {
+        int lo = from;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[sorted[mid]].startsWith(prefix)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int bigram(String s, int i) {
+        return (s.charAt(i) << 16) | s.charAt(i + 1);
+    }
+
+    private static class Index {
+        final String[] keys;
+        final String[] folded;
+        final List<List<Candidate>> groups;
+        int[] sorted;
+        int[] foldedSorted;
+        Map<Integer, int[]> grams;
+
+        Index(List<Candidate> candidates) {
+            Map<String, List<Candidate>> byKey = new LinkedHashMap<>();
+            for (Candidate cand : candidates) {
+                byKey.computeIfAbsent(AttributedString.fromAnsi(cand.value()).toString(), s -> new ArrayList<>())
+                        .add(cand);
+            }
+            keys = byKey.keySet().toArray(new String[0]);
+            groups = new ArrayList<>(byKey.values());
+            folded = new String[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                folded[i] = fold(keys[i]);
+            }
+        }
+
+        int[] sorted(boolean caseInsensitive) {
+            if (caseInsensitive) {
+                if (foldedSorted == null) {
+                    foldedSorted = sort(folded);
+                }
+                return foldedSorted;
+            } else {
+                if (sorted == null) {
+                    sorted = sort(keys);
+                }
+                return sorted;
+            }
+        }
+
+        Map<Integer, int[]> grams() {
+            if (grams == null) {
+                Map<Integer, Postings> postings = new HashMap<>();
+                for (int key = 0; key < folded.length; key++) {
+                    String s = folded[key];
+                    for (int i = 0; i < s.length() - 1; i++) {
+                        postings.computeIfAbsent(bigram(s, i), g -> new Postings()).add(key);
+                    }
+                }
+                grams = new HashMap<>(postings.size() * 2);
+                for (Map.Entry<Integer, Postings> e : postings.entrySet()) {
+                    grams.put(e.getKey(), Arrays.copyOf(e.getValue().keys, e.getValue().size));
+                }
+            }
+            return grams;
+        }
+
+        void collect(int key, Map<String, List<Candidate>> result) {
+            result.put(keys[key], Collections.unmodifiableList(groups.get(key)));
+        }
+
+        private static int[] sort(String[] keys) {
+            Integer[] order = new Integer[keys.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+            int[] sorted = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sorted[i] = order[i];
+            }
+            return sorted;
+        }
+    }
+
+    private static class Postings {
+        int[] keys = new int[4];
+        int size;
+
+        void add(int key) {
+            // values are indexed in order, so a bigram repeated
+            // in the same value is always the last one added
+            if (size > 0 && keys[size - 1] == key) {
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+    }
+}
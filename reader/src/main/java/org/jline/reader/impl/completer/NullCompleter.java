@@ -29,4 +29,9 @@ public final class NullCompleter
 
     public void complete(LineReader reader, final ParsedLine line, final List<Candidate> candidates) {
     }
+
+    @Override
+    public long getCandidatesTtl(LineReader reader, ParsedLine line) {
+        return Long.MAX_VALUE;
+    }
 }
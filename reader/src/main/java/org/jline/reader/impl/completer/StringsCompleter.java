@@ -8,7 +8,6 @@
  */
 package org.jline.reader.impl.completer;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -28,7 +27,7 @@ import org.jline.utils.AttributedString;
  */
 public class StringsCompleter implements Completer
 {
-    protected Collection<Candidate> candidates = new ArrayList<>();
+    protected Collection<Candidate> candidates = new CandidateIndex();
     protected Supplier<Collection<String>> stringsSupplier;
 
     public StringsCompleter() {
@@ -60,6 +59,15 @@ public class StringsCompleter implements Completer
         this.candidates.addAll(candidates);
     }
 
+    /**
+     * Fixed candidates can be reused as long as they are not modified,
+     * while the ones returned by a supplier are not cached.
+     */
+    @Override
+    public long getCandidatesTtl(LineReader reader, ParsedLine line) {
+        return candidates != null ? Long.MAX_VALUE : 0;
+    }
+
     public void complete(LineReader reader, final ParsedLine commandLine, final List<Candidate> candidates) {
         assert commandLine != null;
         assert candidates != null;
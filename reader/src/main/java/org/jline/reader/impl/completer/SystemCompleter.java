@@ -58,6 +58,23 @@ public class SystemCompleter implements Completer {
         }
     }
 
+    /**
+     * Command names and variable assignments are told apart by the current
+     * word containing an equal sign, so command names are not reused while
+     * one could be typed.
+     */
+    @Override
+    public long getCandidatesTtl(LineReader reader, ParsedLine line) {
+        if (!compiled || line.words().isEmpty()) {
+            return 0;
+        }
+        if (line.words().size() == 1) {
+            return line.words().get(0).indexOf('=') >= 0 ? Long.MAX_VALUE : 0;
+        }
+        String cmd = reader.getParser().getCommand(line.words().get(0));
+        return command(cmd) != null ? completers.get(command(cmd)).get(0).getCandidatesTtl(reader, line) : Long.MAX_VALUE;
+    }
+
     public boolean isCompiled() {
         return compiled;
     }
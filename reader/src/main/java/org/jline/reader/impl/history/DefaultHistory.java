@@ -13,6 +13,7 @@ import java.nio.file.*;
 import java.time.DateTimeException;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Predicate;
 
 import org.jline.reader.History;
 import org.jline.reader.LineReader;
@@ -28,12 +29,13 @@ import static org.jline.reader.impl.ReaderUtils.*;
  * to save history to disk.
  * </p>
  */
-public class DefaultHistory implements History {
+public class DefaultHistory implements History, Closeable {
 
     public static final int DEFAULT_HISTORY_SIZE = 500;
     public static final int DEFAULT_HISTORY_FILE_SIZE = 10000;
+    public static final int DEFAULT_HISTORY_QUEUE_SIZE = 1024;
 
-    private final LinkedList<Entry> items = new LinkedList<>();
+    private final EntryBuffer items = new EntryBuffer();
 
     private LineReader reader;
 
@@ -41,6 +43,14 @@ public class DefaultHistory implements History {
     private int offset = 0;
     private int index = 0;
 
+    // built on the first search, then updated as entries are added;
+    // the entries before lineIndexStart are not indexed
+    private HistoryIndex lineIndex;
+    private int lineIndexShifts;
+    private int lineIndexStart;
+
+    private HistoryWriter writer;
+
     public DefaultHistory() {
     }
 
@@ -77,9 +87,12 @@ public class DefaultHistory implements History {
     @Override
     public void load() throws IOException {
         Path path = getPath();
+        flushWriter();
         if (path != null) {
             try {
-                if (Files.exists(path)) {
+                if (isSet(reader, LineReader.Option.HISTORY_SEGMENTED)) {
+                    loadSegments(path);
+                } else if (Files.exists(path)) {
                     Log.trace("Loading history from: ", path);
                     try (BufferedReader reader = Files.newBufferedReader(path)) {
                         internalClear();
@@ -96,9 +109,58 @@ public class DefaultHistory implements History {
         }
     }
 
+    /**
+     * Loads the last entries of the segments of the history file.  Only the
+     * offsets of the entries are read, their lines are decoded when used.
+     */
+    private void loadSegments(Path path) throws IOException {
+        List<Path> files = HistorySegments.list(path);
+        if (files.isEmpty()) {
+            return;
+        }
+        Log.trace("Loading history segments from: ", path);
+        int max = getInt(reader, LineReader.HISTORY_SIZE, DEFAULT_HISTORY_SIZE);
+        List<HistorySegments.Segment> segments = new ArrayList<>();
+        int total = 0;
+        int active = 0;
+        for (int i = files.size() - 1; i >= 0 && total < max; i--) {
+            HistorySegments.Segment segment;
+            try {
+                segment = HistorySegments.read(files.get(i));
+            } catch (NoSuchFileException e) {
+                // Deleted by another process in the meantime
+                continue;
+            }
+            if (files.get(i).equals(path)) {
+                active = segment.size();
+            }
+            segments.add(0, segment);
+            total += segment.size();
+        }
+        internalClear();
+        boolean timestamped = reader.isSet(LineReader.Option.HISTORY_TIMESTAMPED);
+        Instant now = Instant.now();
+        int skip = Math.max(0, total - max);
+        offset = skip;
+        for (HistorySegments.Segment segment : segments) {
+            for (int record = 0; record < segment.size(); record++) {
+                if (skip > 0) {
+                    skip--;
+                } else if (timestamped && segment.timestamp(record) < 0) {
+                    throw new IllegalArgumentException(badHistoryFileSyntax(path));
+                } else {
+                    items.add(new SegmentEntry(offset + items.size(), segment, record, timestamped, now));
+                }
+            }
+        }
+        setHistoryFileData(path, new HistoryFileData(items.size(), active));
+        maybeResize();
+    }
+
     @Override
     public void read(Path file, boolean incremental) throws IOException {
         Path path = file != null ? file : getPath();
+        flushWriter();
         if (path != null) {
             try {
                 if (Files.exists(path)) {
@@ -172,17 +234,14 @@ public class DefaultHistory implements History {
     protected void addHistoryLine(Path path, String line, boolean checkDuplicates) {
         if (reader.isSet(LineReader.Option.HISTORY_TIMESTAMPED)) {
             int idx = line.indexOf(':');
-            final String badHistoryFileSyntax = "Bad history file syntax! " +
-                "The history file `" + path + "` may be an older history: " +
-                "please remove it or use a different history file.";
             if (idx < 0) {
-                throw new IllegalArgumentException(badHistoryFileSyntax);
+                throw new IllegalArgumentException(badHistoryFileSyntax(path));
             }
             Instant time;
             try {
                 time = Instant.ofEpochMilli(Long.parseLong(line.substring(0, idx)));
             } catch (DateTimeException | NumberFormatException e) {
-                throw new IllegalArgumentException(badHistoryFileSyntax);
+                throw new IllegalArgumentException(badHistoryFileSyntax(path));
             }
 
             String unescaped = unescape(line.substring(idx + 1));
@@ -193,22 +252,36 @@ public class DefaultHistory implements History {
         }
     }
 
+    private static String badHistoryFileSyntax(Path path) {
+        return "Bad history file syntax! " +
+            "The history file `" + path + "` may be an older history: " +
+            "please remove it or use a different history file.";
+    }
+
     @Override
     public void purge() throws IOException {
         internalClear();
         Path path = getPath();
+        flushWriter();
         if (path != null) {
             Log.trace("Purging history from: ", path);
             Files.deleteIfExists(path);
+            if (isSet(reader, LineReader.Option.HISTORY_SEGMENTED)) {
+                HistorySegments.deleteClosed(path);
+            }
         }
     }
 
     @Override
     public void write(Path file, boolean incremental) throws IOException {
         Path path = file != null ? file : getPath();
+        flushWriter();
         if (path != null && Files.exists(path)) {
             path.toFile().delete();
         }
+        if (path != null && isSet(reader, LineReader.Option.HISTORY_SEGMENTED)) {
+            HistorySegments.deleteClosed(path);
+        }
         internalWrite(path, incremental ? getLastLoaded(path) : 0);
     }
 
@@ -226,29 +299,113 @@ public class DefaultHistory implements History {
     private void internalWrite(Path path, int from) throws IOException {
         if (path != null) {
             Log.trace("Saving history to: ", path);
-            Files.createDirectories(path.toAbsolutePath().getParent());
-            // Append new items to the history file
-            try (BufferedWriter writer = Files.newBufferedWriter(path.toAbsolutePath(),
-              StandardOpenOption.WRITE, StandardOpenOption.APPEND, StandardOpenOption.CREATE)) {
+            HistoryWriter writer = isSet(reader, LineReader.Option.HISTORY_ASYNC_WRITE) ? writer() : null;
+            if (writer != null) {
+                List<String> records = new ArrayList<>();
                 for (Entry entry : items.subList(from, items.size())) {
                     if (isPersistable(entry)) {
-                        writer.append(format(entry));
+                        records.add(format(entry));
+                    }
+                }
+                writer.append(path, records);
+            } else {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+                // Append new items to the history file
+                try (BufferedWriter out = Files.newBufferedWriter(path.toAbsolutePath(),
+                  StandardOpenOption.WRITE, StandardOpenOption.APPEND, StandardOpenOption.CREATE)) {
+                    for (Entry entry : items.subList(from, items.size())) {
+                        if (isPersistable(entry)) {
+                            out.append(format(entry));
+                        }
                     }
                 }
             }
             incEntriesInFile(path, items.size() - from);
             int max = getInt(reader, LineReader.HISTORY_FILE_SIZE, DEFAULT_HISTORY_FILE_SIZE);
-            if (getEntriesInFile(path) > max + max / 4) {
-                trimHistory(path, max);
+            if (isSet(reader, LineReader.Option.HISTORY_SEGMENTED)) {
+                // keep between max and max + max / 4 entries, as when trimming
+                int segmentSize = Math.max(1, max / 4);
+                if (getEntriesInFile(path) >= segmentSize) {
+                    int keep = (max + segmentSize - 1) / segmentSize;
+                    if (writer != null) {
+                        writer.submit(() -> HistorySegments.rotate(path, segmentSize, keep));
+                        setEntriesInFile(path, 0);
+                    } else {
+                        setEntriesInFile(path, HistorySegments.rotate(path, segmentSize, keep));
+                    }
+                }
+            } else if (getEntriesInFile(path) > max + max / 4) {
+                if (writer != null) {
+                    // the entries in memory are left as is
+                    writer.submit(() -> trimFile(path, max));
+                    setEntriesInFile(path, max);
+                } else {
+                    trimHistory(path, max);
+                }
             }
         }
         setLastLoaded(path, items.size());
     }
 
+    private HistoryWriter writer() {
+        if (writer == null) {
+            HistoryWriter.Fsync fsync;
+            String name = getString(reader, LineReader.HISTORY_FSYNC, HistoryWriter.Fsync.NEVER.name());
+            try {
+                fsync = HistoryWriter.Fsync.valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                Log.warn("Unknown history fsync policy: ", name);
+                fsync = HistoryWriter.Fsync.NEVER;
+            }
+            writer = new HistoryWriter(getInt(reader, LineReader.HISTORY_QUEUE_SIZE, DEFAULT_HISTORY_QUEUE_SIZE), fsync);
+        }
+        return writer;
+    }
+
+    /**
+     * @return the writer used when {@link LineReader.Option#HISTORY_ASYNC_WRITE}
+     *         is set, or <code>null</code> if none has been started
+     */
+    public HistoryWriter getWriter() {
+        return writer;
+    }
+
+    private void flushWriter() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Waits for the history to be written, if it is written in the background,
+     * and stops the writer thread.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
     protected void trimHistory(Path path, int max) throws IOException {
+        List<Entry> allItems = trimFile(path, max);
+        // Keep items in memory
+        if (isLineReaderHistory(path)) {
+            internalClear();
+            offset = allItems.get(0).index();
+            items.addAll(allItems);
+            setHistoryFileData(path, new HistoryFileData(items.size(), items.size()));
+        } else {
+            setEntriesInFile(path, allItems.size());
+        }
+        maybeResize();
+    }
+
+    private List<Entry> trimFile(Path path, int max) throws IOException {
         Log.trace("Trimming history path: ", path);
         // Load all history entries
-        LinkedList<Entry> allItems = new LinkedList<>();
+        List<Entry> allItems = new ArrayList<>();
         try (BufferedReader reader = Files.newBufferedReader(path)) {
             reader.lines().forEach(l -> {
                 int idx = l.indexOf(':');
@@ -267,16 +424,7 @@ public class DefaultHistory implements History {
             }
         }
         Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
-        // Keep items in memory
-        if (isLineReaderHistory(path)) {
-            internalClear();
-            offset = allItems.get(0).index();
-            items.addAll(allItems);
-            setHistoryFileData(path, new HistoryFileData(items.size(), items.size()));
-        } else {
-            setEntriesInFile(path, allItems.size());
-        }
-        maybeResize();
+        return allItems;
     }
 
     /**
@@ -295,25 +443,22 @@ public class DefaultHistory implements History {
         index = 0;
         historyFiles = new HashMap<>();
         items.clear();
+        lineIndex = null;
     }
 
     static void doTrimHistory(List<Entry> allItems, int max) {
-        int idx = 0;
-        while (idx < allItems.size()) {
-            int ridx = allItems.size() - idx - 1;
-            String line = allItems.get(ridx).line().trim();
-            ListIterator<Entry> iterator = allItems.listIterator(ridx);
-            while (iterator.hasPrevious()) {
-                String l = iterator.previous().line();
-                if (line.equals(l.trim())) {
-                    iterator.remove();
-                }
+        // keep the last occurrence of each line, and at most max entries
+        Set<String> lines = new HashSet<>();
+        Deque<Entry> kept = new ArrayDeque<>();
+        ListIterator<Entry> iterator = allItems.listIterator(allItems.size());
+        while (iterator.hasPrevious() && kept.size() < max) {
+            Entry entry = iterator.previous();
+            if (lines.add(entry.line().trim())) {
+                kept.addFirst(entry);
             }
-            idx++;
-        }
-        while (allItems.size() > max) {
-            allItems.remove(0);
         }
+        allItems.clear();
+        allItems.addAll(kept);
     }
 
     public int size() {
@@ -366,7 +511,7 @@ public class DefaultHistory implements History {
             line = line.trim();
         }
         if (isSet(reader, LineReader.Option.HISTORY_IGNORE_DUPS)) {
-            if (!items.isEmpty() && line.equals(items.getLast().line())) {
+            if (!items.isEmpty() && line.equals(items.get(items.size() - 1).line())) {
                 return;
             }
         }
@@ -417,12 +562,15 @@ public class DefaultHistory implements History {
             }
         }
         items.add(entry);
+        if (lineIndex != null) {
+            lineIndex.add(entry.index(), line);
+        }
         maybeResize();
     }
 
     private void maybeResize() {
         while (size() > getInt(reader, LineReader.HISTORY_SIZE, DEFAULT_HISTORY_SIZE)) {
-            items.removeFirst();
+            items.remove(0);
             for (HistoryFileData hfd: historyFiles.values()) {
                 hfd.decLastLoaded();
             }
@@ -435,6 +583,69 @@ public class DefaultHistory implements History {
         return items.listIterator(index - offset);
     }
 
+    /**
+     * Finds the closest matching entry using an index of the history lines,
+     * so that only the entries which contain the term are tested.  The index
+     * is built on the first search, and covers the whole history unless
+     * {@link LineReader#HISTORY_INDEX_SIZE} is set: entries older than
+     * the indexed ones are then scanned.
+     */
+    @Override
+    public int find(String term, boolean prefix, Predicate<String> matcher, int index, boolean backward) {
+        HistoryIndex.Postings candidates = lineIndex().candidates(term, prefix);
+        if (candidates == null) {
+            return History.super.find(term, prefix, matcher, index, backward);
+        }
+        int start = Math.max(lineIndexStart, offset);
+        if (backward) {
+            for (PrimitiveIterator.OfInt it = candidates.before(index); it.hasNext(); ) {
+                int idx = it.nextInt();
+                if (idx < start) {
+                    break;
+                }
+                if (matcher.test(get(idx))) {
+                    return idx;
+                }
+            }
+            for (int idx = Math.min(index, start) - 1; idx >= offset; idx--) {
+                if (matcher.test(get(idx))) {
+                    return idx;
+                }
+            }
+        } else {
+            for (int idx = Math.max(index, offset); idx < start; idx++) {
+                if (matcher.test(get(idx))) {
+                    return idx;
+                }
+            }
+            for (PrimitiveIterator.OfInt it = candidates.from(Math.max(index, start)); it.hasNext(); ) {
+                int idx = it.nextInt();
+                if (matcher.test(get(idx))) {
+                    return idx;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private HistoryIndex lineIndex() {
+        // the whole history by default
+        int max = Math.max(0, getInt(reader, LineReader.HISTORY_INDEX_SIZE,
+                getInt(reader, LineReader.HISTORY_SIZE, DEFAULT_HISTORY_SIZE)));
+        // rebuild the index once evicted entries make up most of it,
+        // or if an entry has been removed and the following ones shifted
+        if (lineIndex == null || lineIndex.size() > 2 * Math.min(items.size(), max) + 64
+                || lineIndexShifts != items.shifts) {
+            lineIndex = new HistoryIndex();
+            lineIndexShifts = items.shifts;
+            lineIndexStart = offset + Math.max(0, items.size() - max);
+            for (int i = lineIndexStart - offset; i < items.size(); i++) {
+                lineIndex.add(offset + i, items.get(i).line());
+            }
+        }
+        return lineIndex;
+    }
+
     @Override
     public Spliterator<Entry> spliterator() {
         return items.spliterator();
@@ -474,6 +685,133 @@ public class DefaultHistory implements History {
         }
     }
 
+    /**
+     * An entry loaded from a history segment, whose line is decoded
+     * when first used.
+     */
+    private static class SegmentEntry implements Entry {
+
+        private final int index;
+        private final HistorySegments.Segment segment;
+        private final int record;
+        private final boolean timestamped;
+        private Instant time;
+        private String line;
+
+        SegmentEntry(int index, HistorySegments.Segment segment, int record, boolean timestamped, Instant loaded) {
+            this.index = index;
+            this.segment = segment;
+            this.record = record;
+            this.timestamped = timestamped;
+            this.time = timestamped ? null : loaded;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public Instant time() {
+            if (time == null) {
+                time = Instant.ofEpochMilli(segment.timestamp(record));
+            }
+            return time;
+        }
+
+        public String line() {
+            if (line == null) {
+                line = unescape(segment.line(record, timestamped));
+            }
+            return line;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d: %s", index, line());
+        }
+    }
+
+    /**
+     * A growable ring buffer of entries, so that entries can be accessed by
+     * index and the oldest ones removed in constant time.
+     */
+    private static class EntryBuffer extends AbstractList<Entry> implements RandomAccess {
+
+        private Entry[] entries = new Entry[16];
+        private int head;
+        private int size;
+        // number of removals which shifted the following entries
+        int shifts;
+
+        @Override
+        public Entry get(int index) {
+            checkIndex(index);
+            return entries[slot(index)];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean add(Entry entry) {
+            if (size == entries.length) {
+                Entry[] grown = new Entry[entries.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = entries[slot(i)];
+                }
+                entries = grown;
+                head = 0;
+            }
+            entries[slot(size++)] = entry;
+            modCount++;
+            return true;
+        }
+
+        @Override
+        public Entry remove(int index) {
+            checkIndex(index);
+            Entry entry = entries[slot(index)];
+            // shift the shorter side, so that removing the first entry is free
+            if (index < size / 2) {
+                for (int i = index; i > 0; i--) {
+                    entries[slot(i)] = entries[slot(i - 1)];
+                }
+                entries[head] = null;
+                head = slot(1);
+            } else {
+                for (int i = index; i < size - 1; i++) {
+                    entries[slot(i)] = entries[slot(i + 1)];
+                }
+                entries[slot(size - 1)] = null;
+            }
+            if (index > 0) {
+                shifts++;
+            }
+            size--;
+            modCount++;
+            return entry;
+        }
+
+        @Override
+        public void clear() {
+            entries = new Entry[16];
+            head = 0;
+            size = 0;
+            modCount++;
+        }
+
+        private int slot(int index) {
+            return (head + index) & (entries.length - 1);
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+        }
+    }
+
     //
     // Navigation
     //
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl.history;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * An index of history lines, used to find the entries that may contain
+ * a string, or start with it, without looking at the other entries.
+ *
+ * Lines are folded to ignore case, then each entry is added to the postings
+ * of the bigrams of its line, and of the first one to three characters of
+ * its line, which are the top levels of a prefix trie.  The postings hold
+ * the entry indexes in increasing order, so that the closest entries before
+ * or after a given one are found with a binary search.
+ *
+ * Postings are stored as the differences between consecutive indexes,
+ * encoded on as few bytes as needed, which takes about a third of the
+ * memory of plain integers, so that large histories can be indexed whole.
+ * They are split in blocks whose first index is kept as is, to only
+ * decode a block when looking for an entry.
+ *
+ * Bigrams rather than trigrams are indexed so that an incremental search
+ * only scans the history while its term is a single character, in which
+ * case a match is usually found right away.
+ *
+ * Entries are only ever added: the history ignores postings of entries it
+ * has evicted, and rebuilds the index once they make up most of it.
+ */
+class HistoryIndex {
+
+    static final Postings EMPTY = new Postings();
+
+    private static final int PREFIX_LENGTH = 3;
+
+    private final Map<Integer, Postings> grams = new HashMap<>();
+    private final Map<String, Postings> prefixes = new HashMap<>();
+    private int size;
+
+    static String fold(String s) {
+        char[] chars = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            // going through upper case also folds the characters which
+            // only match ignoring case once upper cased, like the long s
+            char l = Character.toLowerCase(Character.toUpperCase(c));
+            if (c != l) {
+                if (chars == null) {
+                    chars = s.toCharArray();
+                }
+                chars[i] = l;
+            }
+        }
+        return chars != null ? new String(chars) : s;
+    }
+
+    /**
+     * @return the number of entries added to the index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds an entry to the index.  Entries must be added in increasing order.
+     *
+     * @param index the index of the entry
+     * @param line the line of the entry
+     */
+    void add(int index, String line) {
+        String f = fold(line);
+        for (int i = 0; i + 2 <= f.length(); i++) {
+            grams.computeIfAbsent(bigram(f, i), g -> new Postings()).add(index);
+        }
+        for (int i = 1; i <= Math.min(PREFIX_LENGTH, f.length()); i++) {
+            prefixes.computeIfAbsent(f.substring(0, i), p -> new Postings()).add(index);
+        }
+        size++;
+    }
+
+    /**
+     * Returns the entries whose line may contain the given term, ignoring case,
+     * or start with it.  Every matching entry is returned, but not every
+     * entry returned matches.
+     *
+     * @param term the string to look for
+     * @param prefix whether the lines must start with the term
+     * @return the candidate entries, or <code>null</code> if the term is too
+     *         short for the index and any entry may match
+     */
+    Postings candidates(String term, boolean prefix) {
+        String f = fold(term);
+        Postings best = null;
+        if (prefix && !f.isEmpty()) {
+            best = prefixes.get(f.substring(0, Math.min(PREFIX_LENGTH, f.length())));
+            if (best == null) {
+                return EMPTY;
+            }
+        }
+        // every bigram of the term appears in a matching line,
+        // so the shortest posting list holds all the matches
+        for (int i = 0; i + 2 <= f.length(); i++) {
+            Postings p = grams.get(bigram(f, i));
+            if (p == null) {
+                return EMPTY;
+            }
+            if (best == null || p.size < best.size) {
+                best = p;
+            }
+        }
+        return best;
+    }
+
+    private static int bigram(String s, int i) {
+        return (s.charAt(i) << 16) | s.charAt(i + 1);
+    }
+
+    /**
+     * Entry indexes, in increasing order.
+     */
+    static class Postings {
+        private static final int BLOCK_SIZE = 64;
+
+        // the first index of each block, then the differences with
+        // the previous index, on 7 bits per byte
+        private int[] firsts = new int[1];
+        private int[] offsets = new int[1];
+        private byte[] bytes = new byte[4];
+        private int length;
+        private int size;
+        private int last;
+
+        void add(int index) {
+            // a bigram repeated in the same line
+            if (size > 0 && last == index) {
+                return;
+            }
+            if (size % BLOCK_SIZE == 0) {
+                int block = size / BLOCK_SIZE;
+                if (block == firsts.length) {
+                    firsts = Arrays.copyOf(firsts, block * 2);
+                    offsets = Arrays.copyOf(offsets, block * 2);
+                }
+                firsts[block] = index;
+                offsets[block] = length;
+            } else {
+                int delta = index - last;
+                if (length + 5 > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(length + 5, bytes.length * 2));
+                }
+                while (delta >= 0x80) {
+                    bytes[length++] = (byte) (delta | 0x80);
+                    delta >>>= 7;
+                }
+                bytes[length++] = (byte) delta;
+            }
+            last = index;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @param index an entry index
+         * @return the entries before the given one, closest first
+         */
+        PrimitiveIterator.OfInt before(int index) {
+            return new Cursor(index, true);
+        }
+
+        /**
+         * @param index an entry index
+         * @return the entries from the given one, closest first
+         */
+        PrimitiveIterator.OfInt from(int index) {
+            return new Cursor(index, false);
+        }
+
+        private int blocks() {
+            return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        }
+
+        /**
+         * @return the number of blocks whose first entry is less than the given index
+         */
+        private int blocksBefore(int index) {
+            int lo = 0;
+            int hi = blocks();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (firsts[mid] < index) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * @return the number of entries of the block, decoded in the given array
+         */
+        private int decode(int block, int[] indexes) {
+            int n = Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE);
+            int index = firsts[block];
+            int pos = offsets[block];
+            indexes[0] = index;
+            for (int i = 1; i < n; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[pos++];
+                    delta |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                index += delta;
+                indexes[i] = index;
+            }
+            return n;
+        }
+
+        private class Cursor implements PrimitiveIterator.OfInt {
+            private final int[] indexes = new int[BLOCK_SIZE];
+            private final boolean backward;
+            private int block;
+            private int count;
+            private int pos;
+
+            Cursor(int index, boolean backward) {
+                this.backward = backward;
+                int before = blocksBefore(index);
+                if (backward) {
+                    block = before - 1;
+                    if (block >= 0) {
+                        count = decode(block, indexes);
+                        pos = lowerBound(index) - 1;
+                    } else {
+                        pos = -1;
+                    }
+                } else {
+                    // the entry may be the first one of the next block
+                    block = Math.max(0, before - 1);
+                    if (block < blocks()) {
+                        count = decode(block, indexes);
+                        pos = lowerBound(index);
+                        if (pos == count && block + 1 < blocks()) {
+                            count = decode(++block, indexes);
+                            pos = 0;
+                        }
+                    }
+                }
+            }
+
+            private int lowerBound(int index) {
+                int lo = 0;
+                int hi = count;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (indexes[mid] < index) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                return lo;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return pos >= 0 && pos < count;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int index = indexes[pos];
+                if (backward) {
+                    if (--pos < 0 && block > 0) {
+                        count = decode(--block, indexes);
+                        pos = count - 1;
+                    }
+                } else {
+                    if (++pos == count && block + 1 < blocks()) {
+                        count = decode(++block, indexes);
+                        pos = 0;
+                    }
+                }
+                return index;
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.jline.reader.LineReader;
+import org.jline.utils.Log;
+import org.jline.utils.OSUtils;
+
+/**
+ * The segments of a history file, used when
+ * {@link LineReader.Option#HISTORY_SEGMENTED} is set.
+ *
+ * The history file itself is the active segment, which new entries are
+ * appended to, in the usual format.  Once it holds enough entries, it is
+ * renamed to a closed segment, named after the history file with a sequence
+ * number as extension, and the oldest closed segments are deleted.  The
+ * history is thus trimmed without being rewritten, and an existing history
+ * file is used as is as the active segment.
+ *
+ * Segments are memory-mapped and only the offsets of their records are read
+ * when loading them, so that entries are decoded once used.
+ */
+final class HistorySegments {
+
+    private HistorySegments() {
+    }
+
+    /**
+     * Returns the segments of a history file, from the oldest to the active one.
+     *
+     * @param path the history file
+     * @return the existing segments
+     * @throws IOException if the directory can not be listed
+     */
+    static List<Path> list(Path path) throws IOException {
+        List<Path> segments = closed(path);
+        if (Files.exists(path)) {
+            segments.add(path);
+        }
+        return segments;
+    }
+
+    private static List<Path> closed(Path path) throws IOException {
+        String name = name(path);
+        List<Path> segments = new ArrayList<>();
+        Path dir = path.toAbsolutePath().getParent();
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, p -> number(name, p) > 0)) {
+                for (Path p : stream) {
+                    segments.add(p);
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(p -> number(name, p)));
+        return segments;
+    }
+
+    private static String name(Path path) {
+        return path.getFileName().toString();
+    }
+
+    /**
+     * @return the sequence number of a closed segment, or -1 if the file is not one
+     */
+    private static long number(String name, Path segment) {
+        String file = segment.getFileName().toString();
+        if (!file.startsWith(name + ".")) {
+            return -1;
+        }
+        String ext = file.substring(name.length() + 1);
+        if (ext.isEmpty() || ext.length() > 18) {
+            return -1;
+        }
+        for (int i = 0; i < ext.length(); i++) {
+            if (ext.charAt(i) < '0' || ext.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Long.parseLong(ext);
+    }
+
+    /**
+     * Closes the active segment if it holds enough records, then deletes
+     * the oldest closed segments.
+     *
+     * @param path the history file
+     * @param segmentSize the number of records of a full segment
+     * @param keep the number of closed segments to keep
+     * @return the number of records left in the active segment
+     * @throws IOException if an I/O error occurs
+     */
+    static int rotate(Path path, int segmentSize, int keep) throws IOException {
+        int records;
+        try {
+            records = read(path).size();
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        if (records < segmentSize) {
+            return records;
+        }
+        List<Path> closed = closed(path);
+        long next = closed.isEmpty() ? 1 : number(name(path), closed.get(closed.size() - 1)) + 1;
+        Path segment = path.resolveSibling(name(path) + "." + next);
+        Log.trace("Closing history segment: ", segment);
+        try {
+            Files.move(path, segment);
+            closed.add(segment);
+        } catch (FileAlreadyExistsException | NoSuchFileException e) {
+            // Another process closed the segment in the meantime
+            closed = closed(path);
+        }
+        for (int i = 0; i < closed.size() - keep; i++) {
+            Files.deleteIfExists(closed.get(i));
+        }
+        return 0;
+    }
+
+    /**
+     * Deletes the closed segments of a history file.
+     *
+     * @param path the history file
+     * @throws IOException if an I/O error occurs
+     */
+    static void deleteClosed(Path path) throws IOException {
+        for (Path segment : closed(path)) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    /**
+     * Maps a segment and finds its records.
+     *
+     * @param file the segment
+     * @return the segment
+     * @throws IOException if the segment can not be read
+     */
+    static Segment read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("History file too large: " + file);
+            }
+            if (OSUtils.IS_WINDOWS) {
+                // Mapped files can not be renamed nor deleted on Windows
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // read until the end of the file
+                }
+                buffer.flip();
+            } else {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+        int[] ends = new int[64];
+        int size = 0;
+        int limit = buffer.limit();
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                if (size == ends.length) {
+                    ends = Arrays.copyOf(ends, size * 2);
+                }
+                ends[size++] = i;
+            }
+        }
+        // the last record may not end with a new line yet
+        if (limit > 0 && buffer.get(limit - 1) != '\n') {
+            if (size == ends.length) {
+                ends = Arrays.copyOf(ends, size + 1);
+            }
+            ends[size++] = limit;
+        }
+        return new Segment(buffer, ends, size);
+    }
+
+    /**
+     * The records of a segment, one per line.
+     */
+    static class Segment {
+        private final ByteBuffer buffer;
+        private final int[] ends;
+        private final int size;
+
+        Segment(ByteBuffer buffer, int[] ends, int size) {
+            this.buffer = buffer;
+            this.ends = ends;
+            this.size = size;
+        }
+
+        /**
+         * @return the number of records
+         */
+        int size() {
+            return size;
+        }
+
+        private int start(int record) {
+            return record > 0 ? ends[record - 1] + 1 : 0;
+        }
+
+        /**
+         * @param record the record
+         * @return the timestamp of the record, or -1 if it does not start with one
+         */
+        long timestamp(int record) {
+            int start = start(record);
+            int end = ends[record];
+            long millis = 0;
+            for (int i = start; i < end && i - start <= 18; i++) {
+                byte b = buffer.get(i);
+                if (b == ':') {
+                    return i > start ? millis : -1;
+                } else if (b < '0' || b > '9') {
+                    return -1;
+                }
+                millis = millis * 10 + (b - '0');
+            }
+            return -1;
+        }
+
+        /**
+         * @param record the record
+         * @param timestamped whether the record starts with a timestamp
+         * @return the escaped line of the record
+         */
+        String line(int record, boolean timestamped) {
+            int start = start(record);
+            int end = ends[record];
+            if (timestamped) {
+                while (buffer.get(start++) != ':') {
+                    // skip the timestamp
+                }
+            }
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            byte[] bytes = new byte[end - start];
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(start);
+            dup.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jline.reader.LineReader;
+import org.jline.utils.Log;
+import org.jline.utils.ShutdownHooks;
+import org.jline.utils.Threads;
+
+/**
+ * Writes history files from a background thread, used when
+ * {@link LineReader.Option#HISTORY_ASYNC_WRITE} is set.
+ *
+ * The history queues the records to append to a file, along with any
+ * trimming to do afterwards, and returns right away.  The writer thread takes
+ * all the queued records at once and appends them with a single write per
+ * file, which it forces to the storage device according to its
+ * {@link Fsync} policy.  The queue is bounded: once it is full, the history
+ * waits for the writer to catch up, so that no entry is lost.
+ *
+ * Queued records are written when the writer is flushed or closed, which
+ * is done when the JVM shuts down.  The queue depth and the time spent
+ * writing are exposed so that slow storage can be noticed.
+ */
+public class HistoryWriter implements Closeable {
+
+    /**
+     * When written records are forced to the storage device.
+     */
+    public enum Fsync {
+        /** leave it to the operating system */
+        NEVER,
+        /** after each batch of records */
+        BATCH,
+        /** when the writer is closed */
+        CLOSE
+    }
+
+    /**
+     * A file operation to run on the writer thread.
+     */
+    public interface Action {
+        void run() throws IOException;
+    }
+
+    private static final Object STOP = new Object();
+    private static final long POLL_MILLIS = 100;
+
+    private final BlockingQueue<Object> queue;
+    private final Fsync fsync;
+    private final Thread thread;
+    private final ShutdownHooks.Task hook;
+    // only accessed by the writer thread
+    private final Set<Path> unsynced = new HashSet<>();
+    // operations are queued under the read lock, so that none is queued
+    // after STOP, which would never run
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    private volatile long lastNanos;
+    private volatile long maxNanos;
+    private volatile long totalNanos;
+    private volatile long writes;
+
+    public HistoryWriter(int capacity, Fsync fsync) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.fsync = fsync;
+        this.thread = Threads.newThread(this::run, "jline-history-writer");
+        this.thread.start();
+        this.hook = ShutdownHooks.add(this::close);
+    }
+
+    public Fsync getFsync() {
+        return fsync;
+    }
+
+    /**
+     * @return the number of operations waiting to be written
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of writes, each appending a batch of records to a file
+     */
+    public long getWriteCount() {
+        return writes;
+    }
+
+    /**
+     * @return the time spent by the last write, including forcing it to the device
+     */
+    public Duration getLastWriteLatency() {
+        return Duration.ofNanos(lastNanos);
+    }
+
+    public Duration getMaxWriteLatency() {
+        return Duration.ofNanos(maxNanos);
+    }
+
+    public Duration getAverageWriteLatency() {
+        long count = writes;
+        return Duration.ofNanos(count > 0 ? totalNanos / count : 0);
+    }
+
+    /**
+     * Queues records to append to a file.
+     *
+     * @param path the file
+     * @param records the records, each ending with a new line
+     * @throws InterruptedIOException if interrupted while the queue is full
+     */
+    public void append(Path path, List<String> records) throws InterruptedIOException {
+        put(new Append(path, records));
+    }
+
+    /**
+     * Queues an operation to run once the previous records are written.
+     *
+     * @param action the operation
+     * @throws InterruptedIOException if interrupted while the queue is full
+     */
+    public void submit(Action action) throws InterruptedIOException {
+        put(action);
+    }
+
+    /**
+     * Waits until the queued records are written.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     * @throws IllegalStateException if the writer thread has stopped
+     */
+    public void flush() throws InterruptedIOException {
+        CountDownLatch latch = new CountDownLatch(1);
+        put(latch);
+        try {
+            while (!latch.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkAlive();
+            }
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    /**
+     * Writes the queued records and stops the writer thread.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    @Override
+    public void close() throws InterruptedIOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ShutdownHooks.remove(hook);
+        try {
+            while (thread.isAlive() && !queue.offer(STOP, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                // the writer thread is still draining a full queue
+            }
+            thread.join();
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    private void put(Object task) throws InterruptedIOException {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("History writer is closed");
+            }
+            do {
+                checkAlive();
+            } while (!queue.offer(task, POLL_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void checkAlive() {
+        if (!thread.isAlive()) {
+            throw new IllegalStateException("History writer thread has stopped");
+        }
+    }
+
+    private static InterruptedIOException interrupted(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        InterruptedIOException ie = new InterruptedIOException();
+        ie.initCause(e);
+        return ie;
+    }
+
+    private void run() {
+        List<Object> batch = new ArrayList<>();
+        Map<Path, StringBuilder> appends = new LinkedHashMap<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                for (Object task : batch) {
+                    if (task instanceof Append) {
+                        Append append = (Append) task;
+                        StringBuilder sb = appends.computeIfAbsent(append.path, p -> new StringBuilder());
+                        for (String record : append.records) {
+                            sb.append(record);
+                        }
+                        continue;
+                    }
+                    // keep the order of the operations on a file
+                    write(appends);
+                    if (task instanceof Action) {
+                        try {
+                            ((Action) task).run();
+                        } catch (IOException | RuntimeException e) {
+                            Log.warn("Failed to save history", e);
+                        }
+                    } else if (task instanceof CountDownLatch) {
+                        ((CountDownLatch) task).countDown();
+                    } else if (task == STOP) {
+                        sync();
+                        return;
+                    }
+                }
+                write(appends);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // stop writing
+        }
+    }
+
+    private void write(Map<Path, StringBuilder> appends) {
+        for (Map.Entry<Path, StringBuilder> entry : appends.entrySet()) {
+            Path path = entry.getKey();
+            long start = System.nanoTime();
+            try {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+                try (FileChannel channel = FileChannel.open(path.toAbsolutePath(),
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND, StandardOpenOption.CREATE)) {
+                    ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(entry.getValue()));
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    if (fsync == Fsync.BATCH) {
+                        channel.force(false);
+                    } else if (fsync == Fsync.CLOSE) {
+                        unsynced.add(path);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.warn("Failed to save history", e);
+            }
+            long nanos = System.nanoTime() - start;
+            lastNanos = nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            totalNanos += nanos;
+            writes++;
+            Log.trace("Appended history to ", path, " in ", nanos / 1000, "us");
+        }
+        appends.clear();
+    }
+
+    private void sync() {
+        for (Path path : unsynced) {
+            try (FileChannel channel = FileChannel.open(path.toAbsolutePath(), StandardOpenOption.WRITE)) {
+                channel.force(false);
+            } catch (NoSuchFileException e) {
+                // trimmed or rotated in the meantime
+            } catch (IOException e) {
+                Log.warn("Failed to save history", e);
+            }
+        }
+        unsynced.clear();
+    }
+
+    private static class Append {
+        final Path path;
+        final List<String> records;
+
+        Append(Path path, List<String> records) {
+            this.path = path;
+            this.records = records;
+        }
+    }
+}
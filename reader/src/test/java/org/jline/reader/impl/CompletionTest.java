@@ -9,19 +9,31 @@
 package org.jline.reader.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Arrays.asList;
+import org.jline.reader.Candidate;
 import org.jline.reader.Completer;
+import org.jline.reader.LineReader;
+import org.jline.reader.ParsedLine;
 import org.jline.reader.LineReader.Option;
 import org.jline.reader.Reference;
 import org.jline.reader.impl.completer.AggregateCompleter;
 import org.jline.reader.impl.completer.ArgumentCompleter;
+import org.jline.reader.impl.completer.CandidateIndex;
 import org.jline.reader.impl.completer.NullCompleter;
 import org.jline.reader.impl.completer.StringsCompleter;
 import org.jline.terminal.Size;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -134,6 +146,126 @@ public class CompletionTest extends ReaderTestSupport {
         assertLine("read and nd", new TestBuffer("read and\033[D\033[D\t\n"));
     }
 
+    @Test
+    public void testCompleteFromIndexes() throws IOException {
+        CandidateIndex index = new CandidateIndex(Arrays.asList(new Candidate("foobar"), new Candidate("bazfoo")));
+        reader.setCompleter((r, l, c) -> {
+            c.addAll(index);
+            c.add(new Candidate("quxfoo"));
+        });
+        reader.unsetOpt(Option.AUTO_LIST);
+        reader.unsetOpt(Option.AUTO_MENU);
+
+        assertBuffer("foobar ", new TestBuffer("foo\t"));
+        assertBuffer("foobar ", new TestBuffer("bar\t"));
+        assertBuffer("quxfoo ", new TestBuffer("qux\t"));
+    }
+
+    @Test
+    public void testRemoveCandidates() throws IOException {
+        CandidateIndex index = new CandidateIndex(Arrays.asList(
+                new Candidate("foobar"), new Candidate("foobaz"), new Candidate("fooqux")));
+        reader.setCompleter((r, l, c) -> {
+            c.addAll(index);
+            c.add(new Candidate("foozap"));
+            c.add(new Candidate("foozip"));
+            assertEquals("foobaz", c.get(1).value());
+            assertEquals("foozap", c.get(3).value());
+            assertTrue(c.removeIf(cand -> cand.value().startsWith("fooz")));
+            for (Iterator<Candidate> it = c.iterator(); it.hasNext(); ) {
+                if (it.next().value().equals("foobaz")) {
+                    it.remove();
+                }
+            }
+            assertEquals(2, c.size());
+        });
+        reader.unsetOpt(Option.AUTO_LIST);
+        reader.unsetOpt(Option.AUTO_MENU);
+
+        assertBuffer("foobar ", new TestBuffer("foob\t"));
+        assertBuffer("fooz", new TestBuffer("fooz\t"));
+        // the index given by the completer is left untouched
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void testAsyncCompletion() throws IOException {
+        reader.setOpt(Option.ASYNC_COMPLETION);
+        reader.setCompleter(new StringsCompleter("foo", "bar"));
+        assertBuffer("foo ", new TestBuffer("fo\t"));
+    }
+
+    @Test
+    public void testAsyncCompletionTimeout() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        reader.setOpt(Option.ASYNC_COMPLETION);
+        reader.setVariable(LineReader.COMPLETION_TIMEOUT, 50L);
+        reader.setCompleter((r, l, c) -> {
+            c.add(new Candidate("foobar"));
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                cancelled.countDown();
+            }
+        });
+        assertBuffer("foobar ", new TestBuffer("fo\t"));
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAsyncCompletionCancelledByKey() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        reader.setOpt(Option.ASYNC_COMPLETION);
+        reader.setCompleter((r, l, c) -> {
+            try {
+                while (true) {
+                    c.add(new Candidate("foo"));
+                    Thread.sleep(10);
+                }
+            } catch (CancellationException | InterruptedException e) {
+                cancelled.countDown();
+            }
+        });
+        assertBuffer("fox", new TestBuffer("fo\tx"));
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRefineCachedCandidates() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        StringsCompleter strings = new StringsCompleter("foo", "foobar", "bar");
+        reader.setCompleter(new Completer() {
+            @Override
+            public void complete(LineReader reader, ParsedLine line, List<Candidate> candidates) {
+                calls.incrementAndGet();
+                strings.complete(reader, line, candidates);
+            }
+
+            @Override
+            public long getCandidatesTtl(LineReader reader, ParsedLine line) {
+                return strings.getCandidatesTtl(reader, line);
+            }
+        });
+        reader.unsetOpt(Option.AUTO_LIST);
+        reader.unsetOpt(Option.AUTO_MENU);
+
+        assertBuffer("foobar ", new TestBuffer("f\tb\t"));
+        assertEquals(1, calls.get());
+
+        // the previous words differ
+        assertBuffer("foobar bar ", new TestBuffer("foobar b\t"));
+        assertEquals(2, calls.get());
+
+        // candidates are not reused by default
+        calls.set(0);
+        reader.setCompleter((r, l, c) -> {
+            calls.incrementAndGet();
+            strings.complete(r, l, c);
+        });
+        assertBuffer("foobar ", new TestBuffer("f\tb\t"));
+        assertEquals(2, calls.get());
+    }
+
     @Test
     public void testMenuOrder() {
         reader.setCompleter(new StringsCompleter(Arrays.asList("ae_helloWorld1", "ad_helloWorld12", "ac_helloWorld1234", "ab_helloWorld123", "aa_helloWorld12345")));
@@ -145,6 +277,27 @@ public class CompletionTest extends ReaderTestSupport {
         assertLine("ab_helloWorld123 ", new TestBuffer("a\t\t\n\n"));
     }
 
+    @Test
+    public void testMenuScrolling() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(String.format("c%04d", i));
+        }
+        reader.setCompleter(new StringsCompleter(values));
+        reader.unsetOpt(Option.AUTO_LIST);
+        reader.setOpt(Option.AUTO_MENU);
+        terminal.setSize(new Size(160, 10));
+
+        // the first tab inserts the common prefix, the menu then has
+        // 20 columns of 50 rows, of which 8 are displayed below the prompt
+        assertLine("c0009 ", new TestBuffer("c\t\t\t\t\t\t\t\t\t\t\t\n\n"));
+        String output = out.toString();
+        // the menu scrolled down to the selected row, and no further
+        assertTrue(output.contains("0059"));
+        assertFalse(output.contains("0010"));
+        assertFalse(output.contains("0060"));
+    }
+
     @Test
     public void testDumbTerminalNoSizeComplete() {
         terminal.setSize(new Size());
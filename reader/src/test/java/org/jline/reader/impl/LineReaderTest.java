@@ -8,10 +8,13 @@
  */
 package org.jline.reader.impl;
 
+import org.jline.keymap.KeyMap;
+import org.jline.reader.Binding;
 import org.jline.reader.Candidate;
 import org.jline.reader.EndOfFileException;
 import org.jline.reader.LineReader;
 import org.jline.reader.LineReaderBuilder;
+import org.jline.reader.Reference;
 import org.jline.terminal.Size;
 import org.jline.terminal.Terminal;
 import org.jline.terminal.TerminalBuilder;
@@ -29,10 +32,19 @@ import java.io.InputStream;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.jline.terminal.impl.AbstractWindowsTerminal.TYPE_WINDOWS_CONEMU;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -97,6 +109,49 @@ public class LineReaderTest {
         return new LineReaderImpl(terminal).computePost(c, null, null, "", s -> AttributedString.fromAnsi(s).columnLength(), 80, autoGroup, groupName, true).post.toString();
     }
 
+    @Test
+    public void testDefaultKeyMaps() throws IOException {
+        Terminal terminal = new DumbTerminal(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream());
+        LineReaderImpl reader = new LineReaderImpl(terminal);
+        Map<String, KeyMap<Binding>> keyMaps = reader.getKeyMaps();
+        Set<String> names = new HashSet<>(Arrays.asList(LineReader.EMACS, LineReader.VIINS, LineReader.VICMD,
+                LineReader.MENU, LineReader.VIOPP, LineReader.VISUAL, LineReader.SAFE, LineReader.MAIN));
+        assertEquals(names, keyMaps.keySet());
+        assertEquals(names.size(), keyMaps.size());
+        assertTrue(keyMaps.containsKey(LineReader.VICMD));
+        assertNull(keyMaps.get("no-such-keymap"));
+
+        // main is linked to emacs
+        KeyMap<Binding> emacs = keyMaps.get(LineReader.EMACS);
+        assertSame(emacs, keyMaps.get(LineReader.MAIN));
+        assertEquals(new Reference(LineReader.BEGINNING_OF_LINE), emacs.getBound(KeyMap.ctrl('A')));
+        assertEquals(names, keyMaps.keySet());
+
+        // replacing a key map which has not been built yet
+        KeyMap<Binding> vicmd = new KeyMap<>();
+        KeyMap<Binding> previous = keyMaps.put(LineReader.VICMD, vicmd);
+        assertNotNull(previous);
+        assertNotSame(vicmd, previous);
+        assertSame(vicmd, keyMaps.get(LineReader.VICMD));
+        assertEquals(names, keyMaps.keySet());
+
+        assertNotNull(keyMaps.remove(LineReader.SAFE));
+        assertFalse(keyMaps.containsKey(LineReader.SAFE));
+        names.remove(LineReader.SAFE);
+        assertEquals(names, keyMaps.keySet());
+        assertEquals(names.size(), keyMaps.entrySet().size());
+    }
+
+    @Test
+    public void testDefaultKeyMapsLinkMainToDefaultEmacs() throws IOException {
+        Terminal terminal = new DumbTerminal(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream());
+        LineReaderImpl reader = new LineReaderImpl(terminal);
+        KeyMap<Binding> emacs = new KeyMap<>();
+        KeyMap<Binding> previous = reader.getKeyMaps().put(LineReader.EMACS, emacs);
+        assertSame(previous, reader.getKeyMaps().get(LineReader.MAIN));
+        assertEquals(new Reference(LineReader.BEGINNING_OF_LINE), previous.getBound(KeyMap.ctrl('A')));
+    }
+
     @Test
     public void testConEmuLineReaderClearScreen() throws IOException {
         System.setProperty("org.jline.terminal.conemu.disable-activate", "false");
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl;
+
+import java.util.List;
+
+import org.jline.utils.AttributedString;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class LineWrapCacheTest {
+
+    private static final String LONG = "0123456789abcdefghij";
+
+    private static void assertSplit(AttributedString full, int columns, List<AttributedString> lines) {
+        assertEquals(full.columnSplitLength(columns, true, true), lines);
+    }
+
+    @Test
+    public void testReuse() {
+        LineReaderImpl.LineWrapCache cache = new LineReaderImpl.LineWrapCache();
+        AttributedString full = new AttributedString("> " + LONG + "\n" + LONG + "\nend");
+        List<AttributedString> first = cache.split(full, 8, true);
+        assertSplit(full, 8, first);
+        List<AttributedString> second = cache.split(new AttributedString(full.toString()), 8, true);
+        assertEquals(first, second);
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void testContentChange() {
+        LineReaderImpl.LineWrapCache cache = new LineReaderImpl.LineWrapCache();
+        List<AttributedString> first = cache.split(new AttributedString("> " + LONG + "\n" + LONG), 8, true);
+        AttributedString full = new AttributedString("> " + LONG + "\n" + LONG + "x");
+        List<AttributedString> second = cache.split(full, 8, true);
+        assertSplit(full, 8, second);
+        // the first logical line is unchanged, the second is wrapped again
+        assertSame(first.get(0), second.get(0));
+        assertNotSame(first.get(first.size() - 1), second.get(second.size() - 1));
+    }
+
+    @Test
+    public void testWidthChange() {
+        LineReaderImpl.LineWrapCache cache = new LineReaderImpl.LineWrapCache();
+        AttributedString full = new AttributedString("> " + LONG + "\n" + LONG);
+        List<AttributedString> first = cache.split(full, 8, true);
+        List<AttributedString> second = cache.split(full, 12, true);
+        assertSplit(full, 12, second);
+        assertNotSame(first.get(0), second.get(0));
+        List<AttributedString> third = cache.split(full, 12, false);
+        assertEquals(full.columnSplitLength(12, true, false), third);
+    }
+
+    @Test
+    public void testPromptChange() {
+        LineReaderImpl.LineWrapCache cache = new LineReaderImpl.LineWrapCache();
+        List<AttributedString> first = cache.split(new AttributedString("> " + LONG + "\n" + LONG), 8, true);
+        AttributedString full = new AttributedString(">> " + LONG + "\n" + LONG);
+        List<AttributedString> second = cache.split(full, 8, true);
+        assertSplit(full, 8, second);
+        assertNotSame(first.get(0), second.get(0));
+        // the line following the prompt is still reused
+        assertSame(first.get(first.size() - 1), second.get(second.size() - 1));
+    }
+}
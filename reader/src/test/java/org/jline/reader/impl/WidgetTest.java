@@ -22,6 +22,8 @@ import java.io.Reader;
 import java.nio.charset.Charset;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class WidgetTest extends ReaderTestSupport {
 
@@ -63,4 +65,13 @@ public class WidgetTest extends ReaderTestSupport {
         assertLine("foo \nbar", b, false);
     }
 
+    @Test
+    public void testBuiltinWidgets() {
+        assertEquals(LineReaderImpl.BUILTIN_WIDGETS.length, reader.getBuiltinWidgets().size());
+        for (String name : reader.getBuiltinWidgets().keySet()) {
+            assertNotNull("No builtin widget " + name, reader.builtinWidget(name));
+        }
+        assertNull(reader.builtinWidget("no-such-widget"));
+    }
+
 }
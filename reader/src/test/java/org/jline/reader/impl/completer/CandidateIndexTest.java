@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.reader.impl.completer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.jline.reader.Candidate;
+import org.jline.utils.Levenshtein;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CandidateIndexTest {
+
+    @Test
+    public void testPrefixAndInfix() {
+        CandidateIndex index = new CandidateIndex(Arrays.asList(
+                new Candidate("foo"), new Candidate("Foobar"), new Candidate("barfoo"),
+                new Candidate("\u001b[1mbaz\u001b[0m"), new Candidate("foo")));
+
+        assertEquals(set("foo"), index.startingWith("foo", false).keySet());
+        assertEquals(set("foo", "Foobar"), index.startingWith("FOO", true).keySet());
+        assertEquals(2, index.startingWith("foo", false).get("foo").size());
+        assertEquals(set("foo", "barfoo"), index.containing("foo", false).keySet());
+        assertEquals(set("foo", "Foobar", "barfoo"), index.containing("oO", true).keySet());
+        assertEquals(set("baz"), index.containing("az", false).keySet());
+        assertEquals(set("Foobar", "barfoo", "baz"), index.containing("a", false).keySet());
+        assertTrue(index.containing("zz", false).isEmpty());
+    }
+
+    @Test
+    public void testModification() {
+        CandidateIndex index = new CandidateIndex();
+        index.add(new Candidate("foo"));
+        assertEquals(set("foo"), index.startingWith("f", false).keySet());
+        index.add(new Candidate("fie"));
+        assertEquals(set("foo", "fie"), index.startingWith("f", false).keySet());
+        index.removeIf(c -> c.value().equals("foo"));
+        assertEquals(set("fie"), index.startingWith("f", false).keySet());
+        assertEquals("fie", index.get(0).value());
+    }
+
+    @Test
+    public void testAgainstScan() {
+        Random random = new Random(42);
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            candidates.add(new Candidate(word(random, 1 + random.nextInt(10))));
+        }
+        CandidateIndex index = new CandidateIndex(candidates);
+        for (int i = 0; i < 100; i++) {
+            String query = word(random, random.nextInt(4));
+            for (boolean caseInsensitive : new boolean[] { false, true }) {
+                String q = caseInsensitive ? CandidateIndex.fold(query) : query;
+                assertEquals(scan(candidates, s -> s.startsWith(q), caseInsensitive),
+                        index.startingWith(query, caseInsensitive).keySet());
+                assertEquals(scan(candidates, s -> s.contains(q), caseInsensitive),
+                        index.containing(query, caseInsensitive).keySet());
+            }
+        }
+    }
+
+    @Test
+    public void testSimilarToAgainstScan() {
+        Random random = new Random(42);
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            candidates.add(new Candidate(word(random, 1 + random.nextInt(8))));
+        }
+        CandidateIndex index = new CandidateIndex(candidates);
+        for (int i = 0; i < 30; i++) {
+            String query = word(random, random.nextInt(7));
+            for (int max = 0; max <= 2; max++) {
+                int m = max;
+                for (boolean caseInsensitive : new boolean[] { false, true }) {
+                    String q = caseInsensitive ? CandidateIndex.fold(query) : query;
+                    assertEquals(scan(candidates, s -> distance(q, s) <= m, caseInsensitive),
+                            index.similarTo(query, max, caseInsensitive).keySet());
+                }
+            }
+        }
+    }
+
+    private static int distance(String word, String cand) {
+        int d = Levenshtein.distance(word, cand);
+        if (word.length() < cand.length()) {
+            d = Math.min(d, Levenshtein.distance(word, cand.substring(0, word.length())));
+        }
+        return d;
+    }
+
+    private static Set<String> scan(List<Candidate> candidates,
+                                    Predicate<String> predicate, boolean caseInsensitive) {
+        return candidates.stream()
+                .map(Candidate::value)
+                .filter(s -> predicate.test(caseInsensitive ? CandidateIndex.fold(s) : s))
+                .collect(Collectors.toSet());
+    }
+
+    private static String word(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append("abcABC_".charAt(random.nextInt(7)));
+        }
+        return sb.toString();
+    }
+
+    private static Set<String> set(String... strings) {
+        return new HashSet<>(Arrays.asList(strings));
+    }
+}
@@ -11,6 +11,7 @@ package org.jline.reader.impl.history;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
@@ -24,6 +25,8 @@ import org.junit.Test;
 
 import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests file history.
@@ -102,4 +105,74 @@ public class HistoryPersistenceTest extends ReaderTestSupport {
         lines = Files.readAllLines(Paths.get("test"));
         assertEquals(cmdsPerThread * (nbThreads + 1), lines.size());
     }
+
+    @Test
+    public void testAsyncWrite() throws Exception {
+        reader.setVariable(LineReader.HISTORY_FILE, Paths.get("test"));
+        reader.setVariable(LineReader.HISTORY_FILE_SIZE, 8);
+        reader.setVariable(LineReader.HISTORY_FSYNC, "batch");
+        reader.setOpt(LineReader.Option.HISTORY_ASYNC_WRITE);
+
+        DefaultHistory history = (DefaultHistory) reader.getHistory();
+        history.attach(reader);
+        IntStream.range(0, 5).forEach(i -> history.add("cmd" + i));
+        HistoryWriter writer = history.getWriter();
+        assertEquals(HistoryWriter.Fsync.BATCH, writer.getFsync());
+        writer.flush();
+        assertEquals(0, writer.getQueueDepth());
+        assertTrue(writer.getWriteCount() > 0);
+        assertTrue(writer.getMaxWriteLatency().compareTo(writer.getAverageWriteLatency()) >= 0);
+        assertEquals(5, Files.readAllLines(Paths.get("test")).size());
+
+        // trimmed in the background
+        IntStream.range(5, 20).forEach(i -> history.add("cmd" + i));
+        reader.close();
+        assertNull(history.getWriter());
+        List<String> lines = Files.readAllLines(Paths.get("test"));
+        assertTrue(lines.size() >= 8 && lines.size() <= 10);
+        assertTrue(lines.get(lines.size() - 1).endsWith(":cmd19"));
+    }
+
+    @Test(timeout = 20000)
+    public void testAsyncWriteAfterFailedAction() throws Exception {
+        // a failing operation must not stop the writer thread
+        HistoryWriter writer = new HistoryWriter(4, HistoryWriter.Fsync.NEVER);
+        try {
+            writer.submit(() -> {
+                throw new IllegalStateException("failed");
+            });
+            writer.flush();
+            writer.append(Paths.get("test"), Collections.singletonList("cmd0\n"));
+            writer.flush();
+            assertEquals(Collections.singletonList("cmd0"), Files.readAllLines(Paths.get("test")));
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testAsyncWriteFlushWhileClosing() throws Exception {
+        // a flush must either complete or be rejected, never wait
+        // for an operation queued after the writer has stopped
+        for (int round = 0; round < 50; round++) {
+            HistoryWriter writer = new HistoryWriter(2, HistoryWriter.Fsync.NEVER);
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    try {
+                        while (true) {
+                            writer.flush();
+                        }
+                    } catch (IllegalStateException | IOException e) {
+                        // closed
+                    }
+                });
+                threads[i].start();
+            }
+            writer.close();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
 }
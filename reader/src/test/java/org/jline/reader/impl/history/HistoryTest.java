@@ -21,9 +21,16 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.ListIterator;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -93,6 +100,118 @@ public class HistoryTest extends ReaderTestSupport
         assertEquals("f", history.get(5));
     }
 
+    @Test
+    public void testWrapAround() {
+        reader.setVariable(LineReader.HISTORY_SIZE, 20);
+
+        for (int i = 0; i < 100; i++) {
+            history.add("line " + i);
+        }
+
+        assertEquals(20, history.size());
+        assertEquals(80, history.first());
+        assertEquals(99, history.last());
+        for (int i = 80; i < 100; i++) {
+            assertEquals("line " + i, history.get(i));
+        }
+        ListIterator<History.Entry> it = history.iterator(90);
+        assertEquals(90, it.next().index());
+        assertEquals(91, it.next().index());
+        assertEquals(91, it.previous().index());
+        assertEquals(90, it.previous().index());
+        assertEquals(89, it.previous().index());
+
+        assertTrue(history.moveTo(85));
+        assertEquals("line 85", history.current());
+        assertTrue(history.previous());
+        assertEquals("line 84", history.current());
+    }
+
+    @Test
+    public void testFindAgainstScan() {
+        assertFindAgainstScan();
+    }
+
+    @Test
+    public void testFindAgainstScanPartialIndex() {
+        // only the newest entries are indexed, the older ones are scanned
+        reader.setVariable(LineReader.HISTORY_INDEX_SIZE, 50);
+        assertFindAgainstScan();
+    }
+
+    @Test
+    public void testPostings() {
+        // gaps encoded on one to three bytes, over many blocks
+        Random random = new Random(1);
+        int[] indexes = new int[1000];
+        HistoryIndex.Postings postings = new HistoryIndex.Postings();
+        int index = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            index += 1 + random.nextInt(1 << random.nextInt(21));
+            indexes[i] = index;
+            postings.add(index);
+            postings.add(index);
+        }
+        assertEquals(indexes.length, postings.size());
+        for (int i = 0; i < indexes.length; i += 3) {
+            for (int from : new int[] { indexes[i] - 1, indexes[i], indexes[i] + 1 }) {
+                int k = 0;
+                while (k < indexes.length && indexes[k] < from) {
+                    k++;
+                }
+                PrimitiveIterator.OfInt after = postings.from(from);
+                PrimitiveIterator.OfInt before = postings.before(from);
+                for (int j = k; j < indexes.length; j++) {
+                    assertEquals(indexes[j], after.nextInt());
+                }
+                assertFalse(after.hasNext());
+                for (int j = k - 1; j >= 0; j--) {
+                    assertEquals(indexes[j], before.nextInt());
+                }
+                assertFalse(before.hasNext());
+            }
+        }
+        assertFalse(HistoryIndex.EMPTY.from(0).hasNext());
+        assertFalse(HistoryIndex.EMPTY.before(1).hasNext());
+    }
+
+    private void assertFindAgainstScan() {
+        reader.setVariable(LineReader.HISTORY_SIZE, 300);
+        Random random = new Random(1);
+        String[] words = { "ls", "Git", "commit", "git status", "cd ..", "mvn", "ſtatus", "échec" };
+        for (int i = 0; i < 1000; i++) {
+            history.add(words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]);
+            if (i % 100 == 0) {
+                // the index is built by the first search, then kept up to date
+                history.find("git", false, l -> true, history.last() + 1, true);
+            }
+        }
+
+        String[] terms = { "git", "GIT", "it s", "mvn c", "status", "STATUS", "chec", "xyz", "l", "" };
+        for (String term : terms) {
+            for (boolean prefix : new boolean[] { false, true }) {
+                String t = HistoryIndex.fold(term);
+                Predicate<String> matcher = prefix
+                        ? l -> HistoryIndex.fold(l).startsWith(t)
+                        : l -> HistoryIndex.fold(l).contains(t);
+                for (int from = history.first() - 10; from <= history.last() + 10; from += 7) {
+                    for (boolean backward : new boolean[] { false, true }) {
+                        int expected = -1;
+                        int start = backward ? Math.min(from, history.last() + 1) - 1 : Math.max(from, history.first());
+                        for (int i = start; i >= history.first() && i <= history.last(); i += backward ? -1 : 1) {
+                            if (matcher.test(history.get(i))) {
+                                expected = i;
+                                break;
+                            }
+                        }
+                        assertEquals(term + " " + prefix + " " + from + " " + backward,
+                                expected, history.find(term, prefix, matcher, from, backward));
+                    }
+                }
+            }
+        }
+    }
+
     @Test
     public void testTrimIterate() throws IOException {
         Path histFile = Files.createTempFile(null, null);
@@ -126,6 +245,42 @@ public class HistoryTest extends ReaderTestSupport
         }
     }
 
+    @Test
+    public void testSegments() throws IOException {
+        Path dir = Files.createTempDirectory("jline");
+        Path histFile = dir.resolve("history");
+        // an existing history file becomes the active segment
+        Files.write(histFile, Arrays.asList("1:old 0", "2:old\\n1"));
+
+        reader.setVariable(LineReader.HISTORY_FILE, histFile);
+        reader.setVariable(LineReader.HISTORY_SIZE, 100);
+        reader.setVariable(LineReader.HISTORY_FILE_SIZE, 8);
+        reader.setOpt(LineReader.Option.HISTORY_SEGMENTED);
+        history.load();
+        assertHistoryContains(0, "old 0", "old\n1");
+        assertEquals(1, history.iterator().next().time().toEpochMilli());
+
+        for (int i = 0; i < 20; i++) {
+            history.add("line " + i);
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            // the active segment and at most four closed segments of two entries
+            assertTrue(files.count() <= 5);
+        }
+        DefaultHistory loaded = new DefaultHistory(reader);
+        assertTrue(loaded.size() >= 8 && loaded.size() <= 10);
+        for (int i = 0; i < loaded.size(); i++) {
+            assertEquals("line " + (20 - loaded.size() + i), loaded.get(loaded.first() + i));
+        }
+
+        loaded.purge();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(dir);
+    }
+
     @Test
     public void testTrim() {
         List<History.Entry> entries = new ArrayList<>();
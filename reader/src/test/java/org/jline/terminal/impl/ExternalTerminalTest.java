@@ -17,6 +17,7 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jline.reader.LineReader;
 import org.jline.reader.LineReaderBuilder;
@@ -78,6 +79,45 @@ public class ExternalTerminalTest {
         assertEquals("a\nb", output);
     }
 
+    @Test
+    public void testLineDiscipline() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LineDisciplineTerminal terminal = new LineDisciplineTerminal("foo", "ansi", out, StandardCharsets.UTF_8);
+        AtomicInteger interrupts = new AtomicInteger();
+        terminal.handle(Terminal.Signal.INT, s -> interrupts.incrementAndGet());
+        Attributes attributes = terminal.getAttributes();
+        attributes.setLocalFlag(LocalFlag.ECHO, true);
+        attributes.setLocalFlag(LocalFlag.ISIG, true);
+        attributes.setControlChar(ControlChar.VINTR, 3);
+        attributes.setInputFlag(InputFlag.ICRNL, true);
+        attributes.setOutputFlags(EnumSet.of(OutputFlag.OPOST, OutputFlag.ONLCR));
+        terminal.setAttributes(attributes);
+
+        terminal.processInputBytes("ab\rc\u0003d\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, interrupts.get());
+        byte[] buf = new byte[16];
+        int l = terminal.slaveInput.readBuffered(buf);
+        assertEquals("ab\ncd\n", new String(buf, 0, l, StandardCharsets.UTF_8));
+        assertEquals("ab\r\ncd\r\n", out.toString("UTF-8"));
+
+        attributes.setInputFlag(InputFlag.ICRNL, false);
+        attributes.setInputFlag(InputFlag.INLCR, true);
+        attributes.setLocalFlag(LocalFlag.ECHO, false);
+        terminal.setAttributes(attributes);
+        terminal.processInputBytes("e\nf\r".getBytes(StandardCharsets.UTF_8));
+        l = terminal.slaveInput.readBuffered(buf);
+        assertEquals("e\rf\r", new String(buf, 0, l, StandardCharsets.UTF_8));
+
+        out.reset();
+        terminal.output().write("x\ny\n\nz".getBytes(StandardCharsets.UTF_8));
+        assertEquals("x\r\ny\r\n\r\nz", out.toString("UTF-8"));
+        attributes.setOutputFlags(EnumSet.of(OutputFlag.OPOST));
+        terminal.setAttributes(attributes);
+        out.reset();
+        terminal.output().write("x\ny".getBytes(StandardCharsets.UTF_8));
+        assertEquals("x\ny", out.toString("UTF-8"));
+    }
+
     @Test
     @Ignore("This test very often fails on Travis CI")
     public void testInterrupt() throws Exception {
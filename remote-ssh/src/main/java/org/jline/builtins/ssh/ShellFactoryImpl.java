@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Consumer;
 
 import org.apache.sshd.common.Factory;
@@ -31,6 +32,7 @@ import org.jline.terminal.Attributes.OutputFlag;
 import org.jline.terminal.Size;
 import org.jline.terminal.Terminal;
 import org.jline.terminal.TerminalBuilder;
+import org.jline.utils.Threads;
 
 /**
  * SSHD {@link org.apache.sshd.server.command.Command} factory which provides access to
@@ -38,11 +40,23 @@ import org.jline.terminal.TerminalBuilder;
  */
 public class ShellFactoryImpl implements Factory<Command> {
     private final Consumer<Ssh.ShellParams> shell;
+    private volatile ThreadFactory threadFactory;
 
     public ShellFactoryImpl(Consumer<Ssh.ShellParams> shell) {
         this.shell = shell;
     }
 
+    /**
+     * Sets the factory creating the threads of the shells, and of their
+     * terminals, the default one being used when <code>null</code>.
+     * Use {@link Threads#virtual()} to serve many sessions from virtual threads.
+     *
+     * @param threadFactory the thread factory
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
     private static void flush(OutputStream... streams) {
         for (OutputStream s : streams) {
             try {
@@ -102,13 +116,13 @@ public class ShellFactoryImpl implements Factory<Command> {
 
         public void start(final Environment env) throws IOException {
             try {
-                new Thread(() -> {
+                Threads.newThread(threadFactory, () -> {
                     try {
                         ShellImpl.this.run(env);
                     } catch (Throwable t) {
                         t.printStackTrace();
                     }
-                }).start();
+                }, null, false).start();
             } catch (Exception e) {
                 throw new IOException("Unable to start shell", e);
             }
@@ -121,6 +135,7 @@ public class ShellFactoryImpl implements Factory<Command> {
                         .type(env.getEnv().get("TERM"))
                         .system(false)
                         .streams(in, out)
+                        .threadFactory(threadFactory)
                         .build();
                 terminal.setSize(new Size(Integer.parseInt(env.getEnv().get("COLUMNS")),
                                           Integer.parseInt(env.getEnv().get("LINES"))));
@@ -15,10 +15,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.Optional;
 import java.util.ServiceLoader;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.jline.terminal.impl.AbstractPosixTerminal;
@@ -26,6 +30,7 @@ import org.jline.terminal.impl.AbstractTerminal;
 import org.jline.terminal.impl.DumbTerminal;
 import org.jline.terminal.impl.ExecPty;
 import org.jline.terminal.impl.ExternalTerminal;
+import org.jline.terminal.impl.InputDispatcher;
 import org.jline.terminal.impl.PosixPtyTerminal;
 import org.jline.terminal.impl.PosixSysTerminal;
 import org.jline.terminal.spi.JansiSupport;
@@ -104,6 +109,9 @@ public final class TerminalBuilder {
     private boolean nativeSignals = false;
     private Terminal.SignalHandler signalHandler = Terminal.SignalHandler.SIG_DFL;
     private boolean paused = false;
+    private SelectableChannel channel;
+    private InputDispatcher dispatcher;
+    private ThreadFactory threadFactory;
 
     private TerminalBuilder() {
     }
@@ -116,6 +124,26 @@ public final class TerminalBuilder {
     public TerminalBuilder streams(InputStream in, OutputStream out) {
         this.in = in;
         this.out = out;
+        this.channel = null;
+        return this;
+    }
+
+    /**
+     * Creates the terminal on a selectable channel for its input, such as
+     * a socket channel, instead of an input stream.  A
+     * {@link #dispatcher(InputDispatcher) dispatcher} selects the channel,
+     * while it has to poll input streams.
+     * @param in a readable channel, in blocking mode
+     * @param out the output stream
+     * @return The builder
+     */
+    public TerminalBuilder channel(SelectableChannel in, OutputStream out) {
+        if (!(in instanceof ReadableByteChannel)) {
+            throw new IllegalArgumentException("Channel is not readable: " + in);
+        }
+        this.in = Channels.newInputStream((ReadableByteChannel) in);
+        this.out = out;
+        this.channel = in;
         return this;
     }
 
@@ -259,6 +287,36 @@ public final class TerminalBuilder {
         return this;
     }
 
+    /**
+     * Reads the input of a terminal created on the given streams from the
+     * thread of a dispatcher, which can be shared by many terminals, instead
+     * of threads started for each terminal.  The terminal is not backed
+     * by a pty.  An input {@link #channel(SelectableChannel, OutputStream)
+     * channel} is selected, while an input stream is polled every 10
+     * milliseconds, which only scales to a limited number of terminals.
+     * @param dispatcher the dispatcher reading the input
+     * @return The builder
+     * @see InputDispatcher
+     */
+    public TerminalBuilder dispatcher(InputDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        return this;
+    }
+
+    /**
+     * Creates the threads pumping the input and output of a terminal
+     * created on the given streams with this factory instead of the
+     * default one.  Use {@link org.jline.utils.Threads#virtual()} to pump
+     * the streams of many terminals from virtual threads.
+     * @param threadFactory the factory creating the threads
+     * @return The builder
+     * @see org.jline.utils.Threads
+     */
+    public TerminalBuilder threadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+        return this;
+    }
+
     public Terminal build() throws IOException {
         Terminal terminal = doBuild();
         Log.debug(() -> "Using terminal " + terminal.getClass().getSimpleName());
@@ -437,11 +495,15 @@ public final class TerminalBuilder {
                 throw exception;
             }
             return terminal;
+        } else if (dispatcher != null && channel != null) {
+            return new ExternalTerminal(name, type, channel, out, encoding, signalHandler, paused, attributes, size, dispatcher, threadFactory);
+        } else if (dispatcher != null) {
+            return new ExternalTerminal(name, type, in, out, encoding, signalHandler, paused, attributes, size, dispatcher, threadFactory);
         } else {
             if (jna) {
                 try {
                     Pty pty = load(JnaSupport.class).open(attributes, size);
-                    return new PosixPtyTerminal(name, type, pty, in, out, encoding, signalHandler, paused);
+                    return new PosixPtyTerminal(name, type, pty, in, out, encoding, signalHandler, paused, threadFactory);
                 } catch (Throwable t) {
                     Log.debug("Error creating JNA based terminal: ", t.getMessage(), t);
                 }
@@ -449,12 +511,12 @@ public final class TerminalBuilder {
             if (jansi) {
                 try {
                     Pty pty = load(JansiSupport.class).open(attributes, size);
-                    return new PosixPtyTerminal(name, type, pty, in, out, encoding, signalHandler, paused);
+                    return new PosixPtyTerminal(name, type, pty, in, out, encoding, signalHandler, paused, threadFactory);
                 } catch (Throwable t) {
                     Log.debug("Error creating JANSI based terminal: ", t.getMessage(), t);
                 }
             }
-            return new ExternalTerminal(name, type, in, out, encoding, signalHandler, paused, attributes, size);
+            return new ExternalTerminal(name, type, in, out, encoding, signalHandler, paused, attributes, size, null, threadFactory);
         }
     }
 
@@ -31,6 +31,7 @@ import org.jline.utils.Curses;
 import org.jline.utils.InfoCmp;
 import org.jline.utils.InfoCmp.Capability;
 import org.jline.utils.Log;
+import org.jline.utils.FrameScheduler;
 import org.jline.utils.Status;
 
 public abstract class AbstractTerminal implements Terminal {
@@ -42,7 +43,12 @@ public abstract class AbstractTerminal implements Terminal {
     protected final Set<Capability> bools = new HashSet<>();
     protected final Map<Capability, Integer> ints = new HashMap<>();
     protected final Map<Capability, String> strings = new HashMap<>();
+    /*
+     * Compiled string capabilities, indexed by capability ordinal
+     */
+    private final Curses.Program[] programs = new Curses.Program[Capability.values().length];
     protected Status status;
+    protected FrameScheduler frameScheduler;
     protected Runnable onClose;
 
     public AbstractTerminal(String name, String type) throws IOException {
@@ -73,6 +79,13 @@ public abstract class AbstractTerminal implements Terminal {
         return status;
     }
 
+    public synchronized FrameScheduler getFrameScheduler(boolean create) {
+        if (frameScheduler == null && create) {
+            frameScheduler = new FrameScheduler();
+        }
+        return frameScheduler;
+    }
+
     public SignalHandler handle(Signal signal, SignalHandler handler) {
         Objects.requireNonNull(signal);
         Objects.requireNonNull(handler);
@@ -101,6 +114,9 @@ public abstract class AbstractTerminal implements Terminal {
     }
 
     protected void doClose() throws IOException {
+        if (frameScheduler != null) {
+            frameScheduler.flush();
+        }
         if (status != null) {
             status.update(null);
             flush();
@@ -179,7 +195,12 @@ public abstract class AbstractTerminal implements Terminal {
         if (str == null) {
             return false;
         }
-        Curses.tputs(writer(), str, params);
+        Curses.Program program = programs[capability.ordinal()];
+        if (program == null || program.source() != str) {
+            program = Curses.compile(str);
+            programs[capability.ordinal()] = program;
+        }
+        program.tputs(writer(), params);
         return true;
     }
 
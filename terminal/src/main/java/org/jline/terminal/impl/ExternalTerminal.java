@@ -11,11 +11,16 @@ package org.jline.terminal.impl;
 import org.jline.terminal.Attributes;
 import org.jline.terminal.Cursor;
 import org.jline.terminal.Size;
+import org.jline.utils.Threads;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 import java.nio.charset.Charset;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.IntConsumer;
 
@@ -26,7 +31,10 @@ import java.util.function.IntConsumer;
  * connections, such as from the network (through telnet, ssh,
  * or any kind of protocol).
  * The terminal will start consuming the input in a separate thread
- * to generate interruption events.
+ * to generate interruption events, or from the thread of the given
+ * {@link InputDispatcher}, which can be shared by many terminals.
+ * The dispatcher selects the input when it is given as a
+ * {@link SelectableChannel}, and polls it when it is an input stream.
  *
  * @see LineDisciplineTerminal
  */
@@ -34,9 +42,13 @@ public class ExternalTerminal extends LineDisciplineTerminal {
 
     protected final AtomicBoolean closed = new AtomicBoolean();
     protected final InputStream masterInput;
+    protected final SelectableChannel masterChannel;
     protected final Object lock = new Object();
     protected boolean paused = true;
     protected Thread pumpThread;
+    protected final InputDispatcher dispatcher;
+    protected InputDispatcher.Registration registration;
+    protected final ThreadFactory threadFactory;
 
     public ExternalTerminal(String name, String type,
                             InputStream masterInput,
@@ -70,8 +82,70 @@ public class ExternalTerminal extends LineDisciplineTerminal {
                             boolean paused,
                             Attributes attributes,
                             Size size) throws IOException {
+        this(name, type, masterInput, masterOutput, encoding, signalHandler, paused, attributes, size, null);
+    }
+
+    public ExternalTerminal(String name, String type,
+                            InputStream masterInput,
+                            OutputStream masterOutput,
+                            Charset encoding,
+                            SignalHandler signalHandler,
+                            boolean paused,
+                            Attributes attributes,
+                            Size size,
+                            InputDispatcher dispatcher) throws IOException {
+        this(name, type, masterInput, masterOutput, encoding, signalHandler, paused, attributes, size, dispatcher, null);
+    }
+
+    public ExternalTerminal(String name, String type,
+                            InputStream masterInput,
+                            OutputStream masterOutput,
+                            Charset encoding,
+                            SignalHandler signalHandler,
+                            boolean paused,
+                            Attributes attributes,
+                            Size size,
+                            InputDispatcher dispatcher,
+                            ThreadFactory threadFactory) throws IOException {
+        this(name, type, masterInput, null, masterOutput, encoding, signalHandler, paused, attributes, size,
+                dispatcher, threadFactory);
+    }
+
+    /**
+     * Creates a terminal reading its input from a channel, which the given
+     * dispatcher selects instead of polling it.  Without a dispatcher, the
+     * channel must be in blocking mode, and is read by a pump thread.
+     */
+    public ExternalTerminal(String name, String type,
+                            SelectableChannel masterInput,
+                            OutputStream masterOutput,
+                            Charset encoding,
+                            SignalHandler signalHandler,
+                            boolean paused,
+                            Attributes attributes,
+                            Size size,
+                            InputDispatcher dispatcher,
+                            ThreadFactory threadFactory) throws IOException {
+        this(name, type, Channels.newInputStream(readable(masterInput)), masterInput, masterOutput, encoding,
+                signalHandler, paused, attributes, size, dispatcher, threadFactory);
+    }
+
+    private ExternalTerminal(String name, String type,
+                             InputStream masterInput,
+                             SelectableChannel masterChannel,
+                             OutputStream masterOutput,
+                             Charset encoding,
+                             SignalHandler signalHandler,
+                             boolean paused,
+                             Attributes attributes,
+                             Size size,
+                             InputDispatcher dispatcher,
+                             ThreadFactory threadFactory) throws IOException {
         super(name, type, masterOutput, encoding, signalHandler);
         this.masterInput = masterInput;
+        this.masterChannel = masterChannel;
+        this.dispatcher = dispatcher;
+        this.threadFactory = threadFactory;
         if (attributes != null) {
             setAttributes(attributes);
         }
@@ -83,9 +157,23 @@ public class ExternalTerminal extends LineDisciplineTerminal {
         }
     }
 
+    private static ReadableByteChannel readable(SelectableChannel channel) {
+        if (!(channel instanceof ReadableByteChannel)) {
+            throw new IllegalArgumentException("Channel is not readable: " + channel);
+        }
+        return (ReadableByteChannel) channel;
+    }
+
     protected void doClose() throws IOException {
         if (closed.compareAndSet(false, true)) {
             pause();
+            InputDispatcher.Registration r;
+            synchronized (lock) {
+                r = registration;
+            }
+            if (r != null) {
+                r.cancel();
+            }
             super.doClose();
         }
     }
@@ -97,17 +185,28 @@ public class ExternalTerminal extends LineDisciplineTerminal {
 
     @Override
     public void pause() {
+        InputDispatcher.Registration r;
         synchronized (lock) {
             paused = true;
+            r = registration;
+        }
+        if (r != null) {
+            r.pause();
         }
     }
 
     @Override
     public void pause(boolean wait) throws InterruptedException {
         Thread p;
+        InputDispatcher.Registration r;
         synchronized (lock) {
             paused = true;
             p = pumpThread;
+            r = registration;
+        }
+        if (r != null) {
+            // waits for any input being delivered
+            r.pause();
         }
         if (p != null) {
             p.interrupt();
@@ -119,9 +218,16 @@ public class ExternalTerminal extends LineDisciplineTerminal {
     public void resume() {
         synchronized (lock) {
             paused = false;
-            if (pumpThread == null) {
-                pumpThread = new Thread(this::pump, toString() + " input pump thread");
-                pumpThread.setDaemon(true);
+            if (dispatcher != null) {
+                if (registration == null) {
+                    registration = masterChannel != null
+                            ? dispatcher.register(this, masterChannel)
+                            : dispatcher.register(this, masterInput);
+                } else {
+                    registration.resume();
+                }
+            } else if (pumpThread == null) {
+                pumpThread = Threads.newThread(threadFactory, this::pump, toString() + " input pump thread", true);
                 pumpThread.start();
             }
         }
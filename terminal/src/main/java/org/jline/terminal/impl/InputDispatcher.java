@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.terminal.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+
+import org.jline.terminal.TerminalBuilder;
+import org.jline.utils.Log;
+import org.jline.utils.Threads;
+
+/**
+ * Reads the input of many terminals from a single thread.
+ *
+ * Each {@link ExternalTerminal} otherwise starts a thread to read its input,
+ * which does not scale to thousands of remote sessions.  Terminals built by a
+ * {@link TerminalBuilder} given a dispatcher, or registered with it, have
+ * their input read by the dispatcher's thread and delivered straight to
+ * their line discipline.
+ *
+ * Selectable channels are put in non blocking mode and read once selected,
+ * so that idle terminals cost nothing.  Other input streams are polled:
+ * every 10 milliseconds, {@link InputStream#available()} is called on each
+ * of them, which adds up for thousands of terminals, so their input should
+ * be given as channels whenever possible.  Only the bytes a stream reports
+ * as available are read: the end of such streams is not detected, so their
+ * terminals must be closed by their owner.
+ *
+ * No more bytes are read for a terminal than its input buffer can hold,
+ * so that a terminal whose input is not consumed does not hold the others.
+ * The master output of the terminals should not block for long, as echoing
+ * happens on the dispatcher's thread.
+ */
+public class InputDispatcher implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final long POLL_INTERVAL = 10L;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Registration> pending = new ConcurrentLinkedQueue<>();
+    // only accessed by the dispatcher thread
+    private final List<Registration> polled = new ArrayList<>();
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private volatile boolean closed;
+
+    public InputDispatcher() throws IOException {
+        this("jline-input-dispatcher");
+    }
+
+    public InputDispatcher(String name) throws IOException {
+        this(name, null);
+    }
+
+    /**
+     * @param name the name of the dispatcher thread
+     * @param threadFactory the factory creating the dispatcher thread,
+     *                      or <code>null</code> to use the default one
+     * @throws IOException if the selector can not be opened
+     * @see Threads
+     */
+    public InputDispatcher(String name, ThreadFactory threadFactory) throws IOException {
+        this.selector = Selector.open();
+        this.thread = Threads.newThread(threadFactory, this::run, name, true);
+        this.thread.start();
+    }
+
+    /**
+     * Reads the input of a terminal from a selectable channel.
+     *
+     * @param terminal the terminal to deliver the input to
+     * @param channel a readable channel, which is put in non blocking mode
+     * @return the registration, used to pause or stop reading
+     */
+    public Registration register(LineDisciplineTerminal terminal, SelectableChannel channel) {
+        if (!(channel instanceof ReadableByteChannel)) {
+            throw new IllegalArgumentException("Channel is not readable: " + channel);
+        }
+        return register(new Registration(terminal, channel, null));
+    }
+
+    /**
+     * Reads the input of a terminal from a stream, which is polled.
+     *
+     * @param terminal the terminal to deliver the input to
+     * @param stream the input stream
+     * @return the registration, used to pause or stop reading
+     */
+    public Registration register(LineDisciplineTerminal terminal, InputStream stream) {
+        return register(new Registration(terminal, null, stream));
+    }
+
+    private Registration register(Registration registration) {
+        if (closed) {
+            throw new IllegalStateException("Input dispatcher is closed");
+        }
+        registration.update();
+        return registration;
+    }
+
+    /**
+     * Stops the dispatcher thread.  The registered terminals do not
+     * receive input anymore.
+     *
+     * @throws InterruptedIOException if interrupted while waiting for the thread
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        selector.close();
+    }
+
+    private void run() {
+        List<Registration> throttled = new ArrayList<>();
+        try {
+            while (!closed) {
+                if (polled.isEmpty() && throttled.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.select(POLL_INTERVAL);
+                }
+                Registration r;
+                while ((r = pending.poll()) != null) {
+                    r.apply();
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid()) {
+                        transfer((Registration) key.attachment(), throttled);
+                    }
+                }
+                for (int i = 0; i < polled.size(); i++) {
+                    transfer(polled.get(i), null);
+                }
+                for (Iterator<Registration> ti = throttled.iterator(); ti.hasNext(); ) {
+                    r = ti.next();
+                    if (r.terminal.slaveInput.remainingCapacity() > 0) {
+                        ti.remove();
+                        r.apply();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.warn("Input dispatcher failed", e);
+        }
+    }
+
+    private void transfer(Registration r, List<Registration> throttled) {
+        synchronized (r) {
+            if (r.paused || r.cancelled) {
+                return;
+            }
+            try {
+                int free = Math.min(r.terminal.slaveInput.remainingCapacity(), BUFFER_SIZE);
+                if (free == 0) {
+                    if (throttled != null) {
+                        // stop selecting the channel until the input is consumed
+                        r.key.interestOps(0);
+                        throttled.add(r);
+                    }
+                    return;
+                }
+                int n;
+                if (r.stream != null) {
+                    n = Math.min(r.stream.available(), free);
+                    if (n > 0) {
+                        n = r.stream.read(bytes, 0, n);
+                    }
+                } else {
+                    buffer.clear();
+                    buffer.limit(free);
+                    n = ((ReadableByteChannel) r.channel).read(buffer);
+                }
+                if (n > 0) {
+                    r.terminal.processInputBytes(bytes, 0, n);
+                } else if (n < 0) {
+                    r.terminal.slaveInput.close();
+                    r.cancel();
+                }
+            } catch (IOException e) {
+                r.terminal.processIOException(e);
+                r.closeInput();
+                r.cancel();
+            } catch (RuntimeException e) {
+                // a closed channel or a failing signal handler only
+                // stops the input of this terminal
+                Log.warn("Failed to deliver terminal input", e);
+                r.closeInput();
+                r.cancel();
+            }
+        }
+    }
+
+    /**
+     * A terminal whose input is read by the dispatcher.
+     */
+    public class Registration {
+        private final LineDisciplineTerminal terminal;
+        private final SelectableChannel channel;
+        private final InputStream stream;
+        // only accessed by the dispatcher thread
+        private SelectionKey key;
+        private boolean registered;
+        private boolean paused;
+        private boolean cancelled;
+
+        Registration(LineDisciplineTerminal terminal, SelectableChannel channel, InputStream stream) {
+            this.terminal = terminal;
+            this.channel = channel;
+            this.stream = stream;
+        }
+
+        /**
+         * Stops reading the input, waiting for any input being delivered.
+         */
+        public void pause() {
+            synchronized (this) {
+                paused = true;
+            }
+            update();
+        }
+
+        public void resume() {
+            synchronized (this) {
+                paused = false;
+            }
+            update();
+        }
+
+        public synchronized boolean isPaused() {
+            return paused;
+        }
+
+        /**
+         * Stops reading the input for good.
+         */
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+            }
+            update();
+        }
+
+        private void update() {
+            pending.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Registers, updates or removes the registration on the dispatcher thread.
+         */
+        private void apply() {
+            boolean active;
+            boolean done;
+            synchronized (this) {
+                active = !paused && !cancelled;
+                done = cancelled;
+            }
+            if (stream != null) {
+                if (done) {
+                    polled.remove(this);
+                } else if (!registered) {
+                    polled.add(this);
+                    registered = true;
+                }
+                return;
+            }
+            try {
+                if (done) {
+                    if (key != null) {
+                        key.cancel();
+                    }
+                } else if (key == null) {
+                    channel.configureBlocking(false);
+                    key = channel.register(selector, active ? SelectionKey.OP_READ : 0, this);
+                } else if (key.isValid()) {
+                    key.interestOps(active ? SelectionKey.OP_READ : 0);
+                }
+            } catch (IOException e) {
+                terminal.processIOException(e);
+            } catch (RuntimeException e) {
+                // the channel was closed from another thread
+                Log.warn("Failed to register terminal input", e);
+                synchronized (this) {
+                    cancelled = true;
+                }
+                if (key != null) {
+                    key.cancel();
+                }
+                closeInput();
+            }
+        }
+
+        private void closeInput() {
+            try {
+                terminal.slaveInput.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
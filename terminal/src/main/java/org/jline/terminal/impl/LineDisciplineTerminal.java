@@ -62,6 +62,8 @@ public class LineDisciplineTerminal extends AbstractTerminal {
 
     private static final int PIPE_SIZE = 1024;
 
+    private static final byte[] CRLF = { '\r', '\n' };
+
     /*
      * Master output stream
      */
@@ -190,8 +192,40 @@ public class LineDisciplineTerminal extends AbstractTerminal {
 
     public void processInputBytes(byte[] input, int offset, int length) throws IOException {
         boolean flushOut = false;
-        for (int i = 0; i < length; i++) {
-            flushOut |= doProcessInputByte(input[offset + i]);
+        int end = offset + length;
+        int start = offset;
+        while (start < end) {
+            // The attributes may be changed by the signal handlers, so they
+            // are read again after each byte needing a special processing
+            boolean isig = attributes.getLocalFlag(LocalFlag.ISIG);
+            int vintr = isig ? attributes.getControlChar(ControlChar.VINTR) : Integer.MIN_VALUE;
+            int vquit = isig ? attributes.getControlChar(ControlChar.VQUIT) : Integer.MIN_VALUE;
+            int vsusp = isig ? attributes.getControlChar(ControlChar.VSUSP) : Integer.MIN_VALUE;
+            int vstatus = isig ? attributes.getControlChar(ControlChar.VSTATUS) : Integer.MIN_VALUE;
+            boolean cr = attributes.getInputFlag(InputFlag.IGNCR) || attributes.getInputFlag(InputFlag.ICRNL);
+            boolean nl = attributes.getInputFlag(InputFlag.INLCR);
+            boolean echo = attributes.getLocalFlag(LocalFlag.ECHO);
+            // Find the bytes which are passed through unchanged
+            int i = start;
+            while (i < end) {
+                int c = input[i];
+                if (c == vintr || c == vquit || c == vsusp || c == vstatus
+                        || (cr && c == '\r') || (nl && c == '\n')) {
+                    break;
+                }
+                i++;
+            }
+            if (i > start) {
+                if (echo) {
+                    processOutputBytes(input, start, i - start);
+                    flushOut = true;
+                }
+                slaveInputPipe.write(input, start, i - start);
+            }
+            if (i < end) {
+                flushOut |= doProcessInputByte(input[i++]);
+            }
+            start = i;
         }
         slaveInputPipe.flush();
         if (flushOut) {
@@ -253,6 +287,37 @@ public class LineDisciplineTerminal extends AbstractTerminal {
         masterOutput.write(c);
     }
 
+    /**
+     * Master output processing of an array of bytes, which translates
+     * the newlines like {@link #processOutputByte(int)} while writing
+     * the other bytes in bulk.
+     *
+     * @param b the output bytes
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     * @throws IOException if anything wrong happens
+     */
+    protected void processOutputBytes(byte[] b, int off, int len) throws IOException {
+        if (!attributes.getOutputFlag(OutputFlag.OPOST) || !attributes.getOutputFlag(OutputFlag.ONLCR)) {
+            masterOutput.write(b, off, len);
+            return;
+        }
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            if (b[i] == '\n') {
+                if (i > start) {
+                    masterOutput.write(b, start, i - start);
+                }
+                masterOutput.write(CRLF, 0, CRLF.length);
+                start = i + 1;
+            }
+        }
+        if (end > start) {
+            masterOutput.write(b, start, end - start);
+        }
+    }
+
     protected void processIOException(IOException ioException) {
         this.slaveInput.setIoException(ioException);
     }
@@ -290,9 +355,7 @@ public class LineDisciplineTerminal extends AbstractTerminal {
             } else if (len == 0) {
                 return;
             }
-            for (int i = 0 ; i < len ; i++) {
-                processOutputByte(b[off + i]);
-            }
+            processOutputBytes(b, off, len);
             flush();
         }
 
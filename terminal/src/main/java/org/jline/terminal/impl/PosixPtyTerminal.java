@@ -15,6 +15,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jline.terminal.spi.Pty;
@@ -22,6 +23,7 @@ import org.jline.utils.ClosedException;
 import org.jline.utils.NonBlocking;
 import org.jline.utils.NonBlockingInputStream;
 import org.jline.utils.NonBlockingReader;
+import org.jline.utils.Threads;
 
 public class PosixPtyTerminal extends AbstractPosixTerminal {
 
@@ -34,6 +36,7 @@ public class PosixPtyTerminal extends AbstractPosixTerminal {
     private final NonBlockingReader reader;
     private final PrintWriter writer;
 
+    private final ThreadFactory threadFactory;
     private final Object lock = new Object();
     private Thread inputPumpThread;
     private Thread outputPumpThread;
@@ -48,12 +51,17 @@ public class PosixPtyTerminal extends AbstractPosixTerminal {
     }
 
     public PosixPtyTerminal(String name, String type, Pty pty, InputStream in, OutputStream out, Charset encoding, SignalHandler signalHandler, boolean paused) throws IOException {
+        this(name, type, pty, in, out, encoding, signalHandler, paused, null);
+    }
+
+    public PosixPtyTerminal(String name, String type, Pty pty, InputStream in, OutputStream out, Charset encoding, SignalHandler signalHandler, boolean paused, ThreadFactory threadFactory) throws IOException {
         super(name, type, pty, encoding, signalHandler);
+        this.threadFactory = threadFactory;
         this.in = Objects.requireNonNull(in);
         this.out = Objects.requireNonNull(out);
         this.masterInput = pty.getMasterInput();
         this.masterOutput = pty.getMasterOutput();
-        this.input = new InputStreamWrapper(NonBlocking.nonBlocking(name, pty.getSlaveInput()));
+        this.input = new InputStreamWrapper(NonBlocking.nonBlocking(name, pty.getSlaveInput(), threadFactory));
         this.output = pty.getSlaveOutput();
         this.reader = NonBlocking.nonBlocking(name, input, encoding());
         this.writer = new PrintWriter(new OutputStreamWriter(output, encoding()));
@@ -124,13 +132,11 @@ public class PosixPtyTerminal extends AbstractPosixTerminal {
         synchronized (lock) {
             paused = false;
             if (inputPumpThread == null) {
-                inputPumpThread = new Thread(this::pumpIn, toString() + " input pump thread");
-                inputPumpThread.setDaemon(true);
+                inputPumpThread = Threads.newThread(threadFactory, this::pumpIn, toString() + " input pump thread", true);
                 inputPumpThread.start();
             }
             if (outputPumpThread == null) {
-                outputPumpThread = new Thread(this::pumpOut, toString() + " output pump thread");
-                outputPumpThread.setDaemon(true);
+                outputPumpThread = Threads.newThread(threadFactory, this::pumpOut, toString() + " output pump thread", true);
                 outputPumpThread.start();
             }
         }
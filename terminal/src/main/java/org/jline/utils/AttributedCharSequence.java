@@ -8,6 +8,11 @@
  */
 package org.jline.utils;
 
+import java.io.IOError;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -39,11 +44,13 @@ public abstract class AttributedCharSequence implements CharSequence {
     static final boolean DISABLE_ALTERNATE_CHARSET = Boolean.getBoolean(PROP_DISABLE_ALTERNATE_CHARSET);
 
     public void print(Terminal terminal) {
-        terminal.writer().print(toAnsi(terminal));
+        toAnsi(terminal.writer(), terminal);
     }
 
     public void println(Terminal terminal) {
-        terminal.writer().println(toAnsi(terminal));
+        PrintWriter writer = terminal.writer();
+        toAnsi(writer, terminal);
+        writer.println();
     }
 
     public String toAnsi() {
@@ -51,8 +58,36 @@ public abstract class AttributedCharSequence implements CharSequence {
     }
 
     public String toAnsi(Terminal terminal) {
+        StringBuilder sb = new StringBuilder(length());
+        toAnsi(sb, terminal);
+        return sb.toString();
+    }
+
+    public String toAnsi(int colors, boolean force256colors) {
+        return toAnsi(colors, force256colors, null, null);
+    }
+
+    public String toAnsi(int colors, boolean force256colors, String altIn, String altOut) {
+        StringBuilder sb = new StringBuilder(length());
+        toAnsi(sb, colors, force256colors, altIn, altOut);
+        return sb.toString();
+    }
+
+    /**
+     * Stream the ansi representation of this sequence for the given terminal
+     * into <code>out</code>, without building an intermediate string.
+     *
+     * @param out the output to write to
+     * @param terminal the target terminal, may be <code>null</code>
+     */
+    public void toAnsi(Appendable out, Terminal terminal) {
         if (terminal != null && Terminal.TYPE_DUMB.equals(terminal.getType())) {
-            return toString();
+            try {
+                appendChars(out, 0, length());
+            } catch (IOException e) {
+                throw new IOError(e);
+            }
+            return;
         }
         int colors = 256;
         boolean force256colors = false;
@@ -64,26 +99,46 @@ public abstract class AttributedCharSequence implements CharSequence {
             }
             force256colors = AbstractWindowsTerminal.TYPE_WINDOWS_256_COLOR.equals(terminal.getType())
                 || AbstractWindowsTerminal.TYPE_WINDOWS_CONEMU.equals(terminal.getType());
-            if (!DISABLE_ALTERNATE_CHARSET) {
+            // only resolve the charset switches when they may actually be needed
+            if (!DISABLE_ALTERNATE_CHARSET && hasAlternateChars()) {
                 alternateIn = Curses.tputs(terminal.getStringCapability(Capability.enter_alt_charset_mode));
                 alternateOut = Curses.tputs(terminal.getStringCapability(Capability.exit_alt_charset_mode));
             }
         }
-        return toAnsi(colors, force256colors, alternateIn, alternateOut);
+        toAnsi(out, colors, force256colors, alternateIn, alternateOut);
     }
 
-    public String toAnsi(int colors, boolean force256colors) {
-        return toAnsi(colors, force256colors, null, null);
+    /**
+     * Stream the ansi representation of this sequence into <code>out</code>.
+     * Plain character runs are copied in bulk and only the attributes that
+     * differ between two consecutive styles are emitted.
+     *
+     * @param out the output to write to
+     * @param colors the number of colors supported by the target
+     * @param force256colors whether to always use 256 colors sequences
+     * @param altIn the sequence entering the alternate charset, or <code>null</code>
+     * @param altOut the sequence exiting the alternate charset, or <code>null</code>
+     */
+    public void toAnsi(Appendable out, int colors, boolean force256colors, String altIn, String altOut) {
+        try {
+            doToAnsi(out, colors, force256colors, altIn, altOut);
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
     }
 
-    public String toAnsi(int colors, boolean force256colors, String altIn, String altOut) {
-        StringBuilder sb = new StringBuilder();
+    private void doToAnsi(Appendable out, int colors, boolean force256colors, String altIn, String altOut) throws IOException {
+        char[] buffer = buffer();
+        int offset = offset();
+        int length = length();
         int style = 0;
         int foreground = -1;
         int background = -1;
         boolean alt = false;
-        for (int i = 0; i < length(); i++) {
-            char c = charAt(i);
+        int start = 0;
+        int styleEnd = 0;
+        for (int i = 0; i < length; i++) {
+            char c = buffer[offset + i];
             if (altIn != null && altOut != null) {
                 char pc = c;
                 switch (c) {
@@ -102,54 +157,63 @@ public abstract class AttributedCharSequence implements CharSequence {
                 boolean oldalt = alt;
                 alt = c != pc;
                 if (oldalt ^ alt) {
-                    sb.append(alt ? altIn : altOut);
+                    appendChars(out, start, i);
+                    start = i;
+                    out.append(alt ? altIn : altOut);
                 }
             }
-            int  s = styleCodeAt(i) & ~F_HIDDEN; // The hidden flag does not change the ansi styles
+            int s = style;
+            if (i >= styleEnd) {
+                // only look the style up once per run
+                s = styleCodeAt(i) & ~F_HIDDEN; // The hidden flag does not change the ansi styles
+                styleEnd = runEnd(i);
+            }
             if (style != s) {
+                appendChars(out, start, i);
+                start = i;
                 int  d = (style ^ s) & MASK;
                 int fg = (s & F_FOREGROUND) != 0 ? (s & FG_COLOR) >>> FG_COLOR_EXP : -1;
                 int bg = (s & F_BACKGROUND) != 0 ? (s & BG_COLOR) >>> BG_COLOR_EXP : -1;
                 if (s == 0) {
-                    sb.append("\033[0m");
+                    out.append("\033[0m");
                     foreground = background = -1;
                 } else {
-                    sb.append("\033[");
+                    out.append("\033[");
                     boolean first = true;
                     if ((d & F_ITALIC) != 0) {
-                        first = attr(sb, (s & F_ITALIC) != 0 ? "3" : "23", first);
+                        first = attr(out, (s & F_ITALIC) != 0 ? "3" : "23", first);
                     }
                     if ((d & F_UNDERLINE) != 0) {
-                        first = attr(sb, (s & F_UNDERLINE) != 0 ? "4" : "24", first);
+                        first = attr(out, (s & F_UNDERLINE) != 0 ? "4" : "24", first);
                     }
                     if ((d & F_BLINK) != 0) {
-                        first = attr(sb, (s & F_BLINK) != 0 ? "5" : "25", first);
+                        first = attr(out, (s & F_BLINK) != 0 ? "5" : "25", first);
                     }
                     if ((d & F_INVERSE) != 0) {
-                        first = attr(sb, (s & F_INVERSE) != 0 ? "7" : "27", first);
+                        first = attr(out, (s & F_INVERSE) != 0 ? "7" : "27", first);
                     }
                     if ((d & F_CONCEAL) != 0) {
-                        first = attr(sb, (s & F_CONCEAL) != 0 ? "8" : "28", first);
+                        first = attr(out, (s & F_CONCEAL) != 0 ? "8" : "28", first);
                     }
                     if ((d & F_CROSSED_OUT) != 0) {
-                        first = attr(sb, (s & F_CROSSED_OUT) != 0 ? "9" : "29", first);
+                        first = attr(out, (s & F_CROSSED_OUT) != 0 ? "9" : "29", first);
                     }
                     if (foreground != fg) {
                         if (fg >= 0) {
                             int rounded = Colors.roundColor(fg, colors);
                             if (rounded < 8 && !force256colors) {
-                                first = attr(sb, "3" + Integer.toString(rounded), first);
+                                first = attr(out, "3", rounded, first);
                                 // small hack to force setting bold again after a foreground color change
                                 d |= (s & F_BOLD);
                             } else if (rounded < 16 && !force256colors) {
-                                first = attr(sb, "9" + Integer.toString(rounded - 8), first);
+                                first = attr(out, "9", rounded - 8, first);
                                 // small hack to force setting bold again after a foreground color change
                                 d |= (s & F_BOLD);
                             } else {
-                                first = attr(sb, "38;5;" + Integer.toString(rounded), first);
+                                first = attr(out, "38;5;", rounded, first);
                             }
                         } else {
-                            first = attr(sb, "39", first);
+                            first = attr(out, "39", first);
                         }
                         foreground = fg;
                     }
@@ -157,42 +221,72 @@ public abstract class AttributedCharSequence implements CharSequence {
                         if (bg >= 0) {
                             int rounded = Colors.roundColor(bg, colors);
                             if (rounded < 8 && !force256colors) {
-                                first = attr(sb, "4" + Integer.toString(rounded), first);
+                                first = attr(out, "4", rounded, first);
                             } else if (rounded < 16 && !force256colors) {
-                                first = attr(sb, "10" + Integer.toString(rounded - 8), first);
+                                first = attr(out, "10", rounded - 8, first);
                             } else {
-                                first = attr(sb, "48;5;" + Integer.toString(rounded), first);
+                                first = attr(out, "48;5;", rounded, first);
                             }
                         } else {
-                            first = attr(sb, "49", first);
+                            first = attr(out, "49", first);
                         }
                         background = bg;
                     }
                     if ((d & (F_BOLD | F_FAINT)) != 0) {
                         if (    (d & F_BOLD)  != 0 && (s & F_BOLD)  == 0
                                 || (d & F_FAINT) != 0 && (s & F_FAINT) == 0) {
-                            first = attr(sb, "22", first);
+                            first = attr(out, "22", first);
                         }
                         if ((d & F_BOLD) != 0 && (s & F_BOLD) != 0) {
-                            first = attr(sb, "1", first);
+                            first = attr(out, "1", first);
                         }
                         if ((d & F_FAINT) != 0 && (s & F_FAINT) != 0) {
-                            first = attr(sb, "2", first);
+                            first = attr(out, "2", first);
                         }
                     }
-                    sb.append("m");
+                    out.append('m');
                 }
                 style = s;
             }
-            sb.append(c);
+            if (alt) {
+                // translated characters can not be copied from the buffer
+                appendChars(out, start, i);
+                out.append(c);
+                start = i + 1;
+            }
         }
+        appendChars(out, start, length);
         if (alt) {
-            sb.append(altOut);
+            out.append(altOut);
         }
         if (style != 0) {
-            sb.append("\033[0m");
+            out.append("\033[0m");
         }
-        return sb.toString();
+    }
+
+    private void appendChars(Appendable out, int start, int end) throws IOException {
+        int len = end - start;
+        if (len <= 0) {
+            return;
+        }
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(buffer(), offset() + start, len);
+        } else if (out instanceof Writer) {
+            ((Writer) out).write(buffer(), offset() + start, len);
+        } else {
+            out.append(CharBuffer.wrap(buffer(), offset() + start, len));
+        }
+    }
+
+    private boolean hasAlternateChars() {
+        char[] buffer = buffer();
+        for (int i = offset(), end = offset() + length(); i < end; i++) {
+            char c = buffer[i];
+            if (c >= '─' && c <= '┼') {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Deprecated
@@ -210,11 +304,27 @@ public abstract class AttributedCharSequence implements CharSequence {
         return Colors.roundRgbColor(r, g, b, max);
     }
 
-    private static boolean attr(StringBuilder sb, String s, boolean first) {
+    private static boolean attr(Appendable out, String s, boolean first) throws IOException {
+        if (!first) {
+            out.append(';');
+        }
+        out.append(s);
+        return false;
+    }
+
+    private static boolean attr(Appendable out, String prefix, int value, boolean first) throws IOException {
         if (!first) {
-            sb.append(";");
+            out.append(';');
+        }
+        out.append(prefix);
+        // color indexes are at most 255, avoid going through Integer.toString()
+        if (value >= 100) {
+            out.append((char) ('0' + value / 100));
+        }
+        if (value >= 10) {
+            out.append((char) ('0' + value / 10 % 10));
         }
-        sb.append(s);
+        out.append((char) ('0' + value % 10));
         return false;
     }
 
@@ -224,6 +334,15 @@ public abstract class AttributedCharSequence implements CharSequence {
         return styleAt(index).getStyle();
     }
 
+    /**
+     * Index following the last character known to share the style of the
+     * character at <code>index</code>. Implementations storing style runs
+     * return the end of the run, others simply the next index.
+     */
+    int runEnd(int index) {
+        return index + 1;
+    }
+
     public boolean isHidden(int index) {
         return (styleCodeAt(index) & F_HIDDEN) != 0;
     }
@@ -285,10 +404,19 @@ public abstract class AttributedCharSequence implements CharSequence {
         int cols = 0;
         int len = length();
         for (int cur = 0; cur < len; ) {
-            int cp = codePointAt(cur);
-            if (!isHidden(cur))
-                cols += WCWidth.wcwidth(cp);
-            cur += Character.charCount(cp);
+            // measure whole ranges of visible characters at once
+            boolean hidden = isHidden(cur);
+            int end = runEnd(cur);
+            while (end < len && isHidden(end) == hidden) {
+                end = runEnd(end);
+            }
+            if (end < len && Character.isHighSurrogate(charAt(end - 1))) {
+                end++;
+            }
+            if (!hidden) {
+                cols += WCWidth.columnLength(this, cur, end);
+            }
+            cur = end;
         }
         return cols;
     }
@@ -24,8 +24,19 @@ import java.util.regex.Pattern;
  */
 public class AttributedString extends AttributedCharSequence {
 
+    /**
+     * Strings with at most one style run for this number of characters
+     * are stored as runs instead of one style per character.
+     */
+    static final int RUN_LENGTH_THRESHOLD = 4;
+
     final char[] buffer;
+    // one style per character, or null when the styles are stored as runs
     final int[] style;
+    // absolute buffer indexes at which each run begins, in ascending order
+    final int[] runStarts;
+    // the style of each run
+    final int[] runStyles;
     final int start;
     final int end;
     public static final AttributedString EMPTY = new AttributedString("");
@@ -50,13 +61,21 @@ public class AttributedString extends AttributedCharSequence {
         if (str instanceof AttributedString) {
             AttributedString as = (AttributedString) str;
             this.buffer = as.buffer;
-            if (s != null) {
-                this.style = as.style.clone();
-                for (int i = 0; i < style.length; i++) {
-                    this.style[i] = (this.style[i] & ~s.getMask()) | s.getStyle();
+            if (as.style != null) {
+                if (s != null) {
+                    this.style = as.style.clone();
+                    for (int i = 0; i < style.length; i++) {
+                        this.style[i] = (this.style[i] & ~s.getMask()) | s.getStyle();
+                    }
+                } else {
+                    this.style = as.style;
                 }
+                this.runStarts = null;
+                this.runStyles = null;
             } else {
-                this.style = as.style;
+                this.style = null;
+                this.runStarts = as.runStarts;
+                this.runStyles = s != null ? applyStyle(as.runStyles.clone(), s) : as.runStyles;
             }
             this.start = as.start + start;
             this.end = as.start + end;
@@ -65,10 +84,10 @@ public class AttributedString extends AttributedCharSequence {
             AttributedString as = asb.subSequence(start, end);
             this.buffer = as.buffer;
             this.style = as.style;
+            this.runStarts = as.runStarts;
+            this.runStyles = as.runStyles;
             if (s != null) {
-                for (int i = 0; i < style.length; i++) {
-                    this.style[i] = (this.style[i] & ~s.getMask()) | s.getStyle();
-                }
+                applyStyle(style != null ? style : runStyles, s);
             }
             this.start = as.start;
             this.end = as.end;
@@ -78,10 +97,10 @@ public class AttributedString extends AttributedCharSequence {
             for (int i = 0; i < l; i++) {
                 buffer[i] = str.charAt(start + i);
             }
-            style = new int[l];
-            if (s != null) {
-                Arrays.fill(style, s.getStyle());
-            }
+            // a single run holds the whole string
+            style = null;
+            runStarts = new int[] { 0 };
+            runStyles = new int[] { s != null ? s.getStyle() : 0 };
             this.start = 0;
             this.end = l;
         }
@@ -90,10 +109,56 @@ public class AttributedString extends AttributedCharSequence {
     AttributedString(char[] buffer, int[] style, int start, int end) {
         this.buffer = buffer;
         this.style = style;
+        this.runStarts = null;
+        this.runStyles = null;
         this.start = start;
         this.end = end;
     }
 
+    AttributedString(char[] buffer, int[] runStarts, int[] runStyles, int start, int end) {
+        this.buffer = buffer;
+        this.style = null;
+        this.runStarts = runStarts;
+        this.runStyles = runStyles;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Create a string over the given buffer, using the most compact style
+     * storage: styles are stored as runs when there are few of them, else
+     * the given per character <code>style</code> array is kept.
+     */
+    static AttributedString create(char[] buffer, int[] style, int start, int end) {
+        int runs = 0;
+        for (int i = start; i < end; i++) {
+            if (i == start || style[i] != style[i - 1]) {
+                runs++;
+            }
+        }
+        if (runs * RUN_LENGTH_THRESHOLD > end - start) {
+            return new AttributedString(buffer, style, start, end);
+        }
+        int[] runStarts = new int[Math.max(runs, 1)];
+        int[] runStyles = new int[runStarts.length];
+        runStarts[0] = start;
+        for (int i = start, r = -1; i < end; i++) {
+            if (i == start || style[i] != style[i - 1]) {
+                r++;
+                runStarts[r] = i;
+                runStyles[r] = style[i];
+            }
+        }
+        return new AttributedString(buffer, runStarts, runStyles, start, end);
+    }
+
+    private static int[] applyStyle(int[] styles, AttributedStyle s) {
+        for (int i = 0; i < styles.length; i++) {
+            styles[i] = (styles[i] & ~s.getMask()) | s.getStyle();
+        }
+        return styles;
+    }
+
     public static AttributedString fromAnsi(String ansi) {
         return fromAnsi(ansi, 0);
     }
@@ -138,12 +203,64 @@ public class AttributedString extends AttributedCharSequence {
 
     @Override
     public AttributedStyle styleAt(int index) {
-        return new AttributedStyle(style[start + index], style[start + index]);
+        int s = styleCodeAt(index);
+        return new AttributedStyle(s, s);
     }
 
     @Override
     int styleCodeAt(int index) {
-        return style[start + index];
+        if (style != null) {
+            return style[start + index];
+        }
+        return runStyles[run(start + index)];
+    }
+
+    @Override
+    int runEnd(int index) {
+        if (style != null) {
+            return index + 1;
+        }
+        int r = run(start + index) + 1;
+        return r < runStarts.length ? Math.min(runStarts[r], end) - start : end - start;
+    }
+
+    /**
+     * Index of the run containing the given absolute buffer position.
+     */
+    private int run(int pos) {
+        int r = Arrays.binarySearch(runStarts, pos);
+        return r >= 0 ? r : -r - 2;
+    }
+
+    /**
+     * Start of the storage run containing the given index.
+     */
+    private int runBegin(int index) {
+        if (style != null) {
+            return index;
+        }
+        return Math.max(runStarts[run(start + index)] - start, 0);
+    }
+
+    @Override
+    public int runStart(int index) {
+        int s = styleCodeAt(index);
+        index = runBegin(index);
+        while (index > 0 && styleCodeAt(index - 1) == s) {
+            index = runBegin(index - 1);
+        }
+        return index;
+    }
+
+    @Override
+    public int runLimit(int index) {
+        int s = styleCodeAt(index);
+        int len = length();
+        int limit = runEnd(index);
+        while (limit < len && styleCodeAt(limit) == s) {
+            limit = runEnd(limit);
+        }
+        return limit;
     }
 
     @Override
@@ -155,6 +272,20 @@ public class AttributedString extends AttributedCharSequence {
         Matcher matcher = pattern.matcher(this);
         boolean result = matcher.find();
         if (result) {
+            if (this.style == null) {
+                // expand the runs, the result is compacted again
+                int[] newstyle = new int[end];
+                for (int i = 0; i < length(); i++) {
+                    newstyle[this.start + i] = styleCodeAt(i);
+                }
+                do {
+                    for (int i = matcher.start(); i < matcher.end(); i++) {
+                        newstyle[this.start + i] = (newstyle[this.start + i] & ~style.getMask()) | style.getStyle();
+                    }
+                    result = matcher.find();
+                } while (result);
+                return create(buffer, newstyle, start, end);
+            }
             int[] newstyle = this.style.clone();
             do {
                 for (int i = matcher.start(); i < matcher.end(); i++) {
@@ -174,7 +305,7 @@ public class AttributedString extends AttributedCharSequence {
         AttributedString that = (AttributedString) o;
         return end - start == that.end - that.start
                 && arrEq(buffer, that.buffer, start, that.start, end - start)
-                && arrEq(style, that.style, start, that.start, end - start);
+                && styleEq(that);
     }
 
     private boolean arrEq(char[] a1, char[] a2, int s1, int s2, int l) {
@@ -185,9 +316,20 @@ public class AttributedString extends AttributedCharSequence {
         }
         return true;
     }
-    private boolean arrEq(int[] a1, int[] a2, int s1, int s2, int l) {
-        for (int i = 0; i < l; i++) {
-            if (a1[s1+i] != a2[s2+i]) {
+
+    private boolean styleEq(AttributedString that) {
+        int l = length();
+        if (style != null && that.style != null) {
+            for (int i = 0; i < l; i++) {
+                if (style[start + i] != that.style[that.start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        // compare once per run
+        for (int i = 0; i < l; i = Math.min(runEnd(i), that.runEnd(i))) {
+            if (styleCodeAt(i) != that.styleCodeAt(i)) {
                 return false;
             }
         }
@@ -196,10 +338,16 @@ public class AttributedString extends AttributedCharSequence {
 
     @Override
     public int hashCode() {
-        int result = Arrays.hashCode(buffer);
-        result = 31 * result + Arrays.hashCode(style);
-        result = 31 * result + start;
-        result = 31 * result + end;
+        int result = 1;
+        for (int i = start; i < end; i++) {
+            result = 31 * result + buffer[i];
+        }
+        for (int i = 0, l = length(); i < l; ) {
+            int s = styleCodeAt(i);
+            for (int e = runEnd(i); i < e; i++) {
+                result = 31 * result + s;
+            }
+        }
         return result;
     }
 
@@ -80,7 +80,7 @@ public class AttributedStringBuilder extends AttributedCharSequence implements A
 
     @Override
     public AttributedString subSequence(int start, int end) {
-        return new AttributedString(
+        return AttributedString.create(
                 Arrays.copyOfRange(buffer, start, end),
                 Arrays.copyOfRange(style, start, end),
                 0,
@@ -15,6 +15,10 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+import java.util.function.ToDoubleBiFunction;
 import java.util.stream.Stream;
 
 import static org.jline.terminal.TerminalBuilder.PROP_COLOR_DISTANCE;
@@ -84,11 +88,14 @@ public class Colors {
 
     private static Map<String, Integer> COLOR_NAMES;
 
+    private static final Map<String, Rounding> ROUNDINGS = new ConcurrentHashMap<>();
+
     public static void setRgbColors(int[] colors) {
         if (colors == null || colors.length != 256) {
             throw new IllegalArgumentException();
         }
         COLORS_256 = colors;
+        ROUNDINGS.clear();
     }
 
     public static int rgbColor(int col) {
@@ -121,102 +128,150 @@ public class Colors {
     public static int roundColor(int col, int max, String dist) {
         if (col >= max) {
             int c = COLORS_256[col];
-            col = roundColor(c, COLORS_256, max, dist);
+            col = getRounding(dist).round(c, max);
         }
         return col;
     }
 
     public static int roundRgbColor(int r, int g, int b, int max) {
-        return roundColor((r << 16) + (g << 8) + b, COLORS_256, max, (String) null);
+        return getRounding(null).round((r << 16) + (g << 8) + b, max);
     }
 
-    private static int roundColor(int color, int[] colors, int max, String dist) {
-        return roundColor(color, colors, max, getDistance(dist));
+    private static Rounding getRounding(String dist) {
+        if (dist == null) {
+            dist = System.getProperty(PROP_COLOR_DISTANCE, "cie76");
+        }
+        int[] colors = COLORS_256;
+        Rounding rounding = ROUNDINGS.get(dist);
+        if (rounding == null || rounding.colors != colors) {
+            rounding = new Rounding(colors, doGetDistance(dist));
+            ROUNDINGS.put(dist, rounding);
+        }
+        return rounding;
     }
 
+    /**
+     * A distance between two colors.
+     * Colors are first converted into the color space of the distance,
+     * so that the palette can be converted only once.
+     */
     private interface Distance {
-        double compute(int c1, int c2);
+        double[] convert(int color);
+        double compute(double[] c1, double[] c2);
     }
 
-    private static int roundColor(int color, int[] colors, int max, Distance distance) {
-        double best_distance = Integer.MAX_VALUE;
-        int best_index = Integer.MAX_VALUE;
-        for (int idx = 0; idx < max; idx++) {
-            double d = distance.compute(color, colors[idx]);
-            if (d <= best_distance) {
-                best_index = idx;
-                best_distance = d;
+    private static Distance distance(IntFunction<double[]> convert, ToDoubleBiFunction<double[], double[]> compute) {
+        return new Distance() {
+            @Override
+            public double[] convert(int color) {
+                return convert.apply(color);
             }
-        }
-        return best_index;
+            @Override
+            public double compute(double[] c1, double[] c2) {
+                return compute.applyAsDouble(c1, c2);
+            }
+        };
     }
 
-    private static Distance getDistance(String dist) {
-        if (dist == null) {
-            dist = System.getProperty(PROP_COLOR_DISTANCE, "cie76");
+    /**
+     * Rounding of colors to a palette using a given distance.
+     * The palette is converted once in the color space of the distance,
+     * and the rounded colors are memoized in a bounded direct-mapped cache.
+     */
+    private static final class Rounding {
+        private static final int MEMO_BITS = 12;
+        private static final long MEMO_VALID = 1L << 41;
+
+        final int[] colors;
+        final Distance distance;
+        final double[][] palette;
+        // valid bit | color (24 bits) | max (9 bits) | index (8 bits)
+        final AtomicLongArray memo = new AtomicLongArray(1 << MEMO_BITS);
+
+        Rounding(int[] colors, Distance distance) {
+            this.colors = colors;
+            this.distance = distance;
+            this.palette = new double[colors.length][];
+            for (int i = 0; i < colors.length; i++) {
+                palette[i] = distance.convert(colors[i]);
+            }
+        }
+
+        int round(int color, int max) {
+            max = Math.min(max, colors.length);
+            if ((color & ~0xFFFFFF) != 0 || max <= 0) {
+                return doRound(color, max);
+            }
+            long key = MEMO_VALID | ((long) color << 17) | ((long) max << 8);
+            int slot = ((color * 0x9E3779B1) ^ max) >>> (32 - MEMO_BITS);
+            long entry = memo.get(slot);
+            if ((entry & ~0xFFL) == key) {
+                return (int) (entry & 0xFF);
+            }
+            int index = doRound(color, max);
+            memo.lazySet(slot, key | index);
+            return index;
+        }
+
+        private int doRound(int color, int max) {
+            double[] c = distance.convert(color);
+            double best_distance = Integer.MAX_VALUE;
+            int best_index = Integer.MAX_VALUE;
+            for (int idx = 0; idx < max; idx++) {
+                double d = distance.compute(c, palette[idx]);
+                if (d <= best_distance) {
+                    best_index = idx;
+                    best_distance = d;
+                }
+            }
+            return best_index;
         }
-        return doGetDistance(dist);
     }
 
     private static Distance doGetDistance(String dist) {
         if (dist.equals("rgb")) {
-            return (p1, p2) -> {
+            return distance(Colors::rgb, (c1, c2) -> {
                 // rgb: see https://www.compuphase.com/cmetric.htm
-                double[] c1 = rgb(p1);
-                double[] c2 = rgb(p2);
                 double rmean = (c1[0] + c2[0]) / 2.0;
                 double[] w = { 2.0 + rmean, 4.0, 3.0 - rmean };
                 return scalar(c1, c2, w);
-            };
+            });
         }
         if (dist.matches("rgb\\(([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?)\\)")) {
-            return (p1, p2) -> scalar(rgb(p1), rgb(p2), getWeights(dist));
+            double[] w = getWeights(dist);
+            return distance(Colors::rgb, (c1, c2) -> scalar(c1, c2, w));
         }
         if (dist.equals("lab") || dist.equals("cie76")) {
-            return (p1, p2) -> scalar(rgb2cielab(p1), rgb2cielab(p2));
+            return distance(Colors::rgb2cielab, Colors::scalar);
         }
         if (dist.matches("lab\\(([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?)\\)")) {
             double[] w = getWeights(dist);
-            return (p1, p2) -> scalar(rgb2cielab(p1), rgb2cielab(p2), new double[] { w[0], w[1], w[1] });
+            double[] lw = new double[] { w[0], w[1], w[1] };
+            return distance(Colors::rgb2cielab, (c1, c2) -> scalar(c1, c2, lw));
         }
         if (dist.equals("cie94")) {
-            return (p1, p2) -> cie94(rgb2cielab(p1), rgb2cielab(p2));
+            return distance(Colors::rgb2cielab, Colors::cie94);
         }
         if (dist.equals("cie00") || dist.equals("cie2000")) {
-            return (p1, p2) -> cie00(rgb2cielab(p1), rgb2cielab(p2));
+            return distance(Colors::rgb2cielab, Colors::cie00);
         }
         if (dist.equals("cam02")) {
-            return (p1, p2) -> cam02(p1, p2, sRGB_typical_environment);
+            return distance(p -> jmh2ucs(camlch(p, sRGB_typical_environment)), Colors::scalar);
         }
         if (dist.equals("camlab")) {
-            return (p1, p2) -> {
-                double[] c1 = camlab(p1, sRGB_typical_environment);
-                double[] c2 = camlab(p2, sRGB_typical_environment);
-                return scalar(c1, c2);
-            };
+            return distance(p -> camlab(p, sRGB_typical_environment), Colors::scalar);
         }
         if (dist.matches("camlab\\(([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?)\\)")) {
-            return (p1, p2) -> {
-                double[] c1 = camlab(p1, sRGB_typical_environment);
-                double[] c2 = camlab(p2, sRGB_typical_environment);
-                double[] w = getWeights(dist);
-                return scalar(c1, c2, new double[] { w[0], w[1], w[1] });
-            };
+            double[] w = getWeights(dist);
+            double[] lw = new double[] { w[0], w[1], w[1] };
+            return distance(p -> camlab(p, sRGB_typical_environment), (c1, c2) -> scalar(c1, c2, lw));
         }
         if (dist.matches("camlch")) {
-            return (p1, p2) -> {
-                double[] c1 = camlch(p1, sRGB_typical_environment);
-                double[] c2 = camlch(p2, sRGB_typical_environment);
-                return camlch(c1, c2);
-            };
+            return distance(p -> camlch(p, sRGB_typical_environment), Colors::camlch);
         }
         if (dist.matches("camlch\\(([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?),([0-9]+(\\.[0-9]+)?)\\)")) {
-            return (p1, p2) -> {
-                double[] c1 = camlch(p1, sRGB_typical_environment);
-                double[] c2 = camlch(p2, sRGB_typical_environment);
-                double[] w = getWeights(dist);
-                return camlch(c1, c2, w);
-            };
+            double[] w = getWeights(dist);
+            return distance(p -> camlch(p, sRGB_typical_environment), (c1, c2) -> camlch(c1, c2, w));
         }
         throw new IllegalArgumentException("Unsupported distance function: " + dist);
     }
@@ -330,12 +385,6 @@ public class Colors {
         return dLKlsl * dLKlsl + dCkcsc * dCkcsc + dHkhsh * dHkhsh + R_T * dCkcsc * dHkhsh;
     }
 
-    private static double cam02(int p1, int p2, double[] vc) {
-        double[] c1 = jmh2ucs(camlch(p1, vc));
-        double[] c2 = jmh2ucs(camlch(p2, vc));
-        return scalar(c1, c2);
-    }
-
     private static double[] jmh2ucs(double[] lch) {
         double sJ = ((1.0 + 100 * 0.007) * lch[0]) / (1.0 + 0.007 * lch[0]);
         double sM = ((1.0 / 0.0228) * Math.log(1.0 + 0.0228 * lch[1]));
@@ -12,7 +12,15 @@ import java.io.Flushable;
 import java.io.IOError;
 import java.io.IOException;
 import java.io.StringWriter;
-import java.util.Stack;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EmptyStackException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Curses helper methods.
@@ -21,14 +29,45 @@ import java.util.Stack;
  */
 public final class Curses {
 
-    private static Object[] sv = new Object[26];
-    private static Object[] dv = new Object[26];
-
     private static final int IFTE_NONE = 0;
     private static final int IFTE_IF = 1;
     private static final int IFTE_THEN = 2;
     private static final int IFTE_ELSE = 3;
 
+    // Program instructions
+    private static final int OP_TEXT = 0;           // literal index
+    private static final int OP_PARAM = 1;          // parameter index
+    private static final int OP_PARAM_LENGTH = 2;   // parameter index
+    private static final int OP_CONST = 3;          // value
+    private static final int OP_SET = 4;            // variable index
+    private static final int OP_GET = 5;            // variable index
+    private static final int OP_LENGTH = 6;
+    private static final int OP_ADD = 7;
+    private static final int OP_SUB = 8;
+    private static final int OP_MUL = 9;
+    private static final int OP_DIV = 10;
+    private static final int OP_MOD = 11;
+    private static final int OP_AND = 12;
+    private static final int OP_OR = 13;
+    private static final int OP_XOR = 14;
+    private static final int OP_EQ = 15;
+    private static final int OP_GT = 16;
+    private static final int OP_LT = 17;
+    private static final int OP_LAND = 18;
+    private static final int OP_LOR = 19;
+    private static final int OP_NOT = 20;
+    private static final int OP_COMPLEMENT = 21;
+    private static final int OP_INCREMENT = 22;
+    private static final int OP_PRINT = 23;
+    private static final int OP_JUMP = 24;          // target
+    private static final int OP_JUMP_IF_FALSE = 25; // target
+    private static final int OP_DELAY = 26;         // milliseconds
+
+    private static final int MAX_CACHED_PROGRAMS = 512;
+    private static final Map<String, Program> programs = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+
     private Curses() {
     }
 
@@ -57,338 +96,536 @@ public final class Curses {
      */
     public static void tputs(Appendable out, String str, Object... params) {
         try {
-            doTputs(out, str, params);
+            compile(str).execute(out, params);
         } catch (Exception e) {
             throw new IOError(e);
         }
     }
 
-    private static void doTputs(Appendable out, String str, Object... params) throws IOException {
-        int index = 0;
-        int length = str.length();
-        int ifte = IFTE_NONE;
-        boolean exec = true;
-        Stack<Object> stack = new Stack<>();
-        while (index < length) {
-            char ch = str.charAt(index++);
-            switch (ch) {
-                case '\\':
-                    ch = str.charAt(index++);
-                    if (ch >= '0' && ch <= '7') {
-                        int val = ch - '0';
-                        for (int i = 0; i < 2; i++) {
-                            ch = str.charAt(index++);
-                            if (ch < '0' || ch > '7') {
-                                throw new IllegalStateException();
+    /**
+     * Compile the given terminal capability into a program that
+     * can be executed any number of times.
+     * Compiled programs are cached, so that a given capability
+     * string is only parsed once.
+     * Malformed capabilities are reported when the program is executed.
+     *
+     * @param str the capability to compile
+     * @return the compiled program
+     */
+    public static Program compile(String str) {
+        Objects.requireNonNull(str);
+        Program program = programs.get(str);
+        if (program == null) {
+            try {
+                program = new Compiler(str).compile();
+            } catch (RuntimeException e) {
+                program = new Program(str, e);
+            }
+            if (programs.size() >= MAX_CACHED_PROGRAMS) {
+                programs.clear();
+            }
+            programs.put(str, program);
+        }
+        return program;
+    }
+
+    /**
+     * A compiled terminal capability.
+     * Programs are immutable and can be safely shared between threads.
+     * Parameters and intermediate values are kept on a primitive
+     * stack held by the executing thread, so that executing a
+     * program does not allocate.
+     * Dynamic variables ({@code %Pa} to {@code %Pz}) are reset on each execution,
+     * whereas static variables ({@code %PA} to {@code %PZ}) are kept between
+     * executions in the same thread.
+     */
+    public static final class Program {
+
+        private final String source;
+        private final int[] code;
+        private final String[] literals;
+        private final int maxStack;
+        private final boolean variables;
+        private final RuntimeException failure;
+
+        Program(String source, int[] code, String[] literals, int maxStack, boolean variables) {
+            this(source, code, literals, maxStack, variables, null);
+        }
+
+        Program(String source, RuntimeException failure) {
+            this(source, new int[0], new String[0], 0, false, failure);
+        }
+
+        private Program(String source, int[] code, String[] literals, int maxStack, boolean variables,
+                        RuntimeException failure) {
+            this.source = source;
+            this.code = code;
+            this.literals = literals;
+            this.maxStack = maxStack;
+            this.variables = variables;
+            this.failure = failure;
+        }
+
+        /**
+         * The capability string this program has been compiled from.
+         *
+         * @return the source capability
+         */
+        public String source() {
+            return source;
+        }
+
+        /**
+         * Print the capability
+         *
+         * @param out the output stream
+         * @param params optional parameters
+         */
+        public void tputs(Appendable out, Object... params) {
+            try {
+                execute(out, params);
+            } catch (Exception e) {
+                throw new IOError(e);
+            }
+        }
+
+        void execute(Appendable out, Object... params) throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            // Use a fresh context in the unlikely event of a
+            // re-entrant call from the Appendable
+            Context ctx = contexts.get();
+            if (ctx.busy) {
+                ctx = new Context();
+            }
+            ctx.busy = true;
+            try {
+                doExecute(ctx, out, params);
+            } finally {
+                ctx.busy = false;
+            }
+        }
+
+        private void doExecute(Context ctx, Appendable out, Object[] params) throws IOException {
+            int[] code = this.code;
+            int[] stack = ctx.stack(maxStack);
+            int[] vars = ctx.vars;
+            if (variables) {
+                Arrays.fill(vars, 0, 26, 0);
+            }
+            int sp = 0;
+            int inc = 0;
+            int pc = 0;
+            int v1, v2;
+            while (pc < code.length) {
+                switch (code[pc++]) {
+                    case OP_TEXT:
+                        out.append(literals[code[pc++]]);
+                        break;
+                    case OP_PARAM:
+                        v1 = code[pc++];
+                        stack[sp++] = toInteger(params[v1]) + (v1 < 2 ? inc : 0);
+                        break;
+                    case OP_PARAM_LENGTH:
+                        v1 = code[pc++];
+                        if (v1 < 2 && inc != 0) {
+                            stack[sp++] = Integer.toString(toInteger(params[v1]) + inc).length();
+                        } else {
+                            stack[sp++] = params[v1].toString().length();
+                        }
+                        break;
+                    case OP_CONST:
+                        stack[sp++] = code[pc++];
+                        break;
+                    case OP_SET:
+                        checkStack(sp, 1);
+                        vars[code[pc++]] = stack[--sp];
+                        break;
+                    case OP_GET:
+                        stack[sp++] = vars[code[pc++]];
+                        break;
+                    case OP_LENGTH:
+                        checkStack(sp, 1);
+                        stack[sp - 1] = length(stack[sp - 1]);
+                        break;
+                    case OP_NOT:
+                        checkStack(sp, 1);
+                        stack[sp - 1] = stack[sp - 1] == 0 ? 1 : 0;
+                        break;
+                    case OP_COMPLEMENT:
+                        checkStack(sp, 1);
+                        stack[sp - 1] = ~stack[sp - 1];
+                        break;
+                    case OP_INCREMENT:
+                        inc = 1;
+                        break;
+                    case OP_PRINT:
+                        checkStack(sp, 1);
+                        print(out, ctx.digits, stack[--sp]);
+                        break;
+                    case OP_JUMP:
+                        pc = code[pc];
+                        break;
+                    case OP_JUMP_IF_FALSE:
+                        checkStack(sp, 1);
+                        pc = stack[--sp] != 0 ? pc + 1 : code[pc];
+                        break;
+                    case OP_DELAY:
+                        v1 = code[pc++];
+                        // We don't honour delays, just flush and sleep
+                        try {
+                            if (out instanceof Flushable) {
+                                ((Flushable) out).flush();
                             }
-                            val = val * 8 + (ch - '0');
+                            Thread.sleep(v1);
+                        } catch (InterruptedException e) {
                         }
-                        out.append((char) val);
-                    } else {
-                        switch (ch) {
-                            case 'e':
-                            case 'E':
-                                if (exec) {
-                                    out.append((char) 27); // escape
-                                }
-                                break;
-                            case 'n':
-                                out.append('\n');
-                                break;
-//                        case 'l':
-//                            rawPrint('\l');
-//                            break;
-                            case 'r':
-                                if (exec) {
-                                    out.append('\r');
-                                }
-                                break;
-                            case 't':
-                                if (exec) {
-                                    out.append('\t');
-                                }
-                                break;
-                            case 'b':
-                                if (exec) {
-                                    out.append('\b');
-                                }
-                                break;
-                            case 'f':
-                                if (exec) {
-                                    out.append('\f');
-                                }
-                                break;
-                            case 's':
-                                if (exec) {
-                                    out.append(' ');
+                        break;
+                    default:
+                        checkStack(sp, 2);
+                        v2 = stack[--sp];
+                        v1 = stack[sp - 1];
+                        stack[sp - 1] = binary(code[pc - 1], v1, v2);
+                        break;
+                }
+            }
+        }
+
+        private static int binary(int op, int v1, int v2) {
+            switch (op) {
+                case OP_ADD: return v1 + v2;
+                case OP_SUB: return v1 - v2;
+                case OP_MUL: return v1 * v2;
+                case OP_DIV: return v1 / v2;
+                case OP_MOD: return v1 % v2;
+                case OP_AND: return v1 & v2;
+                case OP_OR: return v1 | v2;
+                case OP_XOR: return v1 ^ v2;
+                case OP_EQ: return v1 == v2 ? 1 : 0;
+                case OP_GT: return v1 > v2 ? 1 : 0;
+                case OP_LT: return v1 < v2 ? 1 : 0;
+                case OP_LAND: return v1 != 0 && v2 != 0 ? 1 : 0;
+                case OP_LOR: return v1 != 0 || v2 != 0 ? 1 : 0;
+                default: throw new IllegalStateException("Unknown instruction: " + op);
+            }
+        }
+
+        private static void checkStack(int sp, int needed) {
+            if (sp < needed) {
+                throw new EmptyStackException();
+            }
+        }
+
+        private static int length(int v) {
+            int len = v < 0 ? 2 : 1;
+            for (long l = Math.abs((long) v); l >= 10; l /= 10) {
+                len++;
+            }
+            return len;
+        }
+
+        private static void print(Appendable out, char[] digits, int v) throws IOException {
+            long l = v;
+            if (l < 0) {
+                out.append('-');
+                l = -l;
+            }
+            int i = digits.length;
+            do {
+                digits[--i] = (char) ('0' + (l % 10));
+                l /= 10;
+            } while (l != 0);
+            while (i < digits.length) {
+                out.append(digits[i++]);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Program[" + source + "]";
+        }
+    }
+
+    /**
+     * Per-thread execution state.
+     */
+    private static final class Context {
+        int[] stack = new int[16];
+        final int[] vars = new int[52];
+        final char[] digits = new char[11];
+        boolean busy;
+
+        int[] stack(int size) {
+            if (stack.length < size) {
+                stack = new int[size];
+            }
+            return stack;
+        }
+    }
+
+    /**
+     * Translates a capability string into a {@link Program}.
+     */
+    private static final class Compiler {
+
+        private final String str;
+        private int index;
+        private int[] code = new int[32];
+        private int pc;
+        private final List<String> literals = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private int pushes;
+        private boolean variables;
+        // conditional being compiled, innermost last
+        private final Deque<Conditional> conditionals = new ArrayDeque<>();
+
+        Compiler(String str) {
+            this.str = str;
+        }
+
+        Program compile() {
+            int length = str.length();
+            while (index < length) {
+                char ch = str.charAt(index++);
+                switch (ch) {
+                    case '\\':
+                        ch = str.charAt(index++);
+                        if (ch >= '0' && ch <= '7') {
+                            int val = ch - '0';
+                            for (int i = 0; i < 2; i++) {
+                                ch = str.charAt(index++);
+                                if (ch < '0' || ch > '7') {
+                                    throw new IllegalStateException();
                                 }
-                                break;
-                            case ':':
-                            case '^':
-                            case '\\':
-                                if (exec) {
-                                    out.append(ch);
+                                val = val * 8 + (ch - '0');
+                            }
+                            text.append((char) val);
+                        } else {
+                            switch (ch) {
+                                case 'e':
+                                case 'E':
+                                    text.append((char) 27); // escape
+                                    break;
+                                case 'n':
+                                    text.append('\n');
+                                    break;
+                                case 'r':
+                                    text.append('\r');
+                                    break;
+                                case 't':
+                                    text.append('\t');
+                                    break;
+                                case 'b':
+                                    text.append('\b');
+                                    break;
+                                case 'f':
+                                    text.append('\f');
+                                    break;
+                                case 's':
+                                    text.append(' ');
+                                    break;
+                                case ':':
+                                case '^':
+                                case '\\':
+                                    text.append(ch);
+                                    break;
+                                default:
+                                    throw new IllegalArgumentException();
+                            }
+                        }
+                        break;
+                    case '^':
+                        ch = str.charAt(index++);
+                        text.append((char) (ch - '@'));
+                        break;
+                    case '%':
+                        percent(str.charAt(index++));
+                        break;
+                    case '$':
+                        if (index < length && str.charAt(index) == '<') {
+                            int nb = 0;
+                            while ((ch = str.charAt(++index)) != '>') {
+                                if (ch >= '0' && ch <= '9') {
+                                    nb = nb * 10 + (ch - '0');
                                 }
-                                break;
-                            default:
-                                throw new IllegalArgumentException();
+                                // ignore '*', '/' and illegal characters
+                            }
+                            index++;
+                            emit(OP_DELAY, nb);
+                        } else {
+                            text.append(ch);
                         }
-                    }
-                    break;
-                case '^':
+                        break;
+                    default:
+                        text.append(ch);
+                        break;
+                }
+            }
+            flushText();
+            if (!conditionals.isEmpty()) {
+                // unterminated conditional: jump to the end
+                Conditional c;
+                while ((c = conditionals.pollLast()) != null) {
+                    c.close(this);
+                }
+            }
+            return new Program(str, Arrays.copyOf(code, pc),
+                    literals.toArray(new String[0]), pushes, variables);
+        }
+
+        private void percent(char ch) {
+            switch (ch) {
+                case '%':
+                    text.append('%');
+                    return;
+                case 'p':
                     ch = str.charAt(index++);
-                    if (exec) {
-                        out.append((char)(ch - '@'));
+                    int param = ch - '1';
+                    if (index + 1 < str.length() && str.charAt(index) == '%' && str.charAt(index + 1) == 'l') {
+                        index += 2;
+                        emit(OP_PARAM_LENGTH, param);
+                    } else {
+                        emit(OP_PARAM, param);
                     }
-                    break;
-                case '%':
+                    pushes++;
+                    return;
+                case 'P':
+                    emit(OP_SET, variable(str.charAt(index++)));
+                    return;
+                case 'g':
+                    emit(OP_GET, variable(str.charAt(index++)));
+                    pushes++;
+                    return;
+                case '\'':
                     ch = str.charAt(index++);
-                    switch (ch) {
-                        case '%':
-                            if (exec) {
-                                out.append('%');
-                            }
-                            break;
-                        case 'p':
-                            ch = str.charAt(index++);
-                            if (exec) {
-                                stack.push(params[ch - '1']);
-                            }
-                            break;
-                        case 'P':
-                            ch = str.charAt(index++);
-                            if (ch >= 'a' && ch <= 'z') {
-                                if (exec) {
-                                    dv[ch - 'a'] = stack.pop();
-                                }
-                            } else if (ch >= 'A' && ch <= 'Z') {
-                                if (exec) {
-                                    sv[ch - 'A'] = stack.pop();
-                                }
-                            } else {
-                                throw new IllegalArgumentException();
-                            }
-                            break;
-                        case 'g':
-                            ch = str.charAt(index++);
-                            if (ch >= 'a' && ch <= 'z') {
-                                if (exec) {
-                                    stack.push(dv[ch - 'a']);
-                                }
-                            } else if (ch >= 'A' && ch <= 'Z') {
-                                if (exec) {
-                                    stack.push(sv[ch - 'A']);
-                                }
-                            } else {
-                                throw new IllegalArgumentException();
-                            }
-                            break;
-                        case '\'':
-                            ch = str.charAt(index++);
-                            if (exec) {
-                                stack.push((int) ch);
-                            }
-                            ch = str.charAt(index++);
-                            if (ch != '\'') {
-                                throw new IllegalArgumentException();
-                            }
-                            break;
-                        case '{':
-                            int start = index;
-                            while (str.charAt(index++) != '}') ;
-                            if (exec) {
-                                int v = Integer.valueOf(str.substring(start, index - 1));
-                                stack.push(v);
-                            }
-                            break;
-                        case 'l':
-                            if (exec) {
-                                stack.push(stack.pop().toString().length());
-                            }
-                            break;
-                        case '+':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 + v2);
-                            }
-                            break;
-                        case '-':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 - v2);
-                            }
-                            break;
-                        case '*':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 * v2);
-                            }
-                            break;
-                        case '/':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 / v2);
-                            }
-                            break;
-                        case 'm':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 % v2);
-                            }
-                            break;
-                        case '&':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 & v2);
-                            }
-                            break;
-                        case '|':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 | v2);
-                            }
-                            break;
-                        case '^':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 ^ v2);
-                            }
-                            break;
-                        case '=':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 == v2);
-                            }
-                            break;
-                        case '>':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 > v2);
-                            }
-                            break;
-                        case '<':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 < v2);
-                            }
-                            break;
-                        case 'A':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 != 0 && v2 != 0);
-                            }
-                            break;
-                        case '!':
-                            if (exec) {
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 == 0);
-                            }
-                            break;
-                        case '~':
-                            if (exec) {
-                                int v1 = toInteger(stack.pop());
-                                stack.push(~v1);
-                            }
-                            break;
-                        case 'O':
-                            if (exec) {
-                                int v2 = toInteger(stack.pop());
-                                int v1 = toInteger(stack.pop());
-                                stack.push(v1 != 0 || v2 != 0);
-                            }
-                            break;
-                        case '?':
-                            if (ifte != IFTE_NONE) {
-                                throw new IllegalArgumentException();
-                            } else {
-                                ifte = IFTE_IF;
-                            }
-                            break;
-                        case 't':
-                            if (ifte != IFTE_IF && ifte != IFTE_ELSE) {
-                                throw new IllegalArgumentException();
-                            } else {
-                                ifte = IFTE_THEN;
-                            }
-                            exec = toInteger(stack.pop()) != 0;
-                            break;
-                        case 'e':
-                            if (ifte != IFTE_THEN) {
-                                throw new IllegalArgumentException();
-                            } else {
-                                ifte = IFTE_ELSE;
-                            }
-                            exec = !exec;
-                            break;
-                        case ';':
-                            if (ifte == IFTE_NONE || ifte == IFTE_IF) {
-                                throw new IllegalArgumentException();
-                            } else {
-                                ifte = IFTE_NONE;
-                            }
-                            exec = true;
-                            break;
-                        case 'i':
-                            if (params.length >= 1) {
-                                params[0] = toInteger(params[0]) + 1;
-                            }
-                            if (params.length >= 2) {
-                                params[1] = toInteger(params[1]) + 1;
-                            }
-                            break;
-                        case 'd':
-                            out.append(Integer.toString(toInteger(stack.pop())));
-                            break;
-                        default:
-                            throw new UnsupportedOperationException();
+                    emit(OP_CONST, ch);
+                    pushes++;
+                    ch = str.charAt(index++);
+                    if (ch != '\'') {
+                        throw new IllegalArgumentException();
                     }
-                    break;
-                case '$':
-                    if (str.charAt(index) == '<') {
-                        // We don't honour delays, just skip
-                        int nb = 0;
-                        while ((ch = str.charAt(++index)) != '>') {
-                            if (ch >= '0' && ch <= '9') {
-                                nb = nb * 10 + (ch - '0');
-                            } else if (ch == '*') {
-                                // ignore
-                            } else if (ch == '/') {
-                                // ignore
-                            } else {
-                                // illegal, but ...
-                            }
-                        }
-                        index++;
-                        try {
-                            if (out instanceof Flushable) {
-                                ((Flushable) out).flush();
-                            }
-                            Thread.sleep(nb);
-                        } catch (InterruptedException e) {
-                        }
-                    } else {
-                        if (exec) {
-                            out.append(ch);
-                        }
+                    return;
+                case '{':
+                    int start = index;
+                    while (str.charAt(index++) != '}') ;
+                    emit(OP_CONST, Integer.valueOf(str.substring(start, index - 1)));
+                    pushes++;
+                    return;
+                case 'l': emit(OP_LENGTH); return;
+                case '+': emit(OP_ADD); return;
+                case '-': emit(OP_SUB); return;
+                case '*': emit(OP_MUL); return;
+                case '/': emit(OP_DIV); return;
+                case 'm': emit(OP_MOD); return;
+                case '&': emit(OP_AND); return;
+                case '|': emit(OP_OR); return;
+                case '^': emit(OP_XOR); return;
+                case '=': emit(OP_EQ); return;
+                case '>': emit(OP_GT); return;
+                case '<': emit(OP_LT); return;
+                case 'A': emit(OP_LAND); return;
+                case 'O': emit(OP_LOR); return;
+                case '!': emit(OP_NOT); return;
+                case '~': emit(OP_COMPLEMENT); return;
+                case 'i': emit(OP_INCREMENT); return;
+                case 'd': emit(OP_PRINT); return;
+                case '?':
+                    flushText();
+                    conditionals.addLast(new Conditional());
+                    return;
+                case 't': {
+                    Conditional c = conditionals.peekLast();
+                    if (c == null || (c.state != IFTE_IF && c.state != IFTE_ELSE)) {
+                        throw new IllegalArgumentException();
                     }
-                    break;
-                default:
-                    if (exec) {
-                        out.append(ch);
+                    c.state = IFTE_THEN;
+                    emit(OP_JUMP_IF_FALSE, -1);
+                    c.jumpIfFalse = pc - 1;
+                    return;
+                }
+                case 'e': {
+                    Conditional c = conditionals.peekLast();
+                    if (c == null || c.state != IFTE_THEN) {
+                        throw new IllegalArgumentException();
                     }
-                    break;
+                    c.state = IFTE_ELSE;
+                    emit(OP_JUMP, -1);
+                    c.jumpsToEnd.add(pc - 1);
+                    code[c.jumpIfFalse] = pc;
+                    c.jumpIfFalse = -1;
+                    return;
+                }
+                case ';': {
+                    Conditional c = conditionals.peekLast();
+                    if (c == null || c.state == IFTE_IF) {
+                        throw new IllegalArgumentException();
+                    }
+                    conditionals.removeLast();
+                    flushText();
+                    c.close(this);
+                    return;
+                }
+                default:
+                    throw new UnsupportedOperationException();
+            }
+        }
+
+        private int variable(char ch) {
+            variables = true;
+            if (ch >= 'a' && ch <= 'z') {
+                return ch - 'a';
+            } else if (ch >= 'A' && ch <= 'Z') {
+                return 26 + ch - 'A';
+            } else {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        private void flushText() {
+            if (text.length() > 0) {
+                String literal = text.toString();
+                text.setLength(0);
+                int idx = literals.indexOf(literal);
+                if (idx < 0) {
+                    idx = literals.size();
+                    literals.add(literal);
+                }
+                doEmit(OP_TEXT);
+                doEmit(idx);
+            }
+        }
+
+        private void emit(int op) {
+            flushText();
+            doEmit(op);
+        }
+
+        private void emit(int op, int arg) {
+            flushText();
+            doEmit(op);
+            doEmit(arg);
+        }
+
+        private void doEmit(int v) {
+            if (pc == code.length) {
+                code = Arrays.copyOf(code, pc * 2);
+            }
+            code[pc++] = v;
+        }
+
+        private static final class Conditional {
+            int state = IFTE_IF;
+            int jumpIfFalse = -1;
+            final List<Integer> jumpsToEnd = new ArrayList<>();
+
+            void close(Compiler compiler) {
+                if (jumpIfFalse >= 0) {
+                    compiler.code[jumpIfFalse] = compiler.pc;
+                }
+                for (int jump : jumpsToEnd) {
+                    compiler.code[jump] = compiler.pc;
+                }
             }
         }
     }
@@ -84,7 +84,7 @@ public class DiffHelper {
         int startHiddenRange = -1;
         while (commonStart < n
                 && text1.charAt(commonStart) == text2.charAt(commonStart)
-                && text1.styleAt(commonStart).equals(text2.styleAt(commonStart))) {
+                && text1.styleCodeAt(commonStart) == text2.styleCodeAt(commonStart)) {
             if (text1.isHidden(commonStart)) {
                 if (startHiddenRange < 0)
                     startHiddenRange = commonStart;
@@ -101,7 +101,7 @@ public class DiffHelper {
         int commonEnd = 0;
         while (commonEnd < n - commonStart
                 && text1.charAt(l1 - commonEnd - 1) == text2.charAt(l2 - commonEnd - 1)
-                && text1.styleAt(l1 - commonEnd - 1).equals(text2.styleAt(l2 - commonEnd - 1))) {
+                && text1.styleCodeAt(l1 - commonEnd - 1) == text2.styleCodeAt(l2 - commonEnd - 1)) {
             if (text1.isHidden(l1 - commonEnd - 1)) {
                 if (startHiddenRange < 0)
                     startHiddenRange = commonEnd;
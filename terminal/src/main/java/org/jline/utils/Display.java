@@ -8,6 +8,8 @@
  */
 package org.jline.utils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -35,6 +37,13 @@ public class Display {
     protected boolean reset;
     protected boolean delayLineWrap;
 
+    // renders the frames when coalescing, null otherwise
+    private volatile FrameScheduler scheduler;
+
+    // content hashes of the lines in hashedLines, used to detect scrolling
+    private List<AttributedString> hashedLines;
+    private long[] oldHashes;
+
     protected final Map<Capability, Integer> cost = new HashMap<>();
     protected final boolean canScroll;
     protected final boolean wrapAtEol;
@@ -63,7 +72,31 @@ public class Display {
     }
     public void setDelayLineWrap(boolean v) { delayLineWrap = v; }
 
-    public void resize(int rows, int columns) {
+    /**
+     * Enable or disable frame coalescing.  When enabled, updates are rendered
+     * through the terminal's {@link FrameScheduler}: frames coming faster than
+     * its maximum frame rate are dropped in favor of the latest one, which is
+     * rendered and flushed asynchronously.  Disabling coalescing renders
+     * any pending frame.
+     * Only use this when the display is the only thing writing to the terminal.
+     *
+     * @param coalescing <code>true</code> to coalesce updates
+     */
+    public void setCoalescing(boolean coalescing) {
+        FrameScheduler scheduler = this.scheduler;
+        if (coalescing && scheduler == null) {
+            this.scheduler = FrameScheduler.getFrameScheduler(terminal);
+        } else if (!coalescing && scheduler != null) {
+            this.scheduler = null;
+            scheduler.flush();
+        }
+    }
+
+    public boolean isCoalescing() {
+        return scheduler != null;
+    }
+
+    public synchronized void resize(int rows, int columns) {
         if (this.rows != rows || this.columns != columns) {
             this.rows = rows;
             this.columns = columns;
@@ -72,7 +105,7 @@ public class Display {
         }
     }
 
-    public void reset() {
+    public synchronized void reset() {
         oldLines = Collections.emptyList();
     }
 
@@ -80,7 +113,7 @@ public class Display {
      * Clears the whole screen.
      * Use this method only when using full-screen / application mode.
      */
-    public void clear() {
+    public synchronized void clear() {
         if (fullScreen) {
             reset = true;
         }
@@ -106,6 +139,16 @@ public class Display {
      * @param flush whether the output should be flushed or not
      */
     public void update(List<AttributedString> newLines, int targetCursorPos, boolean flush) {
+        FrameScheduler scheduler = this.scheduler;
+        if (scheduler != null) {
+            List<AttributedString> frame = new ArrayList<>(newLines);
+            scheduler.submit(this, () -> render(frame, targetCursorPos, true));
+        } else {
+            render(newLines, targetCursorPos, flush);
+        }
+    }
+
+    protected synchronized void render(List<AttributedString> newLines, int targetCursorPos, boolean flush) {
         if (reset) {
             terminal.puts(Capability.clear_screen);
             oldLines.clear();
@@ -121,26 +164,35 @@ public class Display {
         }
 
         // Detect scrolling
+        long[] newHashes = null;
         if ((fullScreen || newLines.size() >= rows) && newLines.size() == oldLines.size() && canScroll) {
+            long[] oldHashes = hashedLines == oldLines && this.oldHashes.length == oldLines.size()
+                    ? this.oldHashes : hashes(oldLines);
+            newHashes = hashes(newLines);
             int nbHeaders = 0;
             int nbFooters = 0;
             // Find common headers and footers
             int l = newLines.size();
             while (nbHeaders < l
+                   && newHashes[nbHeaders] == oldHashes[nbHeaders]
                    && Objects.equals(newLines.get(nbHeaders), oldLines.get(nbHeaders))) {
                 nbHeaders++;
             }
             while (nbFooters < l - nbHeaders - 1
-                    && Objects.equals(newLines.get(newLines.size() - nbFooters - 1), oldLines.get(oldLines.size() - nbFooters - 1))) {
+                    && newHashes[l - nbFooters - 1] == oldHashes[l - nbFooters - 1]
+                    && Objects.equals(newLines.get(l - nbFooters - 1), oldLines.get(l - nbFooters - 1))) {
                 nbFooters++;
             }
-            List<AttributedString> o1 = newLines.subList(nbHeaders, newLines.size() - nbFooters);
-            List<AttributedString> o2 = oldLines.subList(nbHeaders, oldLines.size() - nbFooters);
-            int[] common = longestCommon(o1, o2);
+            int[] common = longestCommon(newHashes, oldHashes, nbHeaders, l - nbFooters);
             if (common != null) {
                 int s1 = common[0];
                 int s2 = common[1];
-                int sl = common[2];
+                int sl = 0;
+                // guard against hash collisions
+                while (sl < common[2]
+                        && Objects.equals(newLines.get(nbHeaders + s1 + sl), oldLines.get(nbHeaders + s2 + sl))) {
+                    sl++;
+                }
                 if (sl > 1 && s1 < s2) {
                     moveVisualCursorTo((nbHeaders + s1) * columns1);
                     int nb = s2 - s1;
@@ -323,6 +375,8 @@ public class Display {
             moveVisualCursorTo(targetCursorPos < 0 ? currentPos : targetCursorPos, newLines);
         }
         oldLines = newLines;
+        hashedLines = newHashes != null ? newLines : null;
+        oldHashes = newHashes;
 
         if (flush) {
             terminal.flush();
@@ -375,16 +429,40 @@ public class Display {
         return s != null ? s.length() : Integer.MAX_VALUE;
     }
 
-    private static int[] longestCommon(List<AttributedString> l1, List<AttributedString> l2) {
+    /**
+     * Find the longest block of identical lines between the <code>[from, to)</code>
+     * ranges of both hash arrays.  Candidate pairs are looked up through a small
+     * hash table and each diagonal run is only measured from its first line, so
+     * the cost is linear in the number of lines plus the number of matching pairs.
+     * The returned indexes are relative to <code>from</code>.
+     */
+    private static int[] longestCommon(long[] h1, long[] h2, int from, int to) {
+        int n = to - from;
+        if (n <= 0) {
+            return null;
+        }
+        int mask = (Integer.highestOneBit(n) << 2) - 1;
+        int[] head = new int[mask + 1];
+        Arrays.fill(head, -1);
+        int[] next = new int[n];
+        for (int j = n - 1; j >= 0; j--) {
+            int b = bucket(h2[from + j], mask);
+            next[j] = head[b];
+            head[b] = j;
+        }
         int start1 = 0;
         int start2 = 0;
         int max = 0;
-        for (int i = 0; i < l1.size(); i++) {
-            for (int j = 0; j < l2.size(); j++) {
-                int x = 0;
-                while (Objects.equals(l1.get(i + x), l2.get(j + x))) {
+        for (int i = 0; i < n; i++) {
+            long h = h1[from + i];
+            for (int j = head[bucket(h, mask)]; j >= 0; j = next[j]) {
+                if (h2[from + j] != h
+                        || i > 0 && j > 0 && h1[from + i - 1] == h2[from + j - 1]) {
+                    continue;
+                }
+                int x = 1;
+                while (i + x < n && j + x < n && h1[from + i + x] == h2[from + j + x]) {
                     x++;
-                    if (((i + x) >= l1.size()) || ((j + x) >= l2.size())) break;
                 }
                 if (x > max) {
                     max = x;
@@ -396,6 +474,48 @@ public class Display {
         return max != 0 ? new int[] { start1, start2, max } : null;
     }
 
+    private static int bucket(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static long[] hashes(List<AttributedString> lines) {
+        long[] hashes = new long[lines.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(lines.get(i));
+        }
+        return hashes;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the characters and styles of the given line.
+     * Styles are hashed once per run of identical styles, so the result does
+     * not depend on how the string stores them.
+     */
+    static long hash(AttributedString str) {
+        if (str == null) {
+            return 0;
+        }
+        long h = 0xcbf29ce484222325L;
+        int l = str.length();
+        for (int i = 0; i < l; i++) {
+            h = (h ^ str.charAt(i)) * 0x100000001b3L;
+        }
+        int style = 0;
+        int run = 0;
+        for (int i = 0; i < l; ) {
+            int s = str.styleCodeAt(i);
+            int e = str.runEnd(i);
+            if (s != style && run > 0) {
+                h = ((h ^ style) * 0x100000001b3L ^ run) * 0x100000001b3L;
+                run = 0;
+            }
+            style = s;
+            run += e - i;
+            i = e;
+        }
+        return ((h ^ style) * 0x100000001b3L ^ run) * 0x100000001b3L;
+    }
+
     /*
      * Move cursor from cursorPos to argument, updating cursorPos
      * We're at the right margin if {@code (cursorPos % columns1) == columns}.
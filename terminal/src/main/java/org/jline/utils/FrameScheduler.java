@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.jline.terminal.Terminal;
+import org.jline.terminal.impl.AbstractTerminal;
+
+/**
+ * Limits the rate at which frames are rendered to a terminal.
+ *
+ * Frames are submitted with a key identifying what they render, usually
+ * a {@link Display}.  When no frame has been rendered recently, a submitted
+ * frame is rendered immediately in the calling thread.  Otherwise it is kept
+ * until the next frame is due, and replaces any frame still pending for the
+ * same key, so that only the latest state gets rendered.  Pending frames are
+ * rendered by a background thread which stops once there is nothing left to do,
+ * so the final state is always rendered.
+ *
+ * Frames are never rendered concurrently.
+ */
+public class FrameScheduler {
+
+    public static final int DEFAULT_MAX_FRAME_RATE = 30;
+
+    private final Object renderLock = new Object();
+    private final Map<Object, Runnable> pending = new LinkedHashMap<>();
+    private long interval;
+    private long lastFrame;
+    private Thread worker;
+
+    public static FrameScheduler getFrameScheduler(Terminal terminal) {
+        return terminal instanceof AbstractTerminal
+                ? ((AbstractTerminal) terminal).getFrameScheduler(true)
+                : new FrameScheduler();
+    }
+
+    public FrameScheduler() {
+        this(DEFAULT_MAX_FRAME_RATE);
+    }
+
+    public FrameScheduler(int maxFrameRate) {
+        setMaxFrameRate(maxFrameRate);
+        this.lastFrame = System.nanoTime() - interval;
+    }
+
+    public synchronized int getMaxFrameRate() {
+        return (int) (TimeUnit.SECONDS.toNanos(1) / interval);
+    }
+
+    /**
+     * Set the maximum number of frames rendered per second.
+     *
+     * @param maxFrameRate the maximum frame rate, must be positive
+     */
+    public synchronized void setMaxFrameRate(int maxFrameRate) {
+        if (maxFrameRate <= 0) {
+            throw new IllegalArgumentException("Frame rate must be positive");
+        }
+        this.interval = TimeUnit.SECONDS.toNanos(1) / maxFrameRate;
+    }
+
+    /**
+     * Render the given frame now if possible, else schedule it.
+     *
+     * @param key identifies what the frame renders
+     * @param frame the frame to render
+     */
+    public void submit(Object key, Runnable frame) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(frame);
+        synchronized (renderLock) {
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (!pending.isEmpty() || now - lastFrame < interval) {
+                    pending.put(key, frame);
+                    if (worker == null) {
+                        worker = Threads.newThread(this::run, "jline-frame-scheduler");
+                        worker.start();
+                    }
+                    return;
+                }
+                lastFrame = now;
+            }
+            render(frame);
+        }
+    }
+
+    /**
+     * Render all pending frames in the calling thread.
+     */
+    public void flush() {
+        synchronized (renderLock) {
+            List<Runnable> frames;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                frames = new ArrayList<>(pending.values());
+                pending.clear();
+                lastFrame = System.nanoTime();
+            }
+            for (Runnable frame : frames) {
+                render(frame);
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        worker = null;
+                        return;
+                    }
+                    long delay = lastFrame + interval - System.nanoTime();
+                    if (delay > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, delay);
+                        continue;
+                    }
+                }
+                flush();
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                worker = null;
+            }
+            flush();
+        }
+    }
+
+    private void render(Runnable frame) {
+        try {
+            frame.run();
+        } catch (RuntimeException e) {
+            Log.warn("Error rendering frame", e);
+        }
+    }
+
+}
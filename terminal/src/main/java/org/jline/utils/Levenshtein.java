@@ -8,6 +8,7 @@
  */
 package org.jline.utils;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -116,4 +117,182 @@ public class Levenshtein {
         return table[source.length() - 1][target.length() - 1];
     }
 
+    /**
+     * Computes the distance between two strings with unit costs, giving up
+     * as soon as it is known to be greater than the given bound.
+     *
+     * @param source the source string
+     * @param target the target string
+     * @param max the maximum distance of interest
+     * @return the distance if it is less than or equal to {@code max},
+     *         else {@code max + 1}
+     * @see Incremental
+     */
+    public static int distance(CharSequence source, CharSequence target, int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("Negative bound");
+        }
+        if (Math.abs(source.length() - target.length()) > max) {
+            return max + 1;
+        }
+        Incremental distance = new Incremental(target, max);
+        for (int i = 0; i < source.length(); i++) {
+            distance.push(source.charAt(i));
+            if (distance.isExceeded()) {
+                return max + 1;
+            }
+        }
+        return distance.distance();
+    }
+
+    /**
+     * Bounded distance to a fixed target, computed one source character
+     * at a time with unit costs.
+     *
+     * Only the cells of the table within {@code max} of its diagonal are
+     * computed, which takes O(max) time per character.  Characters can be
+     * removed from the end of the source, so that the distances to strings
+     * sharing a prefix, such as the entries of a trie or of a sorted list,
+     * can be computed while only processing the shared prefix once.
+     */
+    public static class Incremental {
+
+        private final CharSequence target;
+        private final int max;
+        private final int width;
+        private char[] source;
+        // cell (i, j) is stored at i * width + j - i + max
+        private int[] table;
+        // lowest value of (row minimum - row index) up to each row,
+        // bounding the values of all the following rows
+        private int[] floors;
+        private int length;
+
+        public Incremental(CharSequence target, int max) {
+            if (max < 0) {
+                throw new IllegalArgumentException("Negative bound");
+            }
+            this.target = target;
+            this.max = max;
+            this.width = 2 * max + 1;
+            this.source = new char[16];
+            this.table = new int[source.length * width];
+            this.floors = new int[source.length];
+        }
+
+        /**
+         * @return the number of source characters
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Removes source characters from the end.
+         *
+         * @param length the new number of source characters
+         */
+        public void truncate(int length) {
+            if (length < 0 || length > this.length) {
+                throw new IllegalArgumentException();
+            }
+            this.length = length;
+        }
+
+        /**
+         * @return the distance between the source and the target if it is
+         *         less than or equal to the bound, else the bound plus one
+         */
+        public int distance() {
+            int m = target.length();
+            if (length == 0 || m == 0) {
+                return Math.min(Math.max(length, m), max + 1);
+            }
+            return cell(length - 1, m - 1);
+        }
+
+        /**
+         * @return whether the distance between the target and the source
+         *         followed by any string is greater than the bound
+         */
+        public boolean isExceeded() {
+            return length > 0 && floors[length - 1] + length - 1 > max;
+        }
+
+        /**
+         * Appends a character to the source.
+         *
+         * @param sc the character to append
+         */
+        public void push(char sc) {
+            int i = length;
+            if (i == source.length) {
+                source = Arrays.copyOf(source, i * 2);
+                table = Arrays.copyOf(table, i * 2 * width);
+                floors = Arrays.copyOf(floors, i * 2);
+            }
+            source[i] = sc;
+            int m = target.length();
+            int over = max + 1;
+            int jmin = Math.max(0, i - max);
+            int jmax = Math.min(m - 1, i + max);
+            // last index before the current one where the target has the source character,
+            // a swap farther than max characters costs more than max
+            int maxSourceLetterMatchIndex = lastIndexOf(target, sc, jmin, jmin - over);
+            int rowMin = m == 0 ? Math.min(i + 1, over) : over;
+            for (int j = jmin; j <= jmax; j++) {
+                char tc = target.charAt(j);
+                int d;
+                if (i == 0) {
+                    d = j + (sc == tc || lastIndexOf(target, sc, j, 0) >= 0 ? 0 : 1);
+                } else if (j == 0) {
+                    d = i + (sc == tc || lastIndexOf(source, tc, i, 0) >= 0 ? 0 : 1);
+                } else {
+                    int jSwap = maxSourceLetterMatchIndex;
+                    d = Math.min(cell(i - 1, j), cell(i, j - 1)) + 1;
+                    d = Math.min(d, cell(i - 1, j - 1) + (sc != tc ? 1 : 0));
+                    if (jSwap != -1) {
+                        int iSwap = lastIndexOf(source, tc, i, i - over);
+                        if (iSwap >= 0) {
+                            int preSwapCost = iSwap == 0 && jSwap == 0 ? 0
+                                    : cell(Math.max(0, iSwap - 1), Math.max(0, jSwap - 1));
+                            d = Math.min(d, preSwapCost + (i - iSwap - 1) + (j - jSwap - 1) + 1);
+                        }
+                    }
+                }
+                if (sc == tc) {
+                    maxSourceLetterMatchIndex = j;
+                }
+                d = Math.min(d, over);
+                table[i * width + j - i + max] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            floors[i] = i == 0 ? rowMin : Math.min(floors[i - 1], rowMin - i);
+            length++;
+        }
+
+        private int cell(int i, int j) {
+            int k = j - i + max;
+            return k >= 0 && k < width && j < target.length() ? table[i * width + k] : max + 1;
+        }
+
+        private static int lastIndexOf(CharSequence s, char c, int end, int start) {
+            for (int i = end - 1; i >= Math.max(0, start); i--) {
+                if (s.charAt(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int lastIndexOf(char[] s, char c, int end, int start) {
+            for (int i = end - 1; i >= Math.max(0, start); i--) {
+                if (s[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
 }
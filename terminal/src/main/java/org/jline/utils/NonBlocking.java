@@ -17,6 +17,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ThreadFactory;
 
 public class NonBlocking {
 
@@ -41,21 +42,51 @@ public class NonBlocking {
     }
 
     public static NonBlockingInputStream nonBlocking(String name, InputStream inputStream) {
+        return nonBlocking(name, inputStream, (ThreadFactory) null);
+    }
+
+    /**
+     * Wraps a blocking input stream, whose reading thread, if needed,
+     * is created by the given factory.
+     *
+     * @param name the name of the stream
+     * @param inputStream the stream to wrap
+     * @param threadFactory the factory, or <code>null</code> to use the default one
+     * @return the non blocking stream
+     */
+    public static NonBlockingInputStream nonBlocking(String name, InputStream inputStream, ThreadFactory threadFactory) {
         if (inputStream instanceof NonBlockingInputStream) {
             return (NonBlockingInputStream) inputStream;
         }
-        return new NonBlockingInputStreamImpl(name, inputStream);
+        return new NonBlockingInputStreamImpl(name, inputStream, threadFactory);
     }
 
     public static NonBlockingReader nonBlocking(String name, Reader reader) {
+        return nonBlocking(name, reader, null);
+    }
+
+    /**
+     * Wraps a blocking reader, whose reading thread, if needed,
+     * is created by the given factory.
+     *
+     * @param name the name of the reader
+     * @param reader the reader to wrap
+     * @param threadFactory the factory, or <code>null</code> to use the default one
+     * @return the non blocking reader
+     */
+    public static NonBlockingReader nonBlocking(String name, Reader reader, ThreadFactory threadFactory) {
         if (reader instanceof NonBlockingReader) {
             return (NonBlockingReader) reader;
         }
-        return new NonBlockingReaderImpl(name, reader);
+        return new NonBlockingReaderImpl(name, reader, threadFactory);
     }
 
     public static NonBlockingReader nonBlocking(String name, InputStream inputStream, Charset encoding) {
-        return new NonBlockingInputStreamReader(nonBlocking(name, inputStream), encoding);
+        return nonBlocking(name, inputStream, encoding, null);
+    }
+
+    public static NonBlockingReader nonBlocking(String name, InputStream inputStream, Charset encoding, ThreadFactory threadFactory) {
+        return new NonBlockingInputStreamReader(nonBlocking(name, inputStream, threadFactory), encoding);
     }
 
     private static class NonBlockingReaderInputStream extends NonBlockingInputStream {
@@ -134,10 +165,21 @@ public class NonBlocking {
 
     }
 
+    /**
+     * Decodes a non blocking input stream.
+     *
+     * A single byte is read while waiting for input, so that the timeout
+     * is honored, then all the bytes the stream has available are read at
+     * once and decoded to a buffer of chars, which subsequent reads are
+     * served from.
+     */
     private static class NonBlockingInputStreamReader extends NonBlockingReader {
 
+        private static final int BUFFER_SIZE = 4096;
+
         private final NonBlockingInputStream input;
         private final CharsetDecoder decoder;
+        private final byte[] buffer;
         private final ByteBuffer bytes;
         private final CharBuffer chars;
 
@@ -151,8 +193,10 @@ public class NonBlocking {
         public NonBlockingInputStreamReader(NonBlockingInputStream input, CharsetDecoder decoder) {
             this.input = input;
             this.decoder = decoder;
-            this.bytes = ByteBuffer.allocate(4);
-            this.chars = CharBuffer.allocate(2);
+            this.buffer = new byte[BUFFER_SIZE];
+            // leave room for an incomplete sequence left from the previous read
+            this.bytes = ByteBuffer.allocate(BUFFER_SIZE + 16);
+            this.chars = CharBuffer.allocate((int) Math.ceil(bytes.capacity() * decoder.maxCharsPerByte()));
             this.bytes.limit(0);
             this.chars.limit(0);
         }
@@ -160,6 +204,9 @@ public class NonBlocking {
         @Override
         protected int read(long timeout, boolean isPeek) throws IOException {
             boolean isInfinite = (timeout <= 0L);
+            if (!chars.hasRemaining() && bytes.hasRemaining()) {
+                decode();
+            }
             while (!chars.hasRemaining() && (isInfinite || timeout > 0L)) {
                 long start = 0;
                 if (!isInfinite) {
@@ -170,16 +217,15 @@ public class NonBlocking {
                     return EOF;
                 }
                 if (b >= 0) {
-                    if (!bytes.hasRemaining()) {
-                        bytes.position(0);
-                        bytes.limit(0);
+                    bytes.compact();
+                    bytes.put((byte) b);
+                    int n = Math.min(input.available(), bytes.remaining());
+                    if (n > 0) {
+                        fill(n);
+                    } else {
+                        bytes.flip();
                     }
-                    int l = bytes.limit();
-                    bytes.array()[bytes.arrayOffset() + l] = (byte) b;
-                    bytes.limit(l + 1);
-                    chars.clear();
-                    decoder.decode(bytes, chars, false);
-                    chars.flip();
+                    decode();
                 }
 
                 if (!isInfinite) {
@@ -204,24 +250,47 @@ public class NonBlocking {
             } else if (b.length == 0) {
                 return 0;
             } else {
-                if (chars.hasRemaining()) {
-                    int r = Math.min(b.length, chars.remaining());
-                    chars.get(b);
-                    return r;
-                } else {
-                    byte[] buf = new byte[b.length];
-                    int l = input.readBuffered(buf);
+                if (!chars.hasRemaining() && bytes.hasRemaining()) {
+                    decode();
+                }
+                while (!chars.hasRemaining()) {
+                    // blocks until some bytes are available
+                    bytes.compact();
+                    int l = fill(bytes.remaining());
                     if (l < 0) {
                         return l;
-                    } else {
-                        ByteBuffer bytes = ByteBuffer.wrap(buf, 0, l);
-                        CharBuffer chars = CharBuffer.wrap(b);
-                        decoder.decode(bytes, chars, false);
-                        chars.flip();
-                        return chars.remaining();
                     }
+                    decode();
+                }
+                int r = Math.min(b.length, chars.remaining());
+                chars.get(b, 0, r);
+                return r;
+            }
+        }
+
+        /**
+         * Reads at most the given number of bytes, with the byte buffer in write
+         * mode, and leaves it in read mode.
+         */
+        private int fill(int n) throws IOException {
+            // the stream reads as many bytes as the array can hold
+            byte[] buf = n >= buffer.length ? buffer : new byte[n];
+            int l;
+            try {
+                l = input.readBuffered(buf);
+                if (l > 0) {
+                    bytes.put(buf, 0, l);
                 }
+            } finally {
+                bytes.flip();
             }
+            return l;
+        }
+
+        private void decode() {
+            chars.compact();
+            decoder.decode(bytes, chars, false);
+            chars.flip();
         }
 
         @Override
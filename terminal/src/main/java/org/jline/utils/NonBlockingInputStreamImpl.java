@@ -11,6 +11,7 @@ package org.jline.utils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This class wraps a regular input stream and allows it to appear as if it
@@ -37,6 +38,7 @@ public class NonBlockingInputStreamImpl
     private IOException exception            = null;
     private long        threadDelay          = 60 * 1000;
     private Thread      thread;
+    private final ThreadFactory threadFactory;
 
     /**
      * Creates a <code>NonBlockingReader</code> out of a normal blocking
@@ -47,15 +49,25 @@ public class NonBlockingInputStreamImpl
      * @param in The reader to wrap
      */
     public NonBlockingInputStreamImpl(String name, InputStream in) {
+        this(name, in, null);
+    }
+
+    /**
+     * Creates a <code>NonBlockingInputStreamImpl</code> whose thread is created by the given factory.
+     * @param name The stream name
+     * @param in The reader to wrap
+     * @param threadFactory the factory creating the thread, or <code>null</code> to use the default one
+     * @see Threads
+     */
+    public NonBlockingInputStreamImpl(String name, InputStream in, ThreadFactory threadFactory) {
         this.in = in;
         this.name = name;
+        this.threadFactory = threadFactory;
     }
 
     private synchronized void startReadingThreadIfNeeded() {
         if (thread == null) {
-            thread = new Thread(this::run);
-            thread.setName(name + " non blocking reader thread");
-            thread.setDaemon(true);
+            thread = Threads.newThread(threadFactory, this::run, name + " non blocking reader thread", true);
             thread.start();
         }
     }
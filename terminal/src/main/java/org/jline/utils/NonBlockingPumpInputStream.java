@@ -11,162 +11,301 @@ package org.jline.utils;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * A non blocking input stream fed through its output stream.
+ *
+ * The bytes are exchanged through a single-producer single-consumer ring
+ * buffer: the writing and reading sides only share volatile positions, so
+ * that they never wait for each other unless the buffer is full or empty.
+ * Writers are serialized between themselves, and so are readers.
+ * A waiting side is parked and only unparked when there is something to do
+ * for it: readers are woken up when the output is flushed, and writers once
+ * half of the buffer has been consumed or when the reader runs out of input.
+ */
 public class NonBlockingPumpInputStream extends NonBlockingInputStream {
 
     private static final int DEFAULT_BUFFER_SIZE = 4096;
 
-    // Read and write buffer are backed by the same array
-    private final ByteBuffer readBuffer;
-    private final ByteBuffer writeBuffer;
+    // The read and write positions are kept on distinct cache lines
+    private static final int PADDING = 16;
+    private static final int READ = PADDING;
+    private static final int WRITE = 2 * PADDING;
+
+    private final byte[] buffer;
+    private final int capacity;
+    private final int mask;
+
+    // Total number of bytes read and written, only updated by their side
+    private final AtomicLongArray positions = new AtomicLongArray(3 * PADDING);
+
+    // Last position of the other side seen by the reader and the writer
+    private long readerLimit;
+    private long writerLimit;
+
+    // Threads parked waiting for input or space
+    private volatile Thread reader;
+    private volatile Thread writer;
+
+    private final Object readLock = new Object();
+    private final Object writeLock = new Object();
 
     private final OutputStream output;
 
-    private boolean closed;
+    private volatile boolean closed;
 
-    private IOException ioException;
+    private volatile IOException ioException;
 
     public NonBlockingPumpInputStream() {
         this(DEFAULT_BUFFER_SIZE);
     }
 
     public NonBlockingPumpInputStream(int bufferSize) {
-        byte[] buf = new byte[bufferSize];
-        this.readBuffer = ByteBuffer.wrap(buf);
-        this.writeBuffer = ByteBuffer.wrap(buf);
+        // Use a power of two so that positions are mapped to indices with a mask
+        this.capacity = bufferSize <= 1 ? 1 : Integer.highestOneBit(bufferSize - 1) << 1;
+        this.mask = capacity - 1;
+        this.buffer = new byte[capacity];
         this.output = new NbpOutputStream();
-        // There are no bytes available to read after initialization
-        readBuffer.limit(0);
     }
 
     public OutputStream getOutputStream() {
         return this.output;
     }
 
-    private int wait(ByteBuffer buffer, long timeout) throws IOException {
+    /**
+     * @return the number of bytes the reader can read from the given position
+     */
+    private int readable(long read) {
+        if (readerLimit == read) {
+            readerLimit = positions.get(WRITE);
+        }
+        return (int) (readerLimit - read);
+    }
+
+    /**
+     * @return the number of bytes the writer can write from the given position
+     */
+    private int writable(long write) {
+        if (write - writerLimit == capacity) {
+            writerLimit = positions.get(READ);
+        }
+        return capacity - (int) (write - writerLimit);
+    }
+
+    /**
+     * Waits for input.
+     *
+     * @return 0 if input is available, EOF or READ_EXPIRED
+     */
+    private int waitForInput(long read, long timeout) throws IOException {
+        if (readable(read) > 0) {
+            return 0;
+        }
         boolean isInfinite = (timeout <= 0L);
-        long end = 0;
-        if (!isInfinite) {
-            end = System.currentTimeMillis() + timeout;
-        }
-        while (!closed && !buffer.hasRemaining() && (isInfinite || timeout > 0L)) {
-            // Wake up waiting readers/writers
-            notifyAll();
-            try {
-                wait(timeout);
-                checkIoException();
-            } catch (InterruptedException e) {
+        long end = isInfinite ? 0L : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        // Publish the position and the reader before checking again, so that
+        // the writer either sees the free space or wakes the reader up
+        positions.set(READ, read);
+        reader = Thread.currentThread();
+        try {
+            while (true) {
+                if (readable(read) > 0) {
+                    return 0;
+                }
+                if (closed) {
+                    return EOF;
+                }
                 checkIoException();
-                throw new InterruptedIOException();
-            }
-            if (!isInfinite) {
-                timeout = end - System.currentTimeMillis();
+                // let a waiting writer fill the buffer
+                wakeUp(writer);
+                if (isInfinite) {
+                    LockSupport.park(this);
+                } else {
+                    long nanos = end - System.nanoTime();
+                    if (nanos <= 0L) {
+                        return READ_EXPIRED;
+                    }
+                    LockSupport.parkNanos(this, nanos);
+                }
+                if (Thread.interrupted()) {
+                    checkIoException();
+                    throw new InterruptedIOException();
+                }
             }
+        } finally {
+            reader = null;
         }
-        return buffer.hasRemaining()
-                ? 0
-                : closed
-                    ? EOF
-                    : READ_EXPIRED;
     }
 
-    private static boolean rewind(ByteBuffer buffer, ByteBuffer other) {
-        // Extend limit of other buffer if there is additional input/output available
-        if (buffer.position() > other.position()) {
-            other.limit(buffer.position());
+    /**
+     * Waits for space in the buffer.
+     */
+    private void waitForSpace(long write) throws IOException {
+        positions.set(WRITE, write);
+        writer = Thread.currentThread();
+        try {
+            while (writable(write) == 0) {
+                if (closed) {
+                    throw new ClosedException();
+                }
+                // let a waiting reader drain the buffer
+                wakeUp(reader);
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException();
+                }
+            }
+        } finally {
+            writer = null;
         }
-        // If we have reached the end of the buffer, rewind and set the new limit
-        if (buffer.position() == buffer.capacity()) {
-            buffer.rewind();
-            buffer.limit(other.position());
-            return true;
-        } else {
-            return false;
+    }
+
+    private static void wakeUp(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
         }
     }
 
-    public synchronized int available() {
-        int count = readBuffer.remaining();
-        if (writeBuffer.position() < readBuffer.position()) {
-            count += writeBuffer.position();
+    /**
+     * Updates the read position, waking up a waiting writer once half
+     * of the buffer is free.
+     */
+    private void consumed(long read) {
+        positions.lazySet(READ, read);
+        Thread w = writer;
+        if (w != null && readerLimit - read <= capacity / 2) {
+            wakeUp(w);
         }
-        return count;
+    }
+
+    public int available() {
+        long read = positions.get(READ);
+        return (int) (positions.get(WRITE) - read);
+    }
+
+    /**
+     * @return the number of bytes which can be written without blocking
+     */
+    public int remainingCapacity() {
+        long read = positions.get(READ);
+        return capacity - (int) (positions.get(WRITE) - read);
     }
 
     @Override
-    public synchronized int read(long timeout, boolean isPeek) throws IOException {
+    public int read(long timeout, boolean isPeek) throws IOException {
         checkIoException();
-        // Blocks until more input is available or the reader is closed.
-        int res = wait(readBuffer, timeout);
-        if (res >= 0) {
-            res = readBuffer.get() & 0x00FF;
+        synchronized (readLock) {
+            long read = positions.get(READ);
+            // Blocks until more input is available or the reader is closed.
+            int res = waitForInput(read, timeout);
+            if (res >= 0) {
+                res = buffer[(int) read & mask] & 0x00FF;
+                if (!isPeek) {
+                    consumed(read + 1);
+                }
+            }
+            return res;
         }
-        rewind(readBuffer, writeBuffer);
-        return res;
     }
 
     @Override
-    public synchronized int readBuffered(byte[] b) throws IOException {
+    public int readBuffered(byte[] b) throws IOException {
         checkIoException();
-        int res = wait(readBuffer, 0L);
-        if (res >= 0) {
-            res = 0;
-            while (res < b.length && readBuffer.hasRemaining()) {
-                b[res++] = (byte) (readBuffer.get() & 0x00FF);
+        synchronized (readLock) {
+            long read = positions.get(READ);
+            int res = waitForInput(read, 0L);
+            if (res >= 0) {
+                res = Math.min(b.length, readable(read));
+                int index = (int) read & mask;
+                int first = Math.min(res, capacity - index);
+                System.arraycopy(buffer, index, b, 0, first);
+                System.arraycopy(buffer, 0, b, first, res - first);
+                consumed(read + res);
             }
+            return res;
         }
-        rewind(readBuffer, writeBuffer);
-        return res;
     }
 
-    public synchronized void setIoException(IOException exception) {
+    public void setIoException(IOException exception) {
         this.ioException = exception;
-        notifyAll();
+        wakeUp(reader);
     }
 
-    protected synchronized void checkIoException() throws IOException {
-        if (ioException != null) {
-            throw ioException;
+    protected void checkIoException() throws IOException {
+        IOException exception = ioException;
+        if (exception != null) {
+            throw exception;
         }
     }
 
-    synchronized void write(byte[] cbuf, int off, int len) throws IOException {
-        while (len > 0) {
-            // Blocks until there is new space available for buffering or the
-            // reader is closed.
-            if (wait(writeBuffer, 0L) == EOF) {
+    void write(int b) throws IOException {
+        synchronized (writeLock) {
+            if (closed) {
                 throw new ClosedException();
             }
-            // Copy as much characters as we can
-            int count = Math.min(len, writeBuffer.remaining());
-            writeBuffer.put(cbuf, off, count);
-            off += count;
-            len -= count;
-            // Update buffer states and rewind if necessary
-            rewind(writeBuffer, readBuffer);
+            long write = positions.get(WRITE);
+            if (writable(write) == 0) {
+                waitForSpace(write);
+            }
+            buffer[(int) write & mask] = (byte) b;
+            positions.lazySet(WRITE, write + 1);
         }
     }
 
-    synchronized void flush() {
-        // Avoid waking up readers when there is nothing to read
-        if (readBuffer.hasRemaining()) {
-            // Notify readers
-            notifyAll();
+    void write(byte[] cbuf, int off, int len) throws IOException {
+        synchronized (writeLock) {
+            while (len > 0) {
+                if (closed) {
+                    throw new ClosedException();
+                }
+                long write = positions.get(WRITE);
+                int free = writable(write);
+                if (free == 0) {
+                    // Blocks until there is new space available for buffering or the
+                    // reader is closed.
+                    waitForSpace(write);
+                    continue;
+                }
+                // Copy as much bytes as we can
+                int count = Math.min(len, free);
+                int index = (int) write & mask;
+                int first = Math.min(count, capacity - index);
+                System.arraycopy(cbuf, off, buffer, index, first);
+                System.arraycopy(cbuf, off + first, buffer, 0, count - first);
+                positions.lazySet(WRITE, write + count);
+                off += count;
+                len -= count;
+            }
+        }
+    }
+
+    void flush() {
+        synchronized (writeLock) {
+            long write = positions.get(WRITE);
+            // Publish the position before looking for a waiting reader
+            positions.set(WRITE, write);
+            // Avoid waking up readers when there is nothing to read
+            if (write != positions.get(READ)) {
+                wakeUp(reader);
+            }
         }
     }
 
     @Override
-    public synchronized void close() throws IOException {
+    public void close() throws IOException {
         this.closed = true;
-        notifyAll();
+        wakeUp(reader);
+        wakeUp(writer);
     }
 
     private class NbpOutputStream extends OutputStream {
 
         @Override
         public void write(int b) throws IOException {
-            NonBlockingPumpInputStream.this.write(new byte[] { (byte) b }, 0, 1);
+            NonBlockingPumpInputStream.this.write(b);
         }
 
         @Override
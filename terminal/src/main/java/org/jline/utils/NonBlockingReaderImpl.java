@@ -11,6 +11,7 @@ package org.jline.utils;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.Reader;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This class wraps a regular reader and allows it to appear as if it
@@ -41,6 +42,7 @@ public class NonBlockingReaderImpl
     private IOException exception            = null;
     private long        threadDelay          = 60 * 1000;
     private Thread      thread;
+    private final ThreadFactory threadFactory;
 
     /**
      * Creates a <code>NonBlockingReader</code> out of a normal blocking
@@ -51,15 +53,25 @@ public class NonBlockingReaderImpl
      * @param in The reader to wrap
      */
     public NonBlockingReaderImpl(String name, Reader in) {
+        this(name, in, null);
+    }
+
+    /**
+     * Creates a <code>NonBlockingReaderImpl</code> whose thread is created by the given factory.
+     * @param name The reader name
+     * @param in The reader to wrap
+     * @param threadFactory the factory creating the thread, or <code>null</code> to use the default one
+     * @see Threads
+     */
+    public NonBlockingReaderImpl(String name, Reader in, ThreadFactory threadFactory) {
         this.in = in;
         this.name = name;
+        this.threadFactory = threadFactory;
     }
 
     private synchronized void startReadingThreadIfNeeded() {
         if (thread == null) {
-            thread = new Thread(this::run);
-            thread.setName(name + " non blocking reader thread");
-            thread.setDaemon(true);
+            thread = Threads.newThread(threadFactory, this::run, name + " non blocking reader thread", true);
             thread.start();
         }
     }
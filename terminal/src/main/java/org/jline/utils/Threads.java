@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.utils;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads started by JLine.
+ *
+ * Threads are created by a default factory, which can be replaced using
+ * {@link #setDefaultFactory(ThreadFactory)} or selected with the
+ * {@value #PROP_THREADS} system property: <code>platform</code> (the default)
+ * or <code>virtual</code>.  Virtual threads are looked up reflectively and are
+ * only available on a JDK supporting them; JLine falls back to platform
+ * threads otherwise.  Most JLine threads spend their life blocked on input,
+ * so that virtual threads allow hosting many idle terminals cheaply.
+ */
+public final class Threads {
+
+    public static final String PROP_THREADS = "org.jline.threads";
+
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+
+    private static final ThreadFactory PLATFORM_FACTORY = Thread::new;
+    private static final ThreadFactory VIRTUAL_FACTORY = createVirtualFactory();
+
+    private static volatile ThreadFactory defaultFactory;
+
+    private Threads() {
+    }
+
+    /**
+     * @return the factory creating platform threads
+     */
+    public static ThreadFactory platform() {
+        return PLATFORM_FACTORY;
+    }
+
+    /**
+     * @return the factory creating virtual threads
+     * @throws UnsupportedOperationException if the JDK does not support virtual threads
+     */
+    public static ThreadFactory virtual() {
+        if (VIRTUAL_FACTORY == null) {
+            throw new UnsupportedOperationException("Virtual threads are not supported");
+        }
+        return VIRTUAL_FACTORY;
+    }
+
+    public static boolean isVirtualSupported() {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * Returns the factory used for threads of components that were not given
+     * a factory of their own.
+     *
+     * @return the default thread factory
+     */
+    public static ThreadFactory getDefaultFactory() {
+        ThreadFactory factory = defaultFactory;
+        if (factory == null) {
+            String prop = System.getProperty(PROP_THREADS, PLATFORM);
+            if (VIRTUAL.equalsIgnoreCase(prop) && isVirtualSupported()) {
+                factory = VIRTUAL_FACTORY;
+            } else {
+                if (!PLATFORM.equalsIgnoreCase(prop)) {
+                    Log.warn("Unsupported threads '", prop, "', using platform threads");
+                }
+                factory = PLATFORM_FACTORY;
+            }
+            defaultFactory = factory;
+        }
+        return factory;
+    }
+
+    public static void setDefaultFactory(ThreadFactory factory) {
+        defaultFactory = Objects.requireNonNull(factory);
+    }
+
+    /**
+     * Creates a daemon thread using the default factory.
+     *
+     * @param runnable the code run by the thread
+     * @param name the name of the thread
+     * @return the unstarted thread
+     */
+    public static Thread newThread(Runnable runnable, String name) {
+        return newThread(null, runnable, name, true);
+    }
+
+    /**
+     * Creates a thread.
+     *
+     * @param factory the factory creating the thread, or <code>null</code> to use the default one
+     * @param runnable the code run by the thread
+     * @param name the name of the thread, or <code>null</code> to keep the one given by the factory
+     * @param daemon whether the thread must not prevent the JVM from exiting;
+     *               otherwise the daemon status is given by the factory
+     * @return the unstarted thread
+     */
+    public static Thread newThread(ThreadFactory factory, Runnable runnable, String name, boolean daemon) {
+        Thread thread = (factory != null ? factory : getDefaultFactory()).newThread(runnable);
+        if (name != null) {
+            thread.setName(name);
+        }
+        // virtual threads are always daemon threads
+        if (daemon && !thread.isDaemon()) {
+            thread.setDaemon(true);
+        }
+        return thread;
+    }
+
+    private static ThreadFactory createVirtualFactory() {
+        try {
+            // Thread.ofVirtual().factory(), on JDKs with virtual threads
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception e) {
+            // not supported, or still a preview feature
+            return null;
+        }
+    }
+}
@@ -8,6 +8,12 @@
  */
 package org.jline.utils;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 public final class WCWidth {
 
     private WCWidth() {
@@ -46,116 +52,294 @@ public final class WCWidth {
      */
     public static int wcwidth(int ucs)
     {
+        /* fast path for ASCII and Latin-1, which are not in any table */
+        if (ucs < 0x300) {
+            if (ucs >= 0x20 && ucs < 0x7f || ucs >= 0xa0)
+                return 1;
+            return ucs == 0 ? 0 : -1;
+        }
+        if (ucs > MAX_CODE_POINT)
+            return 1;
+
+        /* two-stage lookup of the packed width of the code point */
+        int page = PAGES[ucs >>> PAGE_SHIFT];
+        int packed = WIDTHS[(page << (PAGE_SHIFT - 2)) | ((ucs & PAGE_MASK) >>> 2)];
+        return ((packed >>> ((ucs & 3) << 1)) & 3) - 1;
+    }
 
-        /* test for 8-bit control characters */
-        if (ucs == 0)
-            return 0;
-        if (ucs < 32 || (ucs >= 0x7f && ucs < 0xa0))
-            return -1;
-
-        /* binary search in table of non-spacing characters */
-        if (bisearch(ucs, combining, combining.length - 1))
-            return 0;
-
-        /* if we arrive here, ucs is not a combining or C0/C1 control character */
-        return 1 +
-                ((ucs >= 0x1100 &&
-                        (ucs <= 0x115f ||                           /* Hangul Jamo init. consonants */
-                                ucs == 0x2329 || ucs == 0x232a ||
-                                (ucs >= 0x2e80 && ucs <= 0xa4cf &&
-                                        ucs != 0x303f) ||           /* CJK ... Yi */
-                                (ucs >= 0xac00 && ucs <= 0xd7a3) || /* Hangul Syllables */
-                                (ucs >= 0xf900 && ucs <= 0xfaff) || /* CJK Compatibility Ideographs */
-                                (ucs >= 0xfe10 && ucs <= 0xfe19) || /* Vertical forms */
-                                (ucs >= 0xfe30 && ucs <= 0xfe6f) || /* CJK Compatibility Forms */
-                                (ucs >= 0xff00 && ucs <= 0xff60) || /* Fullwidth Forms */
-                                (ucs >= 0xffe0 && ucs <= 0xffe6) ||
-                                (ucs >= 0x20000 && ucs <= 0x2fffd) ||
-                                (ucs >= 0x30000 && ucs <= 0x3fffd))) ? 1 : 0);
+    /**
+     * Compute the number of columns needed to display the code points
+     * of the given range of a char sequence, as the sum of their
+     * {@link #wcwidth(int)}.
+     *
+     * @param cs the char sequence
+     * @param start the start index, inclusive
+     * @param end the end index, exclusive
+     * @return the number of columns
+     */
+    public static int columnLength(CharSequence cs, int start, int end) {
+        int cols = 0;
+        int i = start;
+        while (i < end) {
+            char c = cs.charAt(i);
+            if (c >= 0x20 && c < 0x7f) {
+                cols++;
+                i++;
+            } else {
+                int cp = Character.codePointAt(cs, i);
+                cols += wcwidth(cp);
+                i += Character.charCount(cp);
+            }
+        }
+        return cols;
     }
 
+    /* BEGIN GENERATED TABLES - Unicode 14.0.0, see WCWidthGenerator */
+
+    /* ranges of East Asian Wide (W) and Full-width (F) characters */
+    static final int[] WIDE = {
+            0x1100, 0x115f, 0x231a, 0x231b, 0x2329, 0x232a, 0x23e9, 0x23ec,
+            0x23f0, 0x23f0, 0x23f3, 0x23f3, 0x25fd, 0x25fe, 0x2614, 0x2615,
+            0x2648, 0x2653, 0x267f, 0x267f, 0x2693, 0x2693, 0x26a1, 0x26a1,
+            0x26aa, 0x26ab, 0x26bd, 0x26be, 0x26c4, 0x26c5, 0x26ce, 0x26ce,
+            0x26d4, 0x26d4, 0x26ea, 0x26ea, 0x26f2, 0x26f3, 0x26f5, 0x26f5,
+            0x26fa, 0x26fa, 0x26fd, 0x26fd, 0x2705, 0x2705, 0x270a, 0x270b,
+            0x2728, 0x2728, 0x274c, 0x274c, 0x274e, 0x274e, 0x2753, 0x2755,
+            0x2757, 0x2757, 0x2795, 0x2797, 0x27b0, 0x27b0, 0x27bf, 0x27bf,
+            0x2b1b, 0x2b1c, 0x2b50, 0x2b50, 0x2b55, 0x2b55, 0x2e80, 0x2e99,
+            0x2e9b, 0x2ef3, 0x2f00, 0x2fd5, 0x2ff0, 0x2ffb, 0x3000, 0x303e,
+            0x3041, 0x3096, 0x3099, 0x30ff, 0x3105, 0x312f, 0x3131, 0x318e,
+            0x3190, 0x31e3, 0x31f0, 0x321e, 0x3220, 0x3247, 0x3250, 0x4dbf,
+            0x4e00, 0xa48c, 0xa490, 0xa4c6, 0xa960, 0xa97c, 0xac00, 0xd7a3,
+            0xf900, 0xfaff, 0xfe10, 0xfe19, 0xfe30, 0xfe52, 0xfe54, 0xfe66,
+            0xfe68, 0xfe6b, 0xff01, 0xff60, 0xffe0, 0xffe6, 0x16fe0, 0x16fe4,
+            0x16ff0, 0x16ff1, 0x17000, 0x187f7, 0x18800, 0x18cd5, 0x18d00, 0x18d08,
+            0x1aff0, 0x1aff3, 0x1aff5, 0x1affb, 0x1affd, 0x1affe, 0x1b000, 0x1b122,
+            0x1b150, 0x1b152, 0x1b164, 0x1b167, 0x1b170, 0x1b2fb, 0x1f004, 0x1f004,
+            0x1f0cf, 0x1f0cf, 0x1f18e, 0x1f18e, 0x1f191, 0x1f19a, 0x1f200, 0x1f202,
+            0x1f210, 0x1f23b, 0x1f240, 0x1f248, 0x1f250, 0x1f251, 0x1f260, 0x1f265,
+            0x1f300, 0x1f320, 0x1f32d, 0x1f335, 0x1f337, 0x1f37c, 0x1f37e, 0x1f393,
+            0x1f3a0, 0x1f3ca, 0x1f3cf, 0x1f3d3, 0x1f3e0, 0x1f3f0, 0x1f3f4, 0x1f3f4,
+            0x1f3f8, 0x1f43e, 0x1f440, 0x1f440, 0x1f442, 0x1f4fc, 0x1f4ff, 0x1f53d,
+            0x1f54b, 0x1f54e, 0x1f550, 0x1f567, 0x1f57a, 0x1f57a, 0x1f595, 0x1f596,
+            0x1f5a4, 0x1f5a4, 0x1f5fb, 0x1f64f, 0x1f680, 0x1f6c5, 0x1f6cc, 0x1f6cc,
+            0x1f6d0, 0x1f6d2, 0x1f6d5, 0x1f6d7, 0x1f6dd, 0x1f6df, 0x1f6eb, 0x1f6ec,
+            0x1f6f4, 0x1f6fc, 0x1f7e0, 0x1f7eb, 0x1f7f0, 0x1f7f0, 0x1f90c, 0x1f93a,
+            0x1f93c, 0x1f945, 0x1f947, 0x1f9ff, 0x1fa70, 0x1fa74, 0x1fa78, 0x1fa7c,
+            0x1fa80, 0x1fa86, 0x1fa90, 0x1faac, 0x1fab0, 0x1faba, 0x1fac0, 0x1fac5,
+            0x1fad0, 0x1fad9, 0x1fae0, 0x1fae7, 0x1faf0, 0x1faf6, 0x20000, 0x2fffd,
+            0x30000, 0x3fffd
+    };
+
     /* sorted list of non-overlapping intervals of non-spacing characters */
-    /* generated by "uniset +cat=Me +cat=Mn +cat=Cf -00AD +1160-11FF +200B c" */
-    static Interval[] combining = {
-            new Interval( 0x0300, 0x036F ), new Interval( 0x0483, 0x0486 ), new Interval( 0x0488, 0x0489 ),
-            new Interval( 0x0591, 0x05BD ), new Interval( 0x05BF, 0x05BF ), new Interval( 0x05C1, 0x05C2 ),
-            new Interval( 0x05C4, 0x05C5 ), new Interval( 0x05C7, 0x05C7 ), new Interval( 0x0600, 0x0603 ),
-            new Interval( 0x0610, 0x0615 ), new Interval( 0x064B, 0x065E ), new Interval( 0x0670, 0x0670 ),
-            new Interval( 0x06D6, 0x06E4 ), new Interval( 0x06E7, 0x06E8 ), new Interval( 0x06EA, 0x06ED ),
-            new Interval( 0x070F, 0x070F ), new Interval( 0x0711, 0x0711 ), new Interval( 0x0730, 0x074A ),
-            new Interval( 0x07A6, 0x07B0 ), new Interval( 0x07EB, 0x07F3 ), new Interval( 0x0901, 0x0902 ),
-            new Interval( 0x093C, 0x093C ), new Interval( 0x0941, 0x0948 ), new Interval( 0x094D, 0x094D ),
-            new Interval( 0x0951, 0x0954 ), new Interval( 0x0962, 0x0963 ), new Interval( 0x0981, 0x0981 ),
-            new Interval( 0x09BC, 0x09BC ), new Interval( 0x09C1, 0x09C4 ), new Interval( 0x09CD, 0x09CD ),
-            new Interval( 0x09E2, 0x09E3 ), new Interval( 0x0A01, 0x0A02 ), new Interval( 0x0A3C, 0x0A3C ),
-            new Interval( 0x0A41, 0x0A42 ), new Interval( 0x0A47, 0x0A48 ), new Interval( 0x0A4B, 0x0A4D ),
-            new Interval( 0x0A70, 0x0A71 ), new Interval( 0x0A81, 0x0A82 ), new Interval( 0x0ABC, 0x0ABC ),
-            new Interval( 0x0AC1, 0x0AC5 ), new Interval( 0x0AC7, 0x0AC8 ), new Interval( 0x0ACD, 0x0ACD ),
-            new Interval( 0x0AE2, 0x0AE3 ), new Interval( 0x0B01, 0x0B01 ), new Interval( 0x0B3C, 0x0B3C ),
-            new Interval( 0x0B3F, 0x0B3F ), new Interval( 0x0B41, 0x0B43 ), new Interval( 0x0B4D, 0x0B4D ),
-            new Interval( 0x0B56, 0x0B56 ), new Interval( 0x0B82, 0x0B82 ), new Interval( 0x0BC0, 0x0BC0 ),
-            new Interval( 0x0BCD, 0x0BCD ), new Interval( 0x0C3E, 0x0C40 ), new Interval( 0x0C46, 0x0C48 ),
-            new Interval( 0x0C4A, 0x0C4D ), new Interval( 0x0C55, 0x0C56 ), new Interval( 0x0CBC, 0x0CBC ),
-            new Interval( 0x0CBF, 0x0CBF ), new Interval( 0x0CC6, 0x0CC6 ), new Interval( 0x0CCC, 0x0CCD ),
-            new Interval( 0x0CE2, 0x0CE3 ), new Interval( 0x0D41, 0x0D43 ), new Interval( 0x0D4D, 0x0D4D ),
+    static final Interval[] combining = {
+            new Interval( 0x0300, 0x036F ), new Interval( 0x0483, 0x0489 ), new Interval( 0x0591, 0x05BD ),
+            new Interval( 0x05BF, 0x05BF ), new Interval( 0x05C1, 0x05C2 ), new Interval( 0x05C4, 0x05C5 ),
+            new Interval( 0x05C7, 0x05C7 ), new Interval( 0x0600, 0x0605 ), new Interval( 0x0610, 0x061A ),
+            new Interval( 0x061C, 0x061C ), new Interval( 0x064B, 0x065F ), new Interval( 0x0670, 0x0670 ),
+            new Interval( 0x06D6, 0x06DD ), new Interval( 0x06DF, 0x06E4 ), new Interval( 0x06E7, 0x06E8 ),
+            new Interval( 0x06EA, 0x06ED ), new Interval( 0x070F, 0x070F ), new Interval( 0x0711, 0x0711 ),
+            new Interval( 0x0730, 0x074A ), new Interval( 0x07A6, 0x07B0 ), new Interval( 0x07EB, 0x07F3 ),
+            new Interval( 0x07FD, 0x07FD ), new Interval( 0x0816, 0x0819 ), new Interval( 0x081B, 0x0823 ),
+            new Interval( 0x0825, 0x0827 ), new Interval( 0x0829, 0x082D ), new Interval( 0x0859, 0x085B ),
+            new Interval( 0x0890, 0x0891 ), new Interval( 0x0898, 0x089F ), new Interval( 0x08CA, 0x0902 ),
+            new Interval( 0x093A, 0x093A ), new Interval( 0x093C, 0x093C ), new Interval( 0x0941, 0x0948 ),
+            new Interval( 0x094D, 0x094D ), new Interval( 0x0951, 0x0957 ), new Interval( 0x0962, 0x0963 ),
+            new Interval( 0x0981, 0x0981 ), new Interval( 0x09BC, 0x09BC ), new Interval( 0x09C1, 0x09C4 ),
+            new Interval( 0x09CD, 0x09CD ), new Interval( 0x09E2, 0x09E3 ), new Interval( 0x09FE, 0x09FE ),
+            new Interval( 0x0A01, 0x0A02 ), new Interval( 0x0A3C, 0x0A3C ), new Interval( 0x0A41, 0x0A42 ),
+            new Interval( 0x0A47, 0x0A48 ), new Interval( 0x0A4B, 0x0A4D ), new Interval( 0x0A51, 0x0A51 ),
+            new Interval( 0x0A70, 0x0A71 ), new Interval( 0x0A75, 0x0A75 ), new Interval( 0x0A81, 0x0A82 ),
+            new Interval( 0x0ABC, 0x0ABC ), new Interval( 0x0AC1, 0x0AC5 ), new Interval( 0x0AC7, 0x0AC8 ),
+            new Interval( 0x0ACD, 0x0ACD ), new Interval( 0x0AE2, 0x0AE3 ), new Interval( 0x0AFA, 0x0AFF ),
+            new Interval( 0x0B01, 0x0B01 ), new Interval( 0x0B3C, 0x0B3C ), new Interval( 0x0B3F, 0x0B3F ),
+            new Interval( 0x0B41, 0x0B44 ), new Interval( 0x0B4D, 0x0B4D ), new Interval( 0x0B55, 0x0B56 ),
+            new Interval( 0x0B62, 0x0B63 ), new Interval( 0x0B82, 0x0B82 ), new Interval( 0x0BC0, 0x0BC0 ),
+            new Interval( 0x0BCD, 0x0BCD ), new Interval( 0x0C00, 0x0C00 ), new Interval( 0x0C04, 0x0C04 ),
+            new Interval( 0x0C3C, 0x0C3C ), new Interval( 0x0C3E, 0x0C40 ), new Interval( 0x0C46, 0x0C48 ),
+            new Interval( 0x0C4A, 0x0C4D ), new Interval( 0x0C55, 0x0C56 ), new Interval( 0x0C62, 0x0C63 ),
+            new Interval( 0x0C81, 0x0C81 ), new Interval( 0x0CBC, 0x0CBC ), new Interval( 0x0CBF, 0x0CBF ),
+            new Interval( 0x0CC6, 0x0CC6 ), new Interval( 0x0CCC, 0x0CCD ), new Interval( 0x0CE2, 0x0CE3 ),
+            new Interval( 0x0D00, 0x0D01 ), new Interval( 0x0D3B, 0x0D3C ), new Interval( 0x0D41, 0x0D44 ),
+            new Interval( 0x0D4D, 0x0D4D ), new Interval( 0x0D62, 0x0D63 ), new Interval( 0x0D81, 0x0D81 ),
             new Interval( 0x0DCA, 0x0DCA ), new Interval( 0x0DD2, 0x0DD4 ), new Interval( 0x0DD6, 0x0DD6 ),
             new Interval( 0x0E31, 0x0E31 ), new Interval( 0x0E34, 0x0E3A ), new Interval( 0x0E47, 0x0E4E ),
-            new Interval( 0x0EB1, 0x0EB1 ), new Interval( 0x0EB4, 0x0EB9 ), new Interval( 0x0EBB, 0x0EBC ),
-            new Interval( 0x0EC8, 0x0ECD ), new Interval( 0x0F18, 0x0F19 ), new Interval( 0x0F35, 0x0F35 ),
-            new Interval( 0x0F37, 0x0F37 ), new Interval( 0x0F39, 0x0F39 ), new Interval( 0x0F71, 0x0F7E ),
-            new Interval( 0x0F80, 0x0F84 ), new Interval( 0x0F86, 0x0F87 ), new Interval( 0x0F90, 0x0F97 ),
-            new Interval( 0x0F99, 0x0FBC ), new Interval( 0x0FC6, 0x0FC6 ), new Interval( 0x102D, 0x1030 ),
-            new Interval( 0x1032, 0x1032 ), new Interval( 0x1036, 0x1037 ), new Interval( 0x1039, 0x1039 ),
-            new Interval( 0x1058, 0x1059 ), new Interval( 0x1160, 0x11FF ), new Interval( 0x135F, 0x135F ),
-            new Interval( 0x1712, 0x1714 ), new Interval( 0x1732, 0x1734 ), new Interval( 0x1752, 0x1753 ),
-            new Interval( 0x1772, 0x1773 ), new Interval( 0x17B4, 0x17B5 ), new Interval( 0x17B7, 0x17BD ),
-            new Interval( 0x17C6, 0x17C6 ), new Interval( 0x17C9, 0x17D3 ), new Interval( 0x17DD, 0x17DD ),
-            new Interval( 0x180B, 0x180D ), new Interval( 0x18A9, 0x18A9 ), new Interval( 0x1920, 0x1922 ),
+            new Interval( 0x0EB1, 0x0EB1 ), new Interval( 0x0EB4, 0x0EBC ), new Interval( 0x0EC8, 0x0ECD ),
+            new Interval( 0x0F18, 0x0F19 ), new Interval( 0x0F35, 0x0F35 ), new Interval( 0x0F37, 0x0F37 ),
+            new Interval( 0x0F39, 0x0F39 ), new Interval( 0x0F71, 0x0F7E ), new Interval( 0x0F80, 0x0F84 ),
+            new Interval( 0x0F86, 0x0F87 ), new Interval( 0x0F8D, 0x0F97 ), new Interval( 0x0F99, 0x0FBC ),
+            new Interval( 0x0FC6, 0x0FC6 ), new Interval( 0x102D, 0x1030 ), new Interval( 0x1032, 0x1037 ),
+            new Interval( 0x1039, 0x103A ), new Interval( 0x103D, 0x103E ), new Interval( 0x1058, 0x1059 ),
+            new Interval( 0x105E, 0x1060 ), new Interval( 0x1071, 0x1074 ), new Interval( 0x1082, 0x1082 ),
+            new Interval( 0x1085, 0x1086 ), new Interval( 0x108D, 0x108D ), new Interval( 0x109D, 0x109D ),
+            new Interval( 0x1160, 0x11FF ), new Interval( 0x135D, 0x135F ), new Interval( 0x1712, 0x1714 ),
+            new Interval( 0x1732, 0x1733 ), new Interval( 0x1752, 0x1753 ), new Interval( 0x1772, 0x1773 ),
+            new Interval( 0x17B4, 0x17B5 ), new Interval( 0x17B7, 0x17BD ), new Interval( 0x17C6, 0x17C6 ),
+            new Interval( 0x17C9, 0x17D3 ), new Interval( 0x17DD, 0x17DD ), new Interval( 0x180B, 0x180F ),
+            new Interval( 0x1885, 0x1886 ), new Interval( 0x18A9, 0x18A9 ), new Interval( 0x1920, 0x1922 ),
             new Interval( 0x1927, 0x1928 ), new Interval( 0x1932, 0x1932 ), new Interval( 0x1939, 0x193B ),
-            new Interval( 0x1A17, 0x1A18 ), new Interval( 0x1B00, 0x1B03 ), new Interval( 0x1B34, 0x1B34 ),
+            new Interval( 0x1A17, 0x1A18 ), new Interval( 0x1A1B, 0x1A1B ), new Interval( 0x1A56, 0x1A56 ),
+            new Interval( 0x1A58, 0x1A5E ), new Interval( 0x1A60, 0x1A60 ), new Interval( 0x1A62, 0x1A62 ),
+            new Interval( 0x1A65, 0x1A6C ), new Interval( 0x1A73, 0x1A7C ), new Interval( 0x1A7F, 0x1A7F ),
+            new Interval( 0x1AB0, 0x1ACE ), new Interval( 0x1B00, 0x1B03 ), new Interval( 0x1B34, 0x1B34 ),
             new Interval( 0x1B36, 0x1B3A ), new Interval( 0x1B3C, 0x1B3C ), new Interval( 0x1B42, 0x1B42 ),
-            new Interval( 0x1B6B, 0x1B73 ), new Interval( 0x1DC0, 0x1DCA ), new Interval( 0x1DFE, 0x1DFF ),
-            new Interval( 0x200B, 0x200F ), new Interval( 0x202A, 0x202E ), new Interval( 0x2060, 0x2063 ),
-            new Interval( 0x206A, 0x206F ), new Interval( 0x20D0, 0x20EF ), new Interval( 0x302A, 0x302F ),
-            new Interval( 0x3099, 0x309A ), new Interval( 0xA806, 0xA806 ), new Interval( 0xA80B, 0xA80B ),
-            new Interval( 0xA825, 0xA826 ), new Interval( 0xFB1E, 0xFB1E ), new Interval( 0xFE00, 0xFE0F ),
-            new Interval( 0xFE20, 0xFE23 ), new Interval( 0xFEFF, 0xFEFF ), new Interval( 0xFFF9, 0xFFFB ),
-            new Interval( 0x10A01, 0x10A03 ), new Interval( 0x10A05, 0x10A06 ), new Interval( 0x10A0C, 0x10A0F ),
-            new Interval( 0x10A38, 0x10A3A ), new Interval( 0x10A3F, 0x10A3F ), new Interval( 0x1D167, 0x1D169 ),
-            new Interval( 0x1D173, 0x1D182 ), new Interval( 0x1D185, 0x1D18B ), new Interval( 0x1D1AA, 0x1D1AD ),
-            new Interval( 0x1D242, 0x1D244 ), new Interval( 0xE0001, 0xE0001 ), new Interval( 0xE0020, 0xE007F ),
-            new Interval( 0xE0100, 0xE01EF )
+            new Interval( 0x1B6B, 0x1B73 ), new Interval( 0x1B80, 0x1B81 ), new Interval( 0x1BA2, 0x1BA5 ),
+            new Interval( 0x1BA8, 0x1BA9 ), new Interval( 0x1BAB, 0x1BAD ), new Interval( 0x1BE6, 0x1BE6 ),
+            new Interval( 0x1BE8, 0x1BE9 ), new Interval( 0x1BED, 0x1BED ), new Interval( 0x1BEF, 0x1BF1 ),
+            new Interval( 0x1C2C, 0x1C33 ), new Interval( 0x1C36, 0x1C37 ), new Interval( 0x1CD0, 0x1CD2 ),
+            new Interval( 0x1CD4, 0x1CE0 ), new Interval( 0x1CE2, 0x1CE8 ), new Interval( 0x1CED, 0x1CED ),
+            new Interval( 0x1CF4, 0x1CF4 ), new Interval( 0x1CF8, 0x1CF9 ), new Interval( 0x1DC0, 0x1DFF ),
+            new Interval( 0x200B, 0x200F ), new Interval( 0x202A, 0x202E ), new Interval( 0x2060, 0x2064 ),
+            new Interval( 0x2066, 0x206F ), new Interval( 0x20D0, 0x20F0 ), new Interval( 0x2CEF, 0x2CF1 ),
+            new Interval( 0x2D7F, 0x2D7F ), new Interval( 0x2DE0, 0x2DFF ), new Interval( 0x302A, 0x302D ),
+            new Interval( 0x3099, 0x309A ), new Interval( 0xA66F, 0xA672 ), new Interval( 0xA674, 0xA67D ),
+            new Interval( 0xA69E, 0xA69F ), new Interval( 0xA6F0, 0xA6F1 ), new Interval( 0xA802, 0xA802 ),
+            new Interval( 0xA806, 0xA806 ), new Interval( 0xA80B, 0xA80B ), new Interval( 0xA825, 0xA826 ),
+            new Interval( 0xA82C, 0xA82C ), new Interval( 0xA8C4, 0xA8C5 ), new Interval( 0xA8E0, 0xA8F1 ),
+            new Interval( 0xA8FF, 0xA8FF ), new Interval( 0xA926, 0xA92D ), new Interval( 0xA947, 0xA951 ),
+            new Interval( 0xA980, 0xA982 ), new Interval( 0xA9B3, 0xA9B3 ), new Interval( 0xA9B6, 0xA9B9 ),
+            new Interval( 0xA9BC, 0xA9BD ), new Interval( 0xA9E5, 0xA9E5 ), new Interval( 0xAA29, 0xAA2E ),
+            new Interval( 0xAA31, 0xAA32 ), new Interval( 0xAA35, 0xAA36 ), new Interval( 0xAA43, 0xAA43 ),
+            new Interval( 0xAA4C, 0xAA4C ), new Interval( 0xAA7C, 0xAA7C ), new Interval( 0xAAB0, 0xAAB0 ),
+            new Interval( 0xAAB2, 0xAAB4 ), new Interval( 0xAAB7, 0xAAB8 ), new Interval( 0xAABE, 0xAABF ),
+            new Interval( 0xAAC1, 0xAAC1 ), new Interval( 0xAAEC, 0xAAED ), new Interval( 0xAAF6, 0xAAF6 ),
+            new Interval( 0xABE5, 0xABE5 ), new Interval( 0xABE8, 0xABE8 ), new Interval( 0xABED, 0xABED ),
+            new Interval( 0xFB1E, 0xFB1E ), new Interval( 0xFE00, 0xFE0F ), new Interval( 0xFE20, 0xFE2F ),
+            new Interval( 0xFEFF, 0xFEFF ), new Interval( 0xFFF9, 0xFFFB ), new Interval( 0x101FD, 0x101FD ),
+            new Interval( 0x102E0, 0x102E0 ), new Interval( 0x10376, 0x1037A ), new Interval( 0x10A01, 0x10A03 ),
+            new Interval( 0x10A05, 0x10A06 ), new Interval( 0x10A0C, 0x10A0F ), new Interval( 0x10A38, 0x10A3A ),
+            new Interval( 0x10A3F, 0x10A3F ), new Interval( 0x10AE5, 0x10AE6 ), new Interval( 0x10D24, 0x10D27 ),
+            new Interval( 0x10EAB, 0x10EAC ), new Interval( 0x10F46, 0x10F50 ), new Interval( 0x10F82, 0x10F85 ),
+            new Interval( 0x11001, 0x11001 ), new Interval( 0x11038, 0x11046 ), new Interval( 0x11070, 0x11070 ),
+            new Interval( 0x11073, 0x11074 ), new Interval( 0x1107F, 0x11081 ), new Interval( 0x110B3, 0x110B6 ),
+            new Interval( 0x110B9, 0x110BA ), new Interval( 0x110BD, 0x110BD ), new Interval( 0x110C2, 0x110C2 ),
+            new Interval( 0x110CD, 0x110CD ), new Interval( 0x11100, 0x11102 ), new Interval( 0x11127, 0x1112B ),
+            new Interval( 0x1112D, 0x11134 ), new Interval( 0x11173, 0x11173 ), new Interval( 0x11180, 0x11181 ),
+            new Interval( 0x111B6, 0x111BE ), new Interval( 0x111C9, 0x111CC ), new Interval( 0x111CF, 0x111CF ),
+            new Interval( 0x1122F, 0x11231 ), new Interval( 0x11234, 0x11234 ), new Interval( 0x11236, 0x11237 ),
+            new Interval( 0x1123E, 0x1123E ), new Interval( 0x112DF, 0x112DF ), new Interval( 0x112E3, 0x112EA ),
+            new Interval( 0x11300, 0x11301 ), new Interval( 0x1133B, 0x1133C ), new Interval( 0x11340, 0x11340 ),
+            new Interval( 0x11366, 0x1136C ), new Interval( 0x11370, 0x11374 ), new Interval( 0x11438, 0x1143F ),
+            new Interval( 0x11442, 0x11444 ), new Interval( 0x11446, 0x11446 ), new Interval( 0x1145E, 0x1145E ),
+            new Interval( 0x114B3, 0x114B8 ), new Interval( 0x114BA, 0x114BA ), new Interval( 0x114BF, 0x114C0 ),
+            new Interval( 0x114C2, 0x114C3 ), new Interval( 0x115B2, 0x115B5 ), new Interval( 0x115BC, 0x115BD ),
+            new Interval( 0x115BF, 0x115C0 ), new Interval( 0x115DC, 0x115DD ), new Interval( 0x11633, 0x1163A ),
+            new Interval( 0x1163D, 0x1163D ), new Interval( 0x1163F, 0x11640 ), new Interval( 0x116AB, 0x116AB ),
+            new Interval( 0x116AD, 0x116AD ), new Interval( 0x116B0, 0x116B5 ), new Interval( 0x116B7, 0x116B7 ),
+            new Interval( 0x1171D, 0x1171F ), new Interval( 0x11722, 0x11725 ), new Interval( 0x11727, 0x1172B ),
+            new Interval( 0x1182F, 0x11837 ), new Interval( 0x11839, 0x1183A ), new Interval( 0x1193B, 0x1193C ),
+            new Interval( 0x1193E, 0x1193E ), new Interval( 0x11943, 0x11943 ), new Interval( 0x119D4, 0x119D7 ),
+            new Interval( 0x119DA, 0x119DB ), new Interval( 0x119E0, 0x119E0 ), new Interval( 0x11A01, 0x11A0A ),
+            new Interval( 0x11A33, 0x11A38 ), new Interval( 0x11A3B, 0x11A3E ), new Interval( 0x11A47, 0x11A47 ),
+            new Interval( 0x11A51, 0x11A56 ), new Interval( 0x11A59, 0x11A5B ), new Interval( 0x11A8A, 0x11A96 ),
+            new Interval( 0x11A98, 0x11A99 ), new Interval( 0x11C30, 0x11C36 ), new Interval( 0x11C38, 0x11C3D ),
+            new Interval( 0x11C3F, 0x11C3F ), new Interval( 0x11C92, 0x11CA7 ), new Interval( 0x11CAA, 0x11CB0 ),
+            new Interval( 0x11CB2, 0x11CB3 ), new Interval( 0x11CB5, 0x11CB6 ), new Interval( 0x11D31, 0x11D36 ),
+            new Interval( 0x11D3A, 0x11D3A ), new Interval( 0x11D3C, 0x11D3D ), new Interval( 0x11D3F, 0x11D45 ),
+            new Interval( 0x11D47, 0x11D47 ), new Interval( 0x11D90, 0x11D91 ), new Interval( 0x11D95, 0x11D95 ),
+            new Interval( 0x11D97, 0x11D97 ), new Interval( 0x11EF3, 0x11EF4 ), new Interval( 0x13430, 0x13438 ),
+            new Interval( 0x16AF0, 0x16AF4 ), new Interval( 0x16B30, 0x16B36 ), new Interval( 0x16F4F, 0x16F4F ),
+            new Interval( 0x16F8F, 0x16F92 ), new Interval( 0x16FE4, 0x16FE4 ), new Interval( 0x1BC9D, 0x1BC9E ),
+            new Interval( 0x1BCA0, 0x1BCA3 ), new Interval( 0x1CF00, 0x1CF2D ), new Interval( 0x1CF30, 0x1CF46 ),
+            new Interval( 0x1D167, 0x1D169 ), new Interval( 0x1D173, 0x1D182 ), new Interval( 0x1D185, 0x1D18B ),
+            new Interval( 0x1D1AA, 0x1D1AD ), new Interval( 0x1D242, 0x1D244 ), new Interval( 0x1DA00, 0x1DA36 ),
+            new Interval( 0x1DA3B, 0x1DA6C ), new Interval( 0x1DA75, 0x1DA75 ), new Interval( 0x1DA84, 0x1DA84 ),
+            new Interval( 0x1DA9B, 0x1DA9F ), new Interval( 0x1DAA1, 0x1DAAF ), new Interval( 0x1E000, 0x1E006 ),
+            new Interval( 0x1E008, 0x1E018 ), new Interval( 0x1E01B, 0x1E021 ), new Interval( 0x1E023, 0x1E024 ),
+            new Interval( 0x1E026, 0x1E02A ), new Interval( 0x1E130, 0x1E136 ), new Interval( 0x1E2AE, 0x1E2AE ),
+            new Interval( 0x1E2EC, 0x1E2EF ), new Interval( 0x1E8D0, 0x1E8D6 ), new Interval( 0x1E944, 0x1E94A ),
+            new Interval( 0xE0001, 0xE0001 ), new Interval( 0xE0020, 0xE007F ), new Interval( 0xE0100, 0xE01EF )
     };
 
-    private static class Interval {
-        public final int first;
-        public final int last;
+    /* END GENERATED TABLES */
 
-        public Interval(int first, int last) {
-            this.first = first;
-            this.last = last;
+    private static final int MAX_CODE_POINT = 0x10ffff;
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /* index of the widths page for each block of 256 code points */
+    private static final char[] PAGES;
+    /* widths + 1 packed on two bits, 64 bytes per page, identical pages are shared */
+    private static final byte[] WIDTHS;
+
+    /* must come after the generated tables */
+    static {
+        PAGES = new char[(MAX_CODE_POINT + 1) >>> PAGE_SHIFT];
+        Map<ByteBuffer, Integer> index = new HashMap<>();
+        ByteArrayOutputStream widths = new ByteArrayOutputStream();
+        byte[] scratch = new byte[PAGE_SIZE];
+        /* most pages are uniformly narrow or wide, register them first */
+        Arrays.fill(scratch, (byte) 2);
+        int narrow = page(scratch, index, widths);
+        Arrays.fill(scratch, (byte) 3);
+        int wide = page(scratch, index, widths);
+        int ci = 0;
+        int wi = 0;
+        for (int p = 0; p < PAGES.length; p++) {
+            int first = p << PAGE_SHIFT;
+            int last = first + PAGE_MASK;
+            while (ci < combining.length && combining[ci].last < first) {
+                ci++;
+            }
+            while (wi < WIDE.length && WIDE[wi + 1] < first) {
+                wi += 2;
+            }
+            boolean mixed = p == 0 || ci < combining.length && combining[ci].first <= last;
+            boolean full = wi < WIDE.length && WIDE[wi] <= first && WIDE[wi + 1] >= last;
+            if (!full && wi < WIDE.length && WIDE[wi] <= last) {
+                mixed = true;
+            }
+            if (!mixed) {
+                PAGES[p] = (char) (full ? wide : narrow);
+                continue;
+            }
+            Arrays.fill(scratch, (byte) 2);
+            for (int i = wi; i < WIDE.length && WIDE[i] <= last; i += 2) {
+                fill(scratch, first, last, WIDE[i], WIDE[i + 1], 3);
+            }
+            for (int i = ci; i < combining.length && combining[i].first <= last; i++) {
+                fill(scratch, first, last, combining[i].first, combining[i].last, 1);
+            }
+            if (p == 0) {
+                /* C0/C1 control characters and DEL */
+                fill(scratch, first, last, 0x01, 0x1f, 0);
+                fill(scratch, first, last, 0x7f, 0x9f, 0);
+            }
+            PAGES[p] = (char) page(scratch, index, widths);
         }
+        WIDTHS = widths.toByteArray();
     }
 
-    /* auxiliary function for binary search in interval table */
-    private static boolean bisearch(int ucs, Interval[] table, int max) {
-        int min = 0;
-        int mid;
-
-        if (ucs < table[0].first || ucs > table[max].last)
-            return false;
-        while (max >= min) {
-            mid = (min + max) / 2;
-            if (ucs > table[mid].last)
-                min = mid + 1;
-            else if (ucs < table[mid].first)
-                max = mid - 1;
-            else
-                return true;
+    /* pack the given widths and return the index of the identical page */
+    private static int page(byte[] scratch, Map<ByteBuffer, Integer> index, ByteArrayOutputStream widths) {
+        byte[] packed = new byte[PAGE_SIZE >>> 2];
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            packed[i >>> 2] |= scratch[i] << ((i & 3) << 1);
+        }
+        Integer page = index.get(ByteBuffer.wrap(packed));
+        if (page == null) {
+            page = index.size();
+            index.put(ByteBuffer.wrap(packed), page);
+            widths.write(packed, 0, packed.length);
         }
+        return page;
+    }
 
-        return false;
+    private static void fill(byte[] page, int first, int last, int from, int to, int value) {
+        if (from <= last && to >= first) {
+            Arrays.fill(page, Math.max(from, first) - first, Math.min(to, last) - first + 1, (byte) value);
+        }
     }
 
+    static class Interval {
+        public final int first;
+        public final int last;
+
+        public Interval(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+    }
 
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.terminal.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+
+import org.jline.terminal.Terminal;
+import org.jline.terminal.TerminalBuilder;
+import org.jline.utils.NonBlockingReader;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InputDispatcherTest {
+
+    @Test
+    public void testChannels() throws IOException {
+        try (InputDispatcher dispatcher = new InputDispatcher()) {
+            Pipe[] pipes = new Pipe[3];
+            LineDisciplineTerminal[] terminals = new LineDisciplineTerminal[pipes.length];
+            for (int i = 0; i < pipes.length; i++) {
+                pipes[i] = Pipe.open();
+                terminals[i] = new LineDisciplineTerminal("test" + i, "ansi",
+                        new ByteArrayOutputStream(), StandardCharsets.UTF_8);
+                dispatcher.register(terminals[i], pipes[i].source());
+            }
+            // more than the input buffer of the terminals, which is not consumed yet
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                sb.append("line ").append(i).append('\n');
+            }
+            String input = sb.toString();
+            for (Pipe pipe : pipes) {
+                ByteBuffer bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    pipe.sink().write(bytes);
+                }
+                pipe.sink().close();
+            }
+            for (LineDisciplineTerminal terminal : terminals) {
+                assertEquals(input, readAll(terminal.reader()));
+            }
+        }
+    }
+
+    @Test
+    public void testStreams() throws IOException, InterruptedException {
+        try (InputDispatcher dispatcher = new InputDispatcher()) {
+            PipedOutputStream master = new PipedOutputStream();
+            Terminal terminal = TerminalBuilder.builder()
+                    .type("ansi")
+                    .streams(new PipedInputStream(master), new ByteArrayOutputStream())
+                    .dispatcher(dispatcher)
+                    .build();
+            assertTrue(terminal instanceof ExternalTerminal);
+
+            master.write("abc".getBytes(StandardCharsets.UTF_8));
+            assertEquals('a', terminal.reader().read(1000));
+            assertEquals('b', terminal.reader().read(1000));
+            assertEquals('c', terminal.reader().read(1000));
+
+            terminal.pause(true);
+            master.write("d".getBytes(StandardCharsets.UTF_8));
+            assertEquals(NonBlockingReader.READ_EXPIRED, terminal.reader().read(100));
+            terminal.resume();
+            assertEquals('d', terminal.reader().read(1000));
+            terminal.close();
+        }
+    }
+
+    @Test
+    public void testBuilderChannel() throws IOException {
+        try (InputDispatcher dispatcher = new InputDispatcher()) {
+            Pipe pipe = Pipe.open();
+            Terminal terminal = TerminalBuilder.builder()
+                    .type("ansi")
+                    .channel(pipe.source(), new ByteArrayOutputStream())
+                    .dispatcher(dispatcher)
+                    .build();
+            assertTrue(terminal instanceof ExternalTerminal);
+
+            pipe.sink().write(ByteBuffer.wrap("ab".getBytes(StandardCharsets.UTF_8)));
+            assertEquals('a', terminal.reader().read(1000));
+            assertEquals('b', terminal.reader().read(1000));
+            // selected rather than polled
+            assertFalse(pipe.source().isBlocking());
+
+            pipe.sink().close();
+            assertEquals(NonBlockingReader.EOF, terminal.reader().read(1000));
+            terminal.close();
+        }
+    }
+
+    @Test
+    public void testFailingTerminal() throws IOException {
+        try (InputDispatcher dispatcher = new InputDispatcher()) {
+            Pipe[] pipes = new Pipe[2];
+            LineDisciplineTerminal[] terminals = new LineDisciplineTerminal[pipes.length];
+            for (int i = 0; i < pipes.length; i++) {
+                pipes[i] = Pipe.open();
+                terminals[i] = new LineDisciplineTerminal("test" + i, "ansi",
+                        new ByteArrayOutputStream(), StandardCharsets.UTF_8);
+                dispatcher.register(terminals[i], pipes[i].source());
+            }
+            terminals[0].handle(Terminal.Signal.INT, s -> {
+                throw new IllegalStateException("failed");
+            });
+
+            pipes[0].sink().write(ByteBuffer.wrap(new byte[] { 3 }));
+            // only the input of the failing terminal is stopped
+            assertEquals(NonBlockingReader.EOF, terminals[0].reader().read(1000));
+            pipes[1].sink().write(ByteBuffer.wrap("abc\n".getBytes(StandardCharsets.UTF_8)));
+            pipes[1].sink().close();
+            assertEquals("abc\n", readAll(terminals[1].reader()));
+        }
+    }
+
+    private static String readAll(NonBlockingReader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[256];
+        int l;
+        while ((l = reader.readBuffered(buf)) >= 0) {
+            sb.append(buf, 0, l);
+        }
+        return sb.toString();
+    }
+}
@@ -13,6 +13,7 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
@@ -55,4 +56,41 @@ public class AttributedCharSequenceTest {
 
     }
 
+    @Test
+    public void testStreamingToAnsi() throws IOException {
+        AttributedString as = AttributedString.fromAnsi(
+                "plain \33[1;38;5;200mbold\33[22;4m under\33[0m \33[44mblue\33[0m tail");
+        String expected = as.toAnsi(256, false);
+        assertEquals("plain \33[38;5;200;1mbold\33[4;22m under\33[0m \33[44mblue\33[0m tail", expected);
+
+        StringWriter sw = new StringWriter();
+        as.toAnsi(sw, 256, false, null, null);
+        assertEquals(expected, sw.toString());
+
+        // generic appendable, not special cased
+        CharArrayWriter caw = new CharArrayWriter();
+        as.toAnsi(new Appendable() {
+            public Appendable append(CharSequence csq) { caw.append(csq); return this; }
+            public Appendable append(CharSequence csq, int start, int end) { caw.append(csq, start, end); return this; }
+            public Appendable append(char c) { caw.append(c); return this; }
+        }, 256, false, null, null);
+        assertEquals(expected, caw.toString());
+    }
+
+    @Test
+    public void testStreamingAlternateCharset() throws IOException {
+        AttributedStringBuilder sb = new AttributedStringBuilder();
+        sb.append("ab");
+        sb.style(AttributedStyle.BOLD);
+        sb.append("┌─┐");
+        sb.style(AttributedStyle.DEFAULT);
+        sb.append("cd");
+        AttributedString as = sb.toAttributedString();
+        String expected = "ab<\33[1mlqk>\33[0mcd";
+        assertEquals(expected, as.toAnsi(256, false, "<", ">"));
+        StringBuilder out = new StringBuilder();
+        as.toAnsi(out, 256, false, "<", ">");
+        assertEquals(expected, out.toString());
+    }
+
 }
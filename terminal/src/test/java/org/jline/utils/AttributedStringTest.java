@@ -8,8 +8,11 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.regex.Pattern;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class AttributedStringTest {
 
@@ -140,9 +143,65 @@ public class AttributedStringTest {
     public void testColumns() {
         AttributedString message = new AttributedString("👍");
         int messageLength = message.columnLength();
-        assertEquals(1, messageLength);
+        // emoji presentation characters are wide since Unicode 9
+        assertEquals(2, messageLength);
         AttributedString messageAgain = message.columnSubSequence(0, messageLength);
         assertEquals("👍", messageAgain.toString());
     }
 
+    @Test
+    public void testRunLengthStyles() {
+        AttributedStringBuilder sb = new AttributedStringBuilder();
+        sb.append("plain text, ");
+        sb.styled(AttributedStyle.BOLD, "bold text");
+        sb.append(" and ");
+        sb.styled(AttributedStyle.DEFAULT.foreground(AttributedStyle.RED), "red text");
+        AttributedString compact = sb.toAttributedString();
+        assertNull(compact.style);
+        assertEquals(4, compact.runStyles.length);
+
+        // the same string with one style per character
+        int[] styles = new int[sb.length()];
+        for (int i = 0; i < styles.length; i++) {
+            styles[i] = sb.styleAt(i).getStyle();
+        }
+        AttributedString dense = new AttributedString(sb.toString().toCharArray(), styles, 0, styles.length);
+        assertEquals(dense, compact);
+        assertEquals(compact, dense);
+        assertEquals(dense.hashCode(), compact.hashCode());
+        assertEquals(dense.toAnsi(), compact.toAnsi());
+        for (int i = 0; i < sb.length(); i++) {
+            assertEquals(dense.styleAt(i), compact.styleAt(i));
+            assertEquals(dense.runStart(i), compact.runStart(i));
+            assertEquals(dense.runLimit(i), compact.runLimit(i));
+        }
+
+        AttributedString sub = compact.subSequence(14, 28);
+        assertEquals(dense.subSequence(14, 28), sub);
+        assertEquals("\033[1mld text\033[0m and \033[31mre\033[0m", sub.toAnsi());
+        assertEquals(0, sub.runStart(5));
+        assertEquals(7, sub.runLimit(5));
+        assertEquals(12, sub.runLimit(7));
+
+        AttributedString matched = compact.styleMatches(Pattern.compile("text"), AttributedStyle.DEFAULT.underline());
+        assertEquals(dense.styleMatches(Pattern.compile("text"), AttributedStyle.DEFAULT.underline()), matched);
+
+        AttributedString restyled = new AttributedString(sub, AttributedStyle.DEFAULT.italic());
+        assertEquals("\033[3;1mld text\033[22m and \033[31mre\033[0m", restyled.toAnsi());
+        assertEquals(sub, compact.subSequence(14, 28));
+    }
+
+    @Test
+    public void testDenseStyles() {
+        AttributedStringBuilder sb = new AttributedStringBuilder();
+        for (int i = 0; i < 10; i++) {
+            sb.styled(AttributedStyle.DEFAULT.foreground(i), "x");
+        }
+        AttributedString str = sb.toAttributedString();
+        assertNotNull(str.style);
+        assertEquals(AttributedStyle.DEFAULT.foreground(3), str.styleAt(3));
+        assertEquals(3, str.runStart(3));
+        assertEquals(4, str.runLimit(3));
+    }
+
 }
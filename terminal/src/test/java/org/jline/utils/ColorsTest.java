@@ -30,4 +30,34 @@ public class ColorsTest {
     public void testRgb() {
         assertEquals(2, Colors.roundRgbColor(0, 128, 0, 16));
     }
+
+    @Test
+    public void testRoundingIsStable() {
+        int[] r8 = new int[256];
+        int[] r16 = new int[256];
+        for (int col = 16; col < 256; col++) {
+            r8[col] = Colors.roundColor(col, 8, "cie94");
+            r16[col] = Colors.roundColor(col, 16, "cie94");
+        }
+        for (int col = 16; col < 256; col++) {
+            assertEquals(r8[col], Colors.roundColor(col, 8, "cie94"));
+            assertEquals(r16[col], Colors.roundColor(col, 16, "cie94"));
+        }
+    }
+
+    @Test
+    public void testSetRgbColorsInvalidatesRounding() {
+        int[] colors = Colors.DEFAULT_COLORS_256.clone();
+        try {
+            assertEquals(2, Colors.roundRgbColor(0, 128, 0, 16));
+            // swap green and red
+            colors[1] = Colors.DEFAULT_COLORS_256[2];
+            colors[2] = Colors.DEFAULT_COLORS_256[1];
+            Colors.setRgbColors(colors);
+            assertEquals(1, Colors.roundRgbColor(0, 128, 0, 16));
+        } finally {
+            Colors.setRgbColors(Colors.DEFAULT_COLORS_256);
+        }
+        assertEquals(2, Colors.roundRgbColor(0, 128, 0, 16));
+    }
 }
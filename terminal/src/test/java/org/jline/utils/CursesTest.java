@@ -8,11 +8,13 @@
  */
 package org.jline.utils;
 
+import java.io.IOError;
 import java.io.StringWriter;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author <a href="mailto:gnodet@gmail.com">Guillaume Nodet</a>
@@ -26,4 +28,45 @@ public class CursesTest {
 
     }
 
+    @Test
+    public void testIncrementDoesNotModifyParameters() throws Exception {
+        Object[] params = { 2, 3 };
+        Curses.Program program = Curses.compile("\\E[%i%p1%d;%p2%dH");
+        StringWriter sw = new StringWriter();
+        program.tputs(sw, params);
+        program.tputs(sw, params);
+        assertEquals("\033[3;4H\033[3;4H", sw.toString());
+    }
+
+    @Test
+    public void testConditionals() throws Exception {
+        String setaf = "\\E[%?%p1%{8}%<%t3%p1%d%e%p1%{16}%<%t9%p1%{8}%-%d%e38;5;%p1%d%;m";
+        assertEquals("\033[31m", Curses.tputs(setaf, 1));
+        assertEquals("\033[91m", Curses.tputs(setaf, 9));
+        assertEquals("\033[38;5;200m", Curses.tputs(setaf, 200));
+
+        String nested = "%?%p1%t%?%p2%ta%eb%;%ec%;";
+        assertEquals("a", Curses.tputs(nested, 1, 1));
+        assertEquals("b", Curses.tputs(nested, 1, 0));
+        assertEquals("c", Curses.tputs(nested, 0, 1));
+    }
+
+    @Test
+    public void testVariablesAndConstants() throws Exception {
+        assertEquals("7", Curses.tputs("%p1%Pa%p2%Pb%ga%gb%+%d", 3, 4));
+        assertEquals("65", Curses.tputs("%'A'%d"));
+        assertEquals("3", Curses.tputs("%p1%l%d", "abc"));
+        assertEquals("-12", Curses.tputs("%{0}%{12}%-%d"));
+    }
+
+    @Test
+    public void testCompiledProgramIsCached() throws Exception {
+        assertSame(Curses.compile("\\E[%p1%dC"), Curses.compile("\\E[%p1%dC"));
+    }
+
+    @Test(expected = IOError.class)
+    public void testMalformedCapability() throws Exception {
+        Curses.tputs("%?%p1%d%;", 1);
+    }
+
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jline.terminal.Size;
+import org.jline.terminal.impl.ExternalTerminal;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DisplayTest {
+
+    @Test
+    public void testScrollUsesDeleteLine() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExternalTerminal terminal = new ExternalTerminal("display", "xterm",
+                new ByteArrayInputStream(new byte[0]), out, StandardCharsets.UTF_8);
+        terminal.setSize(new Size(40, 10));
+        Display display = new Display(terminal, true);
+        display.resize(10, 40);
+
+        display.update(lines(0, 10), 0);
+        terminal.flush();
+        out.reset();
+
+        // scroll one line up
+        display.update(lines(1, 10), 0);
+        terminal.flush();
+        String output = out.toString("UTF-8");
+        assertTrue(output.contains("\033[M"));
+        assertTrue(output.contains("line 10"));
+        for (int i = 2; i < 10; i++) {
+            assertFalse(output.contains("line " + i));
+        }
+        terminal.close();
+    }
+
+    @Test
+    public void testHashIgnoresStyleStorage() {
+        AttributedStringBuilder sb = new AttributedStringBuilder();
+        sb.append("plain ");
+        sb.styled(AttributedStyle.BOLD, "bold");
+        AttributedString compact = sb.toAttributedString();
+        int[] styles = new int[sb.length()];
+        for (int i = 0; i < styles.length; i++) {
+            styles[i] = sb.styleAt(i).getStyle();
+        }
+        AttributedString dense = new AttributedString(sb.toString().toCharArray(), styles, 0, styles.length);
+        assertEquals(Display.hash(dense), Display.hash(compact));
+        assertNotEquals(Display.hash(new AttributedString("plain bold")), Display.hash(compact));
+    }
+
+    private static List<AttributedString> lines(int from, int count) {
+        List<AttributedString> lines = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            lines.add(new AttributedString("line " + i));
+        }
+        return lines;
+    }
+
+}
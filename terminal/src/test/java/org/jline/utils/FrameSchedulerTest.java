@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.utils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameSchedulerTest {
+
+    @Test
+    public void testCoalescing() throws InterruptedException {
+        FrameScheduler scheduler = new FrameScheduler(10);
+        AtomicInteger rendered = new AtomicInteger();
+        AtomicInteger last = new AtomicInteger(-1);
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 1000; i++) {
+            int frame = i;
+            scheduler.submit(this, () -> {
+                rendered.incrementAndGet();
+                last.set(frame);
+                if (frame == 999) {
+                    done.countDown();
+                }
+            });
+        }
+        // the first frame is rendered right away, the last one asynchronously
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(999, last.get());
+        assertTrue(rendered.get() < 100);
+    }
+
+    @Test
+    public void testFlush() {
+        FrameScheduler scheduler = new FrameScheduler(1);
+        AtomicInteger a = new AtomicInteger();
+        AtomicInteger b = new AtomicInteger();
+        scheduler.submit("a", () -> a.set(1));
+        scheduler.submit("a", () -> a.set(2));
+        scheduler.submit("b", () -> b.set(3));
+        assertEquals(1, a.get());
+        assertEquals(0, b.get());
+        scheduler.flush();
+        assertEquals(2, a.get());
+        assertEquals(3, b.get());
+    }
+
+}
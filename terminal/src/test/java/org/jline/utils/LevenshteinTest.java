@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.utils;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LevenshteinTest {
+
+    @Test
+    public void testBoundedDistance() {
+        assertEquals(0, Levenshtein.distance("foo", "foo", 1));
+        assertEquals(1, Levenshtein.distance("foo", "fo", 1));
+        assertEquals(1, Levenshtein.distance("foo", "ofo", 1));
+        assertEquals(2, Levenshtein.distance("foo", "bar", 1));
+        assertEquals(2, Levenshtein.distance("foo", "foobar", 1));
+        assertEquals(3, Levenshtein.distance("", "foo", 3));
+    }
+
+    @Test
+    public void testBoundedDistanceAgainstFull() {
+        Random random = new Random(42);
+        for (int n = 0; n < 100000; n++) {
+            String s = word(random);
+            String t = random.nextBoolean() ? word(random) : mutate(random, s);
+            int full = Levenshtein.distance(s, t);
+            for (int max = 0; max <= 4; max++) {
+                assertEquals(s + " / " + t + " / " + max,
+                        Math.min(full, max + 1), Levenshtein.distance(s, t, max));
+            }
+        }
+    }
+
+    private static String word(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(9);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+
+    private static String mutate(Random random, String s) {
+        StringBuilder sb = new StringBuilder(s);
+        int edits = random.nextInt(4);
+        for (int i = 0; i < edits; i++) {
+            int pos = sb.length() > 0 ? random.nextInt(sb.length()) : 0;
+            switch (random.nextInt(4)) {
+                case 0:
+                    sb.insert(pos, (char) ('a' + random.nextInt(4)));
+                    break;
+                case 1:
+                    if (sb.length() > 0) {
+                        sb.deleteCharAt(pos);
+                    }
+                    break;
+                case 2:
+                    if (sb.length() > 0) {
+                        sb.setCharAt(pos, (char) ('a' + random.nextInt(4)));
+                    }
+                    break;
+                default:
+                    if (pos + 1 < sb.length()) {
+                        char c = sb.charAt(pos);
+                        sb.setCharAt(pos, sb.charAt(pos + 1));
+                        sb.setCharAt(pos + 1, c);
+                    }
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -48,6 +48,109 @@ public class NonBlockingTest {
         assertEquals(-1, nbr.read(100));
     }
 
+    @Test
+    public void testNonBlockingReaderOnPumpStream() throws IOException {
+        NonBlockingPumpInputStream nbis = NonBlocking.nonBlockingPumpInputStream(1024);
+        NonBlockingReader nbr = NonBlocking.nonBlocking("name", nbis, StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("ab中\uD801\uDC37").append(i);
+        }
+        String s = sb.toString();
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        Thread writer = new Thread(() -> {
+            try {
+                // odd chunks, so that sequences are split across reads
+                for (int i = 0; i < bytes.length; i += 777) {
+                    nbis.getOutputStream().write(bytes, i, Math.min(777, bytes.length - i));
+                    nbis.getOutputStream().flush();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+
+        StringBuilder read = new StringBuilder();
+        char[] buf = new char[100];
+        while (read.length() < s.length()) {
+            switch (read.length() % 3) {
+                case 0:
+                    int c = nbr.peek(1000);
+                    assertEquals(c, nbr.read(1000));
+                    read.append((char) c);
+                    break;
+                case 1:
+                    read.append((char) nbr.read(1000));
+                    break;
+                default:
+                    read.append(buf, 0, nbr.readBuffered(buf));
+                    break;
+            }
+        }
+        assertEquals(s, read.toString());
+        assertEquals(NonBlockingReader.READ_EXPIRED, nbr.read(100));
+    }
+
+    @Test
+    public void testNonBlockingPumpInputStream() throws Exception {
+        NonBlockingPumpInputStream nbis = NonBlocking.nonBlockingPumpInputStream(100);
+        assertEquals(128, nbis.remainingCapacity());
+        assertEquals(NonBlockingInputStream.READ_EXPIRED, nbis.read(100));
+
+        // wraps around the buffer many times, with single bytes and chunks
+        int size = 100000;
+        Thread writer = new Thread(() -> {
+            try {
+                byte[] chunk = new byte[77];
+                for (int i = 0; i < size; ) {
+                    if (i % 3 == 0) {
+                        nbis.getOutputStream().write(i++);
+                    } else {
+                        int n = Math.min(chunk.length, size - i);
+                        for (int j = 0; j < n; j++) {
+                            chunk[j] = (byte) i++;
+                        }
+                        nbis.getOutputStream().write(chunk, 0, n);
+                    }
+                    nbis.getOutputStream().flush();
+                }
+                nbis.getOutputStream().close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        byte[] buf = new byte[50];
+        int i = 0;
+        while (true) {
+            if (i % 2 == 0) {
+                int c = nbis.read(1000);
+                if (c == NonBlockingInputStream.EOF) {
+                    break;
+                }
+                assertEquals(i++ & 0xFF, c);
+            } else {
+                int n = nbis.readBuffered(buf);
+                if (n == NonBlockingInputStream.EOF) {
+                    break;
+                }
+                for (int j = 0; j < n; j++) {
+                    assertEquals((byte) i++, buf[j]);
+                }
+            }
+        }
+        writer.join();
+        assertEquals(size, i);
+        assertEquals(0, nbis.available());
+        try {
+            nbis.getOutputStream().write(0);
+            throw new AssertionError("Expected ClosedException");
+        } catch (ClosedException e) {
+            // expected
+        }
+    }
+
     @Test
     public void testNonBlockingPumpReader() throws IOException {
         NonBlockingPumpReader nbr = NonBlocking.nonBlockingPumpReader();
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+
+import org.jline.terminal.Terminal;
+import org.jline.terminal.TerminalBuilder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadsTest {
+
+    @Test
+    public void testNewThread() {
+        Thread thread = Threads.newThread(Threads.platform(), () -> { }, "test", true);
+        assertEquals("test", thread.getName());
+        assertTrue(thread.isDaemon());
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void testVirtual() {
+        if (Threads.isVirtualSupported()) {
+            Thread thread = Threads.newThread(Threads.virtual(), () -> { }, "test", false);
+            assertEquals("test", thread.getName());
+            assertTrue(thread.isDaemon());
+        } else {
+            try {
+                Threads.virtual();
+                throw new AssertionError("Expected UnsupportedOperationException");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testTerminalThreadFactory() throws IOException {
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r);
+            threads.add(thread);
+            return thread;
+        };
+        PipedOutputStream master = new PipedOutputStream();
+        Terminal terminal = TerminalBuilder.builder()
+                .type("ansi")
+                .streams(new PipedInputStream(master), new ByteArrayOutputStream())
+                .threadFactory(factory)
+                .build();
+        master.write('a');
+        assertEquals('a', terminal.reader().read(1000));
+        assertEquals(1, threads.size());
+        assertTrue(threads.get(0).isDaemon());
+        master.close();
+        terminal.close();
+    }
+
+    @Test
+    public void testNonBlockingThreadFactory() throws IOException {
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r);
+            threads.add(thread);
+            return thread;
+        };
+        NonBlockingInputStream input = NonBlocking.nonBlocking("test",
+                new ByteArrayInputStream(new byte[] { 'a' }), factory);
+        assertEquals('a', input.read(1000));
+        assertEquals(1, threads.size());
+        NonBlockingReader reader = NonBlocking.nonBlocking("test", new StringReader("b"), factory);
+        assertEquals('b', reader.read(1000));
+        assertEquals(2, threads.size());
+        assertTrue(threads.get(1).isDaemon());
+        input.shutdown();
+        reader.shutdown();
+    }
+}
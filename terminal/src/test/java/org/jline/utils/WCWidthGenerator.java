@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Generates the width tables of {@link WCWidth} from the Unicode Character Database.
+ *
+ * Usage:
+ * <pre>
+ * WCWidthGenerator &lt;UnicodeData.txt&gt; &lt;EastAsianWidth.txt&gt; &lt;version&gt; &lt;WCWidth.java&gt;
+ * </pre>
+ * The generated part of <code>WCWidth.java</code> is replaced in place.
+ *
+ * Non-spacing characters are the characters of general category Mn, Me
+ * or Cf, except U+00AD SOFT HYPHEN, plus the Hangul Jamo medial vowels and
+ * final consonants U+1160..U+11FF and U+200B ZERO WIDTH SPACE.
+ * Wide characters are the characters whose East Asian Width is W or F,
+ * the unlisted code points of the ideographic blocks defaulting to W.
+ */
+public class WCWidthGenerator {
+
+    static final String BEGIN = "    /* BEGIN GENERATED TABLES";
+    static final String END = "    /* END GENERATED TABLES */";
+
+    /* code points which are W when not listed, see UAX #11 */
+    static final int[] DEFAULT_WIDE = {
+            0x3400, 0x4dbf,
+            0x4e00, 0x9fff,
+            0xf900, 0xfaff,
+            0x20000, 0x2fffd,
+            0x30000, 0x3fffd
+    };
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: WCWidthGenerator <UnicodeData.txt> <EastAsianWidth.txt> <version> <WCWidth.java>");
+            System.exit(1);
+        }
+        BitSet combining = combining(Paths.get(args[0]));
+        BitSet wide = wide(Paths.get(args[1]));
+        Path source = Paths.get(args[3]);
+        String java = new String(Files.readAllBytes(source), StandardCharsets.UTF_8);
+        int begin = java.indexOf(BEGIN);
+        int end = java.indexOf(END);
+        if (begin < 0 || end < begin) {
+            throw new IllegalArgumentException("No generated tables in " + source);
+        }
+        String tables = generate(combining, wide, args[2]);
+        java = java.substring(0, begin) + tables + java.substring(end);
+        Files.write(source, java.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static BitSet combining(Path unicodeData) throws IOException {
+        BitSet set = new BitSet();
+        int rangeStart = -1;
+        for (String line : Files.readAllLines(unicodeData, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(";");
+            if (fields.length < 3) {
+                continue;
+            }
+            int cp = Integer.parseInt(fields[0].trim(), 16);
+            String name = fields[1];
+            String category = fields[2].trim();
+            int first = cp;
+            if (name.endsWith(", First>")) {
+                rangeStart = cp;
+                continue;
+            } else if (name.endsWith(", Last>")) {
+                first = rangeStart;
+            }
+            if (category.equals("Mn") || category.equals("Me") || category.equals("Cf")) {
+                set.set(first, cp + 1);
+            }
+        }
+        set.clear(0x00ad);
+        set.set(0x1160, 0x1200);
+        set.set(0x200b);
+        return set;
+    }
+
+    static BitSet wide(Path eastAsianWidth) throws IOException {
+        BitSet set = new BitSet();
+        BitSet listed = new BitSet();
+        for (String line : Files.readAllLines(eastAsianWidth, StandardCharsets.UTF_8)) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            String[] fields = line.split(";");
+            if (fields.length < 2) {
+                continue;
+            }
+            String range = fields[0].trim();
+            int dots = range.indexOf("..");
+            int first = Integer.parseInt(dots >= 0 ? range.substring(0, dots) : range, 16);
+            int last = dots >= 0 ? Integer.parseInt(range.substring(dots + 2), 16) : first;
+            String width = fields[1].trim();
+            listed.set(first, last + 1);
+            if (width.equals("W") || width.equals("F")) {
+                set.set(first, last + 1);
+            }
+        }
+        for (int i = 0; i < DEFAULT_WIDE.length; i += 2) {
+            for (int cp = DEFAULT_WIDE[i]; cp <= DEFAULT_WIDE[i + 1]; cp++) {
+                if (!listed.get(cp)) {
+                    set.set(cp);
+                }
+            }
+        }
+        return set;
+    }
+
+    static String generate(BitSet combining, BitSet wide, String version) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(BEGIN).append(" - Unicode ").append(version)
+                .append(", see WCWidthGenerator */\n\n");
+        sb.append("    /* ranges of East Asian Wide (W) and Full-width (F) characters */\n");
+        sb.append("    static final int[] WIDE = {\n");
+        List<int[]> ranges = ranges(wide);
+        for (int i = 0; i < ranges.size(); i++) {
+            sb.append(i % 4 == 0 ? "            " : " ");
+            sb.append(String.format("0x%04x, 0x%04x", ranges.get(i)[0], ranges.get(i)[1]));
+            sb.append(i == ranges.size() - 1 ? "\n" : i % 4 == 3 ? ",\n" : ",");
+        }
+        sb.append("    };\n\n");
+        sb.append("    /* sorted list of non-overlapping intervals of non-spacing characters */\n");
+        sb.append("    static final Interval[] combining = {\n");
+        ranges = ranges(combining);
+        for (int i = 0; i < ranges.size(); i++) {
+            sb.append(i % 3 == 0 ? "            " : " ");
+            sb.append(String.format("new Interval( 0x%04X, 0x%04X )", ranges.get(i)[0], ranges.get(i)[1]));
+            sb.append(i == ranges.size() - 1 ? "\n" : i % 3 == 2 ? ",\n" : ",");
+        }
+        sb.append("    };\n\n");
+        return sb.toString();
+    }
+
+    static List<int[]> ranges(BitSet set) {
+        List<int[]> ranges = new ArrayList<>();
+        for (int first = set.nextSetBit(0); first >= 0; ) {
+            int last = set.nextClearBit(first) - 1;
+            ranges.add(new int[] { first, last });
+            first = set.nextSetBit(last + 1);
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2002-2020, the original author or authors.
+ *
+ * This software is distributable under the BSD license. See the terms of the
+ * BSD license in the documentation provided with this software.
+ *
+ * https://opensource.org/licenses/BSD-3-Clause
+ */
+package org.jline.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class WCWidthTest {
+
+    @Test
+    public void testTableMatchesIntervals() {
+        for (int ucs = -1; ucs <= 0x110001; ucs++) {
+            assertEquals("U+" + Integer.toHexString(ucs), reference(ucs), WCWidth.wcwidth(ucs));
+        }
+    }
+
+    @Test
+    public void testColumnLength() {
+        assertEquals(0, WCWidth.columnLength("", 0, 0));
+        assertEquals(5, WCWidth.columnLength("hello", 0, 5));
+        assertEquals(3, WCWidth.columnLength("hello", 1, 4));
+        assertEquals(4, WCWidth.columnLength("a中́b", 0, 4));
+        assertEquals(3, WCWidth.columnLength("𠀀x", 0, 3));
+        assertEquals(-1, WCWidth.columnLength("\t", 0, 1));
+    }
+
+    @Test
+    public void testUnicodeData() {
+        assertEquals(0, WCWidth.wcwidth(0));
+        assertEquals(-1, WCWidth.wcwidth('\t'));
+        assertEquals(-1, WCWidth.wcwidth(0x9b));
+        assertEquals(1, WCWidth.wcwidth('a'));
+        assertEquals(1, WCWidth.wcwidth(0x00ad));
+        assertEquals(0, WCWidth.wcwidth(0x0300));
+        assertEquals(0, WCWidth.wcwidth(0x1160));
+        assertEquals(0, WCWidth.wcwidth(0x200b));
+        assertEquals(2, WCWidth.wcwidth(0x4e00));
+        assertEquals(2, WCWidth.wcwidth(0xac00));
+        assertEquals(2, WCWidth.wcwidth(0xff01));
+        assertEquals(1, WCWidth.wcwidth(0xff61));
+        assertEquals(2, WCWidth.wcwidth(0x3fffd));
+        // characters added or made wide after Unicode 5
+        assertEquals(0, WCWidth.wcwidth(0x1ab0));   // COMBINING DOUBLED CIRCUMFLEX ACCENT, Unicode 7
+        assertEquals(2, WCWidth.wcwidth(0x1f600));  // GRINNING FACE, wide since Unicode 9
+        assertEquals(2, WCWidth.wcwidth(0x231a));   // WATCH, wide since Unicode 9
+        assertEquals(2, WCWidth.wcwidth(0x1fae0));  // MELTING FACE, Unicode 14
+        assertEquals(0, WCWidth.wcwidth(0x1e2ae));  // TOTO SIGN RISING TONE, Unicode 14
+    }
+
+    /*
+     * Interval based lookup of the generated tables.
+     */
+    private static int reference(int ucs) {
+        if (ucs == 0)
+            return 0;
+        if (ucs < 32 || (ucs >= 0x7f && ucs < 0xa0))
+            return -1;
+        for (WCWidth.Interval i : WCWidth.combining) {
+            if (ucs >= i.first && ucs <= i.last)
+                return 0;
+        }
+        for (int i = 0; i < WCWidth.WIDE.length; i += 2) {
+            if (ucs >= WCWidth.WIDE[i] && ucs <= WCWidth.WIDE[i + 1])
+                return 2;
+        }
+        return 1;
+    }
+
+}